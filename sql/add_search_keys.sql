@@ -0,0 +1,16 @@
+-- Adds the folded search key columns of create_database.sql to an existing database
+USE fulkoping_library;
+
+ALTER TABLE library_items
+    ADD COLUMN title_key VARCHAR(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci
+        GENERATED ALWAYS AS (LOWER(REGEXP_REPLACE(TRIM(title), '[[:space:]]+', ' '))) STORED INVISIBLE,
+    ADD COLUMN author_key VARCHAR(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci
+        GENERATED ALWAYS AS (LOWER(REGEXP_REPLACE(TRIM(author), '[[:space:]]+', ' '))) STORED INVISIBLE,
+    ADD COLUMN publisher_key VARCHAR(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci
+        GENERATED ALWAYS AS (LOWER(REGEXP_REPLACE(TRIM(publisher), '[[:space:]]+', ' '))) STORED INVISIBLE,
+    ADD COLUMN director_key VARCHAR(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci
+        GENERATED ALWAYS AS (LOWER(REGEXP_REPLACE(TRIM(director), '[[:space:]]+', ' '))) STORED INVISIBLE,
+    ADD INDEX idx_title_key (title_key),
+    ADD INDEX idx_author_key (author_key),
+    ADD INDEX idx_publisher_key (publisher_key),
+    ADD INDEX idx_director_key (director_key);
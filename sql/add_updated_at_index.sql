@@ -0,0 +1,6 @@
+-- Adds the updated_at index of create_database.sql to an existing database, so a restored
+-- catalog snapshot only reads the rows changed since it was written
+USE fulkoping_library;
+
+ALTER TABLE library_items
+    ADD INDEX idx_updated_at (updated_at);
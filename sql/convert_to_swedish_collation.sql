@@ -0,0 +1,26 @@
+-- Converts the tables of an existing database to the Swedish collation of create_database.sql.
+-- ALTER DATABASE only changes the default for tables created later; tables created before it
+-- keep their old collation, and ORDER BY title then disagrees with TitleCollation.
+-- CONVERT TO changes every text column, so the search key columns are set back to the
+-- accent-insensitive collation they need in the same statement.
+USE fulkoping_library;
+
+ALTER DATABASE fulkoping_library CHARACTER SET utf8mb4 COLLATE utf8mb4_sv_0900_ai_ci;
+
+ALTER TABLE users CONVERT TO CHARACTER SET utf8mb4 COLLATE utf8mb4_sv_0900_ai_ci;
+ALTER TABLE roles CONVERT TO CHARACTER SET utf8mb4 COLLATE utf8mb4_sv_0900_ai_ci;
+ALTER TABLE user_roles CONVERT TO CHARACTER SET utf8mb4 COLLATE utf8mb4_sv_0900_ai_ci;
+ALTER TABLE media_types CONVERT TO CHARACTER SET utf8mb4 COLLATE utf8mb4_sv_0900_ai_ci;
+ALTER TABLE loans CONVERT TO CHARACTER SET utf8mb4 COLLATE utf8mb4_sv_0900_ai_ci;
+ALTER TABLE reservations CONVERT TO CHARACTER SET utf8mb4 COLLATE utf8mb4_sv_0900_ai_ci;
+
+ALTER TABLE library_items
+    CONVERT TO CHARACTER SET utf8mb4 COLLATE utf8mb4_sv_0900_ai_ci,
+    MODIFY COLUMN title_key VARCHAR(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci
+        GENERATED ALWAYS AS (LOWER(REGEXP_REPLACE(TRIM(title), '[[:space:]]+', ' '))) STORED INVISIBLE,
+    MODIFY COLUMN author_key VARCHAR(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci
+        GENERATED ALWAYS AS (LOWER(REGEXP_REPLACE(TRIM(author), '[[:space:]]+', ' '))) STORED INVISIBLE,
+    MODIFY COLUMN publisher_key VARCHAR(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci
+        GENERATED ALWAYS AS (LOWER(REGEXP_REPLACE(TRIM(publisher), '[[:space:]]+', ' '))) STORED INVISIBLE,
+    MODIFY COLUMN director_key VARCHAR(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci
+        GENERATED ALWAYS AS (LOWER(REGEXP_REPLACE(TRIM(director), '[[:space:]]+', ' '))) STORED INVISIBLE;
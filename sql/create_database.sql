@@ -1,4 +1,8 @@
+-- Swedish collation: ORDER BY title puts Å, Ä, Ö after Z, ignoring case and accents.
+-- In-memory sorting (TitleCollation) is written to give the same order.
 CREATE DATABASE IF NOT EXISTS fulkoping_library;
+-- Also when the database already exists (e.g. created by the MySQL container), so the tables below get it
+ALTER DATABASE fulkoping_library CHARACTER SET utf8mb4 COLLATE utf8mb4_sv_0900_ai_ci;
 USE fulkoping_library;
 
 CREATE TABLE users (
@@ -61,8 +65,25 @@ CREATE TABLE library_items (
     director VARCHAR(255),
     catalog_number VARCHAR(50) UNIQUE,
 
+    -- Folded search keys (see SearchKeys): lower case, single spaces, and an accent-insensitive
+    -- collation so 'fulkoping%' matches Fulköping. Invisible, so SELECT * leaves them out.
+    title_key VARCHAR(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci
+        GENERATED ALWAYS AS (LOWER(REGEXP_REPLACE(TRIM(title), '[[:space:]]+', ' '))) STORED INVISIBLE,
+    author_key VARCHAR(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci
+        GENERATED ALWAYS AS (LOWER(REGEXP_REPLACE(TRIM(author), '[[:space:]]+', ' '))) STORED INVISIBLE,
+    publisher_key VARCHAR(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci
+        GENERATED ALWAYS AS (LOWER(REGEXP_REPLACE(TRIM(publisher), '[[:space:]]+', ' '))) STORED INVISIBLE,
+    director_key VARCHAR(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci
+        GENERATED ALWAYS AS (LOWER(REGEXP_REPLACE(TRIM(director), '[[:space:]]+', ' '))) STORED INVISIBLE,
+
     FOREIGN KEY (media_type_id) REFERENCES media_types(media_type_id),
-    FULLTEXT INDEX idx_fulltext_title (title)
+    FULLTEXT INDEX idx_fulltext_title (title),
+    INDEX idx_title_key (title_key),
+    INDEX idx_author_key (author_key),
+    INDEX idx_publisher_key (publisher_key),
+    INDEX idx_director_key (director_key),
+    -- Rows changed since a catalog snapshot was taken (see CatalogSnapshot)
+    INDEX idx_updated_at (updated_at)
 );
 
 -- Insert default media types
@@ -2,10 +2,13 @@ package se.fulkopinglibrary.fulkopinglibrary;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import se.fulkopinglibrary.fulkopinglibrary.events.PoolAcquireEvent;
+import se.fulkopinglibrary.fulkopinglibrary.utils.JdbcInstrumentation;
 import se.fulkopinglibrary.fulkopinglibrary.utils.LoggerUtil;
 
 /**
@@ -41,14 +44,9 @@ public class DatabaseConnection {
             String dbUser = dotenv.get("DB_USER");
             String dbPassword = dotenv.get("DB_PASSWORD");
             
-            // Additional debug logging
-            System.out.println("JDBC URL: " + dbUrl);
-            System.out.println("Username: " + dbUser);
-            System.out.println("Password: " + (dbPassword != null ? "*****" : "null"));
-            
-            logger.config("DB_URL: " + dbUrl);
-            logger.config("DB_USER: " + dbUser);
-            logger.config("DB_PASSWORD: " + (dbPassword != null ? "*****" : "null"));
+            logger.config(() -> "DB_URL: " + dbUrl);
+            logger.config(() -> "DB_USER: " + dbUser);
+            logger.config(() -> "DB_PASSWORD: " + (dbPassword != null ? "*****" : "null"));
             
             if (dbUrl == null || dbUser == null || dbPassword == null) {
                 logger.severe("Missing database environment variables:");
@@ -61,7 +59,7 @@ public class DatabaseConnection {
             // Log MySQL driver version
             try {
                 Class<?> mysqlDriverClass = Class.forName("com.mysql.cj.jdbc.Driver");
-                logger.info("MySQL Driver loaded: " + mysqlDriverClass.getPackage().getImplementationVersion());
+                logger.info(() -> "MySQL Driver loaded: " + mysqlDriverClass.getPackage().getImplementationVersion());
             } catch (ClassNotFoundException e) {
                 logger.severe("MySQL Driver not found!");
                 throw new ExceptionInInitializerError("MySQL Driver not found: " + e.getMessage());
@@ -85,14 +83,21 @@ public class DatabaseConnection {
             config.addDataSourceProperty("prepStmtCacheSize", "250");
             config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
             config.addDataSourceProperty("useServerPrepStmts", "true");
+            // Lets the driver send JDBC batches as multi-row INSERTs (used by bulk import)
+            config.addDataSourceProperty("rewriteBatchedStatements", "true");
             
             logger.config("Initializing HikariCP connection pool with configuration:");
-            logger.config("Max pool size: " + config.getMaximumPoolSize());
-            logger.config("Min idle connections: " + config.getMinimumIdle());
-            logger.config("Connection timeout: " + config.getConnectionTimeout());
+            logger.config(() -> "Max pool size: " + config.getMaximumPoolSize());
+            logger.config(() -> "Min idle connections: " + config.getMinimumIdle());
+            logger.config(() -> "Connection timeout: " + config.getConnectionTimeout());
             
             dataSource = new HikariDataSource(config);
             logger.info("Successfully initialized database connection pool");
+
+            // Per-statement timing and slow-query logging, on unless JDBC_INSTRUMENTATION=false
+            String instrumentation = dotenv.get("JDBC_INSTRUMENTATION", "true");
+            String slowQueryThreshold = dotenv.get("SLOW_QUERY_THRESHOLD_MS", "200");
+            JdbcInstrumentation.configure(Boolean.parseBoolean(instrumentation), Long.parseLong(slowQueryThreshold));
         } catch (Exception e) {
             logger.log(Level.SEVERE, "Failed to initialize database connection pool", e);
             throw new ExceptionInInitializerError("Failed to initialize database connection pool: " + e.getMessage());
@@ -100,11 +105,43 @@ public class DatabaseConnection {
     }
 
     public static Connection getConnection() throws SQLException {
-        return dataSource.getConnection();
+        PoolAcquireEvent event = new PoolAcquireEvent();
+        event.begin();
+        boolean acquired = false;
+        try {
+            Connection connection = dataSource.getConnection();
+            acquired = true;
+            return JdbcInstrumentation.wrap(connection);
+        } finally {
+            event.end();
+            // Pool state is only read for acquisitions slow enough to be recorded
+            if (event.shouldCommit()) {
+                HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+                event.success = acquired;
+                event.activeConnections = pool.getActiveConnections();
+                event.threadsAwaiting = pool.getThreadsAwaitingConnection();
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Returns a text report of per-statement latency, row counts and connection hold time
+     * collected since startup.
+     */
+    public static String getStatementStatistics() {
+        return JdbcInstrumentation.dump();
+    }
+
+    public static int getMaximumPoolSize() {
+        return dataSource.getMaximumPoolSize();
     }
 
     public static void closePool() {
         if (dataSource != null && !dataSource.isClosed()) {
+            if (JdbcInstrumentation.isEnabled()) {
+                logger.info(() -> "Statement statistics:\n" + JdbcInstrumentation.dump());
+            }
             logger.info("Closing database connection pool");
             
             // Add HikariCP configuration to handle abandoned connections
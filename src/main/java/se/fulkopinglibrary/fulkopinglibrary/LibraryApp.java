@@ -11,9 +11,12 @@
  */
 package se.fulkopinglibrary.fulkopinglibrary;
 
+import se.fulkopinglibrary.fulkopinglibrary.batch.BatchRunner;
 import se.fulkopinglibrary.fulkopinglibrary.models.User;
+import se.fulkopinglibrary.fulkopinglibrary.services.AccountAvailability;
 import se.fulkopinglibrary.fulkopinglibrary.services.UserService;
 import se.fulkopinglibrary.fulkopinglibrary.services.BookService;
+import se.fulkopinglibrary.fulkopinglibrary.services.FederatedSearchService;
 import se.fulkopinglibrary.fulkopinglibrary.services.MagazineService;
 import se.fulkopinglibrary.fulkopinglibrary.services.MediaService;
 import se.fulkopinglibrary.fulkopinglibrary.models.Book;
@@ -21,6 +24,7 @@ import se.fulkopinglibrary.fulkopinglibrary.models.LibraryItem;
 import se.fulkopinglibrary.fulkopinglibrary.models.Magazine;
 import se.fulkopinglibrary.fulkopinglibrary.models.MediaItem;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -31,13 +35,29 @@ import java.sql.Date;
 import java.util.List;
 import java.util.Scanner;
 import java.util.logging.Logger;
+import se.fulkopinglibrary.fulkopinglibrary.utils.ConsoleOutput;
 import se.fulkopinglibrary.fulkopinglibrary.utils.LoggerUtil;
+import se.fulkopinglibrary.fulkopinglibrary.utils.MetricsRegistry;
+import se.fulkopinglibrary.fulkopinglibrary.utils.TableRenderer;
 
 public class LibraryApp {
     private static final Logger logger = LoggerUtil.getLogger(LibraryApp.class);
 
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--batch")) {
+            try {
+                BatchRunner.main(args);
+            } catch (IOException e) {
+                logger.severe("Batch failed: " + e.getMessage());
+                System.exit(2);
+            }
+            return;
+        }
+        // Menus and tables share one console stream and charset
+        ConsoleOutput.install();
         testDatabaseConnection();
+        loadSignupFilters();
+        MetricsRegistry.startReporter(Long.getLong("library.metrics.interval", 300));
         try {
             logger.info("Initializing library application...");
             Scanner scanner = new Scanner(System.in);
@@ -65,7 +85,7 @@ public class LibraryApp {
                             long duration = System.currentTimeMillis() - startTime;
                             
                             if (user != null) {
-                                logger.info(String.format("Login successful! (took %d ms)", duration));
+                                logger.info(() -> String.format("Login successful! (took %d ms)", duration));
                                 userMenu(user, scanner);
                             } else {
                                 logger.warning(String.format("Login failed after %d ms. Invalid username or password.", duration));
@@ -82,7 +102,7 @@ public class LibraryApp {
                             long duration = System.currentTimeMillis() - startTime;
                             
                             if (signupSuccess) {
-                                logger.info(String.format("Signup successful! (took %d ms) Please log in.", duration));
+                                logger.info(() -> String.format("Signup successful! (took %d ms) Please log in.", duration));
                             } else {
                                 logger.warning(String.format("Signup failed after %d ms. Please try again.", duration));
                             }
@@ -218,34 +238,14 @@ public class LibraryApp {
         }
     }
 
+    private static final TableRenderer<LibraryItem> ITEM_TABLE = TableRenderer.forItems("Creator", "Identifier", true);
+
     private static void displayItems(String category, List<? extends LibraryItem> items) {
         if (items.isEmpty()) {
             System.out.println("\nNo " + category.toLowerCase() + " found.");
             return;
         }
-        
-        System.out.println("\n" + category + ":");
-        System.out.println("------");
-        for (LibraryItem item : items) {
-            System.out.printf("ID:        %d\n", item.getId());
-            System.out.printf("Title:     %s\n", item.getTitle());
-            
-            if (item instanceof Book) {
-                Book book = (Book) item;
-                System.out.printf("Author:    %s\n", book.getAuthor());
-                System.out.printf("ISBN:      %s\n", book.getIsbn());
-            } else if (item instanceof Magazine) {
-                Magazine magazine = (Magazine) item;
-                System.out.printf("Publisher: %s\n", magazine.getPublisher());
-                System.out.printf("ISSN:      %s\n", magazine.getIssn());
-                } else if (item instanceof MediaItem) {
-                    MediaItem media = (MediaItem) item;
-                    System.out.printf("Director:  %s\n", media.getDirector());
-                    System.out.printf("Type:      %s\n", media.getType());
-            }
-            System.out.printf("Available: %s\n", item.isAvailable() ? "Yes" : "No");
-            System.out.println("=======================================");
-        }
+        ITEM_TABLE.print(category + ":", items);
     }
 
     private static void testDatabaseConnection() {
@@ -254,7 +254,8 @@ public class LibraryApp {
             try (Statement stmt = conn.createStatement();
                  ResultSet rs = stmt.executeQuery("SELECT 1")) {
                 if (rs.next()) {
-                    logger.info("Database test query successful: " + rs.getInt(1));
+                    int result = rs.getInt(1);
+                    logger.info(() -> "Database test query successful: " + result);
                 }
             }
         } catch (SQLException e) {
@@ -263,6 +264,15 @@ public class LibraryApp {
         }
     }
 
+    // Signup still works without the filters; they are then loaded on first use
+    private static void loadSignupFilters() {
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            AccountAvailability.load(conn);
+        } catch (SQLException e) {
+            logger.warning("Could not load signup filters: " + e.getMessage());
+        }
+    }
+
     private static void userMenu(User user, Scanner scanner) {
         boolean loggedIn = true;
 
@@ -327,7 +337,7 @@ public class LibraryApp {
                                     if (isAvailable) {
                                         boolean success = MagazineService.borrowMagazine(connection, user.getUserId(), magazineId);
                                         if (success) {
-                                            logger.info("Magazine borrowed successfully: user=" + user.getUserId() + ", magazine=" + magazineId);
+                                            logger.info(() -> "Magazine borrowed successfully: user=" + user.getUserId() + ", magazine=" + magazineId);
                                             System.out.println("Magazine borrowed successfully!");
                                         } else {
                                             logger.warning("Failed to borrow magazine: user=" + user.getUserId() + ", magazine=" + magazineId);
@@ -356,14 +366,14 @@ public class LibraryApp {
                                         if (reserveChoice == 1) {
                                             boolean reserveSuccess = MagazineService.reserveMagazine(connection, user.getUserId(), magazineId);
                                             if (reserveSuccess) {
-                                                logger.info("Magazine reserved successfully: user=" + user.getUserId() + ", magazine=" + magazineId);
+                                                logger.info(() -> "Magazine reserved successfully: user=" + user.getUserId() + ", magazine=" + magazineId);
                                                 System.out.println("Magazine reserved successfully! You'll be notified when it's available.");
                                             } else {
                                                 logger.warning("Failed to reserve magazine: user=" + user.getUserId() + ", magazine=" + magazineId);
                                                 System.out.println("Failed to reserve the magazine. You may already have a reservation.");
                                             }
                                         } else {
-                                            logger.info("User declined reservation for magazine: " + magazineId);
+                                            logger.info(() -> "User declined reservation for magazine: " + magazineId);
                                             System.out.println("Returning to main menu...");
                                         }
                                     }
@@ -381,7 +391,7 @@ public class LibraryApp {
                                     if (mediaAvailable) {
                                         boolean success = MediaService.borrowMedia(connection, user.getUserId(), mediaId);
                                         if (success) {
-                                            logger.info("Media borrowed successfully: user=" + user.getUserId() + ", media=" + mediaId);
+                                            logger.info(() -> "Media borrowed successfully: user=" + user.getUserId() + ", media=" + mediaId);
                                             System.out.println("Media borrowed successfully!");
                                         } else {
                                             logger.warning("Failed to borrow media: user=" + user.getUserId() + ", media=" + mediaId);
@@ -410,14 +420,14 @@ public class LibraryApp {
                                         if (reserveChoice == 1) {
                                             boolean reserveSuccess = MediaService.reserveMedia(connection, user.getUserId(), mediaId);
                                             if (reserveSuccess) {
-                                                logger.info("Media reserved successfully: user=" + user.getUserId() + ", media=" + mediaId);
+                                                logger.info(() -> "Media reserved successfully: user=" + user.getUserId() + ", media=" + mediaId);
                                                 System.out.println("Media reserved successfully! You'll be notified when it's available.");
                                             } else {
                                                 logger.warning("Failed to reserve media: user=" + user.getUserId() + ", media=" + mediaId);
                                                 System.out.println("Failed to reserve the media. You may already have a reservation.");
                                             }
                                         } else {
-                                            logger.info("User declined reservation for media: " + mediaId);
+                                            logger.info(() -> "User declined reservation for media: " + mediaId);
                                             System.out.println("Returning to main menu...");
                                         }
                                     }
@@ -459,7 +469,7 @@ public class LibraryApp {
                         System.out.println("Invalid option. Try again.");
                 }
                 
-                logger.info(String.format("User menu operation completed in %d ms", System.currentTimeMillis() - startTime));
+                logger.info(() -> String.format("User menu operation completed in %d ms", System.currentTimeMillis() - startTime));
             } catch (SQLException e) {
                 logger.severe("Database connection error in user menu: " + e.getMessage());
             }
@@ -474,7 +484,7 @@ public class LibraryApp {
             
             borrowAction.run();
             
-            logger.info(String.format("%s borrowed successfully: user=%d, item=%d", 
+            logger.info(() -> String.format("%s borrowed successfully: user=%d, item=%d", 
                 itemType, userId, itemId));
             System.out.println(itemType + " borrowed successfully!");
         } catch (Exception e) {
@@ -504,6 +514,7 @@ public class LibraryApp {
                 }
             }
             scanner.nextLine(); // Consume newline
+            int selectedBookId = bookId;
 
             // Check availability first
             boolean isAvailable = BookService.isItemAvailable(connection, bookId);
@@ -511,10 +522,10 @@ public class LibraryApp {
             if (isAvailable) {
                 boolean success = BookService.borrowBook(connection, userId, bookId);
                 if (success) {
-                    logger.info("Book borrowed successfully: user=" + userId + ", book=" + bookId);
+                    logger.info(() -> "Book borrowed successfully: user=" + userId + ", book=" + selectedBookId);
                     System.out.println("Book borrowed successfully!");
                 } else {
-                    logger.warning("Failed to borrow book: user=" + userId + ", book=" + bookId);
+                    logger.warning(() -> "Failed to borrow book: user=" + userId + ", book=" + selectedBookId);
                     System.out.println("Failed to borrow the book. Please try again.");
                 }
             } else {
@@ -540,14 +551,14 @@ public class LibraryApp {
                 if (reserveChoice == 1) {
                     boolean reserveSuccess = BookService.reserveBook(connection, userId, bookId);
                     if (reserveSuccess) {
-                        logger.info("Book reserved successfully: user=" + userId + ", book=" + bookId);
+                        logger.info(() -> "Book reserved successfully: user=" + userId + ", book=" + selectedBookId);
                         System.out.println("Book reserved successfully! You'll be notified when it's available.");
                     } else {
-                        logger.warning("Failed to reserve book: user=" + userId + ", book=" + bookId);
+                        logger.warning(() -> "Failed to reserve book: user=" + userId + ", book=" + selectedBookId);
                         System.out.println("Failed to reserve the book. You may already have a reservation.");
                     }
                 } else {
-                    logger.info("User declined reservation for book: " + bookId);
+                    logger.info(() -> "User declined reservation for book: " + selectedBookId);
                     System.out.println("Returning to main menu...");
                 }
             }
@@ -586,7 +597,7 @@ public class LibraryApp {
 
             boolean success = BookService.returnBook(connection, loanId);
             if (success) {
-                logger.info("Book returned successfully: user=" + userId + ", loan=" + loanId);
+                logger.info(() -> "Book returned successfully: user=" + userId + ", loan=" + loanId);
                 System.out.println("Book returned successfully!");
             } else {
                 logger.warning("Failed to return book: loan=" + loanId);
@@ -605,10 +616,10 @@ public class LibraryApp {
 
         boolean success = BookService.reserveBook(connection, userId, bookId);
         if (success) {
-            logger.info("Book reserved successfully: user=" + userId + ", book=" + bookId);
+            logger.info(() -> "Book reserved successfully: user=" + userId + ", book=" + bookId);
             System.out.println("Book reserved successfully!");
         } else {
-            logger.warning("Failed to reserve book: user=" + userId + ", book=" + bookId);
+            logger.warning(() -> "Failed to reserve book: user=" + userId + ", book=" + bookId);
             System.out.println("Failed to reserve the book. It may already be available.");
         }
     }
@@ -616,10 +627,10 @@ public class LibraryApp {
     private static void viewLoanHistory(Connection connection, int userId) {
         List<LibraryItem> loans = BookService.viewLoanHistory(connection, userId);
         if (loans.isEmpty()) {
-            logger.info("No loan history found for user: " + userId);
+            logger.info(() -> "No loan history found for user: " + userId);
             System.out.println("No loan history found.");
         } else {
-            logger.info("Displaying loan history for user: " + userId);
+            logger.info(() -> "Displaying loan history for user: " + userId);
             System.out.println("\nLoan History:");
             for (LibraryItem loan : loans) {
                 System.out.println("ID: " + loan.getId() + ", Title: " + loan.getTitle() +
@@ -645,10 +656,10 @@ public class LibraryApp {
     private static void viewCurrentLoans(Connection connection, int userId) {
         List<LibraryItem> loans = BookService.viewCurrentLoans(connection, userId);
         if (loans.isEmpty()) {
-            logger.info("No current loans found for user: " + userId);
+            logger.info(() -> "No current loans found for user: " + userId);
             System.out.println("No current loans found.");
         } else {
-            logger.info("Displaying current loans for user: " + userId);
+            logger.info(() -> "Displaying current loans for user: " + userId);
             System.out.println("\nCurrent Loans:");
             for (LibraryItem loan : loans) {
                 System.out.println("ID: " + loan.getId() + ", Title: " + loan.getTitle() +
@@ -688,7 +699,8 @@ public class LibraryApp {
             System.out.println("1. Search Books");
             System.out.println("2. Search Magazines");
             System.out.println("3. Search Media");
-            System.out.println("4. Back to Main Menu");
+            System.out.println("4. Search All Types");
+            System.out.println("5. Back to Main Menu");
             System.out.print("Choose an option: ");
             
             int choice = scanner.nextInt();
@@ -871,6 +883,20 @@ public class LibraryApp {
                         }
                         break;
                     case 4:
+                        logger.info("Searching all item types...");
+                        System.out.print("Enter search term: ");
+                        String allSearchTerm = scanner.nextLine();
+                        if (allSearchTerm.isBlank()) {
+                            System.out.println("Search term cannot be empty.");
+                            break;
+                        }
+                        FederatedSearchService.SearchPage results = FederatedSearchService.search(allSearchTerm, 1, 20);
+                        displayItems("All Items", results.items());
+                        if (results.hasMore()) {
+                            System.out.println("Showing the 20 best matches. Refine your search to narrow the results.");
+                        }
+                        break;
+                    case 5:
                         searching = false;
                         logger.info("Returning to main menu");
                         break;
@@ -879,7 +905,7 @@ public class LibraryApp {
                         System.out.println("Invalid option. Try again.");
                 }
                 
-                logger.info(String.format("Search operation completed in %d ms", 
+                logger.info(() -> String.format("Search operation completed in %d ms", 
                     System.currentTimeMillis() - startTime));
             } catch (SQLException e) {
                 logger.severe("Database connection error in search menu: " + e.getMessage());
@@ -939,7 +965,7 @@ public class LibraryApp {
                         System.out.println("Invalid option. Try again.");
                 }
                 
-                logger.info(String.format("Explore operation completed in %d ms", 
+                logger.info(() -> String.format("Explore operation completed in %d ms", 
                     System.currentTimeMillis() - startTime));
             } catch (SQLException e) {
                 logger.severe("Database connection error in explore menu: " + e.getMessage());
@@ -0,0 +1,493 @@
+package se.fulkopinglibrary.fulkopinglibrary.batch;
+
+import se.fulkopinglibrary.fulkopinglibrary.DatabaseConnection;
+import se.fulkopinglibrary.fulkopinglibrary.models.LibraryItem;
+import se.fulkopinglibrary.fulkopinglibrary.services.AsyncLibraryService;
+import se.fulkopinglibrary.fulkopinglibrary.services.BookService;
+import se.fulkopinglibrary.fulkopinglibrary.services.ExportService;
+import se.fulkopinglibrary.fulkopinglibrary.services.FederatedSearchService;
+import se.fulkopinglibrary.fulkopinglibrary.services.ImportService;
+import se.fulkopinglibrary.fulkopinglibrary.services.MagazineService;
+import se.fulkopinglibrary.fulkopinglibrary.services.MediaService;
+import se.fulkopinglibrary.fulkopinglibrary.utils.JsonWriter;
+import se.fulkopinglibrary.fulkopinglibrary.utils.LoggerUtil;
+import se.fulkopinglibrary.fulkopinglibrary.utils.VirtualThreads;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Logger;
+
+/**
+ * Runs library operations from a command file (or stdin) without the interactive menus, and
+ * writes one JSON object per command to stdout (JSON Lines).
+ *
+ * <p>One command per line; blank lines and lines starting with {@code #} are skipped. Words
+ * are separated by spaces, and double quotes group a phrase:</p>
+ * <pre>
+ * search book|magazine|media|all title|author|isbn|publisher|issn|director|catalog_number|general "term"
+ * borrow  &lt;userId&gt; &lt;itemId&gt; [book|magazine|media]
+ * return  &lt;userId&gt; &lt;itemId&gt;
+ * reserve &lt;userId&gt; &lt;itemId&gt; [book|magazine|media]
+ * export  library_items|loans|reservations|all &lt;path&gt; [csv|jsonl] [gzip]
+ * import  &lt;path&gt; [csv|tagged] [chunkSize]
+ * wait
+ * </pre>
+ *
+ * <p>Borrow, return, reserve and import commands change state, so they run one after another in file
+ * order on a single thread, each on a pooled connection taken through the same slots as
+ * {@link AsyncLibraryService}, so a batch waits its turn with the HTTP server's requests. The
+ * batch is not a transaction: each command commits on its own, and a failed command leaves
+ * the ones before it in place. A borrow or reservation of an item that is missing or not
+ * available is refused and reported by its message; one that failed in the database is
+ * reported as an {@code SQLException}.
+ * Searches and exports do not depend
+ * on each other and run concurrently on pooled connections, up to {@code --parallel}
+ * (default 4) at a time, while the writes proceed. They are therefore not ordered relative to
+ * the writes; put a {@code wait} line in between to make everything before it finish first.
+ * Results are still printed in input order, each with its line number, followed by a summary
+ * line. The exit status is 0 if every command succeeded and 1 otherwise.</p>
+ *
+ * <p>Usage: {@code LibraryApp --batch [--parallel N] [commandFile|-]}</p>
+ */
+public class BatchRunner {
+    private static final Logger logger = LoggerUtil.getLogger(BatchRunner.class);
+
+    private static final int SEARCH_LIMIT = 100;
+
+    private record Command(int line, String op, List<String> args) {
+
+        String arg(int index, String name) {
+            if (index >= args.size()) {
+                throw new IllegalArgumentException("Missing " + name);
+            }
+            return args.get(index);
+        }
+
+        String optionalArg(int index, String defaultValue) {
+            return index < args.size() ? args.get(index).toLowerCase() : defaultValue;
+        }
+
+        int intArg(int index, String name) {
+            try {
+                return Integer.parseInt(arg(index, name));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(name + " must be a number");
+            }
+        }
+    }
+
+    /**
+     * What a command produced: either success with its fields written by {@code body}, or an
+     * error message.
+     */
+    private record Result(Command command, boolean ok, String error, long elapsedMillis, ResultBody body) {
+    }
+
+    @FunctionalInterface
+    private interface ResultBody {
+        void write(JsonWriter json) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface Operation {
+        ResultBody run() throws SQLException, IOException;
+    }
+
+    private final ExecutorService readers = VirtualThreads.newThreadPerTaskExecutor("batch-read");
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "batch-write");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Semaphore readPermits;
+    private final Deque<CompletableFuture<Result>> pending = new ArrayDeque<>();
+    private final JsonWriter json;
+    private int succeeded;
+    private int failed;
+
+    public BatchRunner(Writer out, int parallelism) {
+        this.json = new JsonWriter(out);
+        this.readPermits = new Semaphore(Math.max(1, parallelism));
+    }
+
+    public static void main(String[] args) throws IOException {
+        int parallelism = 4;
+        String source = "-";
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--parallel") && i + 1 < args.length) {
+                try {
+                    parallelism = Integer.parseInt(args[++i]);
+                } catch (NumberFormatException e) {
+                    System.err.println("--parallel must be a number: " + args[i]);
+                    System.exit(2);
+                }
+            } else if (!args[i].equals("--batch")) {
+                source = args[i];
+            }
+        }
+
+        Writer out = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+        boolean allSucceeded;
+        try (Reader in = source.equals("-")
+                ? new InputStreamReader(System.in, StandardCharsets.UTF_8)
+                : Files.newBufferedReader(Path.of(source), StandardCharsets.UTF_8)) {
+            allSucceeded = new BatchRunner(out, parallelism).run(new BufferedReader(in));
+        } finally {
+            DatabaseConnection.closePool();
+        }
+        System.exit(allSucceeded ? 0 : 1);
+    }
+
+    // Runs every command and writes the results; returns true if all of them succeeded
+    public boolean run(BufferedReader in) throws IOException {
+        long startTime = System.nanoTime();
+        try {
+            String text;
+            int lineNumber = 0;
+            while ((text = in.readLine()) != null) {
+                lineNumber++;
+                String trimmed = text.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                    continue;
+                }
+                List<String> words;
+                try {
+                    words = split(trimmed);
+                } catch (IllegalArgumentException e) {
+                    pending.add(CompletableFuture.completedFuture(
+                        new Result(new Command(lineNumber, "?", List.of()), false, e.getMessage(), 0, null)));
+                    continue;
+                }
+                submit(new Command(lineNumber, words.get(0).toLowerCase(), words.subList(1, words.size())));
+                writeCompleted(false);
+            }
+            writeCompleted(true);
+        } finally {
+            shutdown();
+        }
+
+        json.beginObject();
+        json.name("summary").value(true);
+        json.name("succeeded").value(succeeded);
+        json.name("failed").value(failed);
+        json.name("elapsedMillis").value((System.nanoTime() - startTime) / 1_000_000);
+        json.endObject().endLine();
+        json.flush();
+        return failed == 0;
+    }
+
+    private void submit(Command command) {
+        switch (command.op()) {
+            case "search" -> read(command, () -> search(command));
+            case "export" -> read(command, () -> export(command));
+            case "borrow" -> write(command, connection -> borrow(connection, command));
+            case "return" -> write(command, connection -> returnItem(connection, command));
+            case "reserve" -> write(command, connection -> reserve(connection, command));
+            case "import" -> write(command, connection -> importFile(connection, command));
+            case "wait" -> {
+                // Everything before the barrier has to finish first
+                CompletableFuture<?>[] before = pending.toArray(new CompletableFuture<?>[0]);
+                CompletableFuture.allOf(before).handle((ignored, error) -> null).join();
+                pending.add(CompletableFuture.completedFuture(new Result(command, true, null, 0, json -> { })));
+            }
+            default -> pending.add(CompletableFuture.completedFuture(
+                new Result(command, false, "Unknown command: " + command.op(), 0, null)));
+        }
+    }
+
+    private void read(Command command, Operation operation) {
+        try {
+            readPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        }
+        CompletableFuture<Result> future = CompletableFuture.supplyAsync(() -> execute(command, operation), readers)
+            .whenComplete((result, error) -> readPermits.release());
+        pending.add(future);
+    }
+
+    @FunctionalInterface
+    private interface WriteOperation {
+        ResultBody run(Connection connection) throws SQLException, IOException;
+    }
+
+    private void write(Command command, WriteOperation operation) {
+        pending.add(CompletableFuture.supplyAsync(() -> execute(command, () -> runWrite(operation)), writer));
+    }
+
+    private static ResultBody runWrite(WriteOperation operation) throws SQLException, IOException {
+        try {
+            return AsyncLibraryService.callWithConnection(connection -> {
+                try {
+                    return operation.run(connection);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private Result execute(Command command, Operation operation) {
+        long startTime = System.nanoTime();
+        try {
+            ResultBody body = operation.run();
+            return new Result(command, true, null, (System.nanoTime() - startTime) / 1_000_000, body);
+        } catch (IllegalArgumentException e) {
+            return new Result(command, false, e.getMessage(), (System.nanoTime() - startTime) / 1_000_000, null);
+        } catch (SQLException | IOException | RuntimeException | LinkageError e) {
+            // LinkageError: the connection pool failed to start, which fails every command
+            logger.warning("Batch line " + command.line() + " (" + command.op() + ") failed: " + e.getMessage());
+            return new Result(command, false, e.getClass().getSimpleName() + ": " + e.getMessage(),
+                (System.nanoTime() - startTime) / 1_000_000, null);
+        }
+    }
+
+    // Writes the results at the head of the queue, in input order; all of them if waitForAll
+    private void writeCompleted(boolean waitForAll) throws IOException {
+        while (!pending.isEmpty() && (waitForAll || pending.peek().isDone())) {
+            Result result = pending.poll().join();
+            json.beginObject();
+            json.name("line").value(result.command().line());
+            json.name("op").value(result.command().op());
+            json.name("ok").value(result.ok());
+            json.name("elapsedMillis").value(result.elapsedMillis());
+            if (result.ok()) {
+                succeeded++;
+                result.body().write(json);
+            } else {
+                failed++;
+                json.name("error").value(result.error());
+            }
+            json.endObject().endLine();
+        }
+        json.flush();
+    }
+
+    private void shutdown() {
+        readers.shutdown();
+        writer.shutdown();
+    }
+
+    // Commands
+
+    private ResultBody search(Command command) throws SQLException, IOException {
+        String type = command.arg(0, "item type").toLowerCase();
+        String field = command.arg(1, "search field").toLowerCase();
+        String term = String.join(" ", command.args().subList(2, Math.max(2, command.args().size())));
+        if (term.isBlank()) {
+            throw new IllegalArgumentException("Missing search term");
+        }
+
+        List<? extends LibraryItem> items = switch (type) {
+            case "all" -> FederatedSearchService.search(term, 1, SEARCH_LIMIT).items();
+            case "book" -> AsyncLibraryService.callWithConnection(connection ->
+                BookService.searchBooks(connection, term, field, 0, 1, SEARCH_LIMIT));
+            case "magazine" -> AsyncLibraryService.callWithConnection(connection ->
+                MagazineService.searchMagazines(connection, field, term));
+            case "media" -> AsyncLibraryService.callWithConnection(connection -> switch (field) {
+                case "title" -> MediaService.searchByTitle(connection, term);
+                case "director" -> MediaService.searchByDirector(connection, term);
+                case "catalog_number" -> MediaService.searchByCatalogNumber(connection, term);
+                default -> MediaService.searchGeneral(connection, term);
+            });
+            default -> throw new IllegalArgumentException("Unknown item type: " + type);
+        };
+        return json -> {
+            json.name("count").value(items.size());
+            json.name("items").beginArray();
+            for (LibraryItem item : items) {
+                json.beginObject();
+                json.name("id").value(item.getId());
+                json.name("type").value(item.getType() == null ? null : item.getType().name());
+                json.name("title").value(item.getTitle());
+                json.name("available").value(item.isAvailable());
+                json.endObject();
+            }
+            json.endArray();
+        };
+    }
+
+    private ResultBody export(Command command) throws SQLException, IOException {
+        String table = command.arg(0, "table").toLowerCase();
+        Path path = Path.of(command.arg(1, "path"));
+        ExportService.Format format = switch (command.optionalArg(2, "csv")) {
+            case "csv" -> ExportService.Format.CSV;
+            case "jsonl" -> ExportService.Format.JSONL;
+            default -> throw new IllegalArgumentException("Format must be csv or jsonl");
+        };
+        boolean gzip = command.optionalArg(3, "").equals("gzip");
+
+        List<ExportService.ExportResult> exports = AsyncLibraryService.callWithConnection(connection -> {
+            try {
+                return table.equals("all")
+                    ? ExportService.exportAll(connection, path, format, gzip)
+                    : List.of(ExportService.exportTable(connection, table, path, format, gzip));
+            } catch (IOException e) {
+                throw new SQLException("Export failed: " + e.getMessage(), e);
+            }
+        });
+        return json -> {
+            json.name("files").beginArray();
+            for (ExportService.ExportResult export : exports) {
+                json.beginObject();
+                json.name("table").value(export.table());
+                json.name("file").value(export.file().toString());
+                json.name("rows").value(export.rows());
+                json.endObject();
+            }
+            json.endArray();
+        };
+    }
+
+    private ResultBody borrow(Connection connection, Command command) throws SQLException {
+        int userId = command.intArg(0, "userId");
+        int itemId = command.intArg(1, "itemId");
+        String type = command.optionalArg(2, "book");
+        boolean borrowed = switch (type) {
+            case "book" -> BookService.borrowBook(connection, userId, itemId);
+            case "magazine" -> MagazineService.borrowMagazine(connection, userId, itemId);
+            case "media" -> MediaService.borrowMedia(connection, userId, itemId);
+            default -> throw new IllegalArgumentException("Item type must be book, magazine or media");
+        };
+        if (!borrowed) {
+            if (!isAvailable(connection, itemId, type)) {
+                throw new IllegalArgumentException("Item " + itemId + " is not available");
+            }
+            throw new SQLException("Could not borrow item " + itemId);
+        }
+        return json -> json.name("userId").value(userId).name("itemId").value(itemId);
+    }
+
+    private ResultBody returnItem(Connection connection, Command command) throws SQLException {
+        int userId = command.intArg(0, "userId");
+        int itemId = command.intArg(1, "itemId");
+        int loanId = BookService.findActiveLoanId(connection, userId, itemId);
+        if (loanId == 0) {
+            throw new IllegalArgumentException("User " + userId + " has no active loan of item " + itemId);
+        }
+        if (!BookService.returnBook(connection, loanId)) {
+            throw new SQLException("Could not return loan " + loanId);
+        }
+        return json -> json.name("userId").value(userId).name("itemId").value(itemId).name("loanId").value(loanId);
+    }
+
+    private ResultBody reserve(Connection connection, Command command) throws SQLException {
+        int userId = command.intArg(0, "userId");
+        int itemId = command.intArg(1, "itemId");
+        String type = command.optionalArg(2, "book");
+        if (!isAvailable(connection, itemId, type)) {
+            throw new IllegalArgumentException("Item " + itemId + " is not available");
+        }
+        boolean reserved = switch (type) {
+            case "book" -> BookService.reserveBook(connection, userId, itemId);
+            case "magazine" -> MagazineService.reserveMagazine(connection, userId, itemId);
+            case "media" -> MediaService.reserveMedia(connection, userId, itemId);
+            default -> throw new IllegalArgumentException("Item type must be book, magazine or media");
+        };
+        if (!reserved) {
+            throw new SQLException("Could not reserve item " + itemId + " for user " + userId);
+        }
+        return json -> json.name("userId").value(userId).name("itemId").value(itemId);
+    }
+
+    // False if the item is on loan; throws if there is no such item of the type
+    private static boolean isAvailable(Connection connection, int itemId, String type) throws SQLException {
+        String sql = """
+            SELECT is_available
+            FROM library_items
+            WHERE item_id = ? AND type = ?
+            """;
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setInt(1, itemId);
+            statement.setString(2, type.toUpperCase(Locale.ROOT));
+            try (ResultSet rs = statement.executeQuery()) {
+                if (!rs.next()) {
+                    throw new IllegalArgumentException("No " + type + " with id " + itemId);
+                }
+                return rs.getBoolean("is_available");
+            }
+        }
+    }
+
+    // Row errors are reported in the result; the command only fails if the file cannot be read
+    private ResultBody importFile(Connection connection, Command command) throws SQLException, IOException {
+        Path path = Path.of(command.arg(0, "path"));
+        ImportService.Format format = switch (command.optionalArg(1, "csv")) {
+            case "csv" -> ImportService.Format.CSV;
+            case "tagged" -> ImportService.Format.TAGGED;
+            default -> throw new IllegalArgumentException("Format must be csv or tagged");
+        };
+        int chunkSize = command.args().size() > 2 ? command.intArg(2, "chunkSize") : ImportService.DEFAULT_CHUNK_SIZE;
+
+        ImportService.ImportResult result = ImportService.importFile(connection, path, format, chunkSize);
+        return json -> {
+            json.name("file").value(path.toString());
+            json.name("read").value(result.recordsRead());
+            json.name("imported").value(result.recordsImported());
+            json.name("errors").beginArray();
+            for (ImportService.RowError error : result.errors()) {
+                json.beginObject();
+                json.name("line").value(error.lineNumber());
+                json.name("message").value(error.message());
+                json.endObject();
+            }
+            json.endArray();
+        };
+    }
+
+    // Splits on spaces, keeping "quoted phrases" together
+    static List<String> split(String line) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        boolean quoted = false;
+        boolean inWord = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+                inWord = true;
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (inWord) {
+                    words.add(word.toString());
+                    word.setLength(0);
+                    inWord = false;
+                }
+            } else {
+                word.append(c);
+                inWord = true;
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quote");
+        }
+        if (inWord) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+}
@@ -0,0 +1,28 @@
+package se.fulkopinglibrary.fulkopinglibrary.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Emitted for every borrow attempt, successful or not.
+ */
+@Name("se.fulkopinglibrary.Borrow")
+@Label("Borrow")
+@Category({"Fulkoping Library", "Loans"})
+@Description("Borrowing of a library item")
+public class BorrowEvent extends Event {
+    @Label("Item Type")
+    public String itemType;
+
+    @Label("Item ID")
+    public int itemId;
+
+    @Label("User ID")
+    public int userId;
+
+    @Label("Success")
+    public boolean success;
+}
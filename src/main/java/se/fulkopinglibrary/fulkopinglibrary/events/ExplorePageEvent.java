@@ -0,0 +1,33 @@
+package se.fulkopinglibrary.fulkopinglibrary.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Emitted when a page of books, magazines or media is fetched for browsing.
+ */
+@Name("se.fulkopinglibrary.ExplorePage")
+@Label("Explore Page")
+@Category({"Fulkoping Library", "Catalog"})
+@Description("Fetch of one page of the catalog for browsing")
+public class ExplorePageEvent extends Event {
+    @Label("Item Type")
+    public String itemType;
+
+    @Label("Page")
+    @Description("0 when the listing is not paged")
+    public int page;
+
+    @Label("Page Size")
+    @Description("0 when the listing is not paged")
+    public int pageSize;
+
+    @Label("Sort Option")
+    public int sortOption;
+
+    @Label("Rows Returned")
+    public int rowsReturned;
+}
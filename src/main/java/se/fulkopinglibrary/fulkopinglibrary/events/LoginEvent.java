@@ -0,0 +1,24 @@
+package se.fulkopinglibrary.fulkopinglibrary.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Emitted by {@code UserService.login} for every login attempt.
+ */
+@Name("se.fulkopinglibrary.Login")
+@Label("Login")
+@Category({"Fulkoping Library", "Users"})
+@Description("Authentication of a username and password")
+public class LoginEvent extends Event {
+    @Label("User ID")
+    @Description("0 when the user was not found")
+    public int userId;
+
+    @Label("Outcome")
+    @Description("SUCCESS, BLANK_CREDENTIALS, UNKNOWN_USER, INVALID_PASSWORD, LOCKED, LOCKED_OUT or ERROR")
+    public String outcome;
+}
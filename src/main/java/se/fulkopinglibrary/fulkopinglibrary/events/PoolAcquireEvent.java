@@ -0,0 +1,30 @@
+package se.fulkopinglibrary.fulkopinglibrary.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Emitted by {@code DatabaseConnection.getConnection}. Only acquisitions slower than the
+ * threshold (1 ms by default) are recorded, so the common fast path is never written.
+ */
+@Name("se.fulkopinglibrary.PoolAcquire")
+@Label("Connection Pool Acquire")
+@Category({"Fulkoping Library", "Database"})
+@Description("Wait for a connection from the HikariCP pool")
+@Threshold("1 ms")
+public class PoolAcquireEvent extends Event {
+    @Label("Success")
+    public boolean success;
+
+    @Label("Active Connections")
+    @Description("Connections in use after the acquisition")
+    public int activeConnections;
+
+    @Label("Threads Awaiting")
+    @Description("Threads still waiting for a connection")
+    public int threadsAwaiting;
+}
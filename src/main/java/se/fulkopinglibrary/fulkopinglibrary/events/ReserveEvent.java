@@ -0,0 +1,28 @@
+package se.fulkopinglibrary.fulkopinglibrary.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Emitted for every reservation attempt, successful or not.
+ */
+@Name("se.fulkopinglibrary.Reserve")
+@Label("Reserve")
+@Category({"Fulkoping Library", "Loans"})
+@Description("Reservation of a library item")
+public class ReserveEvent extends Event {
+    @Label("Item Type")
+    public String itemType;
+
+    @Label("Item ID")
+    public int itemId;
+
+    @Label("User ID")
+    public int userId;
+
+    @Label("Success")
+    public boolean success;
+}
@@ -0,0 +1,22 @@
+package se.fulkopinglibrary.fulkopinglibrary.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Emitted for every return attempt, successful or not.
+ */
+@Name("se.fulkopinglibrary.Return")
+@Label("Return")
+@Category({"Fulkoping Library", "Loans"})
+@Description("Return of a borrowed item")
+public class ReturnEvent extends Event {
+    @Label("Loan ID")
+    public int loanId;
+
+    @Label("Success")
+    public boolean success;
+}
@@ -0,0 +1,30 @@
+package se.fulkopinglibrary.fulkopinglibrary.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Emitted by the book, magazine, media and federated searches.
+ */
+@Name("se.fulkopinglibrary.Search")
+@Label("Search")
+@Category({"Fulkoping Library", "Catalog"})
+@Description("Catalog search, including time spent in the search cache")
+public class SearchEvent extends Event {
+    @Label("Item Type")
+    @Description("BOOK, MAGAZINE, MEDIA or ALL")
+    public String itemType;
+
+    @Label("Search Type")
+    @Description("Field searched, e.g. title or general")
+    public String searchType;
+
+    @Label("Term Length")
+    public int termLength;
+
+    @Label("Rows Returned")
+    public int rowsReturned;
+}
@@ -0,0 +1,192 @@
+package se.fulkopinglibrary.fulkopinglibrary.http;
+
+import se.fulkopinglibrary.fulkopinglibrary.models.Book;
+import se.fulkopinglibrary.fulkopinglibrary.models.LibraryItem;
+import se.fulkopinglibrary.fulkopinglibrary.models.Magazine;
+import se.fulkopinglibrary.fulkopinglibrary.models.MediaItem;
+import se.fulkopinglibrary.fulkopinglibrary.utils.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JSON support for the HTTP API: rendering of library items with {@link JsonWriter} and
+ * parsing of the flat request objects the API accepts (string, number, boolean and null
+ * values only).
+ */
+class Json {
+
+    static String quote(String value) {
+        StringWriter out = new StringWriter(value == null ? 4 : value.length() + 2);
+        try (JsonWriter json = new JsonWriter(out, 64)) {
+            json.value(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    static void writeItem(JsonWriter json, LibraryItem item) throws IOException {
+        json.beginObject();
+        json.name("id").value(item.getId());
+        json.name("type").value(item.getType() == null ? null : item.getType().name());
+        json.name("title").value(item.getTitle());
+        json.name("available").value(item.isAvailable());
+        if (item instanceof Book book) {
+            json.name("author").value(book.getAuthor());
+            json.name("isbn").value(book.getIsbn());
+        } else if (item instanceof Magazine magazine) {
+            json.name("publisher").value(magazine.getPublisher());
+            json.name("issn").value(magazine.getIssn());
+        } else if (item instanceof MediaItem media) {
+            json.name("director").value(media.getDirector());
+            json.name("catalogNumber").value(media.getCatalogNumber());
+        }
+        if (item.getLoanDate() != null) {
+            json.name("loanDate").value(item.getLoanDate().toString());
+            json.name("dueDate").value(item.getLoanDate().plusDays(item.getLoanDurationDays()).toString());
+        }
+        if (item.getReturnDate() != null) {
+            json.name("returnDate").value(item.getReturnDate().toString());
+        }
+        if (item.getReservationDate() != null) {
+            json.name("reservationDate").value(item.getReservationDate().toString());
+            json.name("reservationExpires").value(item.getReservationExpirationDate().toString());
+        }
+        json.endObject();
+    }
+
+    static void writeItems(JsonWriter json, List<? extends LibraryItem> items) throws IOException {
+        json.beginArray();
+        for (LibraryItem item : items) {
+            writeItem(json, item);
+        }
+        json.endArray();
+    }
+
+    // Parses a flat JSON object; nested objects and arrays are rejected
+    static Map<String, String> parseObject(String json) {
+        Parser parser = new Parser(json);
+        Map<String, String> values = parser.object();
+        parser.skipWhitespace();
+        if (parser.position != json.length()) {
+            throw new IllegalArgumentException("Unexpected content after JSON object");
+        }
+        return values;
+    }
+
+    private static final class Parser {
+        private final String text;
+        private int position;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        Map<String, String> object() {
+            Map<String, String> values = new HashMap<>();
+            expect('{');
+            skipWhitespace();
+            if (peek() == '}') {
+                position++;
+                return values;
+            }
+            while (true) {
+                skipWhitespace();
+                String key = string();
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+                values.put(key, value());
+                skipWhitespace();
+                char c = next();
+                if (c == '}') {
+                    return values;
+                }
+                if (c != ',') {
+                    throw new IllegalArgumentException("Expected ',' or '}' at position " + (position - 1));
+                }
+            }
+        }
+
+        private String value() {
+            char c = peek();
+            if (c == '"') {
+                return string();
+            }
+            int start = position;
+            while (position < text.length() && ",} \t\r\n".indexOf(text.charAt(position)) < 0) {
+                position++;
+            }
+            String literal = text.substring(start, position);
+            if (literal.equals("null")) {
+                return null;
+            }
+            if (literal.equals("true") || literal.equals("false") || literal.matches("-?\\d+(\\.\\d+)?([eE][+-]?\\d+)?")) {
+                return literal;
+            }
+            throw new IllegalArgumentException("Unsupported JSON value at position " + start);
+        }
+
+        private String string() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                char c = next();
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                char escaped = next();
+                switch (escaped) {
+                    case '"', '\\', '/' -> value.append(escaped);
+                    case 'b' -> value.append('\b');
+                    case 'f' -> value.append('\f');
+                    case 'n' -> value.append('\n');
+                    case 'r' -> value.append('\r');
+                    case 't' -> value.append('\t');
+                    case 'u' -> {
+                        if (position + 4 > text.length()) {
+                            throw new IllegalArgumentException("Truncated unicode escape");
+                        }
+                        value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        position += 4;
+                    }
+                    default -> throw new IllegalArgumentException("Invalid escape '\\" + escaped + "'");
+                }
+            }
+        }
+
+        void skipWhitespace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        private char peek() {
+            if (position >= text.length()) {
+                throw new IllegalArgumentException("Unexpected end of JSON");
+            }
+            return text.charAt(position);
+        }
+
+        private char next() {
+            char c = peek();
+            position++;
+            return c;
+        }
+
+        private void expect(char expected) {
+            if (next() != expected) {
+                throw new IllegalArgumentException("Expected '" + expected + "' at position " + (position - 1));
+            }
+        }
+    }
+}
@@ -0,0 +1,769 @@
+package se.fulkopinglibrary.fulkopinglibrary.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import se.fulkopinglibrary.fulkopinglibrary.DatabaseConnection;
+import se.fulkopinglibrary.fulkopinglibrary.models.ItemType;
+import se.fulkopinglibrary.fulkopinglibrary.models.LibraryItem;
+import se.fulkopinglibrary.fulkopinglibrary.models.User;
+import se.fulkopinglibrary.fulkopinglibrary.services.AdmissionControl;
+import se.fulkopinglibrary.fulkopinglibrary.services.AdmissionRejectedException;
+import se.fulkopinglibrary.fulkopinglibrary.services.AsyncLibraryService;
+import se.fulkopinglibrary.fulkopinglibrary.services.BookService;
+import se.fulkopinglibrary.fulkopinglibrary.services.CatalogSnapshot;
+import se.fulkopinglibrary.fulkopinglibrary.services.FacetIndex;
+import se.fulkopinglibrary.fulkopinglibrary.services.FederatedSearchService;
+import se.fulkopinglibrary.fulkopinglibrary.services.ItemOrder;
+import se.fulkopinglibrary.fulkopinglibrary.services.MagazineService;
+import se.fulkopinglibrary.fulkopinglibrary.services.MediaService;
+import se.fulkopinglibrary.fulkopinglibrary.services.SearchBook;
+import se.fulkopinglibrary.fulkopinglibrary.services.SearchMagazineItems;
+import se.fulkopinglibrary.fulkopinglibrary.services.SearchMediaItems;
+import se.fulkopinglibrary.fulkopinglibrary.services.UserService;
+import se.fulkopinglibrary.fulkopinglibrary.utils.JsonWriter;
+import se.fulkopinglibrary.fulkopinglibrary.utils.LoggerUtil;
+import se.fulkopinglibrary.fulkopinglibrary.utils.MetricsRegistry;
+import se.fulkopinglibrary.fulkopinglibrary.utils.Searchable;
+import se.fulkopinglibrary.fulkopinglibrary.utils.VirtualThreads;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * HTTP/JSON API over the library services, on the JDK's built-in HTTP server.
+ *
+ * <p>Every request is handled on its own virtual thread (see {@link VirtualThreads}), so a
+ * request that waits for the database parks cheaply instead of holding a platform thread.
+ * Database work goes through {@link AsyncLibraryService#callWithConnection}, which bounds the
+ * number of requests holding a connection to the pool size; the rest wait in a bounded line
+ * without timing out inside HikariCP.</p>
+ *
+ * <p>Logins, searches and catalog downloads first pass {@link AdmissionControl}. A client over
+ * its budget gets {@code 429 Too Many Requests}, and a request turned away because the
+ * database is saturated gets {@code 503 Service Unavailable}; both carry a
+ * {@code Retry-After} header.</p>
+ *
+ * <p>Endpoints (all responses are JSON):</p>
+ * <ul>
+ *   <li>{@code GET  /api/health}</li>
+ *   <li>{@code POST /api/login} with body {@code {"username": "...", "password": "..."}}, returns a bearer token</li>
+ *   <li>{@code POST /api/logout}</li>
+ *   <li>{@code GET  /api/search?q=&type=all|book|magazine|media&field=general&page=1&pageSize=20&sort=0}</li>
+ *   <li>{@code GET  /api/search/stream?q=&type=book|magazine|media&field=general&sort=0} - every match, streamed</li>
+ *   <li>{@code GET  /api/explore?type=book|magazine|media&page=1&pageSize=20&sort=0}</li>
+ *   <li>{@code GET  /api/catalog?type=all|book|magazine|media&sort=0} - the whole catalog, streamed</li>
+ *   <li>{@code GET  /api/facets?q=&type=all&field=general&itemType=&mediaType=&available=&author=&publisher=&page=1&pageSize=20}
+ *       - facet counts for the matching items (the whole catalog without {@code q}), and a page of them,
+ *       narrowed by any facet values given</li>
+ *   <li>{@code POST /api/borrow?itemId=&type=book|magazine|media}</li>
+ *   <li>{@code POST /api/return?itemId=}</li>
+ *   <li>{@code POST /api/reserve?itemId=&type=book|magazine|media}</li>
+ *   <li>{@code GET  /api/loans}, {@code /api/loans/history}, {@code /api/reservations}</li>
+ * </ul>
+ *
+ * <p>Endpoints that act on behalf of a patron require an {@code Authorization: Bearer <token>}
+ * header.</p>
+ *
+ * <p>Unbounded listings ({@code /api/catalog}, {@code /api/search/stream} and
+ * {@code /api/loans/history}) are streamed:
+ * rows are written as chunked JSON while they are read from the database, so memory use and
+ * time to first byte do not depend on the size of the result. Because the status line has
+ * already been sent, a failure part-way is reported in the body, which always ends with
+ * {@code "complete": true|false}.</p>
+ */
+public class LibraryHttpServer {
+    private static final Logger logger = LoggerUtil.getLogger(LibraryHttpServer.class);
+
+    private static final int DEFAULT_PORT = 8080;
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int MAX_REQUEST_BODY_BYTES = 8 * 1024;
+    private static final long SESSION_IDLE_MINUTES = 30;
+    private static final int STREAM_BUFFER_CHARS = 16 * 1024;
+    // Rows requested from a search publisher at a time
+    private static final int STREAM_BATCH = 64;
+
+    static {
+        // The JDK server closes keep-alive connections beyond 200 idle ones, which makes clients
+        // reconnect on every request under high concurrency. Must be set before the first server starts.
+        if (System.getProperty("sun.net.httpserver.maxIdleConnections") == null) {
+            System.setProperty("sun.net.httpserver.maxIdleConnections", "10000");
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService requestExecutor;
+    private final ScheduledExecutorService housekeeping;
+    private final SessionStore sessions = new SessionStore(SESSION_IDLE_MINUTES, TimeUnit.MINUTES);
+
+    private record Request(HttpExchange exchange, Map<String, String> params, SessionStore.Session session) {
+
+        String param(String name, String defaultValue) {
+            String value = params.get(name);
+            return value == null || value.isBlank() ? defaultValue : value.trim();
+        }
+
+        String requiredParam(String name) {
+            String value = param(name, null);
+            if (value == null) {
+                throw new IllegalArgumentException("Missing parameter: " + name);
+            }
+            return value;
+        }
+
+        int intParam(String name, int defaultValue) {
+            String value = param(name, null);
+            if (value == null) {
+                return defaultValue;
+            }
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Parameter " + name + " must be a number");
+            }
+        }
+
+        int requiredIntParam(String name) {
+            requiredParam(name);
+            return intParam(name, 0);
+        }
+    }
+
+    private record Response(int status, String body) {
+    }
+
+    // Returned by handlers that have already written a streamed response
+    private static final Response STREAMED = new Response(200, null);
+
+    @FunctionalInterface
+    private interface ItemStream {
+        int stream(Connection connection, BookService.ItemSink sink) throws SQLException, IOException;
+    }
+
+    @FunctionalInterface
+    private interface Route {
+        Response handle(Request request) throws IOException, SQLException;
+    }
+
+    public LibraryHttpServer(int port, int backlog) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(port), backlog);
+        this.requestExecutor = VirtualThreads.newThreadPerTaskExecutor("http-request");
+        this.server.setExecutor(requestExecutor);
+        this.housekeeping = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "http-housekeeping");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        server.createContext("/api/health", route("GET", false, request -> ok("{\"status\":\"ok\",\"sessions\":" + sessions.size() + "}")));
+        server.createContext("/api/login", route("POST", false, this::login));
+        server.createContext("/api/logout", route("POST", true, this::logout));
+        server.createContext("/api/search", route("GET", false, this::search));
+        server.createContext("/api/search/stream", route("GET", false, this::searchStream));
+        server.createContext("/api/explore", route("GET", false, this::explore));
+        server.createContext("/api/catalog", route("GET", false, this::catalog));
+        server.createContext("/api/facets", route("GET", false, this::facets));
+        server.createContext("/api/borrow", route("POST", true, this::borrow));
+        server.createContext("/api/return", route("POST", true, this::returnItem));
+        server.createContext("/api/reserve", route("POST", true, this::reserve));
+        server.createContext("/api/loans", route("GET", true, this::loans));
+        server.createContext("/api/reservations", route("GET", true, request -> items(
+            AsyncLibraryService.callWithConnection(connection ->
+                BookService.viewCurrentReservations(connection, request.session().userId())))));
+    }
+
+    public void start() {
+        housekeeping.scheduleAtFixedRate(sessions::purgeExpired, 1, 1, TimeUnit.MINUTES);
+        housekeeping.scheduleAtFixedRate(AdmissionControl::evictIdle, 1, 1, TimeUnit.MINUTES);
+        long saveSeconds = CatalogSnapshot.saveIntervalSeconds();
+        if (saveSeconds > 0) {
+            housekeeping.scheduleAtFixedRate(CatalogSnapshot::save, saveSeconds, saveSeconds, TimeUnit.SECONDS);
+        }
+        server.start();
+        logger.info(() -> "HTTP API listening on port " + getPort()
+            + (VirtualThreads.isAvailable() ? " (virtual threads)" : " (platform threads)"));
+    }
+
+    // Stop accepting requests and give in-flight ones up to delaySeconds to finish
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        housekeeping.shutdownNow();
+        requestExecutor.shutdown();
+        if (CatalogSnapshot.saveIntervalSeconds() > 0) {
+            CatalogSnapshot.save();
+        }
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : Integer.getInteger("library.http.port", DEFAULT_PORT);
+        int backlog = Integer.getInteger("library.http.backlog", 4096);
+
+        LibraryHttpServer httpServer = new LibraryHttpServer(port, backlog);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            httpServer.stop(2);
+            MetricsRegistry.stopReporter();
+            DatabaseConnection.closePool();
+        }, "http-shutdown"));
+        // Same interval as the console application
+        MetricsRegistry.startReporter(Long.getLong("library.metrics.interval", 300));
+        httpServer.start();
+    }
+
+    // Handlers
+
+    private Response login(Request request) throws IOException, SQLException {
+        Map<String, String> body = Json.parseObject(readBody(request.exchange()));
+        String username = body.get("username");
+        String password = body.get("password");
+        if (username == null || password == null) {
+            return error(400, "username and password are required");
+        }
+
+        String source = source(request.exchange());
+        AdmissionControl.admitLogin(username, source);
+        long blockedSeconds = UserService.loginBlockedForSeconds(username, source);
+        if (blockedSeconds > 0) {
+            throw new AdmissionRejectedException("Too many failed login attempts", true, blockedSeconds);
+        }
+        User user = AsyncLibraryService.callWithConnection(connection -> UserService.login(connection, username, password, source));
+        if (user == null) {
+            return error(401, "Invalid username or password");
+        }
+
+        SessionStore.Session session = sessions.create(user.getUserId(), user.getUsername());
+        return ok("{\"token\":" + Json.quote(session.token())
+            + ",\"userId\":" + user.getUserId()
+            + ",\"username\":" + Json.quote(user.getUsername())
+            + ",\"name\":" + Json.quote(user.getName())
+            + ",\"expiresInSeconds\":" + sessions.getIdleTimeoutSeconds() + "}");
+    }
+
+    private Response logout(Request request) {
+        sessions.remove(request.session().token());
+        return ok("{\"status\":\"logged out\"}");
+    }
+
+    private Response search(Request request) throws IOException, SQLException {
+        String term = request.requiredParam("q");
+        String type = request.param("type", "all").toLowerCase();
+        String field = request.param("field", "general").toLowerCase();
+        int page = Math.max(1, request.intParam("page", 1));
+        int pageSize = pageSize(request);
+        int sort = request.intParam("sort", 0);
+
+        // Searching all types always runs the general (every column) search
+        boolean general = type.equals("all") || field.equals("general");
+        AdmissionControl.admitSearch(callerKey(request), general);
+
+        if (type.equals("all")) {
+            FederatedSearchService.SearchPage result = AdmissionControl.callGeneralSearch(() ->
+                FederatedSearchService.search(term, page, pageSize));
+            return page(result.items(), page, pageSize, result.hasMore());
+        }
+        if (general) {
+            List<? extends LibraryItem> items = AdmissionControl.callGeneralSearch(() -> searchType(type, term, field, sort, page, pageSize));
+            return page(items, page, pageSize, items.size() == pageSize);
+        }
+        List<? extends LibraryItem> items = searchType(type, term, field, sort, page, pageSize);
+        return page(items, page, pageSize, items.size() == pageSize);
+    }
+
+    private static List<? extends LibraryItem> searchType(String type, String term, String field, int sort, int page, int pageSize) throws SQLException {
+        if (CatalogSnapshot.isEnabled()) {
+            return CatalogSnapshot.search(itemType(type), field, term, sort, page, pageSize);
+        }
+        return switch (type) {
+            case "book" -> AsyncLibraryService.callWithConnection(connection ->
+                BookService.searchBooks(connection, term, field, sort, page, pageSize));
+            // These searches return every match unsorted, so they are sorted and paged here
+            case "magazine" -> slice(ItemOrder.sorted(AsyncLibraryService.callWithConnection(connection ->
+                MagazineService.searchMagazines(connection, field, term)), sort), page, pageSize);
+            case "media" -> slice(ItemOrder.sorted(AsyncLibraryService.callWithConnection(connection -> switch (field) {
+                case "title" -> MediaService.searchByTitle(connection, term);
+                case "director" -> MediaService.searchByDirector(connection, term);
+                case "catalog_number" -> MediaService.searchByCatalogNumber(connection, term);
+                default -> MediaService.searchGeneral(connection, term);
+            }), sort), page, pageSize);
+            default -> throw new IllegalArgumentException("Unknown type: " + type);
+        };
+    }
+
+    private Response searchStream(Request request) throws IOException, SQLException {
+        String term = request.requiredParam("q");
+        String type = request.param("type", "book").toLowerCase(Locale.ROOT);
+        String field = request.param("field", "general").toLowerCase(Locale.ROOT);
+        int sort = request.intParam("sort", 0);
+        Searchable<? extends LibraryItem> searchable = switch (type) {
+            case "book" -> new SearchBook();
+            case "magazine" -> new SearchMagazineItems();
+            case "media" -> new SearchMediaItems();
+            default -> throw new IllegalArgumentException("Unknown type: " + type);
+        };
+
+        boolean general = field.equals("general");
+        AdmissionControl.admitSearch(callerKey(request), general);
+        // Every match as one page; the publisher reads rows only as fast as they are written
+        Flow.Publisher<? extends LibraryItem> publisher = searchable.publish(term, field, sort, 1, Integer.MAX_VALUE);
+        if (general) {
+            return AdmissionControl.callGeneralSearch(() -> streamPublished(request.exchange(), publisher));
+        }
+        return streamPublished(request.exchange(), publisher);
+    }
+
+    private Response explore(Request request) throws IOException, SQLException {
+        String type = request.param("type", "book").toLowerCase();
+        int page = Math.max(1, request.intParam("page", 1));
+        int pageSize = pageSize(request);
+        int sort = request.intParam("sort", 0);
+
+        if (CatalogSnapshot.isEnabled()) {
+            List<LibraryItem> items = CatalogSnapshot.browse(itemType(type), sort, page, pageSize);
+            return page(items, page, pageSize, items.size() == pageSize);
+        }
+        List<? extends LibraryItem> items = AsyncLibraryService.callWithConnection(connection -> switch (type) {
+            case "book" -> BookService.getAllItems(connection, sort, page, pageSize);
+            case "magazine" -> MagazineService.getAllItems(connection, sort, page, pageSize);
+            case "media" -> MediaService.getAllItems(connection, sort, page, pageSize);
+            default -> throw new IllegalArgumentException("Unknown type: " + type);
+        });
+        return page(items, page, pageSize, items.size() == pageSize);
+    }
+
+    private Response catalog(Request request) throws IOException, SQLException {
+        String type = request.param("type", "all").toUpperCase();
+        int sort = request.intParam("sort", 0);
+        if (!type.equals("ALL") && !type.equals("BOOK") && !type.equals("MAGAZINE") && !type.equals("MEDIA")) {
+            throw new IllegalArgumentException("Unknown type: " + type.toLowerCase());
+        }
+        String itemType = type.equals("ALL") ? null : type;
+        // A full catalog download is at least as heavy as a general search
+        AdmissionControl.admitSearch(callerKey(request), true);
+        return AdmissionControl.callGeneralSearch(() -> streamItems(request.exchange(),
+            (connection, sink) -> BookService.streamCatalog(connection, itemType, sort, sink)));
+    }
+
+    private record FacetPage(FacetIndex.FacetCounts counts, List<LibraryItem> items, boolean hasMore) {
+    }
+
+    private Response facets(Request request) throws IOException, SQLException {
+        String term = request.param("q", "");
+        String type = request.param("type", "all").toLowerCase();
+        String field = request.param("field", "general").toLowerCase();
+        int page = Math.max(1, request.intParam("page", 1));
+        int pageSize = pageSize(request);
+        Map<FacetIndex.Facet, String> selections = new EnumMap<>(FacetIndex.Facet.class);
+        for (FacetIndex.Facet facet : FacetIndex.Facet.values()) {
+            String value = request.param(facet.getParameter(), null);
+            if (value != null) {
+                selections.put(facet, value);
+            }
+        }
+
+        // Finds every match rather than one page, so it counts as a general search
+        AdmissionControl.admitSearch(callerKey(request), true);
+        FacetPage result = AdmissionControl.callGeneralSearch(() -> AsyncLibraryService.callWithConnection(connection -> {
+            int from = (int) Math.min(Integer.MAX_VALUE, (page - 1L) * pageSize);
+            FacetIndex.FacetCounts counts = FacetIndex.count(connection,
+                term.isEmpty() ? null : FacetIndex.matchingIds(connection, type, field, term), selections, from, pageSize);
+            int[] ids = counts.itemIds();
+            return new FacetPage(counts, FacetIndex.findItems(connection, ids), from + ids.length < counts.total());
+        }));
+
+        StringWriter body = new StringWriter(512 + result.items().size() * 128);
+        try (JsonWriter json = new JsonWriter(body)) {
+            json.beginObject();
+            json.name("total").value(result.counts().total());
+            json.name("facets").beginObject();
+            for (Map.Entry<FacetIndex.Facet, Map<String, Integer>> facet : result.counts().counts().entrySet()) {
+                json.name(facet.getKey().getParameter()).beginObject();
+                for (Map.Entry<String, Integer> value : facet.getValue().entrySet()) {
+                    json.name(value.getKey()).value(value.getValue());
+                }
+                json.endObject();
+            }
+            json.endObject();
+            json.name("page").value(page);
+            json.name("pageSize").value(pageSize);
+            json.name("hasMore").value(result.hasMore());
+            json.name("items");
+            Json.writeItems(json, result.items());
+            json.endObject();
+        }
+        return ok(body.toString());
+    }
+
+    private Response borrow(Request request) throws SQLException {
+        int userId = request.session().userId();
+        int itemId = request.requiredIntParam("itemId");
+        String type = request.param("type", "book").toLowerCase();
+
+        boolean borrowed = AsyncLibraryService.callWithItemLock(itemId, connection -> switch (type) {
+            case "book" -> BookService.borrowBook(connection, userId, itemId);
+            case "magazine" -> MagazineService.borrowMagazine(connection, userId, itemId);
+            case "media" -> MediaService.borrowMedia(connection, userId, itemId);
+            default -> throw new IllegalArgumentException("Unknown type: " + type);
+        });
+        return borrowed
+            ? ok("{\"itemId\":" + itemId + ",\"borrowed\":true}")
+            : error(409, "Item " + itemId + " is not available");
+    }
+
+    private Response returnItem(Request request) throws SQLException {
+        int userId = request.session().userId();
+        int itemId = request.requiredIntParam("itemId");
+
+        // Look the loan up by item so patrons can only return their own loans
+        Boolean returned = AsyncLibraryService.callWithConnection(connection -> {
+            int loanId = BookService.findActiveLoanId(connection, userId, itemId);
+            return loanId == 0 ? null : BookService.returnBook(connection, loanId);
+        });
+        if (returned == null) {
+            return error(404, "No active loan of item " + itemId);
+        }
+        return returned
+            ? ok("{\"itemId\":" + itemId + ",\"returned\":true}")
+            : error(500, "Could not return item " + itemId);
+    }
+
+    private Response reserve(Request request) throws SQLException {
+        int userId = request.session().userId();
+        int itemId = request.requiredIntParam("itemId");
+        String type = request.param("type", "book").toLowerCase();
+
+        boolean reserved = AsyncLibraryService.callWithItemLock(itemId, connection -> switch (type) {
+            case "book" -> BookService.reserveBook(connection, userId, itemId);
+            case "magazine" -> MagazineService.reserveMagazine(connection, userId, itemId);
+            case "media" -> MediaService.reserveMedia(connection, userId, itemId);
+            default -> throw new IllegalArgumentException("Unknown type: " + type);
+        });
+        return reserved
+            ? ok("{\"itemId\":" + itemId + ",\"reserved\":true}")
+            : error(409, "Item " + itemId + " could not be reserved");
+    }
+
+    private Response loans(Request request) throws IOException, SQLException {
+        int userId = request.session().userId();
+        String path = request.exchange().getRequestURI().getPath();
+        if (path.equals("/api/loans/history")) {
+            return streamItems(request.exchange(),
+                (connection, sink) -> BookService.streamLoanHistory(connection, userId, sink));
+        }
+        if (!path.equals("/api/loans") && !path.equals("/api/loans/")) {
+            return error(404, "Not found");
+        }
+        return items(AsyncLibraryService.callWithConnection(connection -> BookService.viewCurrentLoans(connection, userId)));
+    }
+
+    // Plumbing
+
+    private Response streamItems(HttpExchange exchange, ItemStream query) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        // Length 0 selects chunked transfer encoding
+        exchange.sendResponseHeaders(200, 0);
+
+        try (JsonWriter json = new JsonWriter(
+                new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), STREAM_BUFFER_CHARS)) {
+            json.beginObject().name("items").beginArray();
+            json.flush();
+
+            String error = null;
+            int count = 0;
+            try {
+                count = AsyncLibraryService.callWithConnection(connection -> {
+                    try {
+                        return query.stream(connection, item -> Json.writeItem(json, item));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (SQLException e) {
+                logger.severe("Database error streaming " + exchange.getRequestURI().getPath() + ": " + e.getMessage());
+                error = "Database error";
+            } catch (UncheckedIOException e) {
+                // The client went away; nothing more can be written
+                throw e.getCause();
+            }
+
+            json.endArray();
+            json.name("count").value(count);
+            json.name("complete").value(error == null);
+            if (error != null) {
+                json.name("error").value(error);
+            }
+            json.endObject();
+        }
+        return STREAMED;
+    }
+
+    // Like streamItems, for a publisher that takes its own connection when rows are first requested
+    private Response streamPublished(HttpExchange exchange, Flow.Publisher<? extends LibraryItem> publisher)
+            throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+
+        try (JsonWriter json = new JsonWriter(
+                new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), STREAM_BUFFER_CHARS)) {
+            json.beginObject().name("items").beginArray();
+            json.flush();
+
+            PublishedItems items = new PublishedItems(json);
+            publisher.subscribe(items);
+            items.await();
+            if (items.writeFailure != null) {
+                // The client went away; the subscription is cancelled and its connection returned
+                throw items.writeFailure;
+            }
+
+            String error = null;
+            if (items.failure instanceof IllegalArgumentException e) {
+                error = e.getMessage();
+            } else if (items.failure != null) {
+                error = "Database error";
+            }
+            json.endArray();
+            json.name("count").value(items.count);
+            json.name("complete").value(error == null);
+            if (error != null) {
+                json.name("error").value(error);
+            }
+            json.endObject();
+        }
+        return STREAMED;
+    }
+
+    // Writes published items as they arrive, asking for more once a batch has been written
+    private static final class PublishedItems implements Flow.Subscriber<LibraryItem> {
+        private final JsonWriter json;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private Flow.Subscription subscription;
+        private int count;
+        private int requested;
+        private IOException writeFailure;
+        private Throwable failure;
+
+        PublishedItems(JsonWriter json) {
+            this.json = json;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            requested = STREAM_BATCH;
+            subscription.request(STREAM_BATCH);
+        }
+
+        @Override
+        public void onNext(LibraryItem item) {
+            try {
+                Json.writeItem(json, item);
+            } catch (IOException e) {
+                writeFailure = e;
+                subscription.cancel();
+                done.countDown();
+                return;
+            }
+            count++;
+            if (--requested == 0) {
+                requested = STREAM_BATCH;
+                subscription.request(STREAM_BATCH);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            failure = throwable;
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            done.countDown();
+        }
+
+        // The fields are read after this returns, which the latch makes safe
+        void await() throws IOException {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                subscription.cancel();
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while streaming search results", e);
+            }
+        }
+    }
+
+    private HttpHandler route(String method, boolean authenticated, Route route) {
+        return exchange -> {
+            Response response;
+            try {
+                if (!exchange.getRequestMethod().equalsIgnoreCase(method)) {
+                    exchange.getResponseHeaders().set("Allow", method);
+                    response = error(405, "Method not allowed");
+                } else {
+                    SessionStore.Session session = null;
+                    if (authenticated) {
+                        session = sessions.touch(bearerToken(exchange));
+                    }
+                    if (authenticated && session == null) {
+                        response = error(401, "Missing or expired session token");
+                    } else {
+                        response = route.handle(new Request(exchange, parseQuery(exchange), session));
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                response = error(400, e.getMessage());
+            } catch (AdmissionRejectedException e) {
+                exchange.getResponseHeaders().set("Retry-After", Long.toString(Math.max(1, e.getRetryAfterSeconds())));
+                response = error(e.isRateLimited() ? 429 : 503, e.getMessage());
+            } catch (SQLException e) {
+                logger.severe("Database error handling " + exchange.getRequestURI().getPath() + ": " + e.getMessage());
+                response = error(500, "Database error");
+            } catch (RuntimeException e) {
+                logger.log(Level.SEVERE, "Unexpected error handling " + exchange.getRequestURI().getPath(), e);
+                response = error(500, "Internal error");
+            }
+            if (response != STREAMED) {
+                send(exchange, response);
+            }
+        };
+    }
+
+    private static void send(HttpExchange exchange, Response response) throws IOException {
+        byte[] body = response.body().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(response.status(), body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static String bearerToken(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.regionMatches(true, 0, "Bearer ", 0, 7)) {
+            return null;
+        }
+        return header.substring(7).trim();
+    }
+
+    private static String source(HttpExchange exchange) {
+        return exchange.getRemoteAddress().getAddress().getHostAddress();
+    }
+
+    // Logged-in callers are budgeted per user, anonymous ones per address
+    private String callerKey(Request request) {
+        SessionStore.Session session = request.session();
+        if (session == null) {
+            String token = bearerToken(request.exchange());
+            session = token == null ? null : sessions.touch(token);
+        }
+        return session != null ? "user:" + session.username() : "source:" + source(request.exchange());
+    }
+
+    private static Map<String, String> parseQuery(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null || query.isEmpty()) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            params.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = in.readNBytes(MAX_REQUEST_BODY_BYTES + 1);
+            if (body.length > MAX_REQUEST_BODY_BYTES) {
+                throw new IllegalArgumentException("Request body too large");
+            }
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static int pageSize(Request request) {
+        int pageSize = request.intParam("pageSize", 20);
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("pageSize must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        return pageSize;
+    }
+
+    // Page over services that do not page in SQL
+    private static ItemType itemType(String type) {
+        return switch (type) {
+            case "book" -> ItemType.BOOK;
+            case "magazine" -> ItemType.MAGAZINE;
+            case "media" -> ItemType.MEDIA;
+            default -> throw new IllegalArgumentException("Unknown type: " + type);
+        };
+    }
+
+    private static <T> List<T> slice(List<T> all, int page, int pageSize) {
+        int from = Math.min((page - 1) * pageSize, all.size());
+        int to = Math.min(from + pageSize, all.size());
+        return all.subList(from, to);
+    }
+
+    private static Response ok(String body) {
+        return new Response(200, body);
+    }
+
+    private static Response error(int status, String message) {
+        return new Response(status, "{\"error\":" + Json.quote(message) + "}");
+    }
+
+    private static Response items(List<? extends LibraryItem> items) throws IOException {
+        StringWriter body = new StringWriter(64 + items.size() * 128);
+        try (JsonWriter json = new JsonWriter(body)) {
+            json.beginObject().name("items");
+            Json.writeItems(json, items);
+            json.endObject();
+        }
+        return ok(body.toString());
+    }
+
+    private static Response page(List<? extends LibraryItem> items, int page, int pageSize, boolean hasMore) throws IOException {
+        StringWriter body = new StringWriter(96 + items.size() * 128);
+        try (JsonWriter json = new JsonWriter(body)) {
+            json.beginObject();
+            json.name("page").value(page);
+            json.name("pageSize").value(pageSize);
+            json.name("hasMore").value(hasMore);
+            json.name("items");
+            Json.writeItems(json, items);
+            json.endObject();
+        }
+        return ok(body.toString());
+    }
+}
@@ -0,0 +1,75 @@
+package se.fulkopinglibrary.fulkopinglibrary.http;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory store of login sessions for the HTTP API.
+ *
+ * <p>A successful login is exchanged for a random bearer token. Sessions expire after a period
+ * of inactivity; every authenticated request extends the session. Lookups are a single
+ * concurrent map read, so authentication does not touch the database.</p>
+ */
+class SessionStore {
+    private static final int TOKEN_BYTES = 32;
+
+    private final SecureRandom random = new SecureRandom();
+    private final ConcurrentMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final long idleTimeoutNanos;
+
+    record Session(String token, int userId, String username, long expiresAtNanos) {
+    }
+
+    SessionStore(long idleTimeout, TimeUnit unit) {
+        this.idleTimeoutNanos = unit.toNanos(idleTimeout);
+    }
+
+    Session create(int userId, String username) {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        Session session = new Session(token, userId, username, System.nanoTime() + idleTimeoutNanos);
+        sessions.put(token, session);
+        return session;
+    }
+
+    // Returns the live session for the token and extends it, or null if unknown or expired
+    Session touch(String token) {
+        if (token == null) {
+            return null;
+        }
+        Session session = sessions.get(token);
+        if (session == null) {
+            return null;
+        }
+        long now = System.nanoTime();
+        if (session.expiresAtNanos() - now <= 0) {
+            sessions.remove(token, session);
+            return null;
+        }
+        Session extended = new Session(token, session.userId(), session.username(), now + idleTimeoutNanos);
+        // A concurrent touch may already have extended it; either result is fine
+        sessions.replace(token, session, extended);
+        return extended;
+    }
+
+    void remove(String token) {
+        sessions.remove(token);
+    }
+
+    void purgeExpired() {
+        long now = System.nanoTime();
+        sessions.values().removeIf(session -> session.expiresAtNanos() - now <= 0);
+    }
+
+    int size() {
+        return sessions.size();
+    }
+
+    long getIdleTimeoutSeconds() {
+        return TimeUnit.NANOSECONDS.toSeconds(idleTimeoutNanos);
+    }
+}
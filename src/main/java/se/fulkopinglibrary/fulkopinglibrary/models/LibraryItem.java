@@ -1,5 +1,7 @@
 package se.fulkopinglibrary.fulkopinglibrary.models;
 
+import se.fulkopinglibrary.fulkopinglibrary.utils.TitleCollation;
+
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 
@@ -19,6 +21,8 @@ public abstract class LibraryItem {
     protected MediaType mediaType;
     protected ItemType type;
     private int loanPeriodDays;
+    // Swedish sort key for the title, computed on first use
+    private volatile byte[] titleSortKey;
 
     protected LibraryItem(int id, String title, boolean isAvailable) {
         if (id <= 0) {
@@ -40,6 +44,19 @@ public abstract class LibraryItem {
         return title;
     }
 
+    /**
+     * The title's sort key for in-memory sorting; compare with {@link TitleCollation#KEY_ORDER}.
+     * Computed once per item, as the title cannot change.
+     */
+    public byte[] getTitleSortKey() {
+        byte[] key = titleSortKey;
+        if (key == null) {
+            key = TitleCollation.sortKey(title);
+            titleSortKey = key;
+        }
+        return key;
+    }
+
     public boolean isAvailable() {
         return isAvailable;
     }
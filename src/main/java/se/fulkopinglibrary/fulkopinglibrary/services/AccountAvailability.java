@@ -0,0 +1,185 @@
+package se.fulkopinglibrary.fulkopinglibrary.services;
+
+import se.fulkopinglibrary.fulkopinglibrary.utils.BloomFilter;
+import se.fulkopinglibrary.fulkopinglibrary.utils.LoggerUtil;
+import se.fulkopinglibrary.fulkopinglibrary.utils.MetricsRegistry;
+import se.fulkopinglibrary.fulkopinglibrary.utils.SearchKeys;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Answers "is this username / email still free?" for signup, mostly without a query.
+ *
+ * <p>All registered usernames and emails are kept in two {@link BloomFilter}s, loaded from
+ * the users table on first use (or eagerly with {@link #load}) and updated on every signup in
+ * this process. A name that is not in the filter is definitely free; only a possible hit is
+ * checked against the database. Accounts created by another process are not seen until the
+ * next {@link #load}, but the UNIQUE indexes on {@code username} and {@code email} still
+ * reject them at insert time. If the filters cannot be loaded, every check goes to the
+ * database.</p>
+ *
+ * <p>Values are folded before they go into a filter: the letters Swedish sorts as variants of
+ * another (æ as ä, ü as y) are replaced by that letter, then {@link SearchKeys#fold} strips
+ * case, accents and spacing. That folds at least as far as the {@code utf8mb4_sv_0900_ai_ci}
+ * collation of the users table, so two values the table treats as equal always share a
+ * filter entry; folding further only costs an occasional query.</p>
+ *
+ * <p>The target false-positive rate is {@code -Dlibrary.signup.falsePositiveRate} (default
+ * 0.01) and the filters are sized for at least {@code -Dlibrary.signup.expectedAccounts}
+ * (default 100000). The expected and observed rates are published as the
+ * {@code signup.filter.*} metrics.</p>
+ */
+public class AccountAvailability {
+    private static final Logger logger = LoggerUtil.getLogger(AccountAvailability.class);
+
+    private static final double FALSE_POSITIVE_RATE =
+        Double.parseDouble(System.getProperty("library.signup.falsePositiveRate", "0.01"));
+    private static final long EXPECTED_ACCOUNTS = Long.getLong("library.signup.expectedAccounts", 100_000);
+
+    // Letters the Swedish collation compares equal to another letter, replaced before folding
+    private static final String[][] SWEDISH_VARIANTS = {
+        {"\u00e6", "\u00e4"}, {"\u00f8", "\u00f6"}, {"\u0153", "\u00f6"}, {"\u00fc", "y"}, {"\u0171", "y"},
+        {"\u00f0", "d"}, {"\u00fe", "th"}
+    };
+
+    private static final MetricsRegistry.Counter DEFINITELY_FREE = MetricsRegistry.counter("signup.filter.definitelyFree");
+    private static final MetricsRegistry.Counter DATABASE_CHECKS = MetricsRegistry.counter("signup.filter.databaseChecks");
+    private static final MetricsRegistry.Counter FALSE_POSITIVES = MetricsRegistry.counter("signup.filter.falsePositives");
+
+    private record Filters(BloomFilter usernames, BloomFilter emails) {
+    }
+
+    private static volatile Filters filters;
+
+    static {
+        MetricsRegistry.gauge("signup.filter.expectedFalsePositiveRate", () -> {
+            Filters current = filters;
+            return current == null ? 0 : current.usernames().expectedFalsePositiveRate();
+        });
+        // Of the names that were free, the share the filter still sent to the database
+        MetricsRegistry.gauge("signup.filter.observedFalsePositiveRate", () -> {
+            long free = FALSE_POSITIVES.getCount() + DEFINITELY_FREE.getCount();
+            return free == 0 ? 0 : (double) FALSE_POSITIVES.getCount() / free;
+        });
+    }
+
+    // (Re)build both filters from the users table
+    public static void load(Connection connection) throws SQLException {
+        long accounts = 0;
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM users")) {
+            if (rs.next()) {
+                accounts = rs.getLong(1);
+            }
+        }
+        // Leave room for the accounts that will be added before the next load
+        long expected = Math.max(EXPECTED_ACCOUNTS, accounts * 2);
+        Filters loaded = new Filters(
+            new BloomFilter(expected, FALSE_POSITIVE_RATE),
+            new BloomFilter(expected, FALSE_POSITIVE_RATE));
+
+        try (Statement statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            statement.setFetchSize(Integer.MIN_VALUE);
+            try (ResultSet rs = statement.executeQuery("SELECT username, email FROM users")) {
+                while (rs.next()) {
+                    loaded.usernames().put(normalize(rs.getString("username")));
+                    loaded.emails().put(normalize(rs.getString("email")));
+                }
+            }
+        }
+        filters = loaded;
+        long count = accounts;
+        logger.info(() -> "Loaded signup filters for " + count + " accounts ("
+            + loaded.usernames().getBitCount() / 8 / 1024 + " KiB each, "
+            + loaded.usernames().getHashCount() + " hashes)");
+    }
+
+    public static boolean isUsernameAvailable(Connection connection, String username) throws SQLException {
+        Filters current = filtersOrNull(connection);
+        return isAvailable(connection, current == null ? null : current.usernames(),
+            "SELECT 1 FROM users WHERE username = ?", username);
+    }
+
+    public static boolean isEmailAvailable(Connection connection, String email) throws SQLException {
+        Filters current = filtersOrNull(connection);
+        return isAvailable(connection, current == null ? null : current.emails(),
+            "SELECT 1 FROM users WHERE email = ?", email);
+    }
+
+    // Call after an account has been created or its email changed
+    public static void record(String username, String email) {
+        Filters current = filters;
+        if (current == null) {
+            return;
+        }
+        if (username != null) {
+            current.usernames().put(normalize(username));
+        }
+        if (email != null) {
+            current.emails().put(normalize(email));
+        }
+    }
+
+    private static Filters filters(Connection connection) throws SQLException {
+        Filters current = filters;
+        if (current == null) {
+            synchronized (AccountAvailability.class) {
+                if (filters == null) {
+                    load(connection);
+                }
+                current = filters;
+            }
+        }
+        return current;
+    }
+
+    // null if the filters could not be loaded, so the caller asks the database instead
+    private static Filters filtersOrNull(Connection connection) {
+        try {
+            return filters(connection);
+        } catch (SQLException e) {
+            logger.warning("Could not load signup filters, checking the database: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static boolean isAvailable(Connection connection, BloomFilter filter, String query, String value) throws SQLException {
+        if (filter != null && !filter.mightContain(normalize(value))) {
+            DEFINITELY_FREE.increment();
+            return true;
+        }
+        DATABASE_CHECKS.increment();
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setString(1, value);
+            try (ResultSet rs = statement.executeQuery()) {
+                boolean taken = rs.next();
+                if (!taken && filter != null) {
+                    FALSE_POSITIVES.increment();
+                    logger.log(Level.FINE, () -> "Signup filter false positive for " + value);
+                }
+                return !taken;
+            }
+        }
+    }
+
+    // The users table collation is NO PAD, so "bob " and "bob" are different names; the fold
+    // merges them anyway, which is safe as it can only add possible hits
+    private static String normalize(String value) {
+        if (value == null) {
+            return "";
+        }
+        String text = Normalizer.normalize(value, Normalizer.Form.NFC).toLowerCase(Locale.ROOT);
+        for (String[] variant : SWEDISH_VARIANTS) {
+            text = text.replace(variant[0], variant[1]);
+        }
+        return SearchKeys.fold(text);
+    }
+}
@@ -0,0 +1,123 @@
+package se.fulkopinglibrary.fulkopinglibrary.services;
+
+import se.fulkopinglibrary.fulkopinglibrary.DatabaseConnection;
+import se.fulkopinglibrary.fulkopinglibrary.utils.ConcurrencyLimiter;
+import se.fulkopinglibrary.fulkopinglibrary.utils.KeyedRateLimiter;
+import se.fulkopinglibrary.fulkopinglibrary.utils.LoggerUtil;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Admission control for front ends that serve many clients (the async facade and the HTTP
+ * API): decides whether a login or search may go to the database at all.
+ *
+ * <ul>
+ *   <li>Logins are limited per username and per source (client address), so one script
+ *   cannot hammer a single account or spray many accounts from one address.</li>
+ *   <li>Searches are limited per caller (the logged-in user, otherwise the source).</li>
+ *   <li>"General" searches, which LIKE-match every text column, have their own smaller
+ *   per-caller budget and a global cap on how many run at once.</li>
+ * </ul>
+ *
+ * <p>Rejections throw {@link AdmissionRejectedException} before a connection is borrowed.
+ * Behind all of this, {@link AsyncLibraryService#callWithConnection} bounds how many operations
+ * hold or wait for a connection. Counters are published in the {@code MetricsRegistry} under
+ * {@code admission.*}.</p>
+ *
+ * <p>Budgets can be tuned with system properties, e.g.
+ * {@code -Dlibrary.admission.search.perSecond=20}.</p>
+ */
+public class AdmissionControl {
+    private static final Logger logger = LoggerUtil.getLogger(AdmissionControl.class);
+
+    // Source used by callers that do not know the client address
+    public static final String LOCAL_SOURCE = "local";
+
+    private static final int MAX_KEYS = 10_000;
+
+    private static final KeyedRateLimiter loginsPerUser = limiter("login.user", 5, 5.0 / 60);
+    private static final KeyedRateLimiter loginsPerSource = limiter("login.source", 30, 1.0);
+    private static final KeyedRateLimiter searches = limiter("search", 20, 10.0);
+    private static final KeyedRateLimiter generalSearches = limiter("search.general", 5, 1.0);
+
+    private static final ConcurrencyLimiter generalSearchSlots = new ConcurrencyLimiter(
+        "admission.search.general.concurrency",
+        Integer.getInteger("library.admission.search.general.concurrency",
+            Math.max(1, DatabaseConnection.getMaximumPoolSize() / 4)),
+        Integer.getInteger("library.admission.search.general.queue", 16),
+        Long.getLong("library.admission.search.general.waitMillis", 2000),
+        TimeUnit.MILLISECONDS);
+
+    /**
+     * Work run while holding a general search slot.
+     */
+    @FunctionalInterface
+    public interface Work<T> {
+        T call() throws SQLException, IOException;
+    }
+
+    private static KeyedRateLimiter limiter(String name, int burst, double perSecond) {
+        String property = "library.admission." + name;
+        return new KeyedRateLimiter("admission." + name,
+            Integer.getInteger(property + ".burst", burst),
+            Double.parseDouble(System.getProperty(property + ".perSecond", Double.toString(perSecond))),
+            MAX_KEYS);
+    }
+
+    public static void admitLogin(String username, String source) throws AdmissionRejectedException {
+        // Check the source first so a sprayed attempt does not use up the account's budget
+        admit(loginsPerSource, source, "Too many login attempts from " + source);
+        admit(loginsPerUser, normalize(username), "Too many login attempts for this account");
+    }
+
+    // The caller key is the username for logged-in callers, otherwise the source
+    public static void admitSearch(String callerKey, boolean general) throws AdmissionRejectedException {
+        admit(searches, callerKey, "Too many searches");
+        if (general) {
+            admit(generalSearches, callerKey, "Too many general searches");
+        }
+    }
+
+    // Runs an expensive search under the global cap for general searches
+    public static <T> T callGeneralSearch(Work<T> search) throws SQLException, IOException {
+        boolean admitted;
+        try {
+            admitted = generalSearchSlots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a search slot", e);
+        }
+        if (!admitted) {
+            throw new AdmissionRejectedException("Too many searches in progress", false, 1);
+        }
+        try {
+            return search.call();
+        } finally {
+            generalSearchSlots.release();
+        }
+    }
+
+    // Drop the state of callers that have been quiet long enough to be back at full budget
+    public static void evictIdle() {
+        loginsPerUser.evictIdle();
+        loginsPerSource.evictIdle();
+        searches.evictIdle();
+        generalSearches.evictIdle();
+    }
+
+    private static void admit(KeyedRateLimiter limiter, String key, String message) throws AdmissionRejectedException {
+        if (!limiter.tryAcquire(key)) {
+            long retryAfter = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(limiter.nanosUntilAvailable(key) + 999_999_999));
+            logger.fine(() -> "Admission rejected for " + key + ": " + message);
+            throw new AdmissionRejectedException(message, true, retryAfter);
+        }
+    }
+
+    private static String normalize(String username) {
+        return username == null ? "" : username.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,31 @@
+package se.fulkopinglibrary.fulkopinglibrary.services;
+
+import java.sql.SQLTransientException;
+
+/**
+ * Thrown when an operation is turned away by admission control instead of being run: the
+ * caller is over its rate limit, or the database is saturated and the wait line is full.
+ * Retrying later may succeed; {@link #getRetryAfterSeconds()} says when, if known.
+ */
+public class AdmissionRejectedException extends SQLTransientException {
+    private static final long serialVersionUID = 1L;
+
+    private final boolean rateLimited;
+    private final long retryAfterSeconds;
+
+    public AdmissionRejectedException(String message, boolean rateLimited, long retryAfterSeconds) {
+        super(message);
+        this.rateLimited = rateLimited;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    // True for a per-caller rate limit, false when the service as a whole is busy
+    public boolean isRateLimited() {
+        return rateLimited;
+    }
+
+    // Seconds until a retry may be admitted, 0 if unknown
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
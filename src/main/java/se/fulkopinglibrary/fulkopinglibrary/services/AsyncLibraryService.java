@@ -0,0 +1,240 @@
+package se.fulkopinglibrary.fulkopinglibrary.services;
+
+import se.fulkopinglibrary.fulkopinglibrary.DatabaseConnection;
+import se.fulkopinglibrary.fulkopinglibrary.models.Book;
+import se.fulkopinglibrary.fulkopinglibrary.models.LibraryItem;
+import se.fulkopinglibrary.fulkopinglibrary.models.Magazine;
+import se.fulkopinglibrary.fulkopinglibrary.models.User;
+import se.fulkopinglibrary.fulkopinglibrary.utils.ConcurrencyLimiter;
+import se.fulkopinglibrary.fulkopinglibrary.utils.LoggerUtil;
+import se.fulkopinglibrary.fulkopinglibrary.utils.VirtualThreads;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Asynchronous facade over the blocking service classes.
+ *
+ * <p>Every call runs on its own virtual thread, borrows a pooled connection for the duration of
+ * the operation and completes the returned future with the result. A {@link ConcurrencyLimiter}
+ * sized to the connection pool bounds how many operations hold a connection at once; callers
+ * beyond that wait on their (cheap) virtual thread instead of queueing inside HikariCP. The
+ * wait line is bounded too ({@code library.admission.db.queue}, default 1000, and
+ * {@code library.admission.db.waitMillis}, default 5000): once it is full, or the wait runs
+ * out, the operation is rejected with an {@link AdmissionRejectedException} rather than
+ * adding to the backlog.</p>
+ *
+ * <p>Failures complete the future exceptionally with a {@link CompletionException} wrapping
+ * the original {@link SQLException}.</p>
+ */
+public class AsyncLibraryService {
+    private static final Logger logger = LoggerUtil.getLogger(AsyncLibraryService.class);
+
+    private static final ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor("library-async");
+    private static final ConcurrencyLimiter connectionSlots = new ConcurrencyLimiter(
+        "admission.db",
+        DatabaseConnection.getMaximumPoolSize(),
+        Integer.getInteger("library.admission.db.queue", 1000),
+        Long.getLong("library.admission.db.waitMillis", 5000),
+        TimeUnit.MILLISECONDS);
+
+    /**
+     * A unit of work that runs against a borrowed connection.
+     */
+    @FunctionalInterface
+    public interface ConnectionCallback<T> {
+        T apply(Connection connection) throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface Call<T> {
+        T call() throws SQLException;
+    }
+
+    // Run an operation on a virtual thread with its own pooled connection
+    public static <T> CompletableFuture<T> withConnection(ConnectionCallback<T> operation) {
+        return async(() -> callWithConnection(operation));
+    }
+
+    // A borrow or reservation, run like withConnection but queued on the item before taking a connection
+    private static CompletableFuture<Boolean> withItemLock(int itemId, ConnectionCallback<Boolean> operation) {
+        return async(() -> callWithItemLock(itemId, operation));
+    }
+
+    private static <T> CompletableFuture<T> async(Call<T> call) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return call.call();
+            } catch (AdmissionRejectedException e) {
+                logger.warning("Async operation rejected: " + e.getMessage());
+                throw new CompletionException(e);
+            } catch (SQLException e) {
+                logger.severe("Async operation failed: " + e.getMessage());
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Runs an operation on the calling thread, sharing the same connection slots as the
+     * asynchronous methods. Meant for callers that already run on their own (virtual) thread,
+     * such as HTTP request handlers.
+     *
+     * @throws AdmissionRejectedException if the database is saturated
+     */
+    public static <T> T callWithConnection(ConnectionCallback<T> operation) throws SQLException {
+        boolean admitted;
+        try {
+            admitted = connectionSlots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+        if (!admitted) {
+            throw new AdmissionRejectedException("Database is busy", false, 1);
+        }
+        try (Connection connection = DatabaseConnection.getConnection()) {
+            return operation.apply(connection);
+        } finally {
+            connectionSlots.release();
+        }
+    }
+
+    /**
+     * Runs a borrow or reservation of one item like {@link #callWithConnection}, but takes the
+     * item's circulation lock before the connection, so callers waiting for the same item do
+     * not hold connections. False if the lock could not be had in time.
+     */
+    public static boolean callWithItemLock(int itemId, ConnectionCallback<Boolean> operation) throws SQLException {
+        return CirculationLocks.callWithItemLock(itemId, () -> callWithConnection(operation));
+    }
+
+    // Number of operations waiting for a connection slot
+    public static int getQueueLength() {
+        return connectionSlots.getWaiting();
+    }
+
+    public static void shutdown() {
+        executor.shutdown();
+    }
+
+    // Users
+
+    public static CompletableFuture<User> login(String username, String password) {
+        return login(username, password, AdmissionControl.LOCAL_SOURCE);
+    }
+
+    // Subject to the per-user and per-source login budgets in AdmissionControl
+    public static CompletableFuture<User> login(String username, String password, String source) {
+        try {
+            AdmissionControl.admitLogin(username, source);
+        } catch (AdmissionRejectedException e) {
+            return CompletableFuture.failedFuture(new CompletionException(e));
+        }
+        return withConnection(connection -> UserService.login(connection, username, password, source));
+    }
+
+    public static CompletableFuture<Boolean> updatePassword(int userId, String newPasswordHash, String newSalt) {
+        return withConnection(connection -> UserService.updatePassword(connection, userId, newPasswordHash, newSalt));
+    }
+
+    // Books
+
+    public static CompletableFuture<List<Book>> searchBooks(String searchTerm, String searchType, int sortOption, int page, int pageSize) {
+        return withConnection(connection -> BookService.searchBooks(connection, searchTerm, searchType, sortOption, page, pageSize));
+    }
+
+    public static CompletableFuture<List<LibraryItem>> searchLibraryItems(String field, String searchTerm) {
+        return withConnection(connection -> BookService.searchLibraryItems(connection, field, searchTerm));
+    }
+
+    public static CompletableFuture<List<LibraryItem>> getAllBooks() {
+        return withConnection(BookService::getAllItems);
+    }
+
+    public static CompletableFuture<Boolean> isBookAvailable(int itemId) {
+        return withConnection(connection -> BookService.isItemAvailable(connection, itemId));
+    }
+
+    public static CompletableFuture<Boolean> borrowBook(int userId, int itemId) {
+        return withItemLock(itemId, connection -> BookService.borrowBook(connection, userId, itemId));
+    }
+
+    public static CompletableFuture<Boolean> returnBook(int loanId) {
+        return withConnection(connection -> BookService.returnBook(connection, loanId));
+    }
+
+    public static CompletableFuture<Boolean> reserveBook(int userId, int itemId) {
+        return withItemLock(itemId, connection -> BookService.reserveBook(connection, userId, itemId));
+    }
+
+    public static CompletableFuture<List<LibraryItem>> viewLoanHistory(int userId) {
+        return withConnection(connection -> BookService.viewLoanHistory(connection, userId));
+    }
+
+    public static CompletableFuture<List<LibraryItem>> viewCurrentLoans(int userId) {
+        return withConnection(connection -> BookService.viewCurrentLoans(connection, userId));
+    }
+
+    public static CompletableFuture<List<LibraryItem>> viewCurrentReservations(int userId) {
+        return withConnection(connection -> BookService.viewCurrentReservations(connection, userId));
+    }
+
+    // Magazines
+
+    public static CompletableFuture<List<Magazine>> searchMagazines(String searchType, String searchTerm) {
+        return withConnection(connection -> MagazineService.searchMagazines(connection, searchType, searchTerm));
+    }
+
+    public static CompletableFuture<List<Magazine>> getAllMagazines(int sortOption, int page, int pageSize) {
+        return withConnection(connection -> MagazineService.getAllItems(connection, sortOption, page, pageSize));
+    }
+
+    public static CompletableFuture<Boolean> isMagazineAvailable(int magazineId) {
+        return withConnection(connection -> MagazineService.isItemAvailable(connection, magazineId));
+    }
+
+    public static CompletableFuture<Boolean> borrowMagazine(int userId, int magazineId) {
+        return withItemLock(magazineId, connection -> MagazineService.borrowMagazine(connection, userId, magazineId));
+    }
+
+    public static CompletableFuture<Boolean> reserveMagazine(int userId, int magazineId) {
+        return withItemLock(magazineId, connection -> MagazineService.reserveMagazine(connection, userId, magazineId));
+    }
+
+    // Media
+
+    public static CompletableFuture<List<LibraryItem>> getAllMedia(int sortOption, int page, int pageSize) {
+        return withConnection(connection -> MediaService.getAllItems(connection, sortOption, page, pageSize));
+    }
+
+    public static CompletableFuture<List<LibraryItem>> searchMediaByTitle(String title) {
+        return withConnection(connection -> MediaService.searchByTitle(connection, title));
+    }
+
+    public static CompletableFuture<List<LibraryItem>> searchMediaByDirector(String director) {
+        return withConnection(connection -> MediaService.searchByDirector(connection, director));
+    }
+
+    public static CompletableFuture<List<LibraryItem>> searchMediaByCatalogNumber(String catalogNumber) {
+        return withConnection(connection -> MediaService.searchByCatalogNumber(connection, catalogNumber));
+    }
+
+    public static CompletableFuture<Boolean> isMediaAvailable(int mediaId) {
+        return withConnection(connection -> MediaService.isItemAvailable(connection, mediaId));
+    }
+
+    public static CompletableFuture<Boolean> borrowMedia(int userId, int mediaId) {
+        return withItemLock(mediaId, connection -> MediaService.borrowMedia(connection, userId, mediaId));
+    }
+
+    public static CompletableFuture<Boolean> reserveMedia(int userId, int mediaId) {
+        return withItemLock(mediaId, connection -> MediaService.reserveMedia(connection, userId, mediaId));
+    }
+}
@@ -1,12 +1,21 @@
 package se.fulkopinglibrary.fulkopinglibrary.services;
 
+import se.fulkopinglibrary.fulkopinglibrary.events.BorrowEvent;
+import se.fulkopinglibrary.fulkopinglibrary.events.ExplorePageEvent;
+import se.fulkopinglibrary.fulkopinglibrary.events.ReserveEvent;
+import se.fulkopinglibrary.fulkopinglibrary.events.ReturnEvent;
+import se.fulkopinglibrary.fulkopinglibrary.events.SearchEvent;
 import se.fulkopinglibrary.fulkopinglibrary.models.Book;
 import se.fulkopinglibrary.fulkopinglibrary.models.Magazine;
 import se.fulkopinglibrary.fulkopinglibrary.models.LibraryItem;
 import se.fulkopinglibrary.fulkopinglibrary.models.MediaItem;
 import se.fulkopinglibrary.fulkopinglibrary.models.MediaTypeImpl;
+import se.fulkopinglibrary.fulkopinglibrary.utils.LatencyHistogram;
 import se.fulkopinglibrary.fulkopinglibrary.utils.LoggerUtil;
+import se.fulkopinglibrary.fulkopinglibrary.utils.MetricsRegistry;
+import se.fulkopinglibrary.fulkopinglibrary.utils.SearchKeys;
 import java.util.logging.Logger;
+import java.io.IOException;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
@@ -14,18 +23,62 @@ import java.util.Set;
 import java.util.Scanner;
 
 public class BookService {
+    private static final LatencyHistogram SEARCHES = MetricsRegistry.timer("search.book");
+    private static final MetricsRegistry.Outcome BORROWS = MetricsRegistry.outcome("borrow.book");
+    private static final MetricsRegistry.Outcome RETURNS = MetricsRegistry.outcome("return");
+    private static final MetricsRegistry.Outcome RESERVATIONS = MetricsRegistry.outcome("reserve.book");
 
-    // Search for books
+    // Search for books, answered from the search cache when the same query ran recently
     public static List<Book> searchBooks(Connection connection, String searchTerm, String searchType, int sortOption, int page, int pageSize) throws SQLException {
+        String term = searchTerm == null ? "" : searchTerm.trim();
+        SearchCaches.BookSearchKey key = new SearchCaches.BookSearchKey(
+            SearchCaches.normalizeTerm(term), searchType, sortOption, page, pageSize);
+        SearchEvent event = new SearchEvent();
+        event.begin();
+        long startTime = System.nanoTime();
+        try {
+            List<Book> books = SearchCaches.BOOK_SEARCHES.get(key,
+                () -> List.copyOf(querySearchBooks(connection, term, searchType, sortOption, page, pageSize)));
+            event.rowsReturned = books.size();
+            return books;
+        } finally {
+            SEARCHES.record(System.nanoTime() - startTime);
+            event.itemType = "BOOK";
+            event.searchType = searchType;
+            event.termLength = term.length();
+            event.commit();
+        }
+    }
+
+    private static List<Book> querySearchBooks(Connection connection, String searchTerm, String searchType, int sortOption, int page, int pageSize) throws SQLException {
         // Validate searchType parameter
         if (searchType == null || !Set.of("title", "author", "isbn", "general").contains(searchType)) {
             throw new IllegalArgumentException("Invalid search type. Must be one of: title, author, isbn, general");
         }
 
+        // An ISBN (10 or 13 digits, hyphens allowed) resolves to at most one book by exact lookup
+        if (searchType.equals("isbn") || searchType.equals("general")) {
+            IdentifierIndex.Identifier identifier = IdentifierIndex.match(connection, searchTerm);
+            if (identifier != null && identifier.kind() == IdentifierIndex.Kind.ISBN) {
+                LibraryItem item = page == 1 ? IdentifierIndex.find(connection, identifier) : null;
+                return item instanceof Book book ? List.of(book) : List.of();
+            }
+        }
+
         List<Book> books = new ArrayList<>();
+        try (PreparedStatement statement = prepareSearch(connection, searchType, searchTerm, sortOption, page, pageSize);
+             ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                books.add(mapBook(resultSet));
+            }
+        }
+        return books;
+    }
+
+    // One page of a title, author, isbn or general search, with every parameter bound
+    static PreparedStatement prepareSearch(Connection connection, String searchType, String searchTerm, int sortOption, int page, int pageSize) throws SQLException {
         String query;
         
-        // Base query with sorting
         String orderBy = switch (sortOption) {
             case 1 -> "title ASC";
             case 2 -> "title DESC";
@@ -38,7 +91,7 @@ public class BookService {
                 query = """
                     SELECT item_id, title, author, isbn, is_available 
                     FROM library_items 
-                    WHERE type = ? AND title LIKE ?
+                    WHERE type = ? AND title_key LIKE ?
                     ORDER BY %s
                     LIMIT ? OFFSET ?""".formatted(orderBy);
                 break;
@@ -46,7 +99,7 @@ public class BookService {
                 query = """
                     SELECT item_id, title, author, isbn, is_available 
                     FROM library_items 
-                    WHERE type = ? AND author LIKE ?
+                    WHERE type = ? AND author_key LIKE ?
                     ORDER BY %s
                     LIMIT ? OFFSET ?""".formatted(orderBy);
                 break;
@@ -62,47 +115,47 @@ public class BookService {
                 query = """
                     SELECT item_id, title, author, isbn, is_available 
                     FROM library_items 
-                    WHERE type = ? AND (title LIKE ? OR author LIKE ? OR isbn LIKE ?)
+                    WHERE type = ? AND (title_key LIKE ? OR author_key LIKE ? OR isbn LIKE ?)
                     ORDER BY %s
                     LIMIT ? OFFSET ?""".formatted(orderBy);
                 break;
             default:
-                // This case should never be reached due to the validation above
-                throw new IllegalStateException("Unexpected search type: " + searchType);
+                throw new IllegalArgumentException("Invalid search type. Must be one of: title, author, isbn, general");
         }
 
-        try (PreparedStatement statement = connection.prepareStatement(query)) {
-            // Set parameters based on search type
-            statement.setString(1, "BOOK");
-            
+        PreparedStatement statement = connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        try {
+            int index = 1;
+            statement.setString(index++, "BOOK");
             if (searchType.equals("general")) {
-                String likeTerm = "%" + searchTerm + "%";
-                statement.setString(2, likeTerm);
-                statement.setString(3, likeTerm);
-                statement.setString(4, likeTerm);
+                // Words anywhere in the title or author; the ISBN as typed
+                String keyPattern = SearchKeys.containsPattern(searchTerm);
+                statement.setString(index++, keyPattern);
+                statement.setString(index++, keyPattern);
+                statement.setString(index++, "%" + searchTerm + "%");
+            } else if (searchType.equals("isbn")) {
+                statement.setString(index++, searchTerm);
             } else {
-                // For title, author, and isbn searches
-                if (searchType.equals("isbn")) {
-                    statement.setString(2, searchTerm);
-                } else {
-                    statement.setString(2, "%" + searchTerm + "%");
-                }
-            }
-            
-            try (ResultSet resultSet = statement.executeQuery()) {
-                while (resultSet.next()) {
-                    Book book = new Book(
-                            resultSet.getInt("item_id"),
-                            resultSet.getString("title"),
-                            resultSet.getString("author"),
-                            resultSet.getString("isbn"),
-                            resultSet.getBoolean("is_available")
-                    );
-                    books.add(book);
-                }
+                // A title or author search matches the start, a range scan of the key index
+                statement.setString(index++, SearchKeys.prefixPattern(searchTerm));
             }
+            statement.setInt(index++, pageSize);
+            statement.setInt(index, (page - 1) * pageSize);
+            return statement;
+        } catch (SQLException e) {
+            statement.close();
+            throw e;
         }
-        return books;
+    }
+
+    static Book mapBook(ResultSet resultSet) throws SQLException {
+        return new Book(
+                resultSet.getInt("item_id"),
+                resultSet.getString("title"),
+                resultSet.getString("author"),
+                resultSet.getString("isbn"),
+                resultSet.getBoolean("is_available")
+        );
     }
 
     // Search for magazines
@@ -111,10 +164,10 @@ public class BookService {
         String query = """
             SELECT item_id, title, publisher, issn, is_available 
             FROM library_items 
-            WHERE type = 'MAGAZINE' AND """ + field + " LIKE ?";
+            WHERE type = 'MAGAZINE' AND """ + column(field) + " LIKE ?";
 
         try (PreparedStatement statement = connection.prepareStatement(query)) {
-            statement.setString(1, "%" + searchTerm + "%");
+            statement.setString(1, field.equals("issn") ? "%" + searchTerm + "%" : SearchKeys.prefixPattern(searchTerm));
             ResultSet resultSet = statement.executeQuery();
 
             while (resultSet.next()) {
@@ -135,6 +188,16 @@ public class BookService {
 
     private static final Logger logger = LoggerUtil.getLogger(BookService.class);
 
+    // Title and publisher are matched on their folded keys, the ISSN as typed
+    private static String column(String field) {
+        return switch (field) {
+            case "title" -> "title_key";
+            case "publisher" -> "publisher_key";
+            case "issn" -> "issn";
+            default -> throw new IllegalArgumentException("Invalid search field. Must be one of: title, publisher, issn");
+        };
+    }
+
     // Helper method to get MediaTypeImpl from database
     private static MediaTypeImpl getMediaType(Connection connection, int mediaTypeId) {
         String query = "SELECT type_name, loan_period_days FROM media_types WHERE media_type_id = ?";
@@ -160,15 +223,24 @@ public class BookService {
             throw new IllegalArgumentException("Invalid search type. Must be one of: title, author, isbn, general");
         }
 
+        // Any identifier in a general search, or an ISBN in an ISBN search, is an exact lookup
+        if (field.equals("isbn") || field.equals("general")) {
+            IdentifierIndex.Identifier identifier = IdentifierIndex.match(connection, searchTerm);
+            if (identifier != null && (field.equals("general") || identifier.kind() == IdentifierIndex.Kind.ISBN)) {
+                LibraryItem item = IdentifierIndex.find(connection, identifier);
+                return item == null ? new ArrayList<>() : new ArrayList<>(List.of(item));
+            }
+        }
+
         List<LibraryItem> items = new ArrayList<>();
         String query;
         
         switch (field) {
             case "title":
-                query = "SELECT * FROM library_items WHERE title LIKE ?";
+                query = "SELECT * FROM library_items WHERE title_key LIKE ?";
                 break;
             case "author":
-                query = "SELECT * FROM library_items WHERE author LIKE ?";
+                query = "SELECT * FROM library_items WHERE author_key LIKE ?";
                 break;
             case "isbn":
                 query = "SELECT * FROM library_items WHERE isbn = ?";
@@ -176,7 +248,7 @@ public class BookService {
             case "general":
                 query = """
                     SELECT * FROM library_items 
-                    WHERE title LIKE ? OR author LIKE ? OR isbn LIKE ?""";
+                    WHERE title_key LIKE ? OR author_key LIKE ? OR isbn LIKE ?""";
                 break;
             default:
                 // This case should never be reached due to the validation above
@@ -187,16 +259,16 @@ public class BookService {
             switch (field) {
                 case "title":
                 case "author":
-                    statement.setString(1, "%" + searchTerm + "%");
+                    statement.setString(1, SearchKeys.prefixPattern(searchTerm));
                     break;
                 case "isbn":
                     statement.setString(1, searchTerm);
                     break;
                 case "general":
-                    String likeTerm = "%" + searchTerm + "%";
-                    statement.setString(1, likeTerm);
-                    statement.setString(2, likeTerm);
-                    statement.setString(3, likeTerm);
+                    String keyPattern = SearchKeys.containsPattern(searchTerm);
+                    statement.setString(1, keyPattern);
+                    statement.setString(2, keyPattern);
+                    statement.setString(3, "%" + searchTerm + "%");
                     break;
             }
             
@@ -248,6 +320,20 @@ public class BookService {
     }
 
     public static boolean borrowBook(Connection connection, int userId, int itemId) {
+        BorrowEvent event = new BorrowEvent();
+        event.begin();
+        long startTime = System.nanoTime();
+        boolean borrowed = CirculationLocks.withItemLock(itemId, () -> borrowBookInTransaction(connection, userId, itemId));
+        BORROWS.record(borrowed, startTime);
+        event.itemType = "BOOK";
+        event.itemId = itemId;
+        event.userId = userId;
+        event.success = borrowed;
+        event.commit();
+        return borrowed;
+    }
+
+    private static boolean borrowBookInTransaction(Connection connection, int userId, int itemId) {
         String query = "INSERT INTO loans (user_id, item_id, loan_date) VALUES (?, ?, CURRENT_DATE)";
         String updateAvailability = "UPDATE library_items SET is_available = false WHERE item_id = ?";
         
@@ -278,6 +364,9 @@ public class BookService {
             }
 
             connection.commit();
+            SearchCaches.invalidateBooks();
+            FacetIndex.setAvailable(itemId, false);
+            CatalogSnapshot.setAvailable(itemId, false);
             return true;
         } catch (SQLException e) {
             try {
@@ -309,12 +398,20 @@ public class BookService {
     }
 
     public static boolean returnBook(Connection connection, int loanId) {
+        ReturnEvent event = new ReturnEvent();
+        event.begin();
+        long startTime = System.nanoTime();
+        boolean returned = returnBookInTransaction(connection, loanId);
+        RETURNS.record(returned, startTime);
+        event.loanId = loanId;
+        event.success = returned;
+        event.commit();
+        return returned;
+    }
+
+    private static boolean returnBookInTransaction(Connection connection, int loanId) {
         String query = "UPDATE loans SET return_date = CURRENT_DATE WHERE loan_id = ?";
-        String updateAvailability = """
-            UPDATE library_items SET is_available = true 
-            WHERE item_id = (
-                SELECT item_id FROM loans WHERE loan_id = ?
-            )""";
+        String updateAvailability = "UPDATE library_items SET is_available = true WHERE item_id = ?";
         
         try {
             connection.setAutoCommit(false);
@@ -325,13 +422,30 @@ public class BookService {
                 loanStmt.executeUpdate();
             }
 
+            // The item is needed by id for the facet index as well
+            int itemId;
+            try (PreparedStatement itemStmt = connection.prepareStatement("SELECT item_id FROM loans WHERE loan_id = ?")) {
+                itemStmt.setInt(1, loanId);
+                try (ResultSet rs = itemStmt.executeQuery()) {
+                    if (!rs.next()) {
+                        connection.rollback();
+                        return false;
+                    }
+                    itemId = rs.getInt("item_id");
+                }
+            }
+
             // Update book availability
             try (PreparedStatement updateStmt = connection.prepareStatement(updateAvailability)) {
-                updateStmt.setInt(1, loanId);
+                updateStmt.setInt(1, itemId);
                 updateStmt.executeUpdate();
             }
 
             connection.commit();
+            // The loan may be for any item type
+            SearchCaches.invalidateAll();
+            FacetIndex.setAvailable(itemId, true);
+            CatalogSnapshot.setAvailable(itemId, true);
             return true;
         } catch (SQLException e) {
             try {
@@ -351,6 +465,20 @@ public class BookService {
     }
 
     public static boolean reserveBook(Connection connection, int userId, int itemId) {
+        ReserveEvent event = new ReserveEvent();
+        event.begin();
+        long startTime = System.nanoTime();
+        boolean reserved = CirculationLocks.withItemLock(itemId, () -> insertReservation(connection, userId, itemId));
+        RESERVATIONS.record(reserved, startTime);
+        event.itemType = "BOOK";
+        event.itemId = itemId;
+        event.userId = userId;
+        event.success = reserved;
+        event.commit();
+        return reserved;
+    }
+
+    private static boolean insertReservation(Connection connection, int userId, int itemId) {
         String query = "INSERT INTO reservations (user_id, item_id, reservation_date) VALUES (?, ?, CURRENT_DATE)";
         
         try (PreparedStatement stmt = connection.prepareStatement(query)) {
@@ -459,6 +587,81 @@ public class BookService {
         return loans;
     }
 
+    /**
+     * Receives the rows of a streamed listing one at a time.
+     */
+    @FunctionalInterface
+    public interface ItemSink {
+        void accept(LibraryItem item) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface ParameterBinder {
+        void bind(PreparedStatement statement) throws SQLException;
+    }
+
+    /**
+     * Streams the user's returned loans, newest first, to the sink without building a list.
+     * Returns the number of rows streamed.
+     */
+    public static int streamLoanHistory(Connection connection, int userId, ItemSink sink) throws SQLException, IOException {
+        String query = """
+            SELECT li.*, l.loan_date, l.return_date, mt.type_name, mt.loan_period_days
+            FROM library_items li
+            JOIN loans l ON li.item_id = l.item_id
+            LEFT JOIN media_types mt ON li.media_type_id = mt.media_type_id
+            WHERE l.user_id = ? AND l.return_date IS NOT NULL
+            ORDER BY l.loan_date DESC""";
+        return stream(connection, query, statement -> statement.setInt(1, userId), true, sink);
+    }
+
+    /**
+     * Streams every catalog item of one type (BOOK, MAGAZINE or MEDIA; null for all types)
+     * to the sink, sorted like the paged listings. Returns the number of rows streamed.
+     */
+    public static int streamCatalog(Connection connection, String itemType, int sortOption, ItemSink sink) throws SQLException, IOException {
+        String orderBy = switch (sortOption) {
+            case 1 -> "li.title ASC";
+            case 2 -> "li.title DESC";
+            case 3 -> "li.is_available DESC";
+            default -> "li.item_id ASC";
+        };
+        String query = """
+            SELECT li.*, mt.type_name, mt.loan_period_days
+            FROM library_items li
+            LEFT JOIN media_types mt ON li.media_type_id = mt.media_type_id
+            %s
+            ORDER BY %s""".formatted(itemType == null ? "" : "WHERE li.type = ?", orderBy);
+        return stream(connection, query, statement -> {
+            if (itemType != null) {
+                statement.setString(1, itemType);
+            }
+        }, false, sink);
+    }
+
+    private static int stream(Connection connection, String query, ParameterBinder binder, boolean loanColumns, ItemSink sink)
+            throws SQLException, IOException {
+        try (PreparedStatement statement = connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            binder.bind(statement);
+            // Connector/J hands rows over one at a time instead of reading the whole result first
+            statement.setFetchSize(Integer.MIN_VALUE);
+
+            int rows = 0;
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    LibraryItem item = ItemRows.map(rs);
+                    if (loanColumns) {
+                        item.setLoanDate(rs.getDate("loan_date").toLocalDate());
+                        item.setReturnDate(rs.getDate("return_date").toLocalDate());
+                    }
+                    sink.accept(item);
+                    rows++;
+                }
+            }
+            return rows;
+        }
+    }
+
     public static void manageLoans(Connection connection, int userId, Scanner scanner) {
         // Display current loans
         List<LibraryItem> loans = viewCurrentLoans(connection, userId);
@@ -579,6 +782,19 @@ public class BookService {
     }
 
     public static List<LibraryItem> getAllItems(Connection connection) throws SQLException {
+        ExplorePageEvent event = new ExplorePageEvent();
+        event.begin();
+        try {
+            List<LibraryItem> items = queryAllItems(connection);
+            event.rowsReturned = items.size();
+            return items;
+        } finally {
+            event.itemType = "BOOK";
+            event.commit();
+        }
+    }
+
+    private static List<LibraryItem> queryAllItems(Connection connection) throws SQLException {
         List<LibraryItem> items = new ArrayList<>();
         String query = "SELECT item_id, title, author, isbn, is_available FROM library_items WHERE type = 'BOOK'";
         
@@ -598,6 +814,76 @@ public class BookService {
         return items;
     }
 
+    // One page of books for browsing, sorted like the book search
+    public static List<LibraryItem> getAllItems(Connection connection, int sortOption, int page, int pageSize) throws SQLException {
+        ExplorePageEvent event = new ExplorePageEvent();
+        event.begin();
+        try {
+            List<LibraryItem> items = queryItemsPage(connection, sortOption, page, pageSize);
+            event.rowsReturned = items.size();
+            return items;
+        } finally {
+            event.itemType = "BOOK";
+            event.page = page;
+            event.pageSize = pageSize;
+            event.sortOption = sortOption;
+            event.commit();
+        }
+    }
+
+    private static List<LibraryItem> queryItemsPage(Connection connection, int sortOption, int page, int pageSize) throws SQLException {
+        List<LibraryItem> items = new ArrayList<>();
+
+        String orderBy = switch (sortOption) {
+            case 1 -> "title ASC";
+            case 2 -> "title DESC";
+            case 3 -> "is_available DESC";
+            default -> "item_id ASC";
+        };
+
+        String query = """
+            SELECT item_id, title, author, isbn, is_available
+            FROM library_items
+            WHERE type = 'BOOK'
+            ORDER BY %s
+            LIMIT ? OFFSET ?""".formatted(orderBy);
+
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setInt(1, pageSize);
+            statement.setInt(2, (page - 1) * pageSize);
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    items.add(new Book(
+                        resultSet.getInt("item_id"),
+                        resultSet.getString("title"),
+                        resultSet.getString("author"),
+                        resultSet.getString("isbn"),
+                        resultSet.getBoolean("is_available")
+                    ));
+                }
+            }
+        }
+        return items;
+    }
+
+    // Loan ID of the user's unreturned loan of the item, or 0 if there is none
+    public static int findActiveLoanId(Connection connection, int userId, int itemId) throws SQLException {
+        String query = """
+            SELECT loan_id FROM loans
+            WHERE user_id = ? AND item_id = ? AND return_date IS NULL
+            ORDER BY loan_date DESC
+            LIMIT 1""";
+
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setInt(1, userId);
+            statement.setInt(2, itemId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getInt("loan_id") : 0;
+            }
+        }
+    }
+
     public static List<LibraryItem> viewCurrentReservations(Connection connection, int userId) {
         List<LibraryItem> reservations = new ArrayList<>();
         String query = """
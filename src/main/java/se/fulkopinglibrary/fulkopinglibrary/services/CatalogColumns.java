@@ -0,0 +1,390 @@
+package se.fulkopinglibrary.fulkopinglibrary.services;
+
+import se.fulkopinglibrary.fulkopinglibrary.models.Book;
+import se.fulkopinglibrary.fulkopinglibrary.models.ItemType;
+import se.fulkopinglibrary.fulkopinglibrary.models.LibraryItem;
+import se.fulkopinglibrary.fulkopinglibrary.models.Magazine;
+import se.fulkopinglibrary.fulkopinglibrary.models.MediaItem;
+import se.fulkopinglibrary.fulkopinglibrary.models.MediaTypeImpl;
+import se.fulkopinglibrary.fulkopinglibrary.utils.SearchKeys;
+import se.fulkopinglibrary.fulkopinglibrary.utils.TitleCollation;
+
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.IntPredicate;
+
+/**
+ * The catalog stored column by column, for listings and searches answered from memory.
+ *
+ * <p>Per item the {@link CatalogStore} keeps an id, a type, a media type, a code for the
+ * author, publisher or director, one availability bit, and three UTF-8 strings: the title,
+ * its folded search key (see {@link SearchKeys}) and the ISBN, ISSN or catalog number. Each
+ * distinct creator and media type is stored once. That is a few dozen bytes plus the text,
+ * against several hundred for a model object with its strings and unused loan fields. The
+ * store is either {@link HeapCatalogStore} arrays or an {@link OffHeapCatalogStore} outside
+ * the heap. Model objects are only created for the rows a page returns.</p>
+ *
+ * <p>Searches match the folded keys the way the database does: title and creator searches
+ * by prefix, general searches anywhere, identifiers as typed. Rows are in item id order;
+ * the title orders are computed on first use and kept next to the rows. Availability is the
+ * only column that changes after {@link Builder#build()}.</p>
+ */
+public final class CatalogColumns {
+
+    private enum Field {
+        TITLE,
+        CREATOR,
+        IDENTIFIER,
+        GENERAL
+    }
+
+    // One item as the builder takes it, for changes read from the database
+    record Row(int id, ItemType type, String title, String creator, String identifier, MediaTypeImpl mediaType,
+               boolean isAvailable) {
+    }
+
+    private final CatalogStore store;
+    private final int size;
+
+    private volatile IntBuffer titleAscending;
+    private volatile IntBuffer titleDescending;
+
+    private CatalogColumns(CatalogStore store) {
+        this.store = store;
+        this.size = store.size();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // One page of the items of a type, in the order of the listing sort option
+    public List<LibraryItem> browse(ItemType type, int sortOption, int page, int pageSize) {
+        return page(row -> store.type(row) == type, sortOption, page, pageSize);
+    }
+
+    /**
+     * One page of a search of one item type. {@code field} is title, the creator column of
+     * the type (author, publisher or director), the identifier column (isbn, issn or
+     * catalog_number) or general.
+     */
+    public List<LibraryItem> search(ItemType type, String field, String term, int sortOption, int page, int pageSize) {
+        byte[] key = SearchKeys.fold(term).getBytes(StandardCharsets.UTF_8);
+        byte[] identifier = term.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8);
+
+        IntPredicate matches = switch (field(type, field)) {
+            case TITLE -> row -> store.titleKeyStartsWith(row, key);
+            case CREATOR -> {
+                boolean[] creatorMatches = new boolean[store.creatorCount()];
+                for (int code = 0; code < creatorMatches.length; code++) {
+                    creatorMatches[code] = store.creatorKeyStartsWith(code, key);
+                }
+                yield row -> creatorMatches(creatorMatches, row);
+            }
+            // Books are looked up by whole ISBN, the other identifiers by fragment
+            case IDENTIFIER -> type == ItemType.BOOK
+                ? row -> store.identifierEqualsIgnoreCase(row, identifier)
+                : row -> store.identifierContainsIgnoreCase(row, identifier);
+            case GENERAL -> {
+                boolean[] creatorMatches = new boolean[store.creatorCount()];
+                for (int code = 0; code < creatorMatches.length; code++) {
+                    creatorMatches[code] = store.creatorKeyContains(code, key);
+                }
+                yield row -> store.titleKeyContains(row, key)
+                    || creatorMatches(creatorMatches, row)
+                    || store.identifierContainsIgnoreCase(row, identifier);
+            }
+        };
+        return page(row -> store.type(row) == type && matches.test(row), sortOption, page, pageSize);
+    }
+
+    // False if the item is not in the snapshot
+    public boolean setAvailable(int itemId, boolean isAvailable) {
+        int row = store.row(itemId);
+        if (row < 0) {
+            return false;
+        }
+        store.setAvailable(row, isAvailable);
+        return true;
+    }
+
+    // Approximate heap bytes: the rows of a heap store, the dictionaries and heap title orders
+    public long footprintBytes() {
+        IntBuffer order = titleAscending;
+        return store.heapBytes() + (order != null && !order.isDirect() ? 8L * size : 0);
+    }
+
+    // Bytes outside the heap: the rows of an off-heap store and its title orders
+    public long offHeapBytes() {
+        IntBuffer order = titleAscending;
+        return store.offHeapBytes() + (order != null && order.isDirect() ? 8L * size : 0);
+    }
+
+    /**
+     * Applies changed rows that only differ in availability, as after borrows and returns,
+     * and returns true; returns false without changing anything if a row is new or has other
+     * changes, which need {@link #merge}.
+     */
+    boolean updateInPlace(List<Row> changed) {
+        int[] rows = new int[changed.size()];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = store.row(changed.get(i).id());
+            if (rows[i] < 0 || !sameExceptAvailability(row(rows[i]), changed.get(i))) {
+                return false;
+            }
+        }
+        for (int i = 0; i < rows.length; i++) {
+            store.setAvailable(rows[i], changed.get(i).isAvailable());
+        }
+        return true;
+    }
+
+    // A copy with the changed rows, in item id order, replacing or added to these
+    CatalogColumns merge(List<Row> changed, boolean offHeap) {
+        Builder builder = new Builder(offHeap);
+        int next = 0;
+        for (int row = 0; row < size; row++) {
+            int id = store.id(row);
+            while (next < changed.size() && changed.get(next).id() < id) {
+                builder.add(changed.get(next++));
+            }
+            if (next < changed.size() && changed.get(next).id() == id) {
+                builder.add(changed.get(next++));
+            } else {
+                builder.add(row(row));
+            }
+        }
+        while (next < changed.size()) {
+            builder.add(changed.get(next++));
+        }
+        return builder.build();
+    }
+
+    CatalogStore store() {
+        return store;
+    }
+
+    // The item id of a row; rows are in item id order
+    int itemId(int row) {
+        return store.id(row);
+    }
+
+    static CatalogColumns of(CatalogStore store) {
+        return new CatalogColumns(store);
+    }
+
+    private Row row(int row) {
+        int creatorCode = store.creatorCode(row);
+        return new Row(store.id(row), store.type(row), store.title(row),
+            creatorCode < 0 ? null : store.creator(creatorCode), store.identifier(row), store.mediaType(row),
+            store.isAvailable(row));
+    }
+
+    private static boolean sameExceptAvailability(Row a, Row b) {
+        MediaTypeImpl aType = a.mediaType();
+        MediaTypeImpl bType = b.mediaType();
+        return a.type() == b.type()
+            && Objects.equals(a.title(), b.title())
+            && Objects.equals(a.creator(), b.creator())
+            && Objects.equals(a.identifier(), b.identifier())
+            && (aType == null ? bType == null
+                : bType != null && aType.getType().equals(bType.getType())
+                    && aType.getLoanDurationDays() == bType.getLoanDurationDays());
+    }
+
+    private boolean creatorMatches(boolean[] creatorMatches, int row) {
+        int code = store.creatorCode(row);
+        return code >= 0 && creatorMatches[code];
+    }
+
+    private List<LibraryItem> page(IntPredicate matches, int sortOption, int page, int pageSize) {
+        long skip = (long) (page - 1) * pageSize;
+        List<LibraryItem> items = new ArrayList<>(Math.min(pageSize, 100));
+        if (sortOption == 3) {
+            // Available items first, each group in id order
+            for (int pass = 0; pass < 2; pass++) {
+                boolean availableFirst = pass == 0;
+                for (int row = 0; row < size && items.size() < pageSize; row++) {
+                    if (store.isAvailable(row) == availableFirst && matches.test(row)) {
+                        if (skip > 0) {
+                            skip--;
+                        } else {
+                            items.add(item(row));
+                        }
+                    }
+                }
+            }
+            return items;
+        }
+
+        IntBuffer order = switch (sortOption) {
+            case 1 -> titleOrder(true);
+            case 2 -> titleOrder(false);
+            default -> null;
+        };
+        for (int i = 0; i < size && items.size() < pageSize; i++) {
+            int row = order == null ? i : order.get(i);
+            if (matches.test(row)) {
+                if (skip > 0) {
+                    skip--;
+                } else {
+                    items.add(item(row));
+                }
+            }
+        }
+        return items;
+    }
+
+    // The model object for a row, as ItemRows would map it
+    private LibraryItem item(int row) {
+        int id = store.id(row);
+        String title = store.title(row);
+        int creatorCode = store.creatorCode(row);
+        String creator = creatorCode < 0 ? null : store.creator(creatorCode);
+        String identifier = store.identifier(row);
+        boolean isAvailable = store.isAvailable(row);
+        return switch (store.type(row)) {
+            case BOOK -> new Book(id, title, creator, identifier, isAvailable);
+            case MAGAZINE -> new Magazine(id, title, creator, identifier, isAvailable);
+            case MEDIA -> new MediaItem(id, title, isAvailable, creator, identifier, store.mediaType(row));
+        };
+    }
+
+    private static Field field(ItemType type, String field) {
+        String creator = switch (type) {
+            case BOOK -> "author";
+            case MAGAZINE -> "publisher";
+            case MEDIA -> "director";
+        };
+        String identifier = switch (type) {
+            case BOOK -> "isbn";
+            case MAGAZINE -> "issn";
+            case MEDIA -> "catalog_number";
+        };
+        if (field.equals("title")) {
+            return Field.TITLE;
+        }
+        if (field.equals(creator)) {
+            return Field.CREATOR;
+        }
+        if (field.equals(identifier)) {
+            return Field.IDENTIFIER;
+        }
+        // As in BookService, only the magazine and media searches fall back to general
+        if (type == ItemType.BOOK && !field.equals("general")) {
+            throw new IllegalArgumentException("Invalid search type. Must be one of: title, author, isbn, general");
+        }
+        return Field.GENERAL;
+    }
+
+    private IntBuffer titleOrder(boolean ascending) {
+        if (titleAscending == null) {
+            synchronized (this) {
+                if (titleAscending == null) {
+                    sortTitles();
+                }
+            }
+        }
+        return ascending ? titleAscending : titleDescending;
+    }
+
+    // Swedish title order, equal titles in id order in both directions as in ItemOrder
+    private void sortTitles() {
+        byte[][] keys = new byte[size][];
+        Integer[] rows = new Integer[size];
+        for (int row = 0; row < size; row++) {
+            keys[row] = TitleCollation.sortKey(store.title(row));
+            rows[row] = row;
+        }
+        Arrays.sort(rows, (a, b) -> {
+            int order = TitleCollation.KEY_ORDER.compare(keys[a], keys[b]);
+            return order != 0 ? order : Integer.compare(a, b);
+        });
+        int[] ascending = new int[size];
+        for (int i = 0; i < size; i++) {
+            ascending[i] = rows[i];
+        }
+        int[] descending = new int[size];
+        int filled = 0;
+        for (int end = size; end > 0; ) {
+            int start = end - 1;
+            while (start > 0 && Arrays.equals(keys[ascending[start - 1]], keys[ascending[end - 1]])) {
+                start--;
+            }
+            System.arraycopy(ascending, start, descending, filled, end - start);
+            filled += end - start;
+            end = start;
+        }
+        titleDescending = store.newOrder().put(0, descending);
+        titleAscending = store.newOrder().put(0, ascending);
+    }
+
+    /**
+     * Collects rows in item id order, on the heap or, with {@code offHeap}, straight into an
+     * {@link OffHeapCatalogStore}.
+     */
+    public static final class Builder {
+        private final CatalogStoreWriter writer;
+        private int size;
+        private int lastId;
+        private final Map<String, Integer> creatorCodes = new HashMap<>();
+        private final Map<String, Integer> mediaTypeCodes = new HashMap<>();
+
+        public Builder() {
+            this(false);
+        }
+
+        public Builder(boolean offHeap) {
+            writer = offHeap ? new OffHeapCatalogStore.Writer() : new HeapCatalogStore.Writer();
+        }
+
+        /**
+         * Adds an item; ids must be increasing. {@code creator} is the author, publisher or
+         * director and {@code identifier} the ISBN, ISSN or catalog number, by type.
+         */
+        public Builder add(int id, ItemType type, String title, String creator, String identifier,
+                           MediaTypeImpl mediaType, boolean isAvailable) {
+            if (size > 0 && id <= lastId) {
+                throw new IllegalArgumentException("Item ids must be added in increasing order: " + id);
+            }
+            int mediaTypeCode = mediaType == null ? -1 : mediaTypeCode(mediaType);
+            int creatorCode = creator == null ? -1 : creatorCodes.computeIfAbsent(creator, key -> {
+                writer.addCreator(key, SearchKeys.fold(key));
+                return creatorCodes.size();
+            });
+            writer.add(id, type, mediaTypeCode, creatorCode, title, SearchKeys.fold(title), identifier, isAvailable);
+            lastId = id;
+            size++;
+            return this;
+        }
+
+        Builder add(Row row) {
+            return add(row.id(), row.type(), row.title(), row.creator(), row.identifier(), row.mediaType(),
+                row.isAvailable());
+        }
+
+        public CatalogColumns build() {
+            return new CatalogColumns(writer.build());
+        }
+
+        private int mediaTypeCode(MediaTypeImpl mediaType) {
+            Integer code = mediaTypeCodes.get(mediaType.getType());
+            if (code == null) {
+                if (mediaTypeCodes.size() == Byte.MAX_VALUE) {
+                    throw new IllegalStateException("More than " + Byte.MAX_VALUE + " media types");
+                }
+                code = mediaTypeCodes.size();
+                writer.addMediaType(mediaType);
+                mediaTypeCodes.put(mediaType.getType(), code);
+            }
+            return code;
+        }
+    }
+}
@@ -0,0 +1,422 @@
+package se.fulkopinglibrary.fulkopinglibrary.services;
+
+import se.fulkopinglibrary.fulkopinglibrary.models.Book;
+import se.fulkopinglibrary.fulkopinglibrary.models.ItemType;
+import se.fulkopinglibrary.fulkopinglibrary.models.LibraryItem;
+import se.fulkopinglibrary.fulkopinglibrary.models.Magazine;
+import se.fulkopinglibrary.fulkopinglibrary.models.MediaItem;
+import se.fulkopinglibrary.fulkopinglibrary.models.MediaTypeImpl;
+import se.fulkopinglibrary.fulkopinglibrary.utils.LatencyHistogram;
+import se.fulkopinglibrary.fulkopinglibrary.utils.LoggerUtil;
+import se.fulkopinglibrary.fulkopinglibrary.utils.MetricsRegistry;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Listings and single-type searches served from an in-memory {@link CatalogColumns} copy of
+ * {@code library_items}, instead of a query per page.
+ *
+ * <p>The copy is built from one streamed scan of the table on first use, and again after an
+ * import. Every {@code -Dlibrary.catalog.ttlSeconds} (default 300) it is refreshed with the
+ * rows whose {@code updated_at} is at or after the database time taken before the previous
+ * read, less {@code -Dlibrary.catalog.refreshSlackSeconds} (default 60): a transaction that
+ * commits after that read can carry an earlier {@code updated_at}, and the overlap picks its
+ * rows up as long as it committed within the slack. If the item ids then differ from the
+ * table's by count, sum or xor, a row was deleted and the whole table is read again; so it
+ * is every {@code -Dlibrary.catalog.reloadSeconds} (default 86400) regardless, which bounds
+ * anything the refreshes miss. Borrowing and returning update its availability as the transaction
+ * commits, so listings show current availability; changes made while the table is being
+ * read are applied again to the new copy, so a read that started before them cannot undo
+ * them. Other edits show up with the next refresh. Identifier searches still go through {@link IdentifierIndex} and read the item by
+ * primary key. {@link FacetIndex} and {@link IdentifierIndex} are built from this copy
+ * rather than reading the table themselves.</p>
+ *
+ * <p>{@link #save()} writes the copy to {@code -Dlibrary.catalog.snapshotFile} (default
+ * {@code data/catalog.snapshot}, empty to turn off) with {@link CatalogSnapshotFile}; the
+ * HTTP server does so every {@code -Dlibrary.catalog.saveSeconds} (default 600) and on
+ * shutdown. On first use after a restart the file is mapped and refreshed like above, so
+ * only the rows changed since it was written are read from the database.
+ * {@code -Dlibrary.catalog.inMemory=false} sends listings and searches to the database
+ * again.</p>
+ *
+ * <p>With {@code -Dlibrary.catalog.offHeap=true} the rows are kept in an
+ * {@link OffHeapCatalogStore} instead of heap arrays, for catalogs large enough that their
+ * share of the heap lengthens collections. Either way, a snapshot restored from the file
+ * is served from the mapped file until a refresh brings in more than availability
+ * changes.</p>
+ */
+public class CatalogSnapshot {
+    private static final Logger logger = LoggerUtil.getLogger(CatalogSnapshot.class);
+
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("library.catalog.inMemory", "true"));
+    private static final boolean OFF_HEAP = Boolean.getBoolean("library.catalog.offHeap");
+    private static final long TTL_NANOS = TimeUnit.SECONDS.toNanos(Long.getLong("library.catalog.ttlSeconds", 300));
+    private static final String SNAPSHOT_FILE = System.getProperty("library.catalog.snapshotFile", "data/catalog.snapshot");
+    private static final long SAVE_SECONDS = Long.getLong("library.catalog.saveSeconds", 600);
+    private static final long SLACK_MILLIS = TimeUnit.SECONDS.toMillis(Long.getLong("library.catalog.refreshSlackSeconds", 60));
+    private static final long RELOAD_MILLIS = TimeUnit.SECONDS.toMillis(Long.getLong("library.catalog.reloadSeconds", 86_400));
+
+    private static final String ITEM_COLUMNS = """
+        SELECT li.item_id, li.type, li.title, li.author, li.isbn, li.publisher, li.issn,
+               li.director, li.catalog_number, li.is_available, mt.type_name, mt.loan_period_days
+        FROM library_items li
+        LEFT JOIN media_types mt ON li.media_type_id = mt.media_type_id
+        """;
+
+    private static final LatencyHistogram BROWSES = MetricsRegistry.timer("catalog.browse");
+    private static final LatencyHistogram SEARCHES = MetricsRegistry.timer("catalog.search");
+
+    // watermark: database time before the rows were read; readAllMillis: wall time of the last full read
+    private record Snapshot(CatalogColumns columns, long loadedAtNanos, Timestamp watermark, long readAllMillis) {
+    }
+
+    private static volatile Snapshot snapshot;
+    private static boolean restoreAttempted;
+    // Bumped by availability changes, so save() can skip an unchanged snapshot
+    private static final AtomicLong changes = new AtomicLong();
+    private static final Object SAVE_LOCK = new Object();
+    private static Snapshot saved;
+    private static long savedChanges;
+    // Availability changes made while load() or refresh() reads the table, replayed when it swaps
+    private static final Object AVAILABILITY_LOCK = new Object();
+    private static Map<Integer, Boolean> availabilityDuringRead;
+
+    static {
+        MetricsRegistry.gauge("catalog.items", () -> {
+            Snapshot current = snapshot;
+            return current == null ? 0 : current.columns().size();
+        });
+        MetricsRegistry.gauge("catalog.bytes", () -> {
+            Snapshot current = snapshot;
+            return current == null ? 0 : current.columns().footprintBytes();
+        });
+        MetricsRegistry.gauge("catalog.offHeapBytes", () -> {
+            Snapshot current = snapshot;
+            return current == null ? 0 : current.columns().offHeapBytes();
+        });
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    // How often the server should call save(), in seconds; 0 when there is no snapshot file
+    public static long saveIntervalSeconds() {
+        return ENABLED && !SNAPSHOT_FILE.isEmpty() ? SAVE_SECONDS : 0;
+    }
+
+    // One page of the items of a type, sorted like the listings in the type's service
+    public static List<LibraryItem> browse(ItemType type, int sortOption, int page, int pageSize) throws SQLException {
+        CatalogColumns columns = currentColumns();
+        long startTime = System.nanoTime();
+        try {
+            return columns.browse(type, sortOption, page, pageSize);
+        } finally {
+            BROWSES.record(System.nanoTime() - startTime);
+        }
+    }
+
+    /**
+     * One page of a search of one item type, matching like the type's search in
+     * {@link BookService}, {@link MagazineService} or {@link MediaService}. Like
+     * {@link #browse}, it only takes a pooled connection to look up an identifier or to load
+     * or refresh the copy.
+     */
+    public static List<LibraryItem> search(ItemType type, String field, String searchTerm,
+                                           int sortOption, int page, int pageSize) throws SQLException {
+        String term = searchTerm == null ? "" : searchTerm.trim();
+        IdentifierIndex.Kind kind = switch (type) {
+            case BOOK -> IdentifierIndex.Kind.ISBN;
+            case MAGAZINE -> IdentifierIndex.Kind.ISSN;
+            case MEDIA -> IdentifierIndex.Kind.CATALOG_NUMBER;
+        };
+        // Catalog number searches match fragments as well, like MediaService's
+        if (field.equals("general") || (kind != IdentifierIndex.Kind.CATALOG_NUMBER
+                && field.equals(kind.name().toLowerCase(Locale.ROOT)))) {
+            IdentifierIndex.Identifier parsed = IdentifierIndex.parse(term);
+            if (parsed != null && parsed.kind() == kind) {
+                List<LibraryItem> found = AsyncLibraryService.callWithConnection(connection -> {
+                    IdentifierIndex.Identifier identifier = IdentifierIndex.match(connection, term);
+                    if (identifier == null) {
+                        return null;
+                    }
+                    LibraryItem item = page == 1 ? IdentifierIndex.find(connection, identifier) : null;
+                    return isOfType(item, type) ? List.of(item) : List.of();
+                });
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+
+        CatalogColumns columns = currentColumns();
+        long startTime = System.nanoTime();
+        try {
+            return columns.search(type, field, term, sortOption, page, pageSize);
+        } finally {
+            SEARCHES.record(System.nanoTime() - startTime);
+        }
+    }
+
+    // The current copy, brought up to date as for a listing; FacetIndex and IdentifierIndex are built from it
+    static CatalogColumns columns(Connection connection) throws SQLException {
+        return snapshot(connection).columns();
+    }
+
+    // The copy, taking a pooled connection only when it has to be loaded or refreshed
+    private static CatalogColumns currentColumns() throws SQLException {
+        Snapshot current = snapshot;
+        if (current != null && System.nanoTime() - current.loadedAtNanos() <= TTL_NANOS) {
+            return current.columns();
+        }
+        return AsyncLibraryService.callWithConnection(CatalogSnapshot::columns);
+    }
+
+    // The copy as it is, without a refresh; null before the first load or after invalidate()
+    static CatalogColumns loadedColumns() {
+        Snapshot current = snapshot;
+        return current == null ? null : current.columns();
+    }
+
+    // Called once a borrow or return has committed
+    static void setAvailable(int itemId, boolean available) {
+        synchronized (AVAILABILITY_LOCK) {
+            if (availabilityDuringRead != null) {
+                availabilityDuringRead.put(itemId, available);
+            }
+            Snapshot current = snapshot;
+            if (current != null) {
+                current.columns().setAvailable(itemId, available);
+                changes.incrementAndGet();
+            }
+        }
+    }
+
+    // Writes the current snapshot to the snapshot file, unless it has not changed since the last save
+    public static void save() {
+        synchronized (SAVE_LOCK) {
+            Snapshot current = snapshot;
+            long changeCount = changes.get();
+            if (SNAPSHOT_FILE.isEmpty() || current == null || (current == saved && changeCount == savedChanges)) {
+                return;
+            }
+            long startTime = System.nanoTime();
+            try {
+                CatalogSnapshotFile.write(Path.of(SNAPSHOT_FILE), current.columns(), current.watermark(),
+                    current.readAllMillis());
+                saved = current;
+                savedChanges = changeCount;
+                logger.fine(() -> String.format("Catalog snapshot saved to %s in %d ms",
+                    SNAPSHOT_FILE, (System.nanoTime() - startTime) / 1_000_000));
+            } catch (IOException | RuntimeException e) {
+                logger.warning("Could not save catalog snapshot to " + SNAPSHOT_FILE + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // Rebuild the snapshot from the database
+    public static void load(Connection connection) throws SQLException {
+        long startTime = System.nanoTime();
+        long readAllMillis = System.currentTimeMillis();
+        recordAvailability();
+        Timestamp watermark = databaseTime(connection);
+        CatalogColumns.Builder builder = new CatalogColumns.Builder(OFF_HEAP);
+        try (Statement statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            statement.setFetchSize(Integer.MIN_VALUE);
+            try (ResultSet rs = statement.executeQuery(ITEM_COLUMNS + "ORDER BY li.item_id")) {
+                while (rs.next()) {
+                    builder.add(row(rs));
+                }
+            }
+        }
+        CatalogColumns columns = builder.build();
+        publish(new Snapshot(columns, System.nanoTime(), watermark, readAllMillis));
+        logger.fine(() -> String.format("Catalog snapshot loaded: %d items, %d KB on heap, %d KB off heap, in %d ms",
+            columns.size(), columns.footprintBytes() / 1024, columns.offHeapBytes() / 1024,
+            (System.nanoTime() - startTime) / 1_000_000));
+    }
+
+    // Brings a snapshot up to date with the rows changed since its watermark
+    private static void refresh(Connection connection, CatalogColumns columns, Timestamp since, long readAllMillis)
+            throws SQLException {
+        long startTime = System.nanoTime();
+        recordAvailability();
+        Timestamp watermark = databaseTime(connection);
+        List<CatalogColumns.Row> changed = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(
+                ITEM_COLUMNS + "WHERE li.updated_at >= ? ORDER BY li.item_id")) {
+            statement.setTimestamp(1, new Timestamp(since.getTime() - SLACK_MILLIS));
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    changed.add(row(rs));
+                }
+            }
+        }
+        CatalogColumns refreshed;
+        if (changed.isEmpty() || columns.updateInPlace(changed)) {
+            // FacetIndex is built from these columns and only rebuilt when they are replaced
+            for (CatalogColumns.Row row : changed) {
+                FacetIndex.setAvailable(row.id(), row.isAvailable());
+            }
+            refreshed = columns;
+        } else {
+            refreshed = columns.merge(changed, OFF_HEAP);
+        }
+        if (!sameItemIds(connection, refreshed)) {
+            logger.info("Catalog snapshot is missing deleted rows, reading the whole catalog");
+            load(connection);
+            return;
+        }
+        publish(new Snapshot(refreshed, System.nanoTime(), watermark, readAllMillis));
+        logger.fine(() -> String.format("Catalog snapshot refreshed: %d changed rows, %d items, in %d ms",
+            changed.size(), refreshed.size(), (System.nanoTime() - startTime) / 1_000_000));
+    }
+
+    // The snapshot file brought up to date, or false if there is no usable file
+    private static boolean restore(Connection connection) throws SQLException {
+        if (SNAPSHOT_FILE.isEmpty()) {
+            return false;
+        }
+        long startTime = System.nanoTime();
+        CatalogSnapshotFile.Loaded loaded;
+        try {
+            loaded = CatalogSnapshotFile.read(Path.of(SNAPSHOT_FILE));
+        } catch (IOException | RuntimeException e) {
+            logger.warning("Could not read catalog snapshot " + SNAPSHOT_FILE + ": " + e.getMessage());
+            return false;
+        }
+        if (loaded == null) {
+            return false;
+        }
+        if (System.currentTimeMillis() - loaded.readAllMillis() > RELOAD_MILLIS) {
+            logger.info(() -> "Catalog snapshot " + SNAPSHOT_FILE + " is due a full read, not restoring it");
+            return false;
+        }
+        refresh(connection, loaded.columns(), loaded.watermark(), loaded.readAllMillis());
+        logger.info(() -> String.format("Catalog snapshot restored from %s (written %s): %d items in %d ms",
+            SNAPSHOT_FILE, loaded.watermark(), snapshot.columns().size(), (System.nanoTime() - startTime) / 1_000_000));
+        return true;
+    }
+
+    // Starts keeping the availability changes made from here until the next publish()
+    private static void recordAvailability() {
+        synchronized (AVAILABILITY_LOCK) {
+            availabilityDuringRead = new HashMap<>();
+        }
+    }
+
+    // Swaps in a snapshot with the availability changes made since its read began applied again
+    private static void publish(Snapshot next) {
+        synchronized (AVAILABILITY_LOCK) {
+            Map<Integer, Boolean> recorded = availabilityDuringRead;
+            availabilityDuringRead = null;
+            if (recorded != null) {
+                recorded.forEach((itemId, available) -> {
+                    next.columns().setAvailable(itemId, available);
+                    FacetIndex.setAvailable(itemId, available);
+                });
+            }
+            snapshot = next;
+        }
+    }
+
+    // Forces a rebuild on next use, e.g. after a bulk import
+    public static void invalidate() {
+        snapshot = null;
+    }
+
+    private static Snapshot snapshot(Connection connection) throws SQLException {
+        Snapshot current = snapshot;
+        if (current == null || System.nanoTime() - current.loadedAtNanos() > TTL_NANOS) {
+            synchronized (CatalogSnapshot.class) {
+                current = snapshot;
+                try {
+                    if (current == null) {
+                        boolean restored = !restoreAttempted && restore(connection);
+                        restoreAttempted = true;
+                        if (!restored) {
+                            load(connection);
+                        }
+                    } else if (System.currentTimeMillis() - current.readAllMillis() > RELOAD_MILLIS) {
+                        load(connection);
+                    } else if (System.nanoTime() - current.loadedAtNanos() > TTL_NANOS) {
+                        refresh(connection, current.columns(), current.watermark(), current.readAllMillis());
+                    }
+                } finally {
+                    // A read that failed leaves the old snapshot, which already has the changes
+                    synchronized (AVAILABILITY_LOCK) {
+                        availabilityDuringRead = null;
+                    }
+                }
+                current = snapshot;
+            }
+        }
+        return current;
+    }
+
+    private static CatalogColumns.Row row(ResultSet rs) throws SQLException {
+        ItemType type = ItemType.valueOf(rs.getString("type"));
+        String typeName = rs.getString("type_name");
+        return new CatalogColumns.Row(rs.getInt("item_id"), type, rs.getString("title"),
+            switch (type) {
+                case BOOK -> rs.getString("author");
+                case MAGAZINE -> rs.getString("publisher");
+                case MEDIA -> rs.getString("director");
+            },
+            switch (type) {
+                case BOOK -> rs.getString("isbn");
+                case MAGAZINE -> rs.getString("issn");
+                case MEDIA -> rs.getString("catalog_number");
+            },
+            typeName == null ? null : new MediaTypeImpl(typeName, rs.getInt("loan_period_days")),
+            rs.getBoolean("is_available"));
+    }
+
+    private static Timestamp databaseTime(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT CURRENT_TIMESTAMP")) {
+            rs.next();
+            return rs.getTimestamp(1);
+        }
+    }
+
+    // Compares the ids by count, sum and xor, which the primary key answers without reading the rows
+    private static boolean sameItemIds(Connection connection, CatalogColumns columns) throws SQLException {
+        long sum = 0;
+        long xor = 0;
+        for (int row = 0; row < columns.size(); row++) {
+            int id = columns.itemId(row);
+            sum += id;
+            xor ^= id;
+        }
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(
+                 "SELECT COUNT(*), COALESCE(SUM(item_id), 0), BIT_XOR(item_id) FROM library_items")) {
+            rs.next();
+            return rs.getInt(1) == columns.size() && rs.getLong(2) == sum && rs.getLong(3) == xor;
+        }
+    }
+
+    private static boolean isOfType(LibraryItem item, ItemType type) {
+        return switch (type) {
+            case BOOK -> item instanceof Book;
+            case MAGAZINE -> item instanceof Magazine;
+            case MEDIA -> item instanceof MediaItem;
+        };
+    }
+}
@@ -0,0 +1,260 @@
+package se.fulkopinglibrary.fulkopinglibrary.services;
+
+import se.fulkopinglibrary.fulkopinglibrary.models.MediaTypeImpl;
+import se.fulkopinglibrary.fulkopinglibrary.utils.LoggerUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.logging.Logger;
+import java.util.zip.CRC32C;
+
+/**
+ * Saves a {@link CatalogColumns} snapshot to a file in the {@link OffHeapCatalogStore}
+ * layout and maps it back, so a restart does not have to read the whole catalog again.
+ *
+ * <p>The file is a 64-byte little-endian header followed by the media types, the slots, the
+ * creator table and the string area, each starting on an 8-byte boundary:</p>
+ * <pre>
+ *   0  magic "FKCS"
+ *   4  format version
+ *   8  watermark: the database time before the snapshot's rows were read, epoch millis
+ *  16  items
+ *  20  creators
+ *  24  media types
+ *  28  length of the media types, slots, creators and strings areas (4 ints)
+ *  44  reserved
+ *  48  CRC32C of the whole file, with these 8 bytes taken as zero
+ *  56  wall time of the last full read of the catalog, epoch millis; 0 for unknown
+ * </pre>
+ * <p>A file with another magic or version, a wrong length or a bad checksum is ignored and
+ * the catalog read from the database. Files are written to a temporary file and moved into
+ * place, so a crash mid-write leaves the previous file. A heap store is written in this
+ * layout directly, without first being copied off the heap. Reading maps the file privately:
+ * availability changes made afterwards stay in memory and never reach the file.</p>
+ */
+final class CatalogSnapshotFile {
+    private static final Logger logger = LoggerUtil.getLogger(CatalogSnapshotFile.class);
+
+    private static final int MAGIC = 0x53434B46;
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 64;
+
+    record Loaded(CatalogColumns columns, Timestamp watermark, long readAllMillis) {
+    }
+
+    private CatalogSnapshotFile() {
+    }
+
+    // The snapshot in the file, or null if there is none or it cannot be used
+    static Loaded read(Path path) throws IOException {
+        MappedByteBuffer file;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_BYTES || fileSize > Integer.MAX_VALUE) {
+                logger.warning(() -> "Ignoring catalog snapshot " + path + ": unexpected size " + fileSize + " bytes");
+                return null;
+            }
+            file = channel.map(FileChannel.MapMode.PRIVATE, 0, fileSize);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        file.order(OffHeapCatalogStore.ORDER);
+
+        int version = file.getInt(4);
+        if (file.getInt(0) != MAGIC || version != VERSION) {
+            logger.warning(() -> "Ignoring catalog snapshot " + path + ": not a version " + VERSION + " snapshot");
+            return null;
+        }
+        int size = file.getInt(16);
+        int creatorCount = file.getInt(20);
+        int mediaTypeCount = file.getInt(24);
+        int[] lengths = {file.getInt(28), file.getInt(32), file.getInt(36), file.getInt(40)};
+        long expected = HEADER_BYTES;
+        for (int length : lengths) {
+            expected += length < 0 ? Integer.MAX_VALUE : align(length);
+        }
+        if (expected != file.capacity() || lengths[1] != size * OffHeapCatalogStore.SLOT_BYTES
+                || lengths[2] != creatorCount * 8) {
+            logger.warning(() -> "Ignoring catalog snapshot " + path + ": section lengths do not match the file");
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).put(0, file, 0, HEADER_BYTES).putLong(48, 0);
+        CRC32C checksum = new CRC32C();
+        checksum.update(header);
+        checksum.update(file.slice(HEADER_BYTES, file.capacity() - HEADER_BYTES));
+        if (checksum.getValue() != file.getLong(48)) {
+            logger.warning(() -> "Ignoring catalog snapshot " + path + ": checksum mismatch");
+            return null;
+        }
+
+        int offset = HEADER_BYTES;
+        ByteBuffer media = file.slice(offset, lengths[0]).order(OffHeapCatalogStore.ORDER);
+        MediaTypeImpl[] mediaTypes = new MediaTypeImpl[mediaTypeCount];
+        for (int i = 0; i < mediaTypeCount; i++) {
+            byte[] name = new byte[media.getInt()];
+            media.get(name);
+            mediaTypes[i] = new MediaTypeImpl(new String(name, StandardCharsets.UTF_8), media.getInt());
+        }
+        offset += align(lengths[0]);
+        ByteBuffer slots = file.slice(offset, lengths[1]);
+        offset += align(lengths[1]);
+        ByteBuffer creators = file.slice(offset, lengths[2]);
+        offset += align(lengths[2]);
+        ByteBuffer strings = file.slice(offset, lengths[3]);
+
+        OffHeapCatalogStore store = new OffHeapCatalogStore(size, creatorCount, slots, creators, strings, mediaTypes);
+        return new Loaded(CatalogColumns.of(store), new Timestamp(file.getLong(8)), file.getLong(56));
+    }
+
+    /**
+     * Writes the snapshot, streaming the rows of either store through a small buffer: an
+     * off-heap store's areas are copied as they are, a heap store is laid out as it is written.
+     */
+    static void write(Path path, CatalogColumns columns, Timestamp watermark, long readAllMillis) throws IOException {
+        CatalogStore store = columns.store();
+        OffHeapCatalogStore offHeap = store instanceof OffHeapCatalogStore offHeapStore ? offHeapStore : null;
+        HeapCatalogStore.OffHeapLayout layout = offHeap == null ? ((HeapCatalogStore) store).offHeapLayout() : null;
+        MediaTypeImpl[] mediaTypes = offHeap != null ? offHeap.mediaTypes() : ((HeapCatalogStore) store).mediaTypes();
+        ByteBuffer media = mediaTypes(mediaTypes);
+        int[] lengths = offHeap != null
+            ? new int[] {media.capacity(), offHeap.slots().capacity(), offHeap.creators().capacity(), offHeap.strings().capacity()}
+            : new int[] {media.capacity(), layout.slotBytes(), layout.creatorBytes(), layout.stringBytes()};
+
+        // The checksum is filled in once the rest has been written
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(OffHeapCatalogStore.ORDER);
+        header.putInt(0, MAGIC)
+            .putInt(4, VERSION)
+            .putLong(8, watermark.getTime())
+            .putInt(16, store.size())
+            .putInt(20, store.creatorCount())
+            .putInt(24, mediaTypes.length);
+        for (int i = 0; i < lengths.length; i++) {
+            header.putInt(28 + 4 * i, lengths[i]);
+        }
+        header.putLong(56, readAllMillis);
+
+        Path directory = path.toAbsolutePath().getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            Output out = new Output(channel);
+            out.put(header);
+            out.put(media).pad();
+            // Slots and creators are whole multiples of 8 bytes, so only the strings need padding
+            if (offHeap != null) {
+                out.put(offHeap.slots()).put(offHeap.creators()).put(offHeap.strings());
+            } else {
+                layout.writeTo(out);
+            }
+            out.pad().flush();
+            ByteBuffer checksum = ByteBuffer.allocate(8).order(OffHeapCatalogStore.ORDER).putLong(0, out.checksum.getValue());
+            while (checksum.hasRemaining()) {
+                channel.write(checksum, 48 + checksum.position());
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Each as the UTF-8 length and bytes of the name, then the loan period in days
+    private static ByteBuffer mediaTypes(MediaTypeImpl[] mediaTypes) {
+        byte[][] names = new byte[mediaTypes.length][];
+        int length = 0;
+        for (int i = 0; i < mediaTypes.length; i++) {
+            names[i] = mediaTypes[i].getType().getBytes(StandardCharsets.UTF_8);
+            length += 8 + names[i].length;
+        }
+        ByteBuffer media = ByteBuffer.allocate(length).order(OffHeapCatalogStore.ORDER);
+        for (int i = 0; i < mediaTypes.length; i++) {
+            media.putInt(names[i].length).put(names[i]).putInt(mediaTypes[i].getLoanDurationDays());
+        }
+        return media.flip();
+    }
+
+    /**
+     * Writes the file in order through one small buffer, checksumming exactly the bytes
+     * written; availability can change while a store is read, and the file stays consistent
+     * with its checksum regardless.
+     */
+    static final class Output {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024).order(OffHeapCatalogStore.ORDER);
+        private final CRC32C checksum = new CRC32C();
+        private long written;
+
+        private Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        Output putInt(int value) throws IOException {
+            if (buffer.remaining() < 4) {
+                flush();
+            }
+            buffer.putInt(value);
+            return this;
+        }
+
+        Output put(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+                int chunk = Math.min(length, buffer.remaining());
+                buffer.put(bytes, offset, chunk);
+                offset += chunk;
+                length -= chunk;
+            }
+            return this;
+        }
+
+        Output put(ByteBuffer source) throws IOException {
+            int position = source.position();
+            while (position < source.limit()) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+                int chunk = Math.min(source.limit() - position, buffer.remaining());
+                buffer.put(source.slice(position, chunk));
+                position += chunk;
+            }
+            return this;
+        }
+
+        // Zeros up to the next 8-byte boundary of the file
+        private Output pad() throws IOException {
+            while (((written + buffer.position()) & 7) != 0) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+                buffer.put((byte) 0);
+            }
+            return this;
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            checksum.update(buffer.duplicate());
+            written += buffer.remaining();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    private static int align(int length) {
+        return (length + 7) & ~7;
+    }
+}
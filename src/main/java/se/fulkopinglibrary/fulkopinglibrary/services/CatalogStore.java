@@ -0,0 +1,64 @@
+package se.fulkopinglibrary.fulkopinglibrary.services;
+
+import se.fulkopinglibrary.fulkopinglibrary.models.ItemType;
+import se.fulkopinglibrary.fulkopinglibrary.models.MediaTypeImpl;
+
+import java.nio.IntBuffer;
+
+/**
+ * The rows of a {@link CatalogColumns} snapshot, read field by field.
+ *
+ * <p>Rows are numbered from 0 in item id order. The creator is the author, publisher or
+ * director and the identifier the ISBN, ISSN or catalog number, by type; each distinct
+ * creator has a code from 0 to {@link #creatorCount()}. Keys are the folded forms from
+ * {@link se.fulkopinglibrary.fulkopinglibrary.utils.SearchKeys}, compared as UTF-8 bytes so
+ * no strings are created while matching. Only availability changes once a store is built.</p>
+ */
+public interface CatalogStore {
+
+    int size();
+
+    // The row of an item, or a negative number if it is not in the store
+    int row(int itemId);
+
+    int id(int row);
+
+    ItemType type(int row);
+
+    MediaTypeImpl mediaType(int row);
+
+    String title(int row);
+
+    String identifier(int row);
+
+    // -1 for none
+    int creatorCode(int row);
+
+    int creatorCount();
+
+    String creator(int code);
+
+    boolean isAvailable(int row);
+
+    void setAvailable(int row, boolean isAvailable);
+
+    boolean titleKeyStartsWith(int row, byte[] prefix);
+
+    boolean titleKeyContains(int row, byte[] needle);
+
+    boolean creatorKeyStartsWith(int code, byte[] prefix);
+
+    boolean creatorKeyContains(int code, byte[] needle);
+
+    // The needle is lower case; only ASCII letters are folded, which covers identifiers
+    boolean identifierEqualsIgnoreCase(int row, byte[] needle);
+
+    boolean identifierContainsIgnoreCase(int row, byte[] needle);
+
+    // An empty column for a row order, kept where the rows are
+    IntBuffer newOrder();
+
+    long heapBytes();
+
+    long offHeapBytes();
+}
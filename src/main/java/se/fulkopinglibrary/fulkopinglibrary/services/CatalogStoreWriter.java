@@ -0,0 +1,21 @@
+package se.fulkopinglibrary.fulkopinglibrary.services;
+
+import se.fulkopinglibrary.fulkopinglibrary.models.ItemType;
+import se.fulkopinglibrary.fulkopinglibrary.models.MediaTypeImpl;
+
+/**
+ * Fills a {@link CatalogStore} for {@link CatalogColumns.Builder}, which checks the id order
+ * and hands out the creator and media type codes in the order they are added here.
+ */
+interface CatalogStoreWriter {
+
+    void addMediaType(MediaTypeImpl mediaType);
+
+    void addCreator(String creator, String creatorKey);
+
+    // A code of -1 means none
+    void add(int id, ItemType type, int mediaTypeCode, int creatorCode, String title, String titleKey,
+             String identifier, boolean isAvailable);
+
+    CatalogStore build();
+}
@@ -0,0 +1,235 @@
+package se.fulkopinglibrary.fulkopinglibrary.services;
+
+import se.fulkopinglibrary.fulkopinglibrary.utils.JsonWriter;
+import se.fulkopinglibrary.fulkopinglibrary.utils.LoggerUtil;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams whole catalog tables to CSV or JSON Lines files.
+ *
+ * <p>Rows are pulled one at a time from the MySQL driver (streaming result set) and written
+ * straight to a buffered, optionally gzip-compressed writer, so memory use does not grow with
+ * the size of the table. The connection passed in is busy until the export has finished and
+ * should not be shared with other work in the meantime.</p>
+ */
+public class ExportService {
+    private static final Logger logger = LoggerUtil.getLogger(ExportService.class);
+
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    // Tables that may be exported, with the column used for a stable output order
+    private static final Map<String, String> EXPORTABLE_TABLES = Map.of(
+        "library_items", "item_id",
+        "loans", "loan_id",
+        "reservations", "reservation_id"
+    );
+
+    public enum Format {
+        CSV(".csv"),
+        JSONL(".jsonl");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    /**
+     * Outcome of a single table export.
+     */
+    public record ExportResult(String table, Path file, long rows, long elapsedMillis) {
+        public double rowsPerSecond() {
+            return elapsedMillis == 0 ? rows : rows * 1000.0 / elapsedMillis;
+        }
+    }
+
+    // Export every supported table into the given directory
+    public static List<ExportResult> exportAll(Connection connection, Path directory, Format format, boolean gzip)
+            throws SQLException, IOException {
+        Files.createDirectories(directory);
+        List<ExportResult> results = new ArrayList<>();
+        for (String table : List.of("library_items", "loans", "reservations")) {
+            String fileName = table + format.getExtension() + (gzip ? ".gz" : "");
+            results.add(exportTable(connection, table, directory.resolve(fileName), format, gzip));
+        }
+        return results;
+    }
+
+    // Export a single table to a file
+    public static ExportResult exportTable(Connection connection, String table, Path file, Format format, boolean gzip)
+            throws SQLException, IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            ExportResult result = exportTable(connection, table, out, format, gzip);
+            return new ExportResult(table, file, result.rows(), result.elapsedMillis());
+        }
+    }
+
+    // Export a single table to an arbitrary stream; the stream is flushed but left open
+    public static ExportResult exportTable(Connection connection, String table, OutputStream out, Format format, boolean gzip)
+            throws SQLException, IOException {
+        String orderColumn = EXPORTABLE_TABLES.get(table);
+        if (orderColumn == null) {
+            throw new IllegalArgumentException("Invalid table. Must be one of: " + EXPORTABLE_TABLES.keySet());
+        }
+
+        String query = "SELECT * FROM " + table + " ORDER BY " + orderColumn;
+        long startTime = System.nanoTime();
+        long rows = 0;
+
+        GZIPOutputStream gzipStream = gzip ? new GZIPOutputStream(out, WRITE_BUFFER_SIZE) : null;
+        Writer writer = new BufferedWriter(
+            new OutputStreamWriter(gzip ? gzipStream : out, StandardCharsets.UTF_8), WRITE_BUFFER_SIZE);
+        JsonWriter json = format == Format.JSONL ? new JsonWriter(writer) : null;
+
+        try (PreparedStatement statement = connection.prepareStatement(
+                query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            // Integer.MIN_VALUE makes Connector/J stream rows instead of buffering the whole result
+            statement.setFetchSize(Integer.MIN_VALUE);
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                ResultSetMetaData metaData = resultSet.getMetaData();
+                int columnCount = metaData.getColumnCount();
+                String[] columns = new String[columnCount];
+                int[] kinds = new int[columnCount];
+                for (int i = 0; i < columnCount; i++) {
+                    columns[i] = metaData.getColumnLabel(i + 1);
+                    kinds[i] = jsonKind(metaData.getColumnType(i + 1));
+                }
+
+                if (format == Format.CSV) {
+                    writeCsvHeader(writer, columns);
+                }
+
+                while (resultSet.next()) {
+                    if (format == Format.CSV) {
+                        writeCsvRow(writer, resultSet, columnCount);
+                    } else {
+                        writeJsonRow(json, resultSet, columns, kinds);
+                    }
+                    rows++;
+                }
+            }
+        } finally {
+            // Flushing the JSON writer flushes the writer under it
+            if (json != null) {
+                json.flush();
+            } else {
+                writer.flush();
+            }
+            if (gzipStream != null) {
+                gzipStream.finish();
+            }
+            out.flush();
+        }
+
+        long elapsedMillis = (System.nanoTime() - startTime) / 1_000_000;
+        ExportResult result = new ExportResult(table, null, rows, elapsedMillis);
+        logger.info(() -> String.format("Exported %d rows from %s in %d ms (%.0f rows/s)",
+            result.rows(), table, result.elapsedMillis(), result.rowsPerSecond()));
+        return result;
+    }
+
+    private static final int JSON_STRING = 0;
+    private static final int JSON_NUMBER = 1;
+    private static final int JSON_BOOLEAN = 2;
+
+    private static int jsonKind(int sqlType) {
+        return switch (sqlType) {
+            case Types.TINYINT, Types.SMALLINT, Types.INTEGER, Types.BIGINT,
+                 Types.DECIMAL, Types.NUMERIC, Types.FLOAT, Types.REAL, Types.DOUBLE -> JSON_NUMBER;
+            // MySQL BOOLEAN columns are TINYINT(1), which Connector/J reports as BIT
+            case Types.BIT, Types.BOOLEAN -> JSON_BOOLEAN;
+            default -> JSON_STRING;
+        };
+    }
+
+    private static void writeCsvHeader(Writer writer, String[] columns) throws IOException {
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writeCsvField(writer, columns[i]);
+        }
+        writer.write('\n');
+    }
+
+    private static void writeCsvRow(Writer writer, ResultSet resultSet, int columnCount) throws SQLException, IOException {
+        for (int i = 1; i <= columnCount; i++) {
+            if (i > 1) {
+                writer.write(',');
+            }
+            String value = resultSet.getString(i);
+            if (value != null) {
+                writeCsvField(writer, value);
+            }
+        }
+        writer.write('\n');
+    }
+
+    // RFC 4180 quoting: only fields containing separators, quotes or line breaks are quoted
+    private static void writeCsvField(Writer writer, String value) throws IOException {
+        boolean needsQuotes = false;
+        for (int i = 0; i < value.length() && !needsQuotes; i++) {
+            char c = value.charAt(i);
+            needsQuotes = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!needsQuotes) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                writer.write('"');
+            }
+            writer.write(c);
+        }
+        writer.write('"');
+    }
+
+    private static void writeJsonRow(JsonWriter json, ResultSet resultSet, String[] columns, int[] kinds)
+            throws SQLException, IOException {
+        json.beginObject();
+        for (int i = 0; i < columns.length; i++) {
+            json.name(columns[i]);
+            if (kinds[i] == JSON_BOOLEAN) {
+                boolean value = resultSet.getBoolean(i + 1);
+                if (resultSet.wasNull()) {
+                    json.nullValue();
+                } else {
+                    json.value(value);
+                }
+            } else if (kinds[i] == JSON_NUMBER) {
+                json.value(resultSet.getBigDecimal(i + 1));
+            } else {
+                json.value(resultSet.getString(i + 1));
+            }
+        }
+        json.endObject().endLine();
+    }
+}
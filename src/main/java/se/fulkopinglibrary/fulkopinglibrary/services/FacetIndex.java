@@ -0,0 +1,363 @@
+package se.fulkopinglibrary.fulkopinglibrary.services;
+
+import se.fulkopinglibrary.fulkopinglibrary.models.ItemType;
+import se.fulkopinglibrary.fulkopinglibrary.models.LibraryItem;
+import se.fulkopinglibrary.fulkopinglibrary.models.MediaTypeImpl;
+import se.fulkopinglibrary.fulkopinglibrary.utils.CompactBitmap;
+import se.fulkopinglibrary.fulkopinglibrary.utils.LoggerUtil;
+import se.fulkopinglibrary.fulkopinglibrary.utils.MetricsRegistry;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+
+/**
+ * Facet counts (item type, media type, availability, author, publisher) for search results.
+ *
+ * <p>An in-memory snapshot of the catalog keeps one {@link CompactBitmap} of item ids per
+ * facet value. Counting a result set is then one intersection per value instead of a
+ * {@code GROUP BY} query per facet: the search runs once to find the matching ids, and
+ * {@link #count} does the rest in memory. Selected values narrow the results the same way.
+ * Each facet is counted over the results narrowed by the <em>other</em> facets' selections,
+ * so the alternatives to a selected value stay visible.</p>
+ *
+ * <p>Borrowing and returning flip the item's availability bits as the transaction commits,
+ * and an import drops the snapshot. The snapshot is built in memory from
+ * {@link CatalogSnapshot}'s copy of the catalog and again whenever that copy is replaced;
+ * availability changes its refreshes find are applied here too. Authors are counted for
+ * books and publishers for magazines, as the models carry them. With
+ * {@code -Dlibrary.catalog.inMemory=false} the snapshot reads the table itself, every
+ * {@code -Dlibrary.facets.ttlSeconds} (default 300).</p>
+ */
+public class FacetIndex {
+    private static final Logger logger = LoggerUtil.getLogger(FacetIndex.class);
+
+    private static final long TTL_NANOS = TimeUnit.SECONDS.toNanos(Long.getLong("library.facets.ttlSeconds", 300));
+    private static final int MAX_VALUES_PER_FACET = 20;
+
+    private static final MetricsRegistry.Counter COUNTS = MetricsRegistry.counter("facets.counts");
+
+    /**
+     * The facets an item can be counted and narrowed by, with the request parameter for each.
+     */
+    public enum Facet {
+        ITEM_TYPE("itemType"),
+        MEDIA_TYPE("mediaType"),
+        AVAILABLE("available"),
+        AUTHOR("author"),
+        PUBLISHER("publisher");
+
+        private final String parameter;
+
+        Facet(String parameter) {
+            this.parameter = parameter;
+        }
+
+        public String getParameter() {
+            return parameter;
+        }
+    }
+
+    /**
+     * Counts per facet value, most common first, for results narrowed to {@code total} items.
+     * {@code itemIds} holds the requested page of the matching ids, in item id order.
+     */
+    public record FacetCounts(int total, Map<Facet, Map<String, Integer>> counts, int[] itemIds) {
+    }
+
+    private static final class Snapshot {
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        final EnumMap<Facet, Map<String, CompactBitmap>> bitmaps = new EnumMap<>(Facet.class);
+        // Each item's value per facet (by ordinal), to find the bitmaps to update
+        final Map<Integer, String[]> itemValues = new HashMap<>();
+        final CompactBitmap all = new CompactBitmap();
+        final long loadedAtNanos = System.nanoTime();
+        // The catalog copy this was built from, null if read from the database
+        final CatalogColumns source;
+
+        Snapshot(CatalogColumns source) {
+            this.source = source;
+            for (Facet facet : Facet.values()) {
+                bitmaps.put(facet, new HashMap<>());
+            }
+        }
+
+        void add(int itemId, String[] values) {
+            all.add(itemId);
+            itemValues.put(itemId, values);
+            for (Facet facet : Facet.values()) {
+                String value = values[facet.ordinal()];
+                if (value != null) {
+                    bitmaps.get(facet).computeIfAbsent(value, key -> new CompactBitmap()).add(itemId);
+                }
+            }
+        }
+    }
+
+    private static volatile Snapshot snapshot;
+
+    static {
+        MetricsRegistry.gauge("facets.items", () -> {
+            Snapshot current = snapshot;
+            return current == null ? 0 : current.itemValues.size();
+        });
+    }
+
+    /**
+     * Facet counts for a result set, or for the whole catalog if {@code results} is null,
+     * narrowed by the selected values (parameter value per facet), with up to {@code limit}
+     * of the matching ids from position {@code offset}.
+     */
+    public static FacetCounts count(Connection connection, CompactBitmap results, Map<Facet, String> selections,
+                                    int offset, int limit) throws SQLException {
+        Snapshot current = snapshot(connection);
+        COUNTS.increment();
+        current.lock.readLock().lock();
+        try {
+            CompactBitmap base = results == null ? current.all : results;
+            Map<Facet, Map<String, Integer>> counts = new EnumMap<>(Facet.class);
+            for (Facet facet : Facet.values()) {
+                CompactBitmap narrowed = narrow(current, base, selections, facet);
+                counts.put(facet, countValues(current, facet, narrowed));
+            }
+            CompactBitmap matching = narrow(current, base, selections, null);
+            return new FacetCounts(matching.cardinality(), counts, matching.toArray(offset, limit));
+        } finally {
+            current.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ids of the items a search matches, without paging: one query per item type instead of
+     * one per facet. {@code type} is book, magazine, media or all; {@code field} as for the
+     * type's search.
+     */
+    public static CompactBitmap matchingIds(Connection connection, String type, String field, String term) throws SQLException {
+        if (!Arrays.asList("book", "magazine", "media", "all").contains(type)) {
+            throw new IllegalArgumentException("Unknown type: " + type);
+        }
+        CompactBitmap ids = new CompactBitmap();
+        if (type.equals("book") || type.equals("all")) {
+            addIds(ids, BookService.prepareSearch(connection, type.equals("all") ? "general" : field, term, 0, 1, Integer.MAX_VALUE));
+        }
+        if (type.equals("magazine") || type.equals("all")) {
+            addIds(ids, MagazineService.prepareSearch(connection, type.equals("all") ? "general" : field, term, 0, 1, Integer.MAX_VALUE));
+        }
+        if (type.equals("media") || type.equals("all")) {
+            addIds(ids, MediaService.prepareSearch(connection, type.equals("all") ? "general" : field, term, 0, 1, Integer.MAX_VALUE));
+        }
+        return ids;
+    }
+
+    // The items with the given ids, in item id order
+    public static List<LibraryItem> findItems(Connection connection, int[] itemIds) throws SQLException {
+        if (itemIds.length == 0) {
+            return List.of();
+        }
+        String query = """
+            SELECT li.*, mt.type_name, mt.loan_period_days
+            FROM library_items li
+            LEFT JOIN media_types mt ON li.media_type_id = mt.media_type_id
+            WHERE li.item_id IN (%s)
+            ORDER BY li.item_id""".formatted("?,".repeat(itemIds.length - 1) + "?");
+        List<LibraryItem> items = new ArrayList<>(itemIds.length);
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            for (int i = 0; i < itemIds.length; i++) {
+                statement.setInt(i + 1, itemIds[i]);
+            }
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    items.add(ItemRows.map(rs));
+                }
+            }
+        }
+        return items;
+    }
+
+    // Called once a borrow or return has committed
+    static void setAvailable(int itemId, boolean available) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return;
+        }
+        current.lock.writeLock().lock();
+        try {
+            String[] values = current.itemValues.get(itemId);
+            if (values == null) {
+                return;
+            }
+            String value = Boolean.toString(available);
+            String previous = values[Facet.AVAILABLE.ordinal()];
+            if (value.equals(previous)) {
+                return;
+            }
+            Map<String, CompactBitmap> availability = current.bitmaps.get(Facet.AVAILABLE);
+            availability.get(previous).remove(itemId);
+            availability.computeIfAbsent(value, key -> new CompactBitmap()).add(itemId);
+            values[Facet.AVAILABLE.ordinal()] = value;
+        } finally {
+            current.lock.writeLock().unlock();
+        }
+    }
+
+    // Rebuild the snapshot from the database
+    public static void load(Connection connection) throws SQLException {
+        String query = """
+            SELECT li.item_id, li.type, mt.type_name, li.is_available, li.author, li.publisher
+            FROM library_items li
+            LEFT JOIN media_types mt ON li.media_type_id = mt.media_type_id""";
+        Snapshot loaded = new Snapshot(null);
+        // Repeated values share one String, like the bitmap map keys
+        Map<String, String> strings = new HashMap<>();
+        try (Statement statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            statement.setFetchSize(Integer.MIN_VALUE);
+            try (ResultSet rs = statement.executeQuery(query)) {
+                while (rs.next()) {
+                    loaded.add(rs.getInt("item_id"), values(strings, rs.getString("type"), rs.getString("type_name"),
+                        rs.getBoolean("is_available"), rs.getString("author"), rs.getString("publisher")));
+                }
+            }
+        }
+        loaded(loaded);
+    }
+
+    // Builds the snapshot from the in-memory catalog instead of the table
+    private static void load(CatalogColumns columns) {
+        CatalogStore store = columns.store();
+        Snapshot loaded = new Snapshot(columns);
+        Map<String, String> strings = new HashMap<>();
+        String[] creators = new String[store.creatorCount()];
+        for (int code = 0; code < creators.length; code++) {
+            creators[code] = shared(strings, store.creator(code));
+        }
+        for (int row = 0; row < store.size(); row++) {
+            ItemType type = store.type(row);
+            MediaTypeImpl mediaType = store.mediaType(row);
+            String creator = store.creatorCode(row) < 0 ? null : creators[store.creatorCode(row)];
+            loaded.add(store.id(row), values(strings, type.name(), mediaType == null ? null : mediaType.getType(),
+                store.isAvailable(row), type == ItemType.BOOK ? creator : null, type == ItemType.MAGAZINE ? creator : null));
+        }
+        loaded(loaded);
+    }
+
+    private static void loaded(Snapshot loaded) {
+        snapshot = loaded;
+        logger.fine(() -> "Facet index loaded: " + loaded.itemValues.size() + " items, "
+            + loaded.bitmaps.get(Facet.AUTHOR).size() + " authors, "
+            + loaded.bitmaps.get(Facet.PUBLISHER).size() + " publishers");
+    }
+
+    // An item's value per facet, by ordinal
+    private static String[] values(Map<String, String> strings, String type, String mediaType, boolean available,
+                                   String author, String publisher) {
+        String[] values = new String[Facet.values().length];
+        values[Facet.ITEM_TYPE.ordinal()] = shared(strings, type);
+        values[Facet.MEDIA_TYPE.ordinal()] = shared(strings, mediaType);
+        values[Facet.AVAILABLE.ordinal()] = Boolean.toString(available);
+        values[Facet.AUTHOR.ordinal()] = shared(strings, author);
+        values[Facet.PUBLISHER.ordinal()] = shared(strings, publisher);
+        return values;
+    }
+
+    // Forces a rebuild on next use, e.g. after a bulk import
+    public static void invalidate() {
+        snapshot = null;
+    }
+
+    private static Snapshot snapshot(Connection connection) throws SQLException {
+        Snapshot current = snapshot;
+        if (CatalogSnapshot.isEnabled()) {
+            if (current == null || current.source != CatalogSnapshot.columns(connection)) {
+                synchronized (FacetIndex.class) {
+                    // Fetched again under the lock, so a slower thread cannot go back to an older copy
+                    CatalogColumns columns = CatalogSnapshot.columns(connection);
+                    current = snapshot;
+                    if (current == null || current.source != columns) {
+                        load(columns);
+                        current = snapshot;
+                    }
+                }
+            }
+            return current;
+        }
+        if (current == null || System.nanoTime() - current.loadedAtNanos > TTL_NANOS) {
+            synchronized (FacetIndex.class) {
+                current = snapshot;
+                if (current == null || System.nanoTime() - current.loadedAtNanos > TTL_NANOS) {
+                    load(connection);
+                    current = snapshot;
+                }
+            }
+        }
+        return current;
+    }
+
+    // base restricted to the selected values of every facet except the one being counted
+    private static CompactBitmap narrow(Snapshot current, CompactBitmap base, Map<Facet, String> selections, Facet except) {
+        CompactBitmap narrowed = base;
+        for (Map.Entry<Facet, String> selection : selections.entrySet()) {
+            if (selection.getKey() == except) {
+                continue;
+            }
+            CompactBitmap values = current.bitmaps.get(selection.getKey()).get(selection.getValue());
+            narrowed = values == null ? new CompactBitmap() : narrowed.and(values);
+        }
+        return narrowed;
+    }
+
+    // Looks up each result's value when there are fewer results than values (a narrow search
+    // against thousands of authors), and intersects each value's bitmap otherwise
+    private static Map<String, Integer> countValues(Snapshot current, Facet facet, CompactBitmap results) {
+        Map<String, CompactBitmap> values = current.bitmaps.get(facet);
+        List<Map.Entry<String, Integer>> counted = new ArrayList<>();
+        if (results.cardinality() < values.size()) {
+            Map<String, Integer> byValue = new HashMap<>();
+            results.forEach(itemId -> {
+                String[] itemValues = current.itemValues.get(itemId);
+                String value = itemValues == null ? null : itemValues[facet.ordinal()];
+                if (value != null) {
+                    byValue.merge(value, 1, Integer::sum);
+                }
+            });
+            counted.addAll(byValue.entrySet());
+        } else {
+            for (Map.Entry<String, CompactBitmap> value : values.entrySet()) {
+                int count = results.andCardinality(value.getValue());
+                if (count > 0) {
+                    counted.add(Map.entry(value.getKey(), count));
+                }
+            }
+        }
+        counted.sort(Map.Entry.<String, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+        Map<String, Integer> top = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> entry : counted.subList(0, Math.min(MAX_VALUES_PER_FACET, counted.size()))) {
+            top.put(entry.getKey(), entry.getValue());
+        }
+        return top;
+    }
+
+    private static void addIds(CompactBitmap ids, PreparedStatement search) throws SQLException {
+        try (PreparedStatement statement = search;
+             ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                ids.add(rs.getInt("item_id"));
+            }
+        }
+    }
+
+    private static String shared(Map<String, String> strings, String value) {
+        return value == null ? null : strings.computeIfAbsent(value, key -> key);
+    }
+}
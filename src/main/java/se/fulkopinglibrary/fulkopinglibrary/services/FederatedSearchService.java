@@ -0,0 +1,277 @@
+package se.fulkopinglibrary.fulkopinglibrary.services;
+
+import se.fulkopinglibrary.fulkopinglibrary.events.SearchEvent;
+import se.fulkopinglibrary.fulkopinglibrary.models.Book;
+import se.fulkopinglibrary.fulkopinglibrary.models.ItemType;
+import se.fulkopinglibrary.fulkopinglibrary.models.LibraryItem;
+import se.fulkopinglibrary.fulkopinglibrary.models.Magazine;
+import se.fulkopinglibrary.fulkopinglibrary.models.MediaItem;
+import se.fulkopinglibrary.fulkopinglibrary.utils.LatencyHistogram;
+import se.fulkopinglibrary.fulkopinglibrary.utils.LoggerUtil;
+import se.fulkopinglibrary.fulkopinglibrary.utils.MetricsRegistry;
+import se.fulkopinglibrary.fulkopinglibrary.utils.SearchKeys;
+import se.fulkopinglibrary.fulkopinglibrary.utils.TitleCollation;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.logging.Logger;
+
+/**
+ * Unified search across books, magazines and media.
+ *
+ * <p>By default the three type-specific searches are fanned out in parallel, each on its own
+ * pooled connection through {@link AsyncLibraryService}, so the latency is that of the slowest
+ * search rather than the sum of all three. When other requests are already waiting for
+ * connections, a single combined query is used instead so one search only occupies one
+ * connection. Either way each type contributes its best matches by relevance, which are
+ * merged into one ranked list and paged; equal scores are in Swedish title order, as
+ * {@code ORDER BY title} would give.</p>
+ */
+public class FederatedSearchService {
+    private static final Logger logger = LoggerUtil.getLogger(FederatedSearchService.class);
+    private static final LatencyHistogram SEARCHES = MetricsRegistry.timer("search.federated");
+
+    /**
+     * One page of merged results.
+     */
+    public record SearchPage(List<LibraryItem> items, int page, int pageSize, boolean hasMore) {
+    }
+
+    public enum Strategy {
+        AUTO,
+        PARALLEL,
+        COMBINED
+    }
+
+    private static final Comparator<ScoredItem> RANKING = Comparator
+        .comparingInt(ScoredItem::score).reversed()
+        .thenComparing(scored -> scored.item().getTitleSortKey(), TitleCollation.KEY_ORDER)
+        .thenComparingInt(scored -> scored.item().getId());
+
+    private record ScoredItem(LibraryItem item, int score) {
+    }
+
+    public static SearchPage search(String searchTerm, int page, int pageSize) throws SQLException {
+        return search(searchTerm, page, pageSize, Strategy.AUTO);
+    }
+
+    public static SearchPage search(String searchTerm, int page, int pageSize, Strategy strategy) throws SQLException {
+        if (searchTerm == null || searchTerm.isBlank()) {
+            throw new IllegalArgumentException("Search term cannot be empty");
+        }
+        if (page < 1 || pageSize < 1) {
+            throw new IllegalArgumentException("Page and page size must be positive");
+        }
+
+        String term = searchTerm.trim();
+        // An identifier names at most one item; one exact lookup replaces the LIKE fan-out
+        IdentifierIndex.Identifier identifier = IdentifierIndex.matchLoaded(term);
+        if (identifier != null) {
+            return searchIdentifier(identifier, page, pageSize);
+        }
+
+        // Every page up to the requested one, plus one row to know whether there is a next page
+        int limit = page * pageSize + 1;
+
+        boolean combined = strategy == Strategy.COMBINED
+            || (strategy == Strategy.AUTO && AsyncLibraryService.getQueueLength() > 0);
+
+        SearchEvent event = new SearchEvent();
+        event.begin();
+        long startTime = System.nanoTime();
+        List<LibraryItem> matches = combined ? searchCombined(term, limit) : searchParallel(term, limit);
+
+        List<ScoredItem> ranked = new ArrayList<>(matches.size());
+        String foldedTerm = SearchKeys.fold(term);
+        for (LibraryItem item : matches) {
+            ranked.add(new ScoredItem(item, score(item, foldedTerm)));
+        }
+        ranked.sort(RANKING);
+
+        int from = Math.min((page - 1) * pageSize, ranked.size());
+        int to = Math.min(from + pageSize, ranked.size());
+        List<LibraryItem> items = new ArrayList<>(to - from);
+        for (ScoredItem scored : ranked.subList(from, to)) {
+            items.add(scored.item());
+        }
+
+        long elapsedNanos = System.nanoTime() - startTime;
+        SEARCHES.record(elapsedNanos);
+        event.itemType = "ALL";
+        event.searchType = combined ? "combined" : "parallel";
+        event.termLength = term.length();
+        event.rowsReturned = items.size();
+        event.commit();
+        logger.fine(() -> String.format("Federated search (%s) for '%s' returned %d matches in %d ms",
+            combined ? "combined" : "parallel", term, matches.size(), elapsedNanos / 1_000_000));
+        return new SearchPage(items, page, pageSize, ranked.size() > to);
+    }
+
+    private static SearchPage searchIdentifier(IdentifierIndex.Identifier identifier, int page, int pageSize) throws SQLException {
+        SearchEvent event = new SearchEvent();
+        event.begin();
+        long startTime = System.nanoTime();
+        LibraryItem item = page == 1
+            ? AsyncLibraryService.callWithConnection(connection -> IdentifierIndex.find(connection, identifier))
+            : null;
+        List<LibraryItem> items = item == null ? List.of() : List.of(item);
+        SEARCHES.record(System.nanoTime() - startTime);
+        event.itemType = "ALL";
+        event.searchType = "identifier";
+        event.termLength = identifier.value().length();
+        event.rowsReturned = items.size();
+        event.commit();
+        return new SearchPage(items, page, pageSize, false);
+    }
+
+    // Fan out to the three type-specific searches, one connection each
+    private static List<LibraryItem> searchParallel(String term, int limit) throws SQLException {
+        List<CompletableFuture<List<LibraryItem>>> searches = new ArrayList<>();
+        for (ItemType type : ItemType.values()) {
+            searches.add(AsyncLibraryService.withConnection(connection -> {
+                try (PreparedStatement statement = connection.prepareStatement(rankedQuery(type))) {
+                    bindRanked(statement, 1, term, limit);
+                    return read(statement);
+                }
+            }));
+        }
+
+        try {
+            CompletableFuture.allOf(searches.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof SQLException sqlException) {
+                throw sqlException;
+            }
+            throw e;
+        }
+
+        List<LibraryItem> merged = new ArrayList<>();
+        for (CompletableFuture<List<LibraryItem>> search : searches) {
+            merged.addAll(search.join());
+        }
+        return merged;
+    }
+
+    // The same three searches as one UNION; cheaper than three queries when connections are scarce
+    private static List<LibraryItem> searchCombined(String term, int limit) throws SQLException {
+        StringBuilder query = new StringBuilder();
+        for (ItemType type : ItemType.values()) {
+            if (query.length() > 0) {
+                query.append("\nUNION ALL\n");
+            }
+            query.append('(').append(rankedQuery(type)).append(')');
+        }
+
+        // Through the slots like the parallel searches, so it waits in line instead of in the pool
+        return AsyncLibraryService.callWithConnection(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(query.toString())) {
+                int index = 1;
+                for (int i = 0; i < ItemType.values().length; i++) {
+                    index = bindRanked(statement, index, term, limit);
+                }
+                return read(statement);
+            }
+        });
+    }
+
+    /**
+     * The best {@code limit} matches of one type, by the same relevance as {@link #score}, so
+     * exact title and identifier hits are among the candidates however many rows match.
+     * Equal relevance is in title order, as {@link #RANKING} breaks ties.
+     */
+    private static String rankedQuery(ItemType type) {
+        String creatorKey = switch (type) {
+            case BOOK -> "li.author_key";
+            case MAGAZINE -> "li.publisher_key";
+            case MEDIA -> "li.director_key";
+        };
+        String identifier = switch (type) {
+            case BOOK -> "li.isbn";
+            case MAGAZINE -> "li.issn";
+            case MEDIA -> "li.catalog_number";
+        };
+        return """
+            SELECT li.item_id, li.type, li.title, li.author, li.isbn, li.publisher, li.issn,
+                   li.director, li.catalog_number, li.is_available, mt.type_name, mt.loan_period_days,
+                   (CASE WHEN %2$s = ? THEN 1000 ELSE 0 END
+                    + CASE WHEN li.title_key = ? THEN 500 WHEN li.title_key LIKE ? THEN 200
+                           WHEN li.title_key LIKE ? THEN 100 ELSE 0 END
+                    + CASE WHEN %1$s LIKE ? THEN 50 ELSE 0 END
+                    + li.is_available) AS relevance
+            FROM library_items li
+            LEFT JOIN media_types mt ON li.media_type_id = mt.media_type_id
+            WHERE li.type = '%3$s' AND (li.title_key LIKE ? OR %1$s LIKE ? OR %2$s LIKE ?)
+            ORDER BY relevance DESC, li.title, li.item_id
+            LIMIT ?""".formatted(creatorKey, identifier, type.name());
+    }
+
+    // Binds one rankedQuery from index on and returns the index after it
+    private static int bindRanked(PreparedStatement statement, int index, String term, int limit) throws SQLException {
+        String folded = SearchKeys.fold(term);
+        String keyPattern = SearchKeys.containsPattern(term);
+        // Relevance: identifier, whole title, title prefix, title anywhere, creator anywhere
+        statement.setString(index++, folded);
+        statement.setString(index++, folded);
+        statement.setString(index++, SearchKeys.prefixPattern(term));
+        statement.setString(index++, keyPattern);
+        statement.setString(index++, keyPattern);
+        // Matches: folded title and creator keys, then the identifier as typed
+        statement.setString(index++, keyPattern);
+        statement.setString(index++, keyPattern);
+        statement.setString(index++, "%" + term + "%");
+        statement.setInt(index++, limit);
+        return index;
+    }
+
+    private static List<LibraryItem> read(PreparedStatement statement) throws SQLException {
+        List<LibraryItem> items = new ArrayList<>();
+        try (ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                items.add(ItemRows.map(rs));
+            }
+        }
+        return items;
+    }
+
+    // Higher is better: identifier hits first, then title matches, then creator matches
+    private static int score(LibraryItem item, String foldedTerm) {
+        String title = SearchKeys.fold(item.getTitle());
+        String identifier = null;
+        String creator = null;
+        if (item instanceof Book book) {
+            identifier = book.getIsbn();
+            creator = book.getAuthor();
+        } else if (item instanceof Magazine magazine) {
+            identifier = magazine.getIssn();
+            creator = magazine.getPublisher();
+        } else if (item instanceof MediaItem media) {
+            identifier = media.getCatalogNumber();
+            creator = media.getDirector();
+        }
+
+        int score = 0;
+        if (identifier != null && identifier.equalsIgnoreCase(foldedTerm)) {
+            score += 1000;
+        }
+        if (title.equals(foldedTerm)) {
+            score += 500;
+        } else if (title.startsWith(foldedTerm)) {
+            score += 200;
+        } else if (title.contains(foldedTerm)) {
+            score += 100;
+        }
+        if (creator != null && SearchKeys.fold(creator).contains(foldedTerm)) {
+            score += 50;
+        }
+        if (item.isAvailable()) {
+            score += 1;
+        }
+        return score;
+    }
+}
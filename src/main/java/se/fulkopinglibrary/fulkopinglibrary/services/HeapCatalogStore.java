@@ -0,0 +1,426 @@
+package se.fulkopinglibrary.fulkopinglibrary.services;
+
+import se.fulkopinglibrary.fulkopinglibrary.models.ItemType;
+import se.fulkopinglibrary.fulkopinglibrary.models.MediaTypeImpl;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link CatalogStore} in primitive arrays on the heap: an {@code int} id, a type byte, a
+ * media type byte and an {@code int} creator code per row, availability as bits, and the
+ * title, title key and identifier of all rows packed into one UTF-8 byte array per column.
+ */
+final class HeapCatalogStore implements CatalogStore {
+    private static final ItemType[] TYPES = ItemType.values();
+
+    private final int size;
+    private final int[] ids;
+    private final byte[] types;
+    private final byte[] mediaTypes;
+    private final int[] creators;
+    private final MediaTypeImpl[] mediaTypeDictionary;
+    private final String[] creatorDictionary;
+    private final Utf8Arena creatorKeys;
+    private final Utf8Arena titles;
+    private final Utf8Arena titleKeys;
+    private final Utf8Arena identifiers;
+    private final AtomicLongArray available;
+
+    private HeapCatalogStore(Writer writer) {
+        size = writer.size;
+        ids = Arrays.copyOf(writer.ids, size);
+        types = Arrays.copyOf(writer.types, size);
+        mediaTypes = Arrays.copyOf(writer.mediaTypes, size);
+        creators = Arrays.copyOf(writer.creators, size);
+        mediaTypeDictionary = writer.mediaTypeDictionary.toArray(new MediaTypeImpl[0]);
+        creatorDictionary = writer.creatorDictionary.toArray(new String[0]);
+        creatorKeys = writer.creatorKeys.build(creatorDictionary.length);
+        titles = writer.titles.build(size);
+        titleKeys = writer.titleKeys.build(size);
+        identifiers = writer.identifiers.build(size);
+        available = new AtomicLongArray(Arrays.copyOf(writer.available, (size + 63) >>> 6));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int row(int itemId) {
+        return Arrays.binarySearch(ids, 0, size, itemId);
+    }
+
+    @Override
+    public int id(int row) {
+        return ids[row];
+    }
+
+    @Override
+    public ItemType type(int row) {
+        return TYPES[types[row]];
+    }
+
+    @Override
+    public MediaTypeImpl mediaType(int row) {
+        return mediaTypes[row] < 0 ? null : mediaTypeDictionary[mediaTypes[row]];
+    }
+
+    @Override
+    public String title(int row) {
+        return titles.get(row);
+    }
+
+    @Override
+    public String identifier(int row) {
+        return identifiers.get(row);
+    }
+
+    @Override
+    public int creatorCode(int row) {
+        return creators[row];
+    }
+
+    @Override
+    public int creatorCount() {
+        return creatorDictionary.length;
+    }
+
+    @Override
+    public String creator(int code) {
+        return creatorDictionary[code];
+    }
+
+    @Override
+    public boolean isAvailable(int row) {
+        return (available.get(row >>> 6) & (1L << row)) != 0;
+    }
+
+    @Override
+    public void setAvailable(int row, boolean isAvailable) {
+        long mask = 1L << row;
+        available.getAndUpdate(row >>> 6, bits -> isAvailable ? bits | mask : bits & ~mask);
+    }
+
+    @Override
+    public boolean titleKeyStartsWith(int row, byte[] prefix) {
+        return titleKeys.startsWith(row, prefix);
+    }
+
+    @Override
+    public boolean titleKeyContains(int row, byte[] needle) {
+        return titleKeys.contains(row, needle, false);
+    }
+
+    @Override
+    public boolean creatorKeyStartsWith(int code, byte[] prefix) {
+        return creatorKeys.startsWith(code, prefix);
+    }
+
+    @Override
+    public boolean creatorKeyContains(int code, byte[] needle) {
+        return creatorKeys.contains(code, needle, false);
+    }
+
+    @Override
+    public boolean identifierEqualsIgnoreCase(int row, byte[] needle) {
+        return identifiers.length(row) == needle.length && identifiers.contains(row, needle, true);
+    }
+
+    @Override
+    public boolean identifierContainsIgnoreCase(int row, byte[] needle) {
+        return identifiers.contains(row, needle, true);
+    }
+
+    @Override
+    public IntBuffer newOrder() {
+        return IntBuffer.allocate(size);
+    }
+
+    // Creator and media type strings are counted at the size of a short Latin-1 string
+    @Override
+    public long heapBytes() {
+        long bytes = 4L * ids.length + types.length + mediaTypes.length + 4L * creators.length
+            + 8L * available.length()
+            + titles.footprintBytes() + titleKeys.footprintBytes() + identifiers.footprintBytes()
+            + creatorKeys.footprintBytes() + 40L * mediaTypeDictionary.length;
+        for (String creator : creatorDictionary) {
+            bytes += 56L + creator.length();
+        }
+        return bytes;
+    }
+
+    @Override
+    public long offHeapBytes() {
+        return 0;
+    }
+
+    MediaTypeImpl[] mediaTypes() {
+        return mediaTypeDictionary.clone();
+    }
+
+    /**
+     * These rows in the {@link OffHeapCatalogStore} layout, so {@link CatalogSnapshotFile} can
+     * write them straight from the arrays. Strings are laid out creators first, then per row
+     * the title, the title key unless it is the title's bytes, and the identifier; an empty
+     * string is stored as null, as it reads back here.
+     */
+    final class OffHeapLayout {
+        private final byte[][] creatorNames = new byte[creatorDictionary.length][];
+        private final int creatorStringBytes;
+        private final int stringBytes;
+
+        private OffHeapLayout() {
+            long bytes = 0;
+            for (int code = 0; code < creatorNames.length; code++) {
+                creatorNames[code] = creatorDictionary[code].getBytes(StandardCharsets.UTF_8);
+                bytes += 4L + creatorNames[code].length;
+                if (!creatorKeyIsName(code)) {
+                    bytes += stringBytes(creatorKeys.length(code));
+                }
+            }
+            creatorStringBytes = checkedLength(bytes);
+            for (int row = 0; row < size; row++) {
+                bytes += stringBytes(titles.length(row)) + stringBytes(identifiers.length(row));
+                if (!titleKeyIsTitle(row)) {
+                    bytes += stringBytes(titleKeys.length(row));
+                }
+            }
+            stringBytes = checkedLength(bytes);
+        }
+
+        int slotBytes() {
+            return size * OffHeapCatalogStore.SLOT_BYTES;
+        }
+
+        int creatorBytes() {
+            return creatorNames.length * 8;
+        }
+
+        int stringBytes() {
+            return stringBytes;
+        }
+
+        // The slots, the creator table and the string area, one after the other
+        void writeTo(CatalogSnapshotFile.Output out) throws IOException {
+            int offset = creatorStringBytes;
+            for (int row = 0; row < size; row++) {
+                int title = titles.length(row) == 0 ? -1 : offset;
+                offset += stringBytes(titles.length(row));
+                int titleKey = title;
+                if (!titleKeyIsTitle(row)) {
+                    titleKey = titleKeys.length(row) == 0 ? -1 : offset;
+                    offset += stringBytes(titleKeys.length(row));
+                }
+                int identifier = identifiers.length(row) == 0 ? -1 : offset;
+                offset += stringBytes(identifiers.length(row));
+                out.putInt(ids[row])
+                    .putInt(OffHeapCatalogStore.flags(TYPES[types[row]], mediaTypes[row], isAvailable(row)))
+                    .putInt(title)
+                    .putInt(titleKey)
+                    .putInt(creators[row])
+                    .putInt(identifier);
+            }
+
+            offset = 0;
+            for (int code = 0; code < creatorNames.length; code++) {
+                int name = offset;
+                offset += 4 + creatorNames[code].length;
+                int key = name;
+                if (!creatorKeyIsName(code)) {
+                    key = creatorKeys.length(code) == 0 ? -1 : offset;
+                    offset += stringBytes(creatorKeys.length(code));
+                }
+                out.putInt(name).putInt(key);
+            }
+
+            for (int code = 0; code < creatorNames.length; code++) {
+                out.putInt(creatorNames[code].length).put(creatorNames[code], 0, creatorNames[code].length);
+                if (!creatorKeyIsName(code)) {
+                    putString(out, creatorKeys, code);
+                }
+            }
+            for (int row = 0; row < size; row++) {
+                putString(out, titles, row);
+                if (!titleKeyIsTitle(row)) {
+                    putString(out, titleKeys, row);
+                }
+                putString(out, identifiers, row);
+            }
+        }
+
+        private boolean creatorKeyIsName(int code) {
+            return creatorKeys.equals(code, creatorNames[code]);
+        }
+
+        private boolean titleKeyIsTitle(int row) {
+            return titleKeys.equals(row, titles);
+        }
+
+        private static void putString(CatalogSnapshotFile.Output out, Utf8Arena arena, int i) throws IOException {
+            int length = arena.length(i);
+            if (length > 0) {
+                out.putInt(length).put(arena.bytes(), arena.offsets()[i], length);
+            }
+        }
+
+        // Empty strings take no room, being stored as null
+        private static long stringBytes(int length) {
+            return length == 0 ? 0 : 4L + length;
+        }
+
+        private static int checkedLength(long bytes) {
+            if (bytes > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Catalog buffer over 2 GB");
+            }
+            return (int) bytes;
+        }
+    }
+
+    OffHeapLayout offHeapLayout() {
+        return new OffHeapLayout();
+    }
+
+    static final class Writer implements CatalogStoreWriter {
+        private int size;
+        private int[] ids = new int[1024];
+        private byte[] types = new byte[1024];
+        private byte[] mediaTypes = new byte[1024];
+        private int[] creators = new int[1024];
+        private long[] available = new long[16];
+        private final List<String> creatorDictionary = new ArrayList<>();
+        private final List<MediaTypeImpl> mediaTypeDictionary = new ArrayList<>();
+        private final ArenaBuilder creatorKeys = new ArenaBuilder();
+        private final ArenaBuilder titles = new ArenaBuilder();
+        private final ArenaBuilder titleKeys = new ArenaBuilder();
+        private final ArenaBuilder identifiers = new ArenaBuilder();
+
+        @Override
+        public void addMediaType(MediaTypeImpl mediaType) {
+            mediaTypeDictionary.add(mediaType);
+        }
+
+        @Override
+        public void addCreator(String creator, String creatorKey) {
+            creatorDictionary.add(creator);
+            creatorKeys.add(creatorKey);
+        }
+
+        @Override
+        public void add(int id, ItemType type, int mediaTypeCode, int creatorCode, String title, String titleKey,
+                        String identifier, boolean isAvailable) {
+            if (size == ids.length) {
+                int capacity = size * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                types = Arrays.copyOf(types, capacity);
+                mediaTypes = Arrays.copyOf(mediaTypes, capacity);
+                creators = Arrays.copyOf(creators, capacity);
+            }
+            if (size >>> 6 == available.length) {
+                available = Arrays.copyOf(available, available.length * 2);
+            }
+            ids[size] = id;
+            types[size] = (byte) type.ordinal();
+            mediaTypes[size] = (byte) mediaTypeCode;
+            creators[size] = creatorCode;
+            if (isAvailable) {
+                available[size >>> 6] |= 1L << size;
+            }
+            titles.add(title);
+            titleKeys.add(titleKey);
+            identifiers.add(identifier);
+            size++;
+        }
+
+        @Override
+        public CatalogStore build() {
+            return new HeapCatalogStore(this);
+        }
+    }
+
+    private static final class ArenaBuilder {
+        private byte[] bytes = new byte[16 * 1024];
+        private int length;
+        private int[] offsets = new int[1024];
+        private int count;
+
+        // null is stored as an empty string and read back as null
+        void add(String value) {
+            byte[] encoded = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+            if (length + encoded.length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + encoded.length));
+            }
+            System.arraycopy(encoded, 0, bytes, length, encoded.length);
+            if (count + 1 == offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            offsets[count] = length;
+            length += encoded.length;
+            count++;
+        }
+
+        Utf8Arena build(int size) {
+            int[] trimmed = Arrays.copyOf(offsets, size + 1);
+            trimmed[size] = length;
+            return new Utf8Arena(Arrays.copyOf(bytes, length), trimmed);
+        }
+    }
+
+    // String i is bytes[offsets[i]] up to offsets[i + 1]
+    private record Utf8Arena(byte[] bytes, int[] offsets) {
+
+        String get(int i) {
+            int from = offsets[i];
+            int length = offsets[i + 1] - from;
+            return length == 0 ? null : new String(bytes, from, length, StandardCharsets.UTF_8);
+        }
+
+        int length(int i) {
+            return offsets[i + 1] - offsets[i];
+        }
+
+        boolean equals(int i, byte[] other) {
+            return Arrays.equals(bytes, offsets[i], offsets[i + 1], other, 0, other.length);
+        }
+
+        // Same bytes as string i of another arena
+        boolean equals(int i, Utf8Arena other) {
+            return Arrays.equals(bytes, offsets[i], offsets[i + 1], other.bytes, other.offsets[i], other.offsets[i + 1]);
+        }
+
+        boolean startsWith(int i, byte[] prefix) {
+            int from = offsets[i];
+            return offsets[i + 1] - from >= prefix.length
+                && Arrays.equals(bytes, from, from + prefix.length, prefix, 0, prefix.length);
+        }
+
+        boolean contains(int i, byte[] needle, boolean ignoreCase) {
+            int end = offsets[i + 1] - needle.length;
+            outer:
+            for (int start = offsets[i]; start <= end; start++) {
+                for (int k = 0; k < needle.length; k++) {
+                    byte b = bytes[start + k];
+                    if ((ignoreCase ? lower(b) : b) != needle[k]) {
+                        continue outer;
+                    }
+                }
+                return true;
+            }
+            return false;
+        }
+
+        long footprintBytes() {
+            return bytes.length + 4L * offsets.length;
+        }
+
+        private static byte lower(byte b) {
+            return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+        }
+    }
+}
@@ -0,0 +1,339 @@
+package se.fulkopinglibrary.fulkopinglibrary.services;
+
+import se.fulkopinglibrary.fulkopinglibrary.models.LibraryItem;
+import se.fulkopinglibrary.fulkopinglibrary.utils.IdentifierUtils;
+import se.fulkopinglibrary.fulkopinglibrary.utils.LoggerUtil;
+import se.fulkopinglibrary.fulkopinglibrary.utils.MetricsRegistry;
+import se.fulkopinglibrary.fulkopinglibrary.utils.StringIntHashMap;
+import se.fulkopinglibrary.fulkopinglibrary.utils.VirtualThreads;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * Exact lookup of catalog items by ISBN, ISSN or catalog number, e.g. from a barcode scanner.
+ *
+ * <p>The identifiers of all items are kept in memory in {@link StringIntHashMap}s that map
+ * the normalized identifier to the item id. They mirror the UNIQUE {@code isbn}, {@code issn}
+ * and {@code catalog_number} columns. They are built in memory from {@link CatalogSnapshot}'s
+ * copy of the catalog, and again whenever that copy is replaced; with
+ * {@code -Dlibrary.catalog.inMemory=false} they are read from the table every
+ * {@code -Dlibrary.identifierIndex.ttlSeconds} (default 300). Only the first build happens
+ * on a request; later ones run in the background while lookups use the previous tables. An
+ * identifier missing from memory is looked up with an exact match on its column before the
+ * lookup gives up, so items added since the last rebuild are still found; those are kept in
+ * a small map beside the tables until the next rebuild. The item itself is always read by
+ * primary key, so availability is current.</p>
+ *
+ * <p>The search services route a term here automatically when it is a valid ISBN-10/13 or
+ * ISSN (checked by check digit), or a known catalog number in the format
+ * {@link IdentifierUtils#normalizeCatalogNumber} accepts, instead of running
+ * {@code LIKE '%term%'} over the table.</p>
+ */
+public class IdentifierIndex {
+    private static final Logger logger = LoggerUtil.getLogger(IdentifierIndex.class);
+
+    private static final long TTL_NANOS = TimeUnit.SECONDS.toNanos(Long.getLong("library.identifierIndex.ttlSeconds", 300));
+
+    private static final MetricsRegistry.Counter HITS = MetricsRegistry.counter("identifierIndex.hits");
+    private static final MetricsRegistry.Counter MISSES = MetricsRegistry.counter("identifierIndex.misses");
+    // Identifiers found in the table since the last rebuild, at most this many
+    private static final int MAX_ADDED = 10_000;
+
+    private static final ExecutorService rebuilds = VirtualThreads.newThreadPerTaskExecutor("identifier-index");
+    private static final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    /**
+     * The kinds of identifier an item can be looked up by, with the column each is stored in.
+     */
+    public enum Kind {
+        ISBN("isbn"),
+        ISSN("issn"),
+        CATALOG_NUMBER("catalog_number");
+
+        private final String column;
+
+        Kind(String column) {
+            this.column = column;
+        }
+    }
+
+    /**
+     * A search term recognised as an identifier, in its stored form.
+     */
+    public record Identifier(Kind kind, String value) {
+    }
+
+    // source: the catalog copy the tables were built from, null if read from the database
+    private record Tables(StringIntHashMap isbns, StringIntHashMap issns, StringIntHashMap catalogNumbers, long loadedAtNanos,
+                          CatalogColumns source, Map<Identifier, Integer> added) {
+
+        Tables(StringIntHashMap isbns, StringIntHashMap issns, StringIntHashMap catalogNumbers, long loadedAtNanos,
+               CatalogColumns source) {
+            this(isbns, issns, catalogNumbers, loadedAtNanos, source, new ConcurrentHashMap<>());
+        }
+
+        // Found since the rebuild first, as that may be a re-numbered item
+        int get(Identifier identifier) {
+            Integer itemId = added.get(identifier);
+            return itemId != null ? itemId : of(identifier.kind()).get(identifier.value());
+        }
+
+        StringIntHashMap of(Kind kind) {
+            return switch (kind) {
+                case ISBN -> isbns;
+                case ISSN -> issns;
+                case CATALOG_NUMBER -> catalogNumbers;
+            };
+        }
+    }
+
+    private static volatile Tables tables;
+
+    static {
+        MetricsRegistry.gauge("identifierIndex.size", () -> {
+            Tables current = tables;
+            return current == null ? 0 : current.isbns().size() + current.issns().size() + current.catalogNumbers().size();
+        });
+    }
+
+    /**
+     * Recognises ISBNs and ISSNs by their check digit, and terms in the catalog number format;
+     * whether an item has that catalog number is only checked by {@link #match}.
+     */
+    public static Identifier parse(String term) {
+        String isbn = IdentifierUtils.normalizeIsbn(term);
+        if (isbn != null) {
+            return new Identifier(Kind.ISBN, isbn);
+        }
+        String issn = IdentifierUtils.normalizeIssn(term);
+        if (issn != null) {
+            return new Identifier(Kind.ISSN, issn);
+        }
+        String catalogNumber = IdentifierUtils.normalizeCatalogNumber(term);
+        return catalogNumber == null ? null : new Identifier(Kind.CATALOG_NUMBER, catalogNumber);
+    }
+
+    /**
+     * The identifier a free-text search term stands for, or null if it should be searched as
+     * text: ISBNs and ISSNs always qualify, catalog numbers only if an item has them.
+     */
+    public static Identifier match(Connection connection, String term) throws SQLException {
+        Identifier identifier = parse(term);
+        if (identifier == null || identifier.kind() != Kind.CATALOG_NUMBER) {
+            return identifier;
+        }
+        return isKnown(tables(connection), identifier) ? identifier : null;
+    }
+
+    // Like match, but without a connection: catalog numbers are only recognised if already loaded
+    public static Identifier matchLoaded(String term) {
+        Identifier identifier = parse(term);
+        if (identifier == null || identifier.kind() != Kind.CATALOG_NUMBER) {
+            return identifier;
+        }
+        return isKnown(tables, identifier) ? identifier : null;
+    }
+
+    // The item with this ISBN, ISSN or catalog number, or null if there is none
+    public static LibraryItem find(Connection connection, String term) throws SQLException {
+        Identifier identifier = parse(term);
+        return identifier == null ? null : find(connection, identifier);
+    }
+
+    public static LibraryItem find(Connection connection, Identifier identifier) throws SQLException {
+        int itemId = tables(connection).get(identifier);
+        if (itemId != StringIntHashMap.NO_VALUE) {
+            LibraryItem item = findById(connection, itemId, identifier);
+            if (item != null) {
+                HITS.increment();
+                return item;
+            }
+        }
+        MISSES.increment();
+        // Added, or re-numbered, since the last rebuild
+        LibraryItem item = findByColumn(connection, identifier);
+        if (item != null) {
+            add(identifier, item.getId());
+        }
+        return item;
+    }
+
+    // Rebuild the in-memory tables from the database
+    public static void load(Connection connection) throws SQLException {
+        String query = """
+            SELECT item_id, isbn, issn, catalog_number
+            FROM library_items
+            WHERE isbn IS NOT NULL OR issn IS NOT NULL OR catalog_number IS NOT NULL""";
+        int expected = 1024;
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM library_items")) {
+            if (rs.next()) {
+                expected = Math.max(expected, rs.getInt(1));
+            }
+        }
+
+        StringIntHashMap isbns = new StringIntHashMap(expected);
+        StringIntHashMap issns = new StringIntHashMap(expected / 4);
+        StringIntHashMap catalogNumbers = new StringIntHashMap(expected / 4);
+        try (Statement statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            statement.setFetchSize(Integer.MIN_VALUE);
+            try (ResultSet rs = statement.executeQuery(query)) {
+                while (rs.next()) {
+                    int itemId = rs.getInt("item_id");
+                    putIfPresent(isbns, IdentifierUtils.normalizeIsbn(rs.getString("isbn")), itemId);
+                    putIfPresent(issns, IdentifierUtils.normalizeIssn(rs.getString("issn")), itemId);
+                    putIfPresent(catalogNumbers, IdentifierUtils.normalizeCatalogNumber(rs.getString("catalog_number")), itemId);
+                }
+            }
+        }
+        loaded(new Tables(isbns, issns, catalogNumbers, System.nanoTime(), null));
+    }
+
+    // Builds the tables from the in-memory catalog instead of the table
+    private static void load(CatalogColumns columns) {
+        CatalogStore store = columns.store();
+        int expected = Math.max(1024, store.size());
+        StringIntHashMap isbns = new StringIntHashMap(expected);
+        StringIntHashMap issns = new StringIntHashMap(expected / 4);
+        StringIntHashMap catalogNumbers = new StringIntHashMap(expected / 4);
+        for (int row = 0; row < store.size(); row++) {
+            String identifier = store.identifier(row);
+            if (identifier == null) {
+                continue;
+            }
+            switch (store.type(row)) {
+                case BOOK -> putIfPresent(isbns, IdentifierUtils.normalizeIsbn(identifier), store.id(row));
+                case MAGAZINE -> putIfPresent(issns, IdentifierUtils.normalizeIssn(identifier), store.id(row));
+                case MEDIA -> putIfPresent(catalogNumbers, IdentifierUtils.normalizeCatalogNumber(identifier), store.id(row));
+            }
+        }
+        loaded(new Tables(isbns, issns, catalogNumbers, System.nanoTime(), columns));
+    }
+
+    private static void loaded(Tables loaded) {
+        tables = loaded;
+        logger.fine(() -> "Identifier index loaded: " + loaded.isbns().size() + " ISBNs, "
+            + loaded.issns().size() + " ISSNs, " + loaded.catalogNumbers().size() + " catalog numbers");
+    }
+
+    // Forces a rebuild on next use, e.g. after a bulk import
+    public static void invalidate() {
+        tables = null;
+    }
+
+    /**
+     * The current tables. Only the first build blocks; once there are tables, a newer catalog
+     * copy or an expired TTL starts one rebuild in the background and the caller carries on
+     * with what there is.
+     */
+    private static Tables tables(Connection connection) throws SQLException {
+        Tables current = tables;
+        if (current == null) {
+            synchronized (IdentifierIndex.class) {
+                current = tables;
+                if (current == null) {
+                    if (CatalogSnapshot.isEnabled()) {
+                        load(CatalogSnapshot.columns(connection));
+                    } else {
+                        load(connection);
+                    }
+                    current = tables;
+                }
+            }
+        } else if (CatalogSnapshot.isEnabled()) {
+            if (current.source() != CatalogSnapshot.columns(connection)) {
+                rebuildInBackground();
+            }
+        } else if (System.nanoTime() - current.loadedAtNanos() > TTL_NANOS) {
+            rebuildInBackground();
+        }
+        return current;
+    }
+
+    private static void rebuildInBackground() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            rebuilds.execute(() -> {
+                try {
+                    // The newest catalog copy, not the one the caller saw
+                    CatalogColumns columns = CatalogSnapshot.isEnabled() ? CatalogSnapshot.loadedColumns() : null;
+                    if (columns != null) {
+                        load(columns);
+                    } else if (!CatalogSnapshot.isEnabled()) {
+                        AsyncLibraryService.callWithConnection(connection -> {
+                            load(connection);
+                            return null;
+                        });
+                    }
+                } catch (SQLException | RuntimeException e) {
+                    logger.warning("Identifier index rebuild failed, keeping the previous one: " + e.getMessage());
+                } finally {
+                    rebuilding.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            rebuilding.set(false);
+            throw e;
+        }
+    }
+
+    // Kept until the next rebuild, without copying the tables
+    private static void add(Identifier identifier, int itemId) {
+        Tables current = tables;
+        if (current != null && current.added().size() < MAX_ADDED) {
+            current.added().put(identifier, itemId);
+        }
+    }
+
+    private static boolean isKnown(Tables current, Identifier identifier) {
+        return current != null && current.get(identifier) != StringIntHashMap.NO_VALUE;
+    }
+
+    private static void putIfPresent(StringIntHashMap map, String key, int itemId) {
+        if (key != null) {
+            map.put(key, itemId);
+        }
+    }
+
+    // Null if the item is gone or no longer carries the identifier
+    private static LibraryItem findById(Connection connection, int itemId, Identifier identifier) throws SQLException {
+        String query = """
+            SELECT li.*, mt.type_name, mt.loan_period_days
+            FROM library_items li
+            LEFT JOIN media_types mt ON li.media_type_id = mt.media_type_id
+            WHERE li.item_id = ? AND li.%s = ?""".formatted(identifier.kind().column);
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setInt(1, itemId);
+            statement.setString(2, identifier.value());
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() ? ItemRows.map(rs) : null;
+            }
+        }
+    }
+
+    private static LibraryItem findByColumn(Connection connection, Identifier identifier) throws SQLException {
+        String query = """
+            SELECT li.*, mt.type_name, mt.loan_period_days
+            FROM library_items li
+            LEFT JOIN media_types mt ON li.media_type_id = mt.media_type_id
+            WHERE li.%s = ?""".formatted(identifier.kind().column);
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setString(1, identifier.value());
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() ? ItemRows.map(rs) : null;
+            }
+        }
+    }
+}
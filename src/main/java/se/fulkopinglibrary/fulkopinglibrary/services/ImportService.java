@@ -0,0 +1,452 @@
+package se.fulkopinglibrary.fulkopinglibrary.services;
+
+import se.fulkopinglibrary.fulkopinglibrary.utils.IdentifierUtils;
+import se.fulkopinglibrary.fulkopinglibrary.utils.LoggerUtil;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Bulk import of supplier catalog files into library_items.
+ *
+ * <p>Two input formats are supported:</p>
+ * <ul>
+ *   <li>{@link Format#CSV}: a header line naming the columns (type, title, author, isbn, publisher,
+ *   issn, director, catalog_number, media_type) followed by one record per line.</li>
+ *   <li>{@link Format#TAGGED}: a MARC-like line format with one {@code =TAG value} field per line
+ *   and records separated by blank lines. Recognized tags are LDR (type), 020 (isbn), 022 (issn),
+ *   090 (catalog number), 100 (author), 245 (title), 260 (publisher), 508 (director) and
+ *   338 (media type).</li>
+ * </ul>
+ *
+ * <p>The file is read in chunks. Each chunk is parsed and validated in parallel, then written
+ * with a single JDBC batch in its own transaction (the pool enables rewriteBatchedStatements,
+ * so the driver sends multi-row INSERTs). A row that fails validation or is rejected by the
+ * database is reported with its line number and does not abort the rest of the file.</p>
+ */
+public class ImportService {
+    private static final Logger logger = LoggerUtil.getLogger(ImportService.class);
+
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+    private static final int MAX_TITLE_LENGTH = 255;
+
+    private static final String INSERT_ITEM_SQL = """
+        INSERT INTO library_items
+        (title, type, media_type_id, is_available, author, isbn, publisher, issn, director, catalog_number)
+        VALUES (?, ?, ?, TRUE, ?, ?, ?, ?, ?, ?)""";
+
+    public enum Format {
+        CSV,
+        TAGGED
+    }
+
+    /**
+     * A rejected input record and the reason it was rejected.
+     */
+    public record RowError(long lineNumber, String message) {
+    }
+
+    /**
+     * Summary of an import run.
+     */
+    public record ImportResult(long recordsRead, long recordsImported, List<RowError> errors, long elapsedMillis) {
+        public double recordsPerSecond() {
+            return elapsedMillis == 0 ? recordsImported : recordsImported * 1000.0 / elapsedMillis;
+        }
+    }
+
+    // Raw record as read from the file, before validation
+    private record RawRecord(long lineNumber, Map<String, String> fields) {
+    }
+
+    // Validated record ready for insertion; exactly one of item or error is set
+    private record ParsedRecord(long lineNumber, ItemRow item, String error) {
+    }
+
+    private record ItemRow(String title, String type, Integer mediaTypeId, String author, String isbn,
+                           String publisher, String issn, String director, String catalogNumber) {
+    }
+
+    public static ImportResult importFile(Connection connection, Path file, Format format) throws SQLException, IOException {
+        return importFile(connection, file, format, DEFAULT_CHUNK_SIZE);
+    }
+
+    public static ImportResult importFile(Connection connection, Path file, Format format, int chunkSize)
+            throws SQLException, IOException {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+
+        long startTime = System.nanoTime();
+        Map<String, Integer> mediaTypeIds = loadMediaTypeIds(connection);
+        List<RowError> errors = new ArrayList<>();
+        long recordsRead = 0;
+        long recordsImported = 0;
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            RecordReader recordReader = format == Format.CSV ? new CsvRecordReader(reader) : new TaggedRecordReader(reader);
+            List<RawRecord> chunk = new ArrayList<>(chunkSize);
+            RawRecord raw;
+            while (true) {
+                raw = recordReader.next();
+                if (raw != null) {
+                    chunk.add(raw);
+                }
+                if (chunk.size() == chunkSize || (raw == null && !chunk.isEmpty())) {
+                    recordsRead += chunk.size();
+                    recordsImported += importChunk(connection, chunk, mediaTypeIds, errors);
+                    chunk.clear();
+                }
+                if (raw == null) {
+                    break;
+                }
+            }
+        }
+
+        if (recordsImported > 0) {
+            SearchCaches.invalidateAll();
+            IdentifierIndex.invalidate();
+            FacetIndex.invalidate();
+            CatalogSnapshot.invalidate();
+        }
+
+        long elapsedMillis = (System.nanoTime() - startTime) / 1_000_000;
+        ImportResult result = new ImportResult(recordsRead, recordsImported, Collections.unmodifiableList(errors), elapsedMillis);
+        logger.info(() -> String.format("Imported %d of %d records from %s in %d ms (%.0f records/s, %d errors)",
+            result.recordsImported(), result.recordsRead(), file.getFileName(), result.elapsedMillis(),
+            result.recordsPerSecond(), result.errors().size()));
+        return result;
+    }
+
+    // Look up media_type_id by lower-cased type name once per import
+    private static Map<String, Integer> loadMediaTypeIds(Connection connection) throws SQLException {
+        Map<String, Integer> ids = new HashMap<>();
+        try (PreparedStatement statement = connection.prepareStatement("SELECT media_type_id, type_name FROM media_types");
+             ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                ids.put(rs.getString("type_name").toLowerCase(Locale.ROOT), rs.getInt("media_type_id"));
+            }
+        }
+        return ids;
+    }
+
+    private static int importChunk(Connection connection, List<RawRecord> chunk, Map<String, Integer> mediaTypeIds,
+                                   List<RowError> errors) throws SQLException {
+        // Parsing and validation are CPU-bound and independent per record
+        List<ParsedRecord> parsed = chunk.parallelStream()
+            .map(raw -> validate(raw, mediaTypeIds))
+            .toList();
+
+        List<ParsedRecord> valid = new ArrayList<>(parsed.size());
+        for (ParsedRecord record : parsed) {
+            if (record.error() != null) {
+                errors.add(new RowError(record.lineNumber(), record.error()));
+            } else {
+                valid.add(record);
+            }
+        }
+        if (valid.isEmpty()) {
+            return 0;
+        }
+
+        try {
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_ITEM_SQL)) {
+                for (ParsedRecord record : valid) {
+                    bindItem(statement, record.item());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                connection.commit();
+                return valid.size();
+            } catch (BatchUpdateException e) {
+                // One bad row fails the whole rewritten batch, so retry the chunk row by row
+                connection.rollback();
+                logger.warning("Batch insert failed, retrying chunk row by row: " + e.getMessage());
+                return importRowByRow(connection, valid, errors);
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private static int importRowByRow(Connection connection, List<ParsedRecord> records, List<RowError> errors)
+            throws SQLException {
+        int imported = 0;
+        try (PreparedStatement statement = connection.prepareStatement(INSERT_ITEM_SQL)) {
+            for (ParsedRecord record : records) {
+                try {
+                    bindItem(statement, record.item());
+                    statement.executeUpdate();
+                    imported++;
+                } catch (SQLException e) {
+                    errors.add(new RowError(record.lineNumber(), e.getMessage()));
+                }
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        }
+        return imported;
+    }
+
+    private static void bindItem(PreparedStatement statement, ItemRow item) throws SQLException {
+        statement.setString(1, item.title());
+        statement.setString(2, item.type());
+        if (item.mediaTypeId() != null) {
+            statement.setInt(3, item.mediaTypeId());
+        } else {
+            statement.setNull(3, Types.INTEGER);
+        }
+        statement.setString(4, item.author());
+        statement.setString(5, item.isbn());
+        statement.setString(6, item.publisher());
+        statement.setString(7, item.issn());
+        statement.setString(8, item.director());
+        statement.setString(9, item.catalogNumber());
+    }
+
+    private static ParsedRecord validate(RawRecord raw, Map<String, Integer> mediaTypeIds) {
+        Map<String, String> fields = raw.fields();
+        String type = fields.get("type");
+        if (type == null) {
+            return error(raw, "Missing type");
+        }
+        type = type.toUpperCase(Locale.ROOT);
+
+        String title = fields.get("title");
+        if (title == null) {
+            return error(raw, "Missing title");
+        }
+        if (title.length() > MAX_TITLE_LENGTH) {
+            return error(raw, "Title longer than " + MAX_TITLE_LENGTH + " characters");
+        }
+
+        String author = fields.get("author");
+        String publisher = fields.get("publisher");
+        String director = fields.get("director");
+        String catalogNumber = fields.get("catalog_number");
+        String isbn = null;
+        String issn = null;
+        String defaultMediaType;
+
+        switch (type) {
+            case "BOOK":
+                if (author == null) {
+                    return error(raw, "Missing author for book");
+                }
+                // ISBN-10s are stored in their 13-digit form, as searches look them up
+                isbn = IdentifierUtils.normalizeIsbn(fields.get("isbn"));
+                if (isbn == null) {
+                    return error(raw, "Invalid ISBN: " + fields.get("isbn"));
+                }
+                defaultMediaType = "book";
+                break;
+            case "MAGAZINE":
+                if (publisher == null) {
+                    return error(raw, "Missing publisher for magazine");
+                }
+                issn = IdentifierUtils.normalizeIssn(fields.get("issn"));
+                if (issn == null) {
+                    return error(raw, "Invalid ISSN: " + fields.get("issn"));
+                }
+                defaultMediaType = "magazine";
+                break;
+            case "MEDIA":
+                defaultMediaType = null;
+                break;
+            default:
+                return error(raw, "Unknown item type: " + type);
+        }
+
+        Integer mediaTypeId = null;
+        String mediaType = fields.getOrDefault("media_type", defaultMediaType);
+        if (mediaType != null) {
+            mediaTypeId = mediaTypeIds.get(mediaType.toLowerCase(Locale.ROOT));
+            if (mediaTypeId == null) {
+                return error(raw, "Unknown media type: " + mediaType);
+            }
+        }
+
+        return new ParsedRecord(raw.lineNumber(),
+            new ItemRow(title, type, mediaTypeId, author, isbn, publisher, issn, director, catalogNumber), null);
+    }
+
+    private static ParsedRecord error(RawRecord raw, String message) {
+        return new ParsedRecord(raw.lineNumber(), null, message);
+    }
+
+    // Sequential source of raw records; only the reading is single-threaded
+    private interface RecordReader {
+        RawRecord next() throws IOException;
+    }
+
+    private static class CsvRecordReader implements RecordReader {
+        private final BufferedReader reader;
+        private String[] header;
+        private long lineNumber;
+
+        CsvRecordReader(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public RawRecord next() throws IOException {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                if (header == null) {
+                    header = splitCsvLine(line).stream()
+                        .map(column -> column.trim().toLowerCase(Locale.ROOT))
+                        .toArray(String[]::new);
+                    continue;
+                }
+                // Splitting is deferred to the parallel stage by keeping the raw line
+                return new RawRecord(lineNumber, new LazyCsvFields(header, line));
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Field map that splits its CSV line on first access, so the split runs on the
+     * parallel validation threads instead of the reader thread.
+     */
+    private static class LazyCsvFields extends AbstractMap<String, String> {
+        private final String[] header;
+        private final String line;
+        private Map<String, String> fields;
+
+        LazyCsvFields(String[] header, String line) {
+            this.header = header;
+            this.line = line;
+        }
+
+        @Override
+        public Set<Entry<String, String>> entrySet() {
+            if (fields == null) {
+                List<String> values = splitCsvLine(line);
+                Map<String, String> map = new HashMap<>();
+                for (int i = 0; i < header.length && i < values.size(); i++) {
+                    String value = values.get(i).trim();
+                    if (!value.isEmpty()) {
+                        map.put(header[i], value);
+                    }
+                }
+                fields = map;
+            }
+            return fields.entrySet();
+        }
+
+        @Override
+        public String get(Object key) {
+            entrySet();
+            return fields.get(key);
+        }
+    }
+
+    // Split one CSV line, honouring double-quoted fields and "" escapes
+    private static List<String> splitCsvLine(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean inQuotes = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (inQuotes) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        current.append('"');
+                        i++;
+                    } else {
+                        inQuotes = false;
+                    }
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                inQuotes = true;
+            } else if (c == ',') {
+                values.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        values.add(current.toString());
+        return values;
+    }
+
+    private static class TaggedRecordReader implements RecordReader {
+        private static final Map<String, String> TAGS = Map.of(
+            "LDR", "type",
+            "020", "isbn",
+            "022", "issn",
+            "090", "catalog_number",
+            "100", "author",
+            "245", "title",
+            "260", "publisher",
+            "508", "director",
+            "338", "media_type"
+        );
+
+        private final BufferedReader reader;
+        private long lineNumber;
+
+        TaggedRecordReader(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public RawRecord next() throws IOException {
+            Map<String, String> fields = new HashMap<>();
+            long firstLine = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    if (!fields.isEmpty()) {
+                        return new RawRecord(firstLine, fields);
+                    }
+                    continue;
+                }
+                if (firstLine == 0) {
+                    firstLine = lineNumber;
+                }
+                if (!line.startsWith("=") || line.length() < 5) {
+                    continue;
+                }
+                String field = TAGS.get(line.substring(1, 4));
+                String value = line.substring(4).trim();
+                if (field != null && !value.isEmpty()) {
+                    fields.put(field, value);
+                }
+            }
+            return fields.isEmpty() ? null : new RawRecord(firstLine, fields);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package se.fulkopinglibrary.fulkopinglibrary.services;
+
+import se.fulkopinglibrary.fulkopinglibrary.models.LibraryItem;
+import se.fulkopinglibrary.fulkopinglibrary.utils.TitleCollation;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The listing sort options (1 title A-Z, 2 title Z-A, 3 available first, otherwise by id)
+ * for lists sorted in memory, in the same order as the {@code ORDER BY} clauses of the
+ * database queries. Titles are compared by their precomputed Swedish sort keys, see
+ * {@link TitleCollation}.
+ */
+public class ItemOrder {
+
+    private static final Comparator<LibraryItem> BY_ID = Comparator.comparingInt(LibraryItem::getId);
+    private static final Comparator<LibraryItem> BY_TITLE = TitleCollation.comparing(LibraryItem::getTitleSortKey);
+
+    public static Comparator<LibraryItem> forSortOption(int sortOption) {
+        return switch (sortOption) {
+            case 1 -> BY_TITLE.thenComparing(BY_ID);
+            case 2 -> BY_TITLE.reversed().thenComparing(BY_ID);
+            case 3 -> Comparator.comparing(LibraryItem::isAvailable).reversed().thenComparing(BY_ID);
+            default -> BY_ID;
+        };
+    }
+
+    // A sorted copy; the input may be an immutable cached result
+    public static <T extends LibraryItem> List<T> sorted(List<T> items, int sortOption) {
+        List<T> sorted = new ArrayList<>(items);
+        sorted.sort(forSortOption(sortOption));
+        return sorted;
+    }
+}
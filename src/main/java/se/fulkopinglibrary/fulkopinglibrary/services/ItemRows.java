@@ -0,0 +1,47 @@
+package se.fulkopinglibrary.fulkopinglibrary.services;
+
+import se.fulkopinglibrary.fulkopinglibrary.models.Book;
+import se.fulkopinglibrary.fulkopinglibrary.models.LibraryItem;
+import se.fulkopinglibrary.fulkopinglibrary.models.Magazine;
+import se.fulkopinglibrary.fulkopinglibrary.models.MediaItem;
+import se.fulkopinglibrary.fulkopinglibrary.models.MediaTypeImpl;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps a {@code library_items} row, optionally joined with {@code media_types}, to the
+ * matching model class. The media type is read from the joined {@code type_name} and
+ * {@code loan_period_days} columns rather than a second query, so the mapper can be used
+ * while a streaming result set is still open on the connection.
+ */
+class ItemRows {
+
+    static LibraryItem map(ResultSet rs) throws SQLException {
+        String type = rs.getString("type");
+        return switch (type) {
+            case "BOOK" -> new Book(
+                rs.getInt("item_id"),
+                rs.getString("title"),
+                rs.getString("author"),
+                rs.getString("isbn"),
+                rs.getBoolean("is_available"));
+            case "MAGAZINE" -> new Magazine(
+                rs.getInt("item_id"),
+                rs.getString("title"),
+                rs.getString("publisher"),
+                rs.getString("issn"),
+                rs.getBoolean("is_available"));
+            case "MEDIA" -> new MediaItem(
+                rs.getInt("item_id"),
+                rs.getString("title"),
+                rs.getBoolean("is_available"),
+                rs.getString("director"),
+                rs.getString("catalog_number"),
+                rs.getString("type_name") != null
+                    ? new MediaTypeImpl(rs.getString("type_name"), rs.getInt("loan_period_days"))
+                    : null);
+            default -> throw new SQLException("Unknown item type: " + type);
+        };
+    }
+}
@@ -1,5 +1,9 @@
 package se.fulkopinglibrary.fulkopinglibrary.services;
 
+import se.fulkopinglibrary.fulkopinglibrary.events.BorrowEvent;
+import se.fulkopinglibrary.fulkopinglibrary.events.ExplorePageEvent;
+import se.fulkopinglibrary.fulkopinglibrary.events.ReserveEvent;
+import se.fulkopinglibrary.fulkopinglibrary.events.SearchEvent;
 import se.fulkopinglibrary.fulkopinglibrary.models.Magazine;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -7,33 +11,75 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.logging.Logger;
+import se.fulkopinglibrary.fulkopinglibrary.utils.LatencyHistogram;
 import se.fulkopinglibrary.fulkopinglibrary.utils.LoggerUtil;
+import se.fulkopinglibrary.fulkopinglibrary.utils.MetricsRegistry;
+import se.fulkopinglibrary.fulkopinglibrary.utils.SearchKeys;
 
 public class MagazineService {
+    private static final LatencyHistogram SEARCHES = MetricsRegistry.timer("search.magazine");
+    private static final MetricsRegistry.Outcome BORROWS = MetricsRegistry.outcome("borrow.magazine");
+    private static final MetricsRegistry.Outcome RESERVATIONS = MetricsRegistry.outcome("reserve.magazine");
+
     public static boolean borrowMagazine(Connection connection, int userId, int magazineId) {
+        BorrowEvent event = new BorrowEvent();
+        event.begin();
+        long startTime = System.nanoTime();
+        boolean borrowed = CirculationLocks.withItemLock(magazineId, () -> markBorrowed(connection, userId, magazineId));
+        BORROWS.record(borrowed, startTime);
+        event.itemType = "MAGAZINE";
+        event.itemId = magazineId;
+        event.userId = userId;
+        event.success = borrowed;
+        event.commit();
+        return borrowed;
+    }
+
+    // Only an available magazine is updated, so a second borrower queued on the lock gets false
+    private static boolean markBorrowed(Connection connection, int userId, int magazineId) {
+        String updateAvailability = """
+            UPDATE library_items SET is_available = false
+            WHERE item_id = ? AND type = 'MAGAZINE' AND is_available = TRUE
+            """;
+        String insertLoan = "INSERT INTO loans (user_id, item_id, loan_date) VALUES (?, ?, CURRENT_DATE)";
         try {
-            String sql = "UPDATE library_items SET is_available = false WHERE item_id = ? AND type = 'MAGAZINE'";
-            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-                pstmt.setInt(1, magazineId);
-                int affectedRows = pstmt.executeUpdate();
-                
-                if (affectedRows > 0) {
-                    sql = "INSERT INTO loans (user_id, item_id, loan_date) VALUES (?, ?, CURRENT_DATE)";
-                    try (PreparedStatement loanStmt = connection.prepareStatement(sql)) {
-                        loanStmt.setInt(1, userId);
-                        loanStmt.setInt(2, magazineId);
-                        loanStmt.executeUpdate();
-                    }
-                    return true;
+            connection.setAutoCommit(false);
+            try (PreparedStatement updateStmt = connection.prepareStatement(updateAvailability)) {
+                updateStmt.setInt(1, magazineId);
+                if (updateStmt.executeUpdate() != 1) {
+                    connection.rollback();
+                    return false;
                 }
             }
-            return false;
+            try (PreparedStatement loanStmt = connection.prepareStatement(insertLoan)) {
+                loanStmt.setInt(1, userId);
+                loanStmt.setInt(2, magazineId);
+                loanStmt.executeUpdate();
+            }
+            connection.commit();
+            SearchCaches.invalidateMagazines();
+            FacetIndex.setAvailable(magazineId, false);
+            CatalogSnapshot.setAvailable(magazineId, false);
+            return true;
         } catch (SQLException e) {
-            LoggerUtil.getLogger(MagazineService.class).severe("Error borrowing magazine: " + e.getMessage());
+            try {
+                connection.rollback();
+            } catch (SQLException ex) {
+                e.addSuppressed(ex);
+            }
+            logger.severe("Error borrowing magazine: " + e.getMessage());
             return false;
+        } finally {
+            try {
+                connection.setAutoCommit(true);
+            } catch (SQLException e) {
+                logger.warning("Could not restore auto-commit: " + e.getMessage());
+            }
         }
     }
+
     private static final Logger logger = LoggerUtil.getLogger(MagazineService.class);
 
     public static List<Magazine> getAllItems(Connection connection) throws SQLException {
@@ -41,6 +87,22 @@ public class MagazineService {
     }
 
     public static List<Magazine> getAllItems(Connection connection, int sortOption, int page, int pageSize) throws SQLException {
+        ExplorePageEvent event = new ExplorePageEvent();
+        event.begin();
+        try {
+            List<Magazine> items = queryAllItems(connection, sortOption, page, pageSize);
+            event.rowsReturned = items.size();
+            return items;
+        } finally {
+            event.itemType = "MAGAZINE";
+            event.page = page;
+            event.pageSize = pageSize;
+            event.sortOption = sortOption;
+            event.commit();
+        }
+    }
+
+    private static List<Magazine> queryAllItems(Connection connection, int sortOption, int page, int pageSize) throws SQLException {
         List<Magazine> items = new ArrayList<>();
         
         String orderBy = switch (sortOption) {
@@ -94,6 +156,20 @@ public class MagazineService {
     }
 
     public static boolean reserveMagazine(Connection connection, int userId, int magazineId) {
+        ReserveEvent event = new ReserveEvent();
+        event.begin();
+        long startTime = System.nanoTime();
+        boolean reserved = CirculationLocks.withItemLock(magazineId, () -> insertReservation(connection, userId, magazineId));
+        RESERVATIONS.record(reserved, startTime);
+        event.itemType = "MAGAZINE";
+        event.itemId = magazineId;
+        event.userId = userId;
+        event.success = reserved;
+        event.commit();
+        return reserved;
+    }
+
+    private static boolean insertReservation(Connection connection, int userId, int magazineId) {
         String checkReservationSql = """
             SELECT reservation_id FROM reservations 
             WHERE user_id = ? AND item_id = ? AND expiry_date > CURRENT_DATE
@@ -130,49 +206,102 @@ public class MagazineService {
         }
     }
 
+    // Search for magazines, answered from the search cache when the same query ran recently
     public static List<Magazine> searchMagazines(Connection connection, String searchType, String searchTerm) throws SQLException {
-        List<Magazine> magazines = new ArrayList<>();
-        String query = "SELECT item_id, title, publisher, issn, is_available FROM library_items WHERE type = 'MAGAZINE'";
-        
-        // Add search conditions based on searchType
-        switch (searchType.toLowerCase()) {
-            case "title":
-                query += " AND title LIKE ?";
-                break;
-            case "publisher":
-                query += " AND publisher LIKE ?";
-                break;
-            case "issn":
-                query += " AND issn LIKE ?";
-                break;
-            default:
-                query += " AND (title LIKE ? OR publisher LIKE ? OR issn LIKE ?)";
-                break;
+        String term = searchTerm == null ? "" : searchTerm.trim();
+        SearchCaches.MagazineSearchKey key = new SearchCaches.MagazineSearchKey(
+            SearchCaches.normalizeTerm(term), searchType.toLowerCase(Locale.ROOT));
+        SearchEvent event = new SearchEvent();
+        event.begin();
+        long startTime = System.nanoTime();
+        try {
+            List<Magazine> magazines = SearchCaches.MAGAZINE_SEARCHES.get(key,
+                () -> List.copyOf(querySearchMagazines(connection, searchType, term)));
+            event.rowsReturned = magazines.size();
+            return magazines;
+        } finally {
+            SEARCHES.record(System.nanoTime() - startTime);
+            event.itemType = "MAGAZINE";
+            event.searchType = searchType;
+            event.termLength = term.length();
+            event.commit();
         }
+    }
 
-        try (PreparedStatement statement = connection.prepareStatement(query)) {
-            if (searchType.equalsIgnoreCase("title") || searchType.equalsIgnoreCase("publisher") || searchType.equalsIgnoreCase("issn")) {
-                statement.setString(1, "%" + searchTerm + "%");
-            } else {
-                statement.setString(1, "%" + searchTerm + "%");
-                statement.setString(2, "%" + searchTerm + "%");
-                statement.setString(3, "%" + searchTerm + "%");
+    private static List<Magazine> querySearchMagazines(Connection connection, String searchType, String searchTerm) throws SQLException {
+        // A valid ISSN resolves to at most one magazine by exact lookup
+        if (!searchType.equalsIgnoreCase("title") && !searchType.equalsIgnoreCase("publisher")) {
+            IdentifierIndex.Identifier identifier = IdentifierIndex.match(connection, searchTerm);
+            if (identifier != null && identifier.kind() == IdentifierIndex.Kind.ISSN) {
+                return IdentifierIndex.find(connection, identifier) instanceof Magazine magazine ? List.of(magazine) : List.of();
             }
+        }
 
-            try (ResultSet resultSet = statement.executeQuery()) {
-                while (resultSet.next()) {
-                    Magazine magazine = new Magazine(
-                        resultSet.getInt("item_id"),
-                        resultSet.getString("title"),
-                        resultSet.getString("publisher"),
-                        resultSet.getString("issn"),
-                        resultSet.getBoolean("is_available")
-                    );
-                    magazines.add(magazine);
-                }
+        // All matches, in one page
+        List<Magazine> magazines = new ArrayList<>();
+        try (PreparedStatement statement = prepareSearch(connection, searchType, searchTerm, 0, 1, Integer.MAX_VALUE);
+             ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                magazines.add(mapMagazine(resultSet));
             }
         }
         return magazines;
     }
 
+    // One page of a title, publisher, issn or general search, with every parameter bound
+    static PreparedStatement prepareSearch(Connection connection, String searchType, String searchTerm, int sortOption, int page, int pageSize) throws SQLException {
+        String condition = switch (searchType.toLowerCase(Locale.ROOT)) {
+            case "title" -> "title_key LIKE ?";
+            case "publisher" -> "publisher_key LIKE ?";
+            case "issn" -> "issn LIKE ?";
+            default -> "(title_key LIKE ? OR publisher_key LIKE ? OR issn LIKE ?)";
+        };
+        String orderBy = switch (sortOption) {
+            case 1 -> "title ASC";
+            case 2 -> "title DESC";
+            case 3 -> "is_available DESC";
+            default -> "item_id ASC";
+        };
+        String query = """
+            SELECT item_id, title, publisher, issn, is_available
+            FROM library_items
+            WHERE type = 'MAGAZINE' AND %s
+            ORDER BY %s
+            LIMIT ? OFFSET ?""".formatted(condition, orderBy);
+
+        PreparedStatement statement = connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        try {
+            String likeTerm = "%" + searchTerm + "%";
+            int index = 1;
+            if (condition.startsWith("(")) {
+                // Words anywhere in the title or publisher; the identifier as typed
+                String keyPattern = SearchKeys.containsPattern(searchTerm);
+                statement.setString(index++, keyPattern);
+                statement.setString(index++, keyPattern);
+                statement.setString(index++, likeTerm);
+            } else if (condition.startsWith("issn")) {
+                statement.setString(index++, likeTerm);
+            } else {
+                // A title or publisher search matches the start, a range scan of the key index
+                statement.setString(index++, SearchKeys.prefixPattern(searchTerm));
+            }
+            statement.setInt(index++, pageSize);
+            statement.setInt(index, (page - 1) * pageSize);
+            return statement;
+        } catch (SQLException e) {
+            statement.close();
+            throw e;
+        }
+    }
+
+    static Magazine mapMagazine(ResultSet resultSet) throws SQLException {
+        return new Magazine(
+            resultSet.getInt("item_id"),
+            resultSet.getString("title"),
+            resultSet.getString("publisher"),
+            resultSet.getString("issn"),
+            resultSet.getBoolean("is_available")
+        );
+    }
+
 }
@@ -1,5 +1,9 @@
 package se.fulkopinglibrary.fulkopinglibrary.services;
 
+import se.fulkopinglibrary.fulkopinglibrary.events.BorrowEvent;
+import se.fulkopinglibrary.fulkopinglibrary.events.ExplorePageEvent;
+import se.fulkopinglibrary.fulkopinglibrary.events.ReserveEvent;
+import se.fulkopinglibrary.fulkopinglibrary.events.SearchEvent;
 import se.fulkopinglibrary.fulkopinglibrary.models.MediaItem;
 import se.fulkopinglibrary.fulkopinglibrary.models.LibraryItem;
 import se.fulkopinglibrary.fulkopinglibrary.models.MediaTypeImpl;
@@ -9,17 +13,42 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.logging.Logger;
+import se.fulkopinglibrary.fulkopinglibrary.utils.IdentifierUtils;
+import se.fulkopinglibrary.fulkopinglibrary.utils.LatencyHistogram;
 import se.fulkopinglibrary.fulkopinglibrary.utils.LoggerUtil;
+import se.fulkopinglibrary.fulkopinglibrary.utils.MetricsRegistry;
+import se.fulkopinglibrary.fulkopinglibrary.utils.QueryCache;
+import se.fulkopinglibrary.fulkopinglibrary.utils.SearchKeys;
 
 public class MediaService {
     private static final Logger logger = LoggerUtil.getLogger(MediaService.class);
+    private static final LatencyHistogram SEARCHES = MetricsRegistry.timer("search.media");
+    private static final MetricsRegistry.Outcome BORROWS = MetricsRegistry.outcome("borrow.media");
+    private static final MetricsRegistry.Outcome RESERVATIONS = MetricsRegistry.outcome("reserve.media");
 
     public static List<LibraryItem> getAllItems(Connection connection) throws SQLException {
         return getAllItems(connection, 0, 1, 20);
     }
 
     public static List<LibraryItem> getAllItems(Connection connection, int sortChoice, int currentPage, int pageSize) throws SQLException {
+        ExplorePageEvent event = new ExplorePageEvent();
+        event.begin();
+        try {
+            List<LibraryItem> items = queryAllItems(connection, sortChoice, currentPage, pageSize);
+            event.rowsReturned = items.size();
+            return items;
+        } finally {
+            event.itemType = "MEDIA";
+            event.page = currentPage;
+            event.pageSize = pageSize;
+            event.sortOption = sortChoice;
+            event.commit();
+        }
+    }
+
+    private static List<LibraryItem> queryAllItems(Connection connection, int sortChoice, int currentPage, int pageSize) throws SQLException {
         List<LibraryItem> items = new ArrayList<>();
         
         String orderBy = switch (sortChoice) {
@@ -57,91 +86,140 @@ public class MediaService {
         return items;
     }
 
+    // Times a media search for the metrics registry and emits a JFR search event
+    private static List<LibraryItem> timedSearch(String searchType, String term,
+            QueryCache.Loader<List<LibraryItem>> query) throws SQLException {
+        SearchEvent event = new SearchEvent();
+        event.begin();
+        long startTime = System.nanoTime();
+        try {
+            List<LibraryItem> items = query.load();
+            event.rowsReturned = items.size();
+            return items;
+        } finally {
+            SEARCHES.record(System.nanoTime() - startTime);
+            event.itemType = "MEDIA";
+            event.searchType = searchType;
+            event.termLength = term == null ? 0 : term.length();
+            event.commit();
+        }
+    }
+
     public static List<LibraryItem> searchByTitle(Connection connection, String title) throws SQLException {
-        List<LibraryItem> items = new ArrayList<>();
-        
-        String query = """
-            SELECT item_id, title, director, catalog_number, type, is_available 
-            FROM library_items 
-            WHERE type = 'MEDIA' AND title LIKE ?""";
-        
-        try (PreparedStatement statement = connection.prepareStatement(query)) {
-            statement.setString(1, "%" + title + "%");
-            
-            try (ResultSet resultSet = statement.executeQuery()) {
-                while (resultSet.next()) {
-                    MediaTypeImpl mediaType = MediaTypeImpl.fromString(resultSet.getString("type"));
-                    MediaItem media = new MediaItem(
-                        resultSet.getInt("item_id"),
-                        resultSet.getString("title"),
-                        resultSet.getBoolean("is_available"),
-                        resultSet.getString("director"),
-                        resultSet.getString("catalog_number"),
-                        mediaType
-                    );
-                    items.add(media);
+        return timedSearch("title", title, () -> querySearchByTitle(connection, title));
+    }
+
+    private static List<LibraryItem> querySearchByTitle(Connection connection, String title) throws SQLException {
+        return queryAll(connection, "title", title);
+    }
+
+    public static List<LibraryItem> searchByDirector(Connection connection, String director) throws SQLException {
+        return timedSearch("director", director, () -> querySearchByDirector(connection, director));
+    }
+
+    private static List<LibraryItem> querySearchByDirector(Connection connection, String director) throws SQLException {
+        return queryAll(connection, "director", director);
+    }
+
+    public static List<LibraryItem> searchByCatalogNumber(Connection connection, String catalogNumber) throws SQLException {
+        return timedSearch("catalog_number", catalogNumber, () -> querySearchByCatalogNumber(connection, catalogNumber));
+    }
+
+    private static List<LibraryItem> querySearchByCatalogNumber(Connection connection, String catalogNumber) throws SQLException {
+        // Every fragment match, so DVD-1 also finds DVD-10; an exact match is listed first
+        List<LibraryItem> items = queryAll(connection, "catalog_number", catalogNumber);
+        String normalized = IdentifierUtils.normalizeCatalogNumber(catalogNumber);
+        if (normalized != null) {
+            for (int i = 0; i < items.size(); i++) {
+                if (items.get(i) instanceof MediaItem media && normalized.equalsIgnoreCase(media.getCatalogNumber())) {
+                    items.add(0, items.remove(i));
+                    break;
                 }
             }
         }
         return items;
     }
 
-    public static List<LibraryItem> searchByDirector(Connection connection, String director) throws SQLException {
+    public static List<LibraryItem> searchGeneral(Connection connection, String searchTerm) throws SQLException {
+        return timedSearch("general", searchTerm, () -> querySearchGeneral(connection, searchTerm));
+    }
+
+    private static List<LibraryItem> querySearchGeneral(Connection connection, String searchTerm) throws SQLException {
+        IdentifierIndex.Identifier identifier = IdentifierIndex.match(connection, searchTerm);
+        if (identifier != null && identifier.kind() == IdentifierIndex.Kind.CATALOG_NUMBER) {
+            return IdentifierIndex.find(connection, identifier) instanceof MediaItem media ? List.of(media) : List.of();
+        }
+
+        return queryAll(connection, "general", searchTerm);
+    }
+
+    // Every match of a title, director, catalog_number or general search
+    private static List<LibraryItem> queryAll(Connection connection, String searchType, String searchTerm) throws SQLException {
         List<LibraryItem> items = new ArrayList<>();
-        
-        String query = """
-            SELECT item_id, title, director, catalog_number, type, is_available 
-            FROM library_items 
-            WHERE type = 'MEDIA' AND director LIKE ?""";
-        
-        try (PreparedStatement statement = connection.prepareStatement(query)) {
-            statement.setString(1, "%" + director + "%");
-            
-            try (ResultSet resultSet = statement.executeQuery()) {
-                while (resultSet.next()) {
-                    MediaTypeImpl mediaType = MediaTypeImpl.fromString(resultSet.getString("type"));
-                    MediaItem media = new MediaItem(
-                        resultSet.getInt("item_id"),
-                        resultSet.getString("title"),
-                        resultSet.getBoolean("is_available"),
-                        resultSet.getString("director"),
-                        resultSet.getString("catalog_number"),
-                        mediaType
-                    );
-                    items.add(media);
-                }
+        try (PreparedStatement statement = prepareSearch(connection, searchType, searchTerm, 0, 1, Integer.MAX_VALUE);
+             ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                items.add(mapMedia(resultSet));
             }
         }
         return items;
     }
 
-    public static List<LibraryItem> searchByCatalogNumber(Connection connection, String catalogNumber) throws SQLException {
-        List<LibraryItem> items = new ArrayList<>();
-        
+    // One page of a title, director, catalog_number or general search, with every parameter bound
+    static PreparedStatement prepareSearch(Connection connection, String searchType, String searchTerm, int sortOption, int page, int pageSize) throws SQLException {
+        String condition = switch (searchType.toLowerCase(Locale.ROOT)) {
+            case "title" -> "title_key LIKE ?";
+            case "director" -> "director_key LIKE ?";
+            case "catalog_number" -> "catalog_number LIKE ?";
+            default -> "(title_key LIKE ? OR director_key LIKE ? OR catalog_number LIKE ?)";
+        };
+        String orderBy = switch (sortOption) {
+            case 1 -> "title ASC";
+            case 2 -> "title DESC";
+            case 3 -> "is_available DESC";
+            default -> "item_id ASC";
+        };
         String query = """
-            SELECT item_id, title, director, catalog_number, type, is_available 
-            FROM library_items 
-            WHERE type = 'MEDIA' AND catalog_number LIKE ?""";
-        
-        try (PreparedStatement statement = connection.prepareStatement(query)) {
-            statement.setString(1, "%" + catalogNumber + "%");
-            
-            try (ResultSet resultSet = statement.executeQuery()) {
-                while (resultSet.next()) {
-                    MediaTypeImpl mediaType = MediaTypeImpl.fromString(resultSet.getString("type"));
-                    MediaItem media = new MediaItem(
-                        resultSet.getInt("item_id"),
-                        resultSet.getString("title"),
-                        resultSet.getBoolean("is_available"),
-                        resultSet.getString("director"),
-                        resultSet.getString("catalog_number"),
-                        mediaType
-                    );
-                    items.add(media);
-                }
+            SELECT item_id, title, director, catalog_number, type, is_available
+            FROM library_items
+            WHERE type = 'MEDIA' AND %s
+            ORDER BY %s
+            LIMIT ? OFFSET ?""".formatted(condition, orderBy);
+
+        PreparedStatement statement = connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        try {
+            String likeTerm = "%" + searchTerm + "%";
+            int index = 1;
+            if (condition.startsWith("(")) {
+                // Words anywhere in the title or director; the identifier as typed
+                String keyPattern = SearchKeys.containsPattern(searchTerm);
+                statement.setString(index++, keyPattern);
+                statement.setString(index++, keyPattern);
+                statement.setString(index++, likeTerm);
+            } else if (condition.startsWith("catalog_number")) {
+                statement.setString(index++, likeTerm);
+            } else {
+                // A title or director search matches the start, a range scan of the key index
+                statement.setString(index++, SearchKeys.prefixPattern(searchTerm));
             }
+            statement.setInt(index++, pageSize);
+            statement.setInt(index, (page - 1) * pageSize);
+            return statement;
+        } catch (SQLException e) {
+            statement.close();
+            throw e;
         }
-        return items;
+    }
+
+    static MediaItem mapMedia(ResultSet resultSet) throws SQLException {
+        return new MediaItem(
+            resultSet.getInt("item_id"),
+            resultSet.getString("title"),
+            resultSet.getBoolean("is_available"),
+            resultSet.getString("director"),
+            resultSet.getString("catalog_number"),
+            MediaTypeImpl.fromString(resultSet.getString("type"))
+        );
     }
 
     public static boolean isItemAvailable(Connection connection, int mediaId) {
@@ -160,6 +238,20 @@ public class MediaService {
     }
 
     public static boolean reserveMedia(Connection connection, int userId, int mediaId) {
+        ReserveEvent event = new ReserveEvent();
+        event.begin();
+        long startTime = System.nanoTime();
+        boolean reserved = CirculationLocks.withItemLock(mediaId, () -> insertReservation(connection, userId, mediaId));
+        RESERVATIONS.record(reserved, startTime);
+        event.itemType = "MEDIA";
+        event.itemId = mediaId;
+        event.userId = userId;
+        event.success = reserved;
+        event.commit();
+        return reserved;
+    }
+
+    private static boolean insertReservation(Connection connection, int userId, int mediaId) {
         String query = "INSERT INTO reservations (user_id, item_id, reservation_date) VALUES (?, ?, CURRENT_DATE)";
         try (PreparedStatement statement = connection.prepareStatement(query)) {
             statement.setInt(1, userId);
@@ -172,6 +264,20 @@ public class MediaService {
     }
 
     public static boolean borrowMedia(Connection connection, int userId, int mediaId) {
+        BorrowEvent event = new BorrowEvent();
+        event.begin();
+        long startTime = System.nanoTime();
+        boolean borrowed = CirculationLocks.withItemLock(mediaId, () -> borrowMediaInTransaction(connection, userId, mediaId));
+        BORROWS.record(borrowed, startTime);
+        event.itemType = "MEDIA";
+        event.itemId = mediaId;
+        event.userId = userId;
+        event.success = borrowed;
+        event.commit();
+        return borrowed;
+    }
+
+    private static boolean borrowMediaInTransaction(Connection connection, int userId, int mediaId) {
         if (!isItemAvailable(connection, mediaId)) {
             return false;
         }
@@ -196,6 +302,8 @@ public class MediaService {
                 }
 
                 connection.commit();
+                FacetIndex.setAvailable(mediaId, false);
+                CatalogSnapshot.setAvailable(mediaId, false);
                 return true;
             } catch (SQLException e) {
                 connection.rollback();
@@ -0,0 +1,356 @@
+package se.fulkopinglibrary.fulkopinglibrary.services;
+
+import se.fulkopinglibrary.fulkopinglibrary.models.ItemType;
+import se.fulkopinglibrary.fulkopinglibrary.models.MediaTypeImpl;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link CatalogStore} kept in direct buffers outside the Java heap, so the heap and the
+ * garbage collector's work no longer grow with the catalog.
+ *
+ * <p>Each row is a fixed {@value #SLOT_BYTES}-byte slot of little-endian {@code int}s:</p>
+ * <pre>
+ *   0  item id
+ *   4  flags: type ordinal (bits 0-7), media type code (bits 8-15, 0xFF for none),
+ *      available (bit 16)
+ *   8  title          (string offset)
+ *  12  title key      (string offset, the title's offset when already folded)
+ *  16  creator code
+ *  20  identifier     (string offset)
+ * </pre>
+ * <p>Strings live in one string area as a 4-byte length followed by UTF-8 bytes, found by
+ * their offset; -1 means null. A creator table holds two offsets per creator code, the name
+ * and its key, so each distinct author, publisher or director is stored once. Only the
+ * handful of media types stays on the heap.</p>
+ *
+ * <p>Availability is changed with atomic bit operations on the flags word, so borrowing
+ * and returning need no lock. The buffers are released when the store is no longer
+ * reachable and the collector clears the small buffer objects; the JVM caps direct memory at
+ * the heap size unless {@code -XX:MaxDirectMemorySize} says otherwise. Rows, strings and
+ * creators are each limited to 2 GB.</p>
+ */
+public final class OffHeapCatalogStore implements CatalogStore {
+    static final int SLOT_BYTES = 24;
+    static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    private static final int ID = 0;
+    private static final int FLAGS = 4;
+    private static final int TITLE = 8;
+    private static final int TITLE_KEY = 12;
+    private static final int CREATOR = 16;
+    private static final int IDENTIFIER = 20;
+    private static final int NO_MEDIA_TYPE = 0xFF;
+    private static final int AVAILABLE = 1 << 16;
+
+    private static final ItemType[] TYPES = ItemType.values();
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ORDER);
+
+    private final int size;
+    private final int creatorCount;
+    private final ByteBuffer slots;
+    private final ByteBuffer creators;
+    private final ByteBuffer strings;
+    private final MediaTypeImpl[] mediaTypes;
+
+    OffHeapCatalogStore(int size, int creatorCount, ByteBuffer slots, ByteBuffer creators, ByteBuffer strings,
+                        MediaTypeImpl[] mediaTypes) {
+        if (!slots.isDirect()) {
+            throw new IllegalArgumentException("Catalog slots must be in a direct buffer");
+        }
+        this.size = size;
+        this.creatorCount = creatorCount;
+        this.slots = slots.order(ORDER);
+        this.creators = creators.order(ORDER);
+        this.strings = strings.order(ORDER);
+        this.mediaTypes = mediaTypes;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int row(int itemId) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int id = id(middle);
+            if (id < itemId) {
+                low = middle + 1;
+            } else if (id > itemId) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    @Override
+    public int id(int row) {
+        return slots.getInt(row * SLOT_BYTES + ID);
+    }
+
+    @Override
+    public ItemType type(int row) {
+        return TYPES[slots.getInt(row * SLOT_BYTES + FLAGS) & 0xFF];
+    }
+
+    @Override
+    public MediaTypeImpl mediaType(int row) {
+        int code = (slots.getInt(row * SLOT_BYTES + FLAGS) >>> 8) & 0xFF;
+        return code == NO_MEDIA_TYPE ? null : mediaTypes[code];
+    }
+
+    @Override
+    public String title(int row) {
+        return string(slots.getInt(row * SLOT_BYTES + TITLE));
+    }
+
+    @Override
+    public String identifier(int row) {
+        return string(slots.getInt(row * SLOT_BYTES + IDENTIFIER));
+    }
+
+    @Override
+    public int creatorCode(int row) {
+        return slots.getInt(row * SLOT_BYTES + CREATOR);
+    }
+
+    @Override
+    public int creatorCount() {
+        return creatorCount;
+    }
+
+    @Override
+    public String creator(int code) {
+        return string(creators.getInt(code * 8));
+    }
+
+    @Override
+    public boolean isAvailable(int row) {
+        return ((int) INTS.getAcquire(slots, row * SLOT_BYTES + FLAGS) & AVAILABLE) != 0;
+    }
+
+    @Override
+    public void setAvailable(int row, boolean isAvailable) {
+        if (isAvailable) {
+            INTS.getAndBitwiseOrRelease(slots, row * SLOT_BYTES + FLAGS, AVAILABLE);
+        } else {
+            INTS.getAndBitwiseAndRelease(slots, row * SLOT_BYTES + FLAGS, ~AVAILABLE);
+        }
+    }
+
+    @Override
+    public boolean titleKeyStartsWith(int row, byte[] prefix) {
+        return startsWith(slots.getInt(row * SLOT_BYTES + TITLE_KEY), prefix);
+    }
+
+    @Override
+    public boolean titleKeyContains(int row, byte[] needle) {
+        return contains(slots.getInt(row * SLOT_BYTES + TITLE_KEY), needle, false);
+    }
+
+    @Override
+    public boolean creatorKeyStartsWith(int code, byte[] prefix) {
+        return startsWith(creators.getInt(code * 8 + 4), prefix);
+    }
+
+    @Override
+    public boolean creatorKeyContains(int code, byte[] needle) {
+        return contains(creators.getInt(code * 8 + 4), needle, false);
+    }
+
+    @Override
+    public boolean identifierEqualsIgnoreCase(int row, byte[] needle) {
+        int offset = slots.getInt(row * SLOT_BYTES + IDENTIFIER);
+        return length(offset) == needle.length && contains(offset, needle, true);
+    }
+
+    @Override
+    public boolean identifierContainsIgnoreCase(int row, byte[] needle) {
+        return contains(slots.getInt(row * SLOT_BYTES + IDENTIFIER), needle, true);
+    }
+
+    @Override
+    public IntBuffer newOrder() {
+        return ByteBuffer.allocateDirect(4 * size).order(ORDER).asIntBuffer();
+    }
+
+    @Override
+    public long heapBytes() {
+        return 40L * mediaTypes.length;
+    }
+
+    @Override
+    public long offHeapBytes() {
+        return (long) slots.capacity() + creators.capacity() + strings.capacity();
+    }
+
+    // The areas as laid out above, for CatalogSnapshotFile
+    ByteBuffer slots() {
+        return slots.duplicate().order(ORDER);
+    }
+
+    ByteBuffer creators() {
+        return creators.duplicate().order(ORDER);
+    }
+
+    ByteBuffer strings() {
+        return strings.duplicate().order(ORDER);
+    }
+
+    MediaTypeImpl[] mediaTypes() {
+        return mediaTypes.clone();
+    }
+
+    // The flags word of a slot; a media type code below 0 means none
+    static int flags(ItemType type, int mediaTypeCode, boolean isAvailable) {
+        return type.ordinal() | (mediaTypeCode < 0 ? NO_MEDIA_TYPE : mediaTypeCode) << 8 | (isAvailable ? AVAILABLE : 0);
+    }
+
+    private String string(int offset) {
+        if (offset < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[strings.getInt(offset)];
+        strings.get(offset + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // null matches like an empty string, as in HeapCatalogStore
+    private int length(int offset) {
+        return offset < 0 ? 0 : strings.getInt(offset);
+    }
+
+    private boolean startsWith(int offset, byte[] prefix) {
+        if (length(offset) < prefix.length) {
+            return false;
+        }
+        int from = offset + 4;
+        for (int k = 0; k < prefix.length; k++) {
+            if (strings.get(from + k) != prefix[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean contains(int offset, byte[] needle, boolean ignoreCase) {
+        int from = offset + 4;
+        int end = from + length(offset) - needle.length;
+        outer:
+        for (int start = from; start <= end; start++) {
+            for (int k = 0; k < needle.length; k++) {
+                byte b = strings.get(start + k);
+                if ((ignoreCase ? lower(b) : b) != needle[k]) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static byte lower(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+
+    /**
+     * Writes rows straight into growing direct buffers, so a rebuild does not stage the
+     * catalog on the heap either.
+     */
+    static final class Writer implements CatalogStoreWriter {
+        private int size;
+        private int creatorCount;
+        private ByteBuffer slots = allocate(1024 * SLOT_BYTES);
+        private ByteBuffer creators = allocate(1024 * 8);
+        private ByteBuffer strings = allocate(64 * 1024);
+        private int stringsLength;
+        private final List<MediaTypeImpl> mediaTypes = new ArrayList<>();
+
+        @Override
+        public void addMediaType(MediaTypeImpl mediaType) {
+            if (mediaTypes.size() == NO_MEDIA_TYPE) {
+                throw new IllegalStateException("More than " + (NO_MEDIA_TYPE - 1) + " media types");
+            }
+            mediaTypes.add(mediaType);
+        }
+
+        @Override
+        public void addCreator(String creator, String creatorKey) {
+            creators = ensureCapacity(creators, (long) creatorCount * 8, 8);
+            int name = putString(creator);
+            creators.putInt(creatorCount * 8, name);
+            creators.putInt(creatorCount * 8 + 4, creatorKey.equals(creator) ? name : putString(creatorKey));
+            creatorCount++;
+        }
+
+        @Override
+        public void add(int id, ItemType type, int mediaTypeCode, int creatorCode, String title, String titleKey,
+                        String identifier, boolean isAvailable) {
+            slots = ensureCapacity(slots, (long) size * SLOT_BYTES, SLOT_BYTES);
+            int slot = size * SLOT_BYTES;
+            int titleOffset = putString(title);
+            slots.putInt(slot + ID, id);
+            slots.putInt(slot + FLAGS, flags(type, mediaTypeCode, isAvailable));
+            slots.putInt(slot + TITLE, titleOffset);
+            slots.putInt(slot + TITLE_KEY, titleKey.equals(title) ? titleOffset : putString(titleKey));
+            slots.putInt(slot + CREATOR, creatorCode);
+            slots.putInt(slot + IDENTIFIER, putString(identifier));
+            size++;
+        }
+
+        @Override
+        public CatalogStore build() {
+            return new OffHeapCatalogStore(size, creatorCount, trim(slots, size * SLOT_BYTES),
+                trim(creators, creatorCount * 8), trim(strings, stringsLength), mediaTypes.toArray(new MediaTypeImpl[0]));
+        }
+
+        private int putString(String value) {
+            if (value == null) {
+                return -1;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            strings = ensureCapacity(strings, stringsLength, 4 + bytes.length);
+            int offset = stringsLength;
+            strings.putInt(offset, bytes.length);
+            strings.put(offset + 4, bytes);
+            stringsLength += 4 + bytes.length;
+            return offset;
+        }
+
+        private static ByteBuffer ensureCapacity(ByteBuffer buffer, long used, int needed) {
+            if (used + needed <= buffer.capacity()) {
+                return buffer;
+            }
+            if (used + needed > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Catalog buffer over 2 GB");
+            }
+            ByteBuffer grown = allocate((int) Math.min(Integer.MAX_VALUE, Math.max(2L * buffer.capacity(), used + needed)));
+            grown.put(0, buffer, 0, (int) used);
+            return grown;
+        }
+
+        // Copies to an exact-size buffer so the doubling slack is not kept for the store's life
+        private static ByteBuffer trim(ByteBuffer buffer, int length) {
+            ByteBuffer trimmed = allocate(length);
+            trimmed.put(0, buffer, 0, length);
+            return trimmed;
+        }
+
+        private static ByteBuffer allocate(int capacity) {
+            return ByteBuffer.allocateDirect(capacity).order(ORDER);
+        }
+    }
+}
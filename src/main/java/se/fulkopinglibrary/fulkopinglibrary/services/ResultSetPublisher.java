@@ -0,0 +1,225 @@
+package se.fulkopinglibrary.fulkopinglibrary.services;
+
+import se.fulkopinglibrary.fulkopinglibrary.utils.LoggerUtil;
+import se.fulkopinglibrary.fulkopinglibrary.utils.MetricsRegistry;
+import se.fulkopinglibrary.fulkopinglibrary.utils.VirtualThreads;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * Publishes the rows of a query to a {@link Flow.Subscriber} as they are read.
+ *
+ * <p>Each subscription runs on its own virtual thread. Nothing touches the database until the
+ * subscriber first requests rows; then a connection is taken through the same slots as
+ * {@link AsyncLibraryService}, the query is run with Connector/J streaming
+ * ({@code fetchSize = Integer.MIN_VALUE}), and each row is mapped and handed to
+ * {@code onNext} only when there is outstanding demand. While demand is zero the thread parks
+ * and reads nothing further, so the server's sends stall on a full socket buffer instead of
+ * the rows piling up in memory.</p>
+ *
+ * <p>On {@code cancel()} the thread wakes, cancels the statement on the server (otherwise the
+ * driver would read the remaining rows before it can close the result set) and returns the
+ * connection to the pool. A subscriber that requests nothing for
+ * {@code -Dlibrary.stream.idleTimeoutSeconds} (default 30) is treated the same way and then
+ * gets a {@link TimeoutException}, so a stalled client cannot hold a connection and its slot
+ * for long. A subscriber whose {@code onNext} throws is treated as having cancelled; the
+ * failure is logged.</p>
+ */
+public class ResultSetPublisher<T> implements Flow.Publisher<T> {
+    private static final Logger logger = LoggerUtil.getLogger(ResultSetPublisher.class);
+
+    private static final ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor("search-stream");
+    private static final MetricsRegistry.Counter CANCELLED = MetricsRegistry.counter("search.stream.cancelled");
+    private static final MetricsRegistry.Counter IDLE_TIMEOUTS = MetricsRegistry.counter("search.stream.idleTimeouts");
+    private static final long IDLE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(Long.getLong("library.stream.idleTimeoutSeconds", 30));
+
+    /**
+     * Maps the current row of a result set.
+     */
+    @FunctionalInterface
+    public interface RowMapper<T> {
+        T map(ResultSet resultSet) throws SQLException;
+    }
+
+    /**
+     * What a subscription publishes: the rows of a prepared statement, or items that were
+     * already at hand, such as the result of an exact identifier lookup.
+     */
+    public record Rows<T>(PreparedStatement statement, RowMapper<? extends T> mapper, List<? extends T> items) {
+
+        public static <T> Rows<T> of(PreparedStatement statement, RowMapper<? extends T> mapper) {
+            return new Rows<>(statement, mapper, null);
+        }
+
+        public static <T> Rows<T> of(List<? extends T> items) {
+            return new Rows<>(null, null, items);
+        }
+    }
+
+    /**
+     * Prepares the rows to publish on the subscription's connection.
+     */
+    @FunctionalInterface
+    public interface Query<T> {
+        Rows<T> open(Connection connection) throws SQLException;
+    }
+
+    private final Query<T> query;
+
+    public ResultSetPublisher(Query<T> query) {
+        this.query = query;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber");
+        RowSubscription subscription = new RowSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        executor.execute(subscription);
+    }
+
+    // Reads all the rows into a list on the caller's connection, for callers that want a page at once
+    static <T> List<T> toList(Rows<T> rows) throws SQLException {
+        if (rows.items() != null) {
+            return List.copyOf(rows.items());
+        }
+        List<T> items = new ArrayList<>();
+        try (PreparedStatement statement = rows.statement();
+             ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                items.add(rows.mapper().map(resultSet));
+            }
+        }
+        return items;
+    }
+
+    private final class RowSubscription implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super T> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private volatile boolean cancelled;
+        private volatile boolean timedOut;
+        private volatile IllegalArgumentException invalidRequest;
+        private volatile Thread worker;
+
+        RowSubscription(Flow.Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("Requested " + n + " rows; must be positive");
+            } else {
+                demand.getAndAccumulate(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            }
+            LockSupport.unpark(worker);
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            LockSupport.unpark(worker);
+        }
+
+        @Override
+        public void run() {
+            worker = Thread.currentThread();
+            try {
+                if (awaitDemand()) {
+                    AsyncLibraryService.callWithConnection(connection -> {
+                        publish(query.open(connection));
+                        return null;
+                    });
+                }
+                if (invalidRequest != null) {
+                    subscriber.onError(invalidRequest);
+                } else if (timedOut) {
+                    subscriber.onError(idleTimeout());
+                } else if (!cancelled) {
+                    subscriber.onComplete();
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (invalidRequest != null) {
+                    subscriber.onError(invalidRequest);
+                } else if (timedOut) {
+                    subscriber.onError(idleTimeout());
+                } else if (!cancelled) {
+                    logger.severe("Streaming search failed: " + e.getMessage());
+                    subscriber.onError(e);
+                }
+            }
+        }
+
+        private void publish(Rows<T> rows) throws SQLException {
+            if (rows.items() != null) {
+                for (T item : rows.items()) {
+                    if (!awaitDemand()) {
+                        return;
+                    }
+                    deliver(item);
+                }
+                return;
+            }
+
+            try (PreparedStatement statement = rows.statement()) {
+                statement.setFetchSize(Integer.MIN_VALUE);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (awaitDemand()) {
+                        if (!resultSet.next()) {
+                            return;
+                        }
+                        deliver(rows.mapper().map(resultSet));
+                    }
+                    // Stopped early: end the query on the server so closing doesn't read the rest
+                    CANCELLED.increment();
+                    statement.cancel();
+                }
+            }
+        }
+
+        // A subscriber that throws has broken the contract (rule 2.13): stop as if it had cancelled
+        private void deliver(T item) {
+            try {
+                subscriber.onNext(item);
+                demand.decrementAndGet();
+            } catch (RuntimeException e) {
+                logger.warning(() -> "Search stream subscriber failed, cancelling: " + e);
+                cancelled = true;
+            }
+        }
+
+        // Parks until rows are requested; false once the subscription is over or has idled too long
+        private boolean awaitDemand() {
+            long deadline = System.nanoTime() + IDLE_TIMEOUT_NANOS;
+            while (demand.get() == 0 && !cancelled && invalidRequest == null) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    IDLE_TIMEOUTS.increment();
+                    timedOut = true;
+                    cancelled = true;
+                    break;
+                }
+                LockSupport.parkNanos(this, remaining);
+            }
+            return !cancelled && invalidRequest == null;
+        }
+
+        private TimeoutException idleTimeout() {
+            return new TimeoutException("No rows requested for "
+                + TimeUnit.NANOSECONDS.toSeconds(IDLE_TIMEOUT_NANOS) + " s, stream closed");
+        }
+    }
+}
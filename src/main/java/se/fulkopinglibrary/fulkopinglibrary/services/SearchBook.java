@@ -1,15 +1,18 @@
 package se.fulkopinglibrary.fulkopinglibrary.services;
 
 import se.fulkopinglibrary.fulkopinglibrary.models.Book;
+import se.fulkopinglibrary.fulkopinglibrary.models.LibraryItem;
 import java.util.logging.Logger;
+import se.fulkopinglibrary.fulkopinglibrary.utils.LoggerUtil;
 import se.fulkopinglibrary.fulkopinglibrary.utils.Searchable;
 
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.List;
+import java.util.concurrent.Flow;
 
 public class SearchBook implements Searchable<Book> {
-    private static final Logger logger = Logger.getLogger(SearchBook.class.getName());
+    private static final Logger logger = LoggerUtil.getLogger(SearchBook.class);
 
     @Override
     public List<Book> search(Connection connection, String searchTerm, String searchType, int sortOption, int page, int pageSize) {
@@ -21,6 +24,23 @@ public class SearchBook implements Searchable<Book> {
         }
     }
 
+    @Override
+    public Flow.Publisher<Book> publish(String searchTerm, String searchType, int sortOption, int page, int pageSize) {
+        String term = searchTerm == null ? "" : searchTerm.trim();
+        return new ResultSetPublisher<>(connection -> {
+            // An ISBN resolves to at most one book, as in BookService.searchBooks
+            if ("isbn".equals(searchType) || "general".equals(searchType)) {
+                IdentifierIndex.Identifier identifier = IdentifierIndex.match(connection, term);
+                if (identifier != null && identifier.kind() == IdentifierIndex.Kind.ISBN) {
+                    LibraryItem item = page == 1 ? IdentifierIndex.find(connection, identifier) : null;
+                    return ResultSetPublisher.Rows.of(item instanceof Book book ? List.of(book) : List.<Book>of());
+                }
+            }
+            return ResultSetPublisher.Rows.of(
+                BookService.prepareSearch(connection, searchType, term, sortOption, page, pageSize), BookService::mapBook);
+        });
+    }
+
     @Override
     public String getDisplayHeader() {
         return "=== Books ===\n" +
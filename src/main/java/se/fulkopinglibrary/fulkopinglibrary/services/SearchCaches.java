@@ -0,0 +1,67 @@
+package se.fulkopinglibrary.fulkopinglibrary.services;
+
+import se.fulkopinglibrary.fulkopinglibrary.models.Book;
+import se.fulkopinglibrary.fulkopinglibrary.models.Magazine;
+import se.fulkopinglibrary.fulkopinglibrary.utils.MetricsRegistry;
+import se.fulkopinglibrary.fulkopinglibrary.utils.QueryCache;
+import se.fulkopinglibrary.fulkopinglibrary.utils.SearchKeys;
+
+import java.util.List;
+
+/**
+ * Result caches for the catalog searches in {@link BookService} and {@link MagazineService}.
+ *
+ * <p>Keys are the normalized query tuple: the search term is folded with {@link SearchKeys},
+ * as the searches match it against the folded key columns. Any write that can
+ * change availability or the set of catalog items must call one of the invalidate methods.</p>
+ */
+public class SearchCaches {
+    private static final int MAX_ENTRIES = 1000;
+    private static final long TTL_MILLIS = 60_000;
+
+    record BookSearchKey(String term, String searchType, int sortOption, int page, int pageSize) {
+    }
+
+    record MagazineSearchKey(String term, String searchType) {
+    }
+
+    static final QueryCache<BookSearchKey, List<Book>> BOOK_SEARCHES =
+        new QueryCache<>("bookSearch", MAX_ENTRIES, TTL_MILLIS);
+
+    static final QueryCache<MagazineSearchKey, List<Magazine>> MAGAZINE_SEARCHES =
+        new QueryCache<>("magazineSearch", MAX_ENTRIES, TTL_MILLIS);
+
+    static {
+        registerGauges(BOOK_SEARCHES);
+        registerGauges(MAGAZINE_SEARCHES);
+    }
+
+    private static void registerGauges(QueryCache<?, ?> cache) {
+        String prefix = "cache." + cache.getStats().name();
+        MetricsRegistry.gauge(prefix + ".hitRatio", () -> cache.getStats().hitRatio());
+        MetricsRegistry.gauge(prefix + ".loadsSaved", () -> cache.getStats().loadsSaved());
+        MetricsRegistry.gauge(prefix + ".size", () -> cache.getStats().size());
+    }
+
+    static String normalizeTerm(String term) {
+        return SearchKeys.fold(term);
+    }
+
+    public static void invalidateBooks() {
+        BOOK_SEARCHES.invalidateAll();
+    }
+
+    public static void invalidateMagazines() {
+        MAGAZINE_SEARCHES.invalidateAll();
+    }
+
+    // Used when the type of the changed item is not known, e.g. on return by loan id
+    public static void invalidateAll() {
+        invalidateBooks();
+        invalidateMagazines();
+    }
+
+    public static List<QueryCache.Stats> getStats() {
+        return List.of(BOOK_SEARCHES.getStats(), MAGAZINE_SEARCHES.getStats());
+    }
+}
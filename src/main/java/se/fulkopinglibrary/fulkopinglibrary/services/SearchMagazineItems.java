@@ -0,0 +1,60 @@
+package se.fulkopinglibrary.fulkopinglibrary.services;
+
+import se.fulkopinglibrary.fulkopinglibrary.models.LibraryItem;
+import se.fulkopinglibrary.fulkopinglibrary.models.Magazine;
+import se.fulkopinglibrary.fulkopinglibrary.utils.Searchable;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+public class SearchMagazineItems implements Searchable<Magazine> {
+
+    @Override
+    public List<Magazine> search(Connection connection, String searchTerm, String searchType, int sortOption, int page, int pageSize) throws SQLException {
+        return ResultSetPublisher.toList(rows(connection, trim(searchTerm), searchType, sortOption, page, pageSize));
+    }
+
+    @Override
+    public Flow.Publisher<Magazine> publish(String searchTerm, String searchType, int sortOption, int page, int pageSize) {
+        String term = trim(searchTerm);
+        return new ResultSetPublisher<>(connection -> rows(connection, term, searchType, sortOption, page, pageSize));
+    }
+
+    // searchType is title, publisher, issn or anything else for all three
+    private static ResultSetPublisher.Rows<Magazine> rows(Connection connection, String term, String searchType,
+            int sortOption, int page, int pageSize) throws SQLException {
+        // A valid ISSN resolves to at most one magazine, as in MagazineService.searchMagazines
+        if (!searchType.equalsIgnoreCase("title") && !searchType.equalsIgnoreCase("publisher")) {
+            IdentifierIndex.Identifier identifier = IdentifierIndex.match(connection, term);
+            if (identifier != null && identifier.kind() == IdentifierIndex.Kind.ISSN) {
+                LibraryItem item = page == 1 ? IdentifierIndex.find(connection, identifier) : null;
+                return ResultSetPublisher.Rows.of(item instanceof Magazine magazine ? List.of(magazine) : List.<Magazine>of());
+            }
+        }
+        return ResultSetPublisher.Rows.of(
+            MagazineService.prepareSearch(connection, searchType, term, sortOption, page, pageSize), MagazineService::mapMagazine);
+    }
+
+    private static String trim(String searchTerm) {
+        return searchTerm == null ? "" : searchTerm.trim();
+    }
+
+    @Override
+    public String getDisplayHeader() {
+        return "=== Magazines ===\n" +
+               "ID | Title | Publisher | ISSN | Available\n" +
+               "----------------------------------------";
+    }
+
+    @Override
+    public String getDisplayRow(Magazine magazine) {
+        return String.format("%-4d | %-30s | %-20s | %-9s | %-8s",
+            magazine.getId(),
+            magazine.getTitle(),
+            magazine.getPublisher(),
+            magazine.getIssn(),
+            magazine.isAvailable() ? "Yes" : "No");
+    }
+}
@@ -0,0 +1,66 @@
+package se.fulkopinglibrary.fulkopinglibrary.services;
+
+import se.fulkopinglibrary.fulkopinglibrary.models.LibraryItem;
+import se.fulkopinglibrary.fulkopinglibrary.models.MediaItem;
+import se.fulkopinglibrary.fulkopinglibrary.utils.Searchable;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Flow;
+
+public class SearchMediaItems implements Searchable<MediaItem> {
+
+    @Override
+    public List<MediaItem> search(Connection connection, String searchTerm, String searchType, int sortOption, int page, int pageSize) throws SQLException {
+        return ResultSetPublisher.toList(rows(connection, trim(searchTerm), searchType, sortOption, page, pageSize));
+    }
+
+    @Override
+    public Flow.Publisher<MediaItem> publish(String searchTerm, String searchType, int sortOption, int page, int pageSize) {
+        String term = trim(searchTerm);
+        return new ResultSetPublisher<>(connection -> rows(connection, term, searchType, sortOption, page, pageSize));
+    }
+
+    // searchType is title, director, catalog_number or anything else for all three
+    private static ResultSetPublisher.Rows<MediaItem> rows(Connection connection, String term, String searchType,
+            int sortOption, int page, int pageSize) throws SQLException {
+        // A known catalog number in a general search resolves to its one item; a catalog number
+        // search matches fragments too, as in MediaService
+        IdentifierIndex.Identifier identifier = null;
+        if (!Arrays.asList("title", "director", "catalog_number").contains(searchType.toLowerCase(Locale.ROOT))) {
+            identifier = IdentifierIndex.match(connection, term);
+        }
+        if (identifier != null && identifier.kind() == IdentifierIndex.Kind.CATALOG_NUMBER) {
+            LibraryItem item = IdentifierIndex.find(connection, identifier);
+            if (item instanceof MediaItem media) {
+                return ResultSetPublisher.Rows.of(page == 1 ? List.of(media) : List.<MediaItem>of());
+            }
+        }
+        return ResultSetPublisher.Rows.of(
+            MediaService.prepareSearch(connection, searchType, term, sortOption, page, pageSize), MediaService::mapMedia);
+    }
+
+    private static String trim(String searchTerm) {
+        return searchTerm == null ? "" : searchTerm.trim();
+    }
+
+    @Override
+    public String getDisplayHeader() {
+        return "=== Media ===\n" +
+               "ID | Title | Director | Catalog Number | Available\n" +
+               "----------------------------------------";
+    }
+
+    @Override
+    public String getDisplayRow(MediaItem media) {
+        return String.format("%-4d | %-30s | %-20s | %-14s | %-8s",
+            media.getId(),
+            media.getTitle(),
+            media.getDirector(),
+            media.getCatalogNumber(),
+            media.isAvailable() ? "Yes" : "No");
+    }
+}
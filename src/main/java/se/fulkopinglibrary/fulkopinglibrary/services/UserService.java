@@ -1,8 +1,12 @@
 package se.fulkopinglibrary.fulkopinglibrary.services;
 
+import se.fulkopinglibrary.fulkopinglibrary.events.LoginEvent;
 import se.fulkopinglibrary.fulkopinglibrary.models.User;
 import java.util.Set;
 import java.util.HashSet;
+import se.fulkopinglibrary.fulkopinglibrary.utils.FailureTracker;
+import se.fulkopinglibrary.fulkopinglibrary.utils.LoggerUtil;
+import se.fulkopinglibrary.fulkopinglibrary.utils.MetricsRegistry;
 import se.fulkopinglibrary.fulkopinglibrary.utils.PasswordUtils;
 
 import java.sql.Connection;
@@ -11,14 +15,21 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.Calendar;
+import java.util.Locale;
 import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class UserService {
-    private static final Logger logger = Logger.getLogger(UserService.class.getName());
+    private static final Logger logger = LoggerUtil.getLogger(UserService.class);
     private static final int MIN_PASSWORD_LENGTH = 8;
 
+    private static final MetricsRegistry.Outcome LOGINS = MetricsRegistry.outcome("login");
+    private static final MetricsRegistry.Counter LOCKOUTS = MetricsRegistry.counter("login.lockout");
+    private static final MetricsRegistry.Counter LOCKED_REJECTIONS = MetricsRegistry.counter("login.rejectedLocked");
+    private static final MetricsRegistry.Counter THROTTLED = MetricsRegistry.counter("login.throttled");
+
     public static boolean signup(Connection connection, Scanner scanner) {
         System.out.print("Enter username: ");
         String username = scanner.nextLine().trim();
@@ -56,11 +67,15 @@ public class UserService {
             return false;
         }
 
-        // Check if username already exists
-        if (usernameExists(connection, username)) {
+        // Check if username or email is already taken
+        if (!isUsernameAvailable(connection, username)) {
             logger.log(Level.WARNING, "Username already exists");
             return false;
         }
+        if (!isEmailAvailable(connection, email)) {
+            logger.log(Level.WARNING, "Email is already registered");
+            return false;
+        }
 
         // Generate salt and hash the password
         String salt = PasswordUtils.generateSalt();
@@ -101,7 +116,8 @@ public class UserService {
                                 roleStatement.setInt(1, userId);
                                 roleStatement.executeUpdate();
                                 
-                                logger.log(Level.INFO, "User successfully registered: " + username);
+                                AccountAvailability.record(username, email);
+                                logger.log(Level.INFO, () -> "User successfully registered: " + username);
                             }
                         }
                     }
@@ -160,7 +176,8 @@ public class UserService {
                     
                     int rowsUpdated = statement.executeUpdate();
                     if (rowsUpdated > 0) {
-                        logger.log(Level.INFO, "Profile updated for user ID: " + userId);
+                        AccountAvailability.record(null, email);
+                        logger.log(Level.INFO, () -> "Profile updated for user ID: " + userId);
                     }
                 } catch (SQLException e) {
                     throw new RuntimeException("Database error during profile update", e);
@@ -189,19 +206,26 @@ public class UserService {
         }
     }
 
-    private static boolean usernameExists(Connection connection, String username) {
-        String query = "SELECT 1 FROM users WHERE username = ?";
-        try (PreparedStatement statement = connection.prepareStatement(query)) {
-            statement.setString(1, username);
-            try (ResultSet rs = statement.executeQuery()) {
-                return rs.next();
-            }
+    // Only a possible match in the in-memory filter costs a query
+    private static boolean isUsernameAvailable(Connection connection, String username) {
+        try {
+            return AccountAvailability.isUsernameAvailable(connection, username);
         } catch (SQLException e) {
+            // Fail closed: an unchecked name must not be offered as free
             logger.log(Level.SEVERE, "Error checking username existence", e);
             return false;
         }
     }
 
+    private static boolean isEmailAvailable(Connection connection, String email) {
+        try {
+            return AccountAvailability.isEmailAvailable(connection, email);
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Error checking email existence", e);
+            return false;
+        }
+    }
+
     private static boolean isPasswordStrong(String password) {
         String validationResult = PasswordUtils.validatePasswordStrength(password);
         if (validationResult != null) {
@@ -226,6 +250,18 @@ public class UserService {
 
     private static final int MAX_LOGIN_ATTEMPTS = 5;
     private static final int LOCKOUT_MINUTES = 15;
+    private static final int MAX_SOURCE_FAILURES = Integer.getInteger("library.login.maxSourceFailures", 20);
+
+    // Failed logins are counted in memory; only a lockout is written to the users table
+    private static final FailureTracker userFailures = new FailureTracker(
+        MAX_LOGIN_ATTEMPTS, LOCKOUT_MINUTES, LOCKOUT_MINUTES, TimeUnit.MINUTES, 64, 100_000);
+    private static final FailureTracker sourceFailures = new FailureTracker(
+        MAX_SOURCE_FAILURES, LOCKOUT_MINUTES, LOCKOUT_MINUTES, TimeUnit.MINUTES, 64, 100_000);
+
+    static {
+        MetricsRegistry.gauge("login.trackedUsers", userFailures::size);
+        MetricsRegistry.gauge("login.trackedSources", sourceFailures::size);
+    }
 
     public static User login(Connection connection, Scanner scanner) {
         System.out.print("Enter username: ");
@@ -233,11 +269,59 @@ public class UserService {
         System.out.print("Enter password: ");
         String password = scanner.nextLine().trim();
 
-        if (username.isBlank() || password.isBlank()) {
+        return login(connection, username, password);
+    }
+
+    // Non-interactive login used by the async facade and other front ends
+    public static User login(Connection connection, String username, String password) {
+        return login(connection, username, password, null);
+    }
+
+    /**
+     * Logs in on behalf of a client at {@code source} (e.g. its address), or an unknown
+     * client if null. Failures are also counted per source, so one client guessing across
+     * many accounts is blocked as well.
+     */
+    public static User login(Connection connection, String username, String password, String source) {
+        LoginEvent event = new LoginEvent();
+        event.begin();
+        long startTime = System.nanoTime();
+        User user = authenticate(connection, username, password, source, event);
+        LOGINS.record(user != null, startTime);
+        if (user != null) {
+            event.userId = user.getUserId();
+            event.outcome = "SUCCESS";
+        }
+        event.commit();
+        return user;
+    }
+
+    /**
+     * Seconds until a login for this username or from this source is let through again, 0 if
+     * it is not throttled. Front ends can check this before borrowing a connection; it knows
+     * the name only as typed, so a differently accented spelling of a throttled account is
+     * refused by the login itself, once the stored name is known.
+     */
+    public static long loginBlockedForSeconds(String username, String source) {
+        long nanos = Math.max(
+            username == null ? 0 : userFailures.blockedFor(failureKey(username)),
+            source == null ? 0 : sourceFailures.blockedFor(source));
+        return nanos == 0 ? 0 : Math.max(1, TimeUnit.NANOSECONDS.toSeconds(nanos));
+    }
+
+    // Sets the outcome of a failed attempt on the event; the caller fills in success
+    private static User authenticate(Connection connection, String username, String password, String source, LoginEvent event) {
+        if (username == null || password == null || username.isBlank() || password.isBlank()) {
             logger.log(Level.WARNING, "Username and password cannot be blank");
+            event.outcome = "BLANK_CREDENTIALS";
             return null;
         }
 
+        // Refuse throttled attempts before they cost a query or a password hash
+        if (userFailures.isBlocked(failureKey(username)) || (source != null && sourceFailures.isBlocked(source))) {
+            return throttled(username, event);
+        }
+
         String query = "SELECT * FROM users WHERE username = ?";
         
         try (PreparedStatement statement = connection.prepareStatement(query)) {
@@ -246,12 +330,25 @@ public class UserService {
                     try (ResultSet rs = statement.executeQuery()) {
                         if (!rs.next()) {
                             logger.log(Level.WARNING, "User not found: " + username);
+                            event.outcome = "UNKNOWN_USER";
+                            recordSourceFailure(source);
+                            userFailures.recordFailure(failureKey(username));
                             return null;
                         }
 
+                        // The collation matches other spellings of the name, so count against the stored one
+                        String userKey = failureKey(rs.getString("username"));
+                        if (userFailures.isBlocked(userKey)) {
+                            event.userId = rs.getInt("user_id");
+                            return throttled(username, event);
+                        }
+
                         // Check if account is locked
                         Timestamp lockoutUntil = rs.getTimestamp("lockout_until");
                         if (lockoutUntil != null && lockoutUntil.after(new Timestamp(System.currentTimeMillis()))) {
+                            LOCKED_REJECTIONS.increment();
+                            event.userId = rs.getInt("user_id");
+                            event.outcome = "LOCKED";
                             logger.log(Level.WARNING, "Account locked for user: " + username);
                             return null;
                         }
@@ -263,17 +360,25 @@ public class UserService {
                         boolean passwordValid = PasswordUtils.verifyPassword(password, storedHash, salt);
                         
                         if (!passwordValid) {
-                            // Increment failed attempts only if user exists but password is wrong
-                            int attempts = incrementFailedAttempts(connection, rs.getInt("user_id"));
+                            // Counted in memory; the users table is only written once the account locks
+                            recordSourceFailure(source);
+                            int attempts = userFailures.recordFailure(userKey);
+                            event.userId = rs.getInt("user_id");
+                            event.outcome = "INVALID_PASSWORD";
                             if (attempts >= MAX_LOGIN_ATTEMPTS) {
-                                lockAccount(connection, rs.getInt("user_id"));
+                                lockAccount(connection, rs.getInt("user_id"), attempts);
+                                LOCKOUTS.increment();
+                                event.outcome = "LOCKED_OUT";
                                 logger.log(Level.WARNING, "Account locked due to too many failed attempts: " + username);
                             }
                             return null;
                         }
 
-                        // Reset failed attempts on successful login
-                        resetFailedAttempts(connection, rs.getInt("user_id"));
+                        // Reset failed attempts on successful login, writing only if something was persisted
+                        userFailures.reset(userKey);
+                        if (rs.getInt("failed_attempts") != 0 || lockoutUntil != null) {
+                            resetFailedAttempts(connection, rs.getInt("user_id"));
+                        }
                         
                         // Get roles from join table
                         Set<String> roles = new HashSet<>();
@@ -310,10 +415,22 @@ public class UserService {
             }
         } catch (SQLException e) {
             logger.log(Level.SEVERE, "Database error during login", e);
+            event.outcome = "ERROR";
         }
         return null;
     }
 
+    private static String failureKey(String username) {
+        return username.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static User throttled(String username, LoginEvent event) {
+        THROTTLED.increment();
+        event.outcome = "THROTTLED";
+        logger.log(Level.WARNING, "Login throttled for user: " + username);
+        return null;
+    }
+
     private static void resetFailedAttempts(Connection connection, int userId) throws SQLException {
         String query = "UPDATE users SET failed_attempts = 0, lockout_until = NULL WHERE user_id = ?";
         try (PreparedStatement statement = connection.prepareStatement(query)) {
@@ -322,47 +439,24 @@ public class UserService {
         }
     }
 
-    private static int incrementFailedAttempts(Connection connection, int userId) throws SQLException {
-        String updateQuery = "UPDATE users SET failed_attempts = failed_attempts + 1 WHERE user_id = ?";
-        String selectQuery = "SELECT failed_attempts FROM users WHERE user_id = ?";
-        
-        try (PreparedStatement updateStatement = connection.prepareStatement(updateQuery);
-             PreparedStatement selectStatement = connection.prepareStatement(selectQuery)) {
-            
-            updateStatement.setInt(1, userId);
-            updateStatement.executeUpdate();
-            
-            selectStatement.setInt(1, userId);
-            try (ResultSet rs = selectStatement.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt("failed_attempts");
-                }
-            }
+    private static void recordSourceFailure(String source) {
+        if (source != null && sourceFailures.recordFailure(source) >= MAX_SOURCE_FAILURES) {
+            logger.log(Level.WARNING, "Too many failed logins, blocking source: " + source);
         }
-        return 0;
     }
 
-    private static void lockAccount(Connection connection, int userId) throws SQLException {
-        try {
-            connection.setAutoCommit(false);
-            
-            Calendar cal = Calendar.getInstance();
-            cal.add(Calendar.MINUTE, LOCKOUT_MINUTES);
-            Timestamp lockoutUntil = new Timestamp(cal.getTimeInMillis());
-            
-            String query = "UPDATE users SET lockout_until = ? WHERE user_id = ?";
-            try (PreparedStatement statement = connection.prepareStatement(query)) {
-                statement.setTimestamp(1, lockoutUntil);
-                statement.setInt(2, userId);
-                statement.executeUpdate();
-            }
-            
-            connection.commit();
-        } catch (SQLException e) {
-            connection.rollback();
-            throw e;
-        } finally {
-            connection.setAutoCommit(true);
+    // Single statement, so no explicit transaction is needed
+    private static void lockAccount(Connection connection, int userId, int attempts) throws SQLException {
+        Calendar cal = Calendar.getInstance();
+        cal.add(Calendar.MINUTE, LOCKOUT_MINUTES);
+        Timestamp lockoutUntil = new Timestamp(cal.getTimeInMillis());
+
+        String query = "UPDATE users SET failed_attempts = ?, lockout_until = ? WHERE user_id = ?";
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setInt(1, attempts);
+            statement.setTimestamp(2, lockoutUntil);
+            statement.setInt(3, userId);
+            statement.executeUpdate();
         }
     }
 }
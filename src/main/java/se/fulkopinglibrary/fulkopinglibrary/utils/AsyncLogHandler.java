@@ -0,0 +1,180 @@
+package se.fulkopinglibrary.fulkopinglibrary.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * java.util.logging handler that hands records to a background writer thread.
+ *
+ * <p>Logging threads only enqueue the record into a bounded ring buffer; formatting and I/O
+ * happen on a single daemon thread that drains the buffer in batches and publishes to the
+ * wrapped sink handlers. When the buffer is full the {@link OverflowPolicy} decides whether
+ * the caller waits for space or the record is dropped and counted.</p>
+ *
+ * <p>{@link #flush()} queues a marker behind the records already queued and waits, up to five
+ * seconds, until the writer thread reaches it, so everything logged before the flush has
+ * been published to the sinks when it returns.</p>
+ */
+public class AsyncLogHandler extends Handler {
+    private static final int DRAIN_BATCH_SIZE = 256;
+
+    public enum OverflowPolicy {
+        BLOCK,
+        DROP
+    }
+
+    private final BlockingQueue<LogRecord> buffer;
+    private final OverflowPolicy overflowPolicy;
+    private final List<Handler> sinks;
+    private final Thread writer;
+    private final LongAdder dropped = new LongAdder();
+    private volatile boolean closed;
+
+    // Queued by flush(); released once the records ahead of it have been written
+    private static final class FlushMarker extends LogRecord {
+        private static final long serialVersionUID = 1L;
+
+        // Never serialized: markers stay inside this handler
+        private final transient CountDownLatch reached = new CountDownLatch(1);
+
+        FlushMarker() {
+            super(Level.OFF, null);
+        }
+    }
+
+    public AsyncLogHandler(int capacity, OverflowPolicy overflowPolicy, List<Handler> sinks) {
+        this.buffer = new ArrayBlockingQueue<>(capacity);
+        this.overflowPolicy = overflowPolicy;
+        this.sinks = List.copyOf(sinks);
+        this.writer = new Thread(this::drainLoop, "async-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (closed || !isLoggable(record)) {
+            return;
+        }
+        // The writer thread must not see a lazily computed source class, so resolve it here
+        record.getSourceClassName();
+
+        if (overflowPolicy == OverflowPolicy.BLOCK) {
+            try {
+                buffer.put(record);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                dropped.increment();
+            }
+        } else if (!buffer.offer(record)) {
+            dropped.increment();
+        }
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public int getQueuedCount() {
+        return buffer.size();
+    }
+
+    // Wait until everything enqueued so far has been written
+    @Override
+    public void flush() {
+        if (!closed && writer.isAlive()) {
+            FlushMarker marker = new FlushMarker();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            try {
+                if (buffer.offer(marker, 5, TimeUnit.SECONDS)) {
+                    marker.reached.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (Handler sink : sinks) {
+            sink.flush();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        writer.interrupt();
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Anything the writer did not get to is written from the closing thread
+        List<LogRecord> remaining = new ArrayList<>();
+        buffer.drainTo(remaining);
+        write(remaining);
+        for (Handler sink : sinks) {
+            sink.close();
+        }
+    }
+
+    private void drainLoop() {
+        List<LogRecord> batch = new ArrayList<>(DRAIN_BATCH_SIZE);
+        long reportedDrops = 0;
+        while (!closed) {
+            try {
+                batch.add(buffer.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            buffer.drainTo(batch, DRAIN_BATCH_SIZE - 1);
+
+            long totalDrops = dropped.sum();
+            if (totalDrops > reportedDrops) {
+                LogRecord notice = new LogRecord(Level.WARNING,
+                    "Log buffer full, dropped " + (totalDrops - reportedDrops) + " records");
+                notice.setLoggerName(AsyncLogHandler.class.getName());
+                notice.setSourceClassName(AsyncLogHandler.class.getName());
+                batch.add(notice);
+                reportedDrops = totalDrops;
+            }
+
+            write(batch);
+            batch.clear();
+            if (buffer.isEmpty()) {
+                for (Handler sink : sinks) {
+                    sink.flush();
+                }
+            }
+        }
+    }
+
+    private void write(List<LogRecord> records) {
+        for (LogRecord record : records) {
+            if (record instanceof FlushMarker marker) {
+                for (Handler sink : sinks) {
+                    sink.flush();
+                }
+                marker.reached.countDown();
+                continue;
+            }
+            for (Handler sink : sinks) {
+                try {
+                    sink.publish(record);
+                } catch (RuntimeException e) {
+                    reportError("Log sink failed", e, ErrorManager.WRITE_FAILURE);
+                }
+            }
+        }
+    }
+}
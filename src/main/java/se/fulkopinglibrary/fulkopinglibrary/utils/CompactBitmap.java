@@ -0,0 +1,430 @@
+package se.fulkopinglibrary.fulkopinglibrary.utils;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Compressed set of non-negative ints, such as item ids.
+ *
+ * <p>Values are grouped in chunks of 65536 by their upper 16 bits. A chunk with up to 4096
+ * values stores their lower halves as a sorted {@code char} array (2 bytes per value); a fuller
+ * chunk switches to a 1024-word bitmap (8 KB, one bit per possible value). So a facet value
+ * held by a handful of items costs a few bytes, and one held by half the catalog one bit per
+ * item. Intersections work chunk by chunk with the cheapest method for the pair: popcount of
+ * ANDed words, bit probes, or a merge of sorted arrays.</p>
+ *
+ * <p>Not thread-safe; callers guard shared instances.</p>
+ */
+public class CompactBitmap {
+    private static final int ARRAY_LIMIT = 4096;
+    private static final int BITMAP_WORDS = 1024;
+
+    private char[] keys = new char[2];
+    // char[] (sorted, sizes[i] used) or long[BITMAP_WORDS]
+    private Object[] containers = new Object[2];
+    private int[] sizes = new int[2];
+    private int chunks;
+
+    public static CompactBitmap of(int... values) {
+        CompactBitmap bitmap = new CompactBitmap();
+        for (int value : values) {
+            bitmap.add(value);
+        }
+        return bitmap;
+    }
+
+    // True if the value was not already present
+    public boolean add(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value: " + value);
+        }
+        char key = (char) (value >>> 16);
+        char low = (char) value;
+        int index = findChunk(key);
+        if (index < 0) {
+            index = -index - 1;
+            insertChunk(index, key);
+        }
+        if (containers[index] instanceof long[] bits) {
+            long mask = 1L << low;
+            if ((bits[low >>> 6] & mask) != 0) {
+                return false;
+            }
+            bits[low >>> 6] |= mask;
+            sizes[index]++;
+            return true;
+        }
+
+        char[] array = (char[]) containers[index];
+        int size = sizes[index];
+        int position = Arrays.binarySearch(array, 0, size, low);
+        if (position >= 0) {
+            return false;
+        }
+        position = -position - 1;
+        if (size == ARRAY_LIMIT) {
+            long[] bits = toBits(array, size);
+            bits[low >>> 6] |= 1L << low;
+            containers[index] = bits;
+        } else {
+            if (size == array.length) {
+                array = Arrays.copyOf(array, Math.min(ARRAY_LIMIT, Math.max(4, size * 2)));
+                containers[index] = array;
+            }
+            System.arraycopy(array, position, array, position + 1, size - position);
+            array[position] = low;
+        }
+        sizes[index]++;
+        return true;
+    }
+
+    // True if the value was present
+    public boolean remove(int value) {
+        if (value < 0) {
+            return false;
+        }
+        int index = findChunk((char) (value >>> 16));
+        if (index < 0) {
+            return false;
+        }
+        char low = (char) value;
+        if (containers[index] instanceof long[] bits) {
+            long mask = 1L << low;
+            if ((bits[low >>> 6] & mask) == 0) {
+                return false;
+            }
+            bits[low >>> 6] &= ~mask;
+            // Back to an array well below the limit, so a chunk at the edge doesn't flip back and forth
+            if (--sizes[index] <= ARRAY_LIMIT / 2) {
+                containers[index] = toArray(bits, sizes[index]);
+            }
+        } else {
+            char[] array = (char[]) containers[index];
+            int size = sizes[index];
+            int position = Arrays.binarySearch(array, 0, size, low);
+            if (position < 0) {
+                return false;
+            }
+            System.arraycopy(array, position + 1, array, position, size - position - 1);
+            sizes[index]--;
+        }
+        if (sizes[index] == 0) {
+            removeChunk(index);
+        }
+        return true;
+    }
+
+    public boolean contains(int value) {
+        if (value < 0) {
+            return false;
+        }
+        int index = findChunk((char) (value >>> 16));
+        return index >= 0 && containsLow(index, (char) value);
+    }
+
+    public int cardinality() {
+        int total = 0;
+        for (int i = 0; i < chunks; i++) {
+            total += sizes[i];
+        }
+        return total;
+    }
+
+    public boolean isEmpty() {
+        return chunks == 0;
+    }
+
+    // Size of the intersection, without building it
+    public int andCardinality(CompactBitmap other) {
+        int total = 0;
+        int i = 0;
+        int j = 0;
+        while (i < chunks && j < other.chunks) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                total += intersectChunk(this, i, other, j, null);
+                i++;
+                j++;
+            }
+        }
+        return total;
+    }
+
+    public CompactBitmap and(CompactBitmap other) {
+        CompactBitmap result = new CompactBitmap();
+        int i = 0;
+        int j = 0;
+        char[] scratch = new char[ARRAY_LIMIT];
+        while (i < chunks && j < other.chunks) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                if (containers[i] instanceof long[] bits && other.containers[j] instanceof long[] otherBits) {
+                    long[] anded = new long[BITMAP_WORDS];
+                    int size = 0;
+                    for (int w = 0; w < BITMAP_WORDS; w++) {
+                        anded[w] = bits[w] & otherBits[w];
+                        size += Long.bitCount(anded[w]);
+                    }
+                    if (size > 0) {
+                        result.appendChunk(keys[i], size > ARRAY_LIMIT ? anded : toArray(anded, size), size);
+                    }
+                } else {
+                    // At least one side is an array, so the result fits one
+                    int size = intersectChunk(this, i, other, j, scratch);
+                    if (size > 0) {
+                        result.appendChunk(keys[i], Arrays.copyOf(scratch, size), size);
+                    }
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    public int[] toArray() {
+        int[] values = new int[cardinality()];
+        int n = 0;
+        for (int i = 0; i < chunks; i++) {
+            int high = keys[i] << 16;
+            if (containers[i] instanceof long[] bits) {
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    long word = bits[w];
+                    while (word != 0) {
+                        values[n++] = high | (w << 6) | Long.numberOfTrailingZeros(word);
+                        word &= word - 1;
+                    }
+                }
+            } else {
+                char[] array = (char[]) containers[i];
+                for (int k = 0; k < sizes[i]; k++) {
+                    values[n++] = high | array[k];
+                }
+            }
+        }
+        return values;
+    }
+
+    // The values at positions from to from + count - 1 in ascending order, fewer past the end
+    public int[] toArray(int from, int count) {
+        int[] values = new int[Math.max(0, Math.min(count, cardinality() - from))];
+        int n = 0;
+        int skip = from;
+        for (int i = 0; i < chunks && n < values.length; i++) {
+            if (skip >= sizes[i]) {
+                skip -= sizes[i];
+                continue;
+            }
+            int high = keys[i] << 16;
+            if (containers[i] instanceof long[] bits) {
+                for (int w = 0; w < BITMAP_WORDS && n < values.length; w++) {
+                    long word = bits[w];
+                    while (word != 0 && n < values.length) {
+                        if (skip > 0) {
+                            skip--;
+                        } else {
+                            values[n++] = high | (w << 6) | Long.numberOfTrailingZeros(word);
+                        }
+                        word &= word - 1;
+                    }
+                }
+            } else {
+                char[] array = (char[]) containers[i];
+                for (int k = skip; k < sizes[i] && n < values.length; k++) {
+                    values[n++] = high | array[k];
+                }
+            }
+            skip = 0;
+        }
+        return values;
+    }
+
+    // Calls action with each value in ascending order
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < chunks; i++) {
+            int high = keys[i] << 16;
+            if (containers[i] instanceof long[] bits) {
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    long word = bits[w];
+                    while (word != 0) {
+                        action.accept(high | (w << 6) | Long.numberOfTrailingZeros(word));
+                        word &= word - 1;
+                    }
+                }
+            } else {
+                char[] array = (char[]) containers[i];
+                for (int k = 0; k < sizes[i]; k++) {
+                    action.accept(high | array[k]);
+                }
+            }
+        }
+    }
+
+    public CompactBitmap copy() {
+        CompactBitmap copy = new CompactBitmap();
+        copy.keys = keys.clone();
+        copy.sizes = sizes.clone();
+        copy.containers = new Object[containers.length];
+        for (int i = 0; i < chunks; i++) {
+            copy.containers[i] = containers[i] instanceof long[] bits ? bits.clone() : ((char[]) containers[i]).clone();
+        }
+        copy.chunks = chunks;
+        return copy;
+    }
+
+    // Approximate heap footprint of the containers, in bytes
+    public long footprintBytes() {
+        long bytes = (long) keys.length * (2 + 4 + 4);
+        for (int i = 0; i < chunks; i++) {
+            bytes += containers[i] instanceof long[] ? BITMAP_WORDS * 8L : ((char[]) containers[i]).length * 2L;
+        }
+        return bytes;
+    }
+
+    private boolean containsLow(int index, char low) {
+        if (containers[index] instanceof long[] bits) {
+            return (bits[low >>> 6] & (1L << low)) != 0;
+        }
+        return Arrays.binarySearch((char[]) containers[index], 0, sizes[index], low) >= 0;
+    }
+
+    // Counts the common values of two chunks; also writes them to out if given (not for two bitmaps)
+    private static int intersectChunk(CompactBitmap a, int i, CompactBitmap b, int j, char[] out) {
+        Object left = a.containers[i];
+        Object right = b.containers[j];
+        if (left instanceof long[] leftBits && right instanceof long[] rightBits) {
+            int count = 0;
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                count += Long.bitCount(leftBits[w] & rightBits[w]);
+            }
+            return count;
+        }
+        if (left instanceof long[]) {
+            return intersectChunk(b, j, a, i, out);
+        }
+
+        char[] array = (char[]) left;
+        int size = a.sizes[i];
+        int count = 0;
+        if (right instanceof long[] bits) {
+            for (int k = 0; k < size; k++) {
+                char low = array[k];
+                if ((bits[low >>> 6] & (1L << low)) != 0) {
+                    if (out != null) {
+                        out[count] = low;
+                    }
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        char[] otherArray = (char[]) right;
+        int otherSize = b.sizes[j];
+        if (size * 16 < otherSize || otherSize * 16 < size) {
+            // Very different sizes: look each value of the small side up in the large one
+            char[] small = size < otherSize ? array : otherArray;
+            char[] large = size < otherSize ? otherArray : array;
+            int smallSize = Math.min(size, otherSize);
+            int largeSize = Math.max(size, otherSize);
+            int from = 0;
+            for (int k = 0; k < smallSize && from < largeSize; k++) {
+                int position = Arrays.binarySearch(large, from, largeSize, small[k]);
+                if (position >= 0) {
+                    if (out != null) {
+                        out[count] = small[k];
+                    }
+                    count++;
+                    from = position + 1;
+                } else {
+                    from = -position - 1;
+                }
+            }
+            return count;
+        }
+        int x = 0;
+        int y = 0;
+        while (x < size && y < otherSize) {
+            if (array[x] < otherArray[y]) {
+                x++;
+            } else if (array[x] > otherArray[y]) {
+                y++;
+            } else {
+                if (out != null) {
+                    out[count] = array[x];
+                }
+                count++;
+                x++;
+                y++;
+            }
+        }
+        return count;
+    }
+
+    private int findChunk(char key) {
+        return Arrays.binarySearch(keys, 0, chunks, key);
+    }
+
+    private void insertChunk(int index, char key) {
+        ensureChunkCapacity();
+        System.arraycopy(keys, index, keys, index + 1, chunks - index);
+        System.arraycopy(containers, index, containers, index + 1, chunks - index);
+        System.arraycopy(sizes, index, sizes, index + 1, chunks - index);
+        keys[index] = key;
+        containers[index] = new char[4];
+        sizes[index] = 0;
+        chunks++;
+    }
+
+    // Only used while building a result in key order
+    private void appendChunk(char key, Object container, int size) {
+        ensureChunkCapacity();
+        keys[chunks] = key;
+        containers[chunks] = container;
+        sizes[chunks] = size;
+        chunks++;
+    }
+
+    private void removeChunk(int index) {
+        System.arraycopy(keys, index + 1, keys, index, chunks - index - 1);
+        System.arraycopy(containers, index + 1, containers, index, chunks - index - 1);
+        System.arraycopy(sizes, index + 1, sizes, index, chunks - index - 1);
+        chunks--;
+        containers[chunks] = null;
+    }
+
+    private void ensureChunkCapacity() {
+        if (chunks == keys.length) {
+            keys = Arrays.copyOf(keys, chunks * 2);
+            containers = Arrays.copyOf(containers, chunks * 2);
+            sizes = Arrays.copyOf(sizes, chunks * 2);
+        }
+    }
+
+    private static long[] toBits(char[] array, int size) {
+        long[] bits = new long[BITMAP_WORDS];
+        for (int k = 0; k < size; k++) {
+            bits[array[k] >>> 6] |= 1L << array[k];
+        }
+        return bits;
+    }
+
+    private static char[] toArray(long[] bits, int size) {
+        char[] array = new char[Math.max(4, size)];
+        int n = 0;
+        for (int w = 0; w < BITMAP_WORDS; w++) {
+            long word = bits[w];
+            while (word != 0) {
+                array[n++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return array;
+    }
+}
@@ -0,0 +1,81 @@
+package se.fulkopinglibrary.fulkopinglibrary.utils;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounds how many operations run at once, with a bounded wait line in front.
+ *
+ * <p>Up to {@code limit} callers run concurrently. Further callers wait in FIFO order, but
+ * only up to {@code maxQueue} of them and for at most {@code maxWait}; anyone beyond that is
+ * rejected immediately instead of piling up behind a saturated resource. Counters are
+ * published in the {@link MetricsRegistry} as {@code <name>.admitted}, {@code .queued},
+ * {@code .rejected} and {@code .timedOut}, with gauges for the current in-flight and
+ * waiting counts.</p>
+ */
+public class ConcurrencyLimiter {
+    private final int limit;
+    private final int maxQueue;
+    private final long maxWaitNanos;
+    private final Semaphore permits;
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    private final MetricsRegistry.Counter admitted;
+    private final MetricsRegistry.Counter queued;
+    private final MetricsRegistry.Counter rejected;
+    private final MetricsRegistry.Counter timedOut;
+
+    public ConcurrencyLimiter(String name, int limit, int maxQueue, long maxWait, TimeUnit unit) {
+        this.limit = limit;
+        this.maxQueue = maxQueue;
+        this.maxWaitNanos = unit.toNanos(maxWait);
+        this.permits = new Semaphore(limit, true);
+        this.admitted = MetricsRegistry.counter(name + ".admitted");
+        this.queued = MetricsRegistry.counter(name + ".queued");
+        this.rejected = MetricsRegistry.counter(name + ".rejected");
+        this.timedOut = MetricsRegistry.counter(name + ".timedOut");
+        MetricsRegistry.gauge(name + ".inFlight", this::getInFlight);
+        MetricsRegistry.gauge(name + ".waiting", waiting::get);
+    }
+
+    /**
+     * Returns true once the caller may proceed; it must then call {@link #release()}. Returns
+     * false if the wait line is full or the wait timed out.
+     */
+    public boolean acquire() throws InterruptedException {
+        // Barging here would let new callers overtake the ones already waiting
+        if (waiting.get() == 0 && permits.tryAcquire()) {
+            admitted.increment();
+            return true;
+        }
+        if (waiting.incrementAndGet() > maxQueue) {
+            waiting.decrementAndGet();
+            rejected.increment();
+            return false;
+        }
+        queued.increment();
+        try {
+            if (permits.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS)) {
+                admitted.increment();
+                return true;
+            }
+            timedOut.increment();
+            return false;
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public int getInFlight() {
+        return limit - permits.availablePermits();
+    }
+
+    public int getWaiting() {
+        return waiting.get();
+    }
+}
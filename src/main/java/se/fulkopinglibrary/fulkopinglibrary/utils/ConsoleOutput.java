@@ -0,0 +1,47 @@
+package se.fulkopinglibrary.fulkopinglibrary.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.Console;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The one stream the console menus write to, with the charset it encodes in.
+ *
+ * <p>{@link TableRenderer} encodes whole pages itself and writes the bytes, so it has to use
+ * the same charset as the {@code println}s around it, and a Java 17 {@link PrintStream} does
+ * not say which one it uses. The charset is {@code -Dlibrary.console.charset} if set, else
+ * the terminal's, else UTF-8 when output is redirected. {@link #install()} makes the stream
+ * {@code System.out}, so everything printed goes through it.</p>
+ */
+public final class ConsoleOutput {
+    public static final Charset CHARSET = charset();
+
+    private static final PrintStream OUT = new PrintStream(
+        new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 8192), true, CHARSET);
+
+    private ConsoleOutput() {
+    }
+
+    public static PrintStream out() {
+        return OUT;
+    }
+
+    // Replaces System.out, once at startup
+    public static void install() {
+        System.out.flush();
+        System.setOut(OUT);
+    }
+
+    private static Charset charset() {
+        String configured = System.getProperty("library.console.charset");
+        if (configured != null && !configured.isBlank()) {
+            return Charset.forName(configured.trim());
+        }
+        Console console = System.console();
+        return console != null ? console.charset() : StandardCharsets.UTF_8;
+    }
+}
@@ -0,0 +1,166 @@
+package se.fulkopinglibrary.fulkopinglibrary.utils;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts recent failures per key (e.g. per username or per client address) in a sliding
+ * window, and blocks a key once it reaches a threshold.
+ *
+ * <p>Keys are spread over a fixed number of stripes, each a plain map guarded by its own
+ * monitor, so unrelated keys rarely contend. Each key keeps only the times of its last
+ * {@code threshold} failures in a small ring; older ones cannot change the outcome.</p>
+ *
+ * <p>Memory stays bounded: when a stripe grows past its share of {@code maxKeys}, entries
+ * whose failures have all left the window and that are no longer blocked are dropped.</p>
+ */
+public class FailureTracker {
+    private final int threshold;
+    private final long windowNanos;
+    private final long blockNanos;
+    private final int maxKeysPerStripe;
+    private final Stripe[] stripes;
+
+    private static final class Stripe {
+        final Map<String, Entry> entries = new HashMap<>();
+    }
+
+    private static final class Entry {
+        final long[] failures;
+        int next;
+        int size;
+        boolean blocked;
+        long blockedUntil;
+
+        Entry(int capacity) {
+            this.failures = new long[capacity];
+        }
+
+        void add(long now) {
+            failures[next] = now;
+            next = (next + 1) % failures.length;
+            size = Math.min(size + 1, failures.length);
+        }
+
+        int countSince(long since) {
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                if (failures[i] - since > 0) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        boolean isBlocked(long now) {
+            return blocked && blockedUntil - now > 0;
+        }
+
+        void clearFailures() {
+            next = 0;
+            size = 0;
+        }
+    }
+
+    /**
+     * @param threshold failures within {@code window} that block a key
+     * @param window    how far back failures count
+     * @param block     how long a key stays blocked once the threshold is reached
+     * @param stripes   number of independently locked stripes, rounded up to a power of two
+     * @param maxKeys   rough bound on the number of keys kept
+     */
+    public FailureTracker(int threshold, long window, long block, TimeUnit unit, int stripes, int maxKeys) {
+        if (threshold < 1) {
+            throw new IllegalArgumentException("Threshold must be positive");
+        }
+        this.threshold = threshold;
+        this.windowNanos = unit.toNanos(window);
+        this.blockNanos = unit.toNanos(block);
+        int count = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        this.maxKeysPerStripe = Math.max(16, maxKeys / count);
+    }
+
+    /**
+     * Records a failure and returns the number of failures in the window, including this one.
+     * When the count reaches the threshold the key becomes blocked and its count starts over.
+     */
+    public int recordFailure(String key) {
+        Stripe stripe = stripeFor(key);
+        long now = System.nanoTime();
+        synchronized (stripe) {
+            Entry entry = stripe.entries.get(key);
+            if (entry == null) {
+                if (stripe.entries.size() >= maxKeysPerStripe) {
+                    purge(stripe, now);
+                }
+                entry = new Entry(threshold);
+                stripe.entries.put(key, entry);
+            }
+            entry.add(now);
+            int count = entry.countSince(now - windowNanos);
+            if (count >= threshold) {
+                entry.blocked = true;
+                entry.blockedUntil = now + blockNanos;
+                entry.clearFailures();
+            }
+            return count;
+        }
+    }
+
+    // Nanoseconds until the key is unblocked, 0 if it is not blocked
+    public long blockedFor(String key) {
+        Stripe stripe = stripeFor(key);
+        long now = System.nanoTime();
+        synchronized (stripe) {
+            Entry entry = stripe.entries.get(key);
+            if (entry == null || !entry.isBlocked(now)) {
+                return 0;
+            }
+            return entry.blockedUntil - now;
+        }
+    }
+
+    public boolean isBlocked(String key) {
+        return blockedFor(key) > 0;
+    }
+
+    // Forget a key, e.g. after a successful login
+    public void reset(String key) {
+        Stripe stripe = stripeFor(key);
+        synchronized (stripe) {
+            stripe.entries.remove(key);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.entries.size();
+            }
+        }
+        return size;
+    }
+
+    private Stripe stripeFor(String key) {
+        int hash = key.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+
+    private void purge(Stripe stripe, long now) {
+        long since = now - windowNanos;
+        Iterator<Entry> iterator = stripe.entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (!entry.isBlocked(now) && entry.countSince(since) == 0) {
+                iterator.remove();
+            }
+        }
+    }
+}
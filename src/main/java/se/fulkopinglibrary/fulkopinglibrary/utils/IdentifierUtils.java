@@ -0,0 +1,142 @@
+package se.fulkopinglibrary.fulkopinglibrary.utils;
+
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Normalization and validation of the standard identifiers stored in library_items.
+ *
+ * <p>The stored forms match the CHECK constraints in create_database.sql: ISBNs are 13 digits
+ * without separators and ISSNs are {@code NNNN-NNNC} where C is a digit or X. ISBN-10s, as
+ * printed on older books, are converted to their ISBN-13 form. Catalog numbers are letters
+ * and digits in groups joined by {@code -}, {@code /} or {@code .}, with at least one digit,
+ * such as {@code DVD-1042}.</p>
+ */
+public class IdentifierUtils {
+    private static final Pattern CATALOG_NUMBER = Pattern.compile("(?=.*[0-9])[A-Z0-9]+(?:[-/.][A-Z0-9]+)*");
+    private static final int MAX_CATALOG_NUMBER_LENGTH = 50;
+
+    // Strip hyphens and spaces from an ISBN; returns null if the result is not a valid ISBN-13
+    public static String normalizeIsbn13(String isbn) {
+        if (isbn == null) {
+            return null;
+        }
+        String digits = stripSeparators(isbn);
+        return isValidIsbn13(digits) ? digits : null;
+    }
+
+    /**
+     * Accepts an ISBN-10 or ISBN-13, with or without hyphens and spaces, and returns its
+     * 13-digit form; null if it is neither.
+     */
+    public static String normalizeIsbn(String isbn) {
+        if (isbn == null) {
+            return null;
+        }
+        String compact = stripSeparators(isbn.trim()).toUpperCase(Locale.ROOT);
+        if (compact.length() == 10) {
+            return isbn10To13(compact);
+        }
+        return isValidIsbn13(compact) ? compact : null;
+    }
+
+    // Convert a compact ISBN-10 to ISBN-13 (978 prefix, new check digit); null if it is not valid
+    public static String isbn10To13(String isbn10) {
+        if (!isValidIsbn10(isbn10)) {
+            return null;
+        }
+        String body = "978" + isbn10.substring(0, 9);
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            sum += (body.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+        }
+        return body + (char) ('0' + (10 - sum % 10) % 10);
+    }
+
+    public static boolean isValidIsbn10(String isbn) {
+        if (isbn == null || isbn.length() != 10) {
+            return false;
+        }
+        int sum = 0;
+        for (int i = 0; i < 10; i++) {
+            char c = isbn.charAt(i);
+            int digit;
+            if (c >= '0' && c <= '9') {
+                digit = c - '0';
+            } else if (c == 'X' && i == 9) {
+                digit = 10;
+            } else {
+                return false;
+            }
+            sum += digit * (10 - i);
+        }
+        return sum % 11 == 0;
+    }
+
+    public static boolean isValidIsbn13(String isbn) {
+        if (isbn == null || isbn.length() != 13) {
+            return false;
+        }
+        int sum = 0;
+        for (int i = 0; i < 13; i++) {
+            char c = isbn.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+            sum += (c - '0') * (i % 2 == 0 ? 1 : 3);
+        }
+        return sum % 10 == 0;
+    }
+
+    // Bring an ISSN into NNNN-NNNC form; returns null if it is malformed or the check digit is wrong
+    public static String normalizeIssn(String issn) {
+        if (issn == null) {
+            return null;
+        }
+        String compact = stripSeparators(issn.trim()).toUpperCase(Locale.ROOT);
+        if (compact.length() != 8) {
+            return null;
+        }
+        String formatted = compact.substring(0, 4) + "-" + compact.substring(4);
+        return isValidIssn(formatted) ? formatted : null;
+    }
+
+    public static boolean isValidIssn(String issn) {
+        if (issn == null || issn.length() != 9 || issn.charAt(4) != '-') {
+            return false;
+        }
+        int sum = 0;
+        int weight = 8;
+        for (int i = 0; i < 7; i++) {
+            char c = issn.charAt(i < 4 ? i : i + 1);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+            sum += (c - '0') * weight--;
+        }
+        int check = (11 - sum % 11) % 11;
+        char expected = check == 10 ? 'X' : (char) ('0' + check);
+        return issn.charAt(8) == expected;
+    }
+
+    // Upper case, as the column compares case-insensitively; null unless it has the format above
+    public static String normalizeCatalogNumber(String catalogNumber) {
+        if (catalogNumber == null) {
+            return null;
+        }
+        String normalized = catalogNumber.trim().toUpperCase(Locale.ROOT);
+        return normalized.length() <= MAX_CATALOG_NUMBER_LENGTH && CATALOG_NUMBER.matcher(normalized).matches()
+            ? normalized : null;
+    }
+
+    private static String stripSeparators(String value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '-' && c != ' ') {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,345 @@
+package se.fulkopinglibrary.fulkopinglibrary.utils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Records per-statement timing for every connection handed out by DatabaseConnection.
+ *
+ * <p>Connections are wrapped in dynamic proxies that time statement execution and result set
+ * fetching. Statistics are kept per SQL template (the prepared SQL with whitespace collapsed
+ * and numeric literals replaced by {@code ?}), in lock-free {@link LatencyHistogram}s together
+ * with row and error counts. Connection hold time, from checkout to close, is recorded
+ * separately. Statements whose execution plus fetch time exceeds the slow-query threshold are
+ * logged as warnings. {@link #dump()} renders the current statistics as a text table.</p>
+ */
+public class JdbcInstrumentation {
+    private static final Logger logger = LoggerUtil.getLogger(JdbcInstrumentation.class);
+    private static final Logger slowQueryLogger = Logger.getLogger("se.fulkopinglibrary.fulkopinglibrary.slowquery");
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern NUMERIC_LITERAL = Pattern.compile("\\b\\d+\\b");
+    private static final int MAX_CACHED_SQL_STRINGS = 10_000;
+
+    private static volatile boolean enabled = true;
+    private static volatile long slowQueryThresholdNanos = 200_000_000L;
+
+    // Raw SQL string -> stats, to avoid normalizing the same string on every call
+    private static final ConcurrentHashMap<String, StatementStats> statsBySql = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, StatementStats> statsByTemplate = new ConcurrentHashMap<>();
+    private static final LatencyHistogram connectionHold = new LatencyHistogram();
+
+    /**
+     * Aggregated statistics for one SQL template.
+     */
+    public static class StatementStats {
+        private final String template;
+        private final LatencyHistogram execute = new LatencyHistogram();
+        private final LatencyHistogram fetch = new LatencyHistogram();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+
+        StatementStats(String template) {
+            this.template = template;
+        }
+
+        public String getTemplate() {
+            return template;
+        }
+
+        public LatencyHistogram getExecuteLatency() {
+            return execute;
+        }
+
+        public LatencyHistogram getFetchLatency() {
+            return fetch;
+        }
+
+        public long getRows() {
+            return rows.sum();
+        }
+
+        public long getErrors() {
+            return errors.sum();
+        }
+    }
+
+    public static void configure(boolean instrumentationEnabled, long slowQueryThresholdMillis) {
+        enabled = instrumentationEnabled;
+        slowQueryThresholdNanos = slowQueryThresholdMillis * 1_000_000L;
+        logger.config(() -> "JDBC instrumentation " + (instrumentationEnabled ? "enabled" : "disabled")
+            + ", slow query threshold " + slowQueryThresholdMillis + " ms");
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    // Wrap a freshly checked-out connection; returns it unchanged when instrumentation is off
+    public static Connection wrap(Connection connection) {
+        if (!enabled || connection == null) {
+            return connection;
+        }
+        return (Connection) Proxy.newProxyInstance(
+            Connection.class.getClassLoader(),
+            new Class<?>[] {Connection.class},
+            new ConnectionHandler(connection));
+    }
+
+    public static List<StatementStats> getStatementStats() {
+        List<StatementStats> stats = new ArrayList<>(statsByTemplate.values());
+        stats.sort(Comparator.comparingLong((StatementStats s) ->
+            s.execute.getTotalNanos() + s.fetch.getTotalNanos()).reversed());
+        return stats;
+    }
+
+    public static LatencyHistogram getConnectionHoldTime() {
+        return connectionHold;
+    }
+
+    public static void reset() {
+        statsBySql.clear();
+        statsByTemplate.clear();
+        connectionHold.reset();
+    }
+
+    // Text report of all statement templates, most expensive first
+    public static String dump() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-8s %-6s %-9s %-9s %-9s %-9s %-9s %-10s %s%n",
+            "Count", "Errors", "Exec p50", "Exec p99", "Exec max", "Fetch p50", "Fetch p99", "Rows", "SQL"));
+        for (StatementStats stats : getStatementStats()) {
+            sb.append(String.format("%-8d %-6d %-9s %-9s %-9s %-9s %-9s %-10d %s%n",
+                stats.execute.getCount(),
+                stats.getErrors(),
+                millis(stats.execute.getPercentileNanos(50)),
+                millis(stats.execute.getPercentileNanos(99)),
+                millis(stats.execute.getMaxNanos()),
+                millis(stats.fetch.getPercentileNanos(50)),
+                millis(stats.fetch.getPercentileNanos(99)),
+                stats.getRows(),
+                stats.getTemplate()));
+        }
+        sb.append(String.format("Connection hold: count=%d p50=%s p99=%s max=%s ms%n",
+            connectionHold.getCount(),
+            millis(connectionHold.getPercentileNanos(50)),
+            millis(connectionHold.getPercentileNanos(99)),
+            millis(connectionHold.getMaxNanos())));
+        return sb.toString();
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.2f", nanos / 1_000_000.0);
+    }
+
+    static String toTemplate(String sql) {
+        String collapsed = WHITESPACE.matcher(sql.trim()).replaceAll(" ");
+        return NUMERIC_LITERAL.matcher(collapsed).replaceAll("?");
+    }
+
+    private static StatementStats statsFor(String sql) {
+        if (sql == null) {
+            sql = "<unknown>";
+        }
+        StatementStats stats = statsBySql.get(sql);
+        if (stats != null) {
+            return stats;
+        }
+        stats = statsByTemplate.computeIfAbsent(toTemplate(sql), StatementStats::new);
+        if (statsBySql.size() < MAX_CACHED_SQL_STRINGS) {
+            statsBySql.putIfAbsent(sql, stats);
+        }
+        return stats;
+    }
+
+    private static void checkSlow(StatementStats stats, long totalNanos, long rows) {
+        if (totalNanos >= slowQueryThresholdNanos) {
+            slowQueryLogger.warning(String.format("Slow query (%s ms, %d rows): %s",
+                millis(totalNanos), rows, stats.getTemplate()));
+        }
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static class ConnectionHandler implements InvocationHandler {
+        private final Connection target;
+        private final long checkedOutAt = System.nanoTime();
+        private boolean closed;
+
+        ConnectionHandler(Connection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "prepareStatement", "prepareCall" -> {
+                    Object statement = JdbcInstrumentation.invoke(target, method, args);
+                    Class<?> type = name.equals("prepareCall") ? CallableStatement.class : PreparedStatement.class;
+                    return wrapStatement(statement, type, statsFor((String) args[0]));
+                }
+                case "createStatement" -> {
+                    Object statement = JdbcInstrumentation.invoke(target, method, args);
+                    return wrapStatement(statement, Statement.class, null);
+                }
+                case "close" -> {
+                    if (!closed) {
+                        closed = true;
+                        connectionHold.record(System.nanoTime() - checkedOutAt);
+                    }
+                    return JdbcInstrumentation.invoke(target, method, args);
+                }
+                case "unwrap" -> {
+                    return target.unwrap((Class<?>) args[0]);
+                }
+                case "isWrapperFor" -> {
+                    return target.isWrapperFor((Class<?>) args[0]);
+                }
+                default -> {
+                    return JdbcInstrumentation.invoke(target, method, args);
+                }
+            }
+        }
+
+        private static Object wrapStatement(Object statement, Class<?> type, StatementStats stats) {
+            return Proxy.newProxyInstance(
+                Statement.class.getClassLoader(),
+                new Class<?>[] {type},
+                new StatementHandler((Statement) statement, stats));
+        }
+    }
+
+    private static class StatementHandler implements InvocationHandler {
+        private final Statement target;
+        private final StatementStats preparedStats;
+        private ResultSetHandler openResultSet;
+
+        StatementHandler(Statement target, StatementStats preparedStats) {
+            this.target = target;
+            this.preparedStats = preparedStats;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("execute")) {
+                return timeExecution(method, args);
+            }
+            if (name.equals("close")) {
+                finishResultSet();
+            } else if (name.equals("unwrap")) {
+                return target.unwrap((Class<?>) args[0]);
+            } else if (name.equals("isWrapperFor")) {
+                return target.isWrapperFor((Class<?>) args[0]);
+            }
+            return JdbcInstrumentation.invoke(target, method, args);
+        }
+
+        private Object timeExecution(Method method, Object[] args) throws Throwable {
+            // Plain statements carry their SQL in the execute call
+            StatementStats stats = preparedStats;
+            if (stats == null) {
+                stats = statsFor(args != null && args.length > 0 && args[0] instanceof String sql ? sql : "<batch>");
+            }
+            finishResultSet();
+
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = JdbcInstrumentation.invoke(target, method, args);
+            } catch (Throwable e) {
+                stats.errors.increment();
+                stats.execute.record(System.nanoTime() - start);
+                throw e;
+            }
+            long executeNanos = System.nanoTime() - start;
+            stats.execute.record(executeNanos);
+
+            if (result instanceof ResultSet resultSet) {
+                openResultSet = new ResultSetHandler(resultSet, stats, executeNanos);
+                return Proxy.newProxyInstance(
+                    ResultSet.class.getClassLoader(),
+                    new Class<?>[] {ResultSet.class},
+                    openResultSet);
+            }
+            checkSlow(stats, executeNanos, 0);
+            return result;
+        }
+
+        // Result sets closed implicitly with their statement are finished here
+        private void finishResultSet() {
+            if (openResultSet != null) {
+                openResultSet.finish();
+                openResultSet = null;
+            }
+        }
+    }
+
+    private static class ResultSetHandler implements InvocationHandler {
+        private final ResultSet target;
+        private final StatementStats stats;
+        private final long executeNanos;
+        private long fetchNanos;
+        private long rows;
+        private boolean finished;
+
+        ResultSetHandler(ResultSet target, StatementStats stats, long executeNanos) {
+            this.target = target;
+            this.stats = stats;
+            this.executeNanos = executeNanos;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("next")) {
+                long start = System.nanoTime();
+                boolean hasRow = target.next();
+                fetchNanos += System.nanoTime() - start;
+                if (hasRow) {
+                    rows++;
+                }
+                return hasRow;
+            }
+            if (name.equals("close")) {
+                finish();
+            } else if (name.equals("unwrap")) {
+                return target.unwrap((Class<?>) args[0]);
+            } else if (name.equals("isWrapperFor")) {
+                return target.isWrapperFor((Class<?>) args[0]);
+            }
+            return JdbcInstrumentation.invoke(target, method, args);
+        }
+
+        void finish() {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            stats.fetch.record(fetchNanos);
+            stats.rows.add(rows);
+            checkSlow(stats, executeNanos + fetchNanos, rows);
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package se.fulkopinglibrary.fulkopinglibrary.utils;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Streaming JSON writer with its own character buffer.
+ *
+ * <p>Values are escaped and formatted straight into the buffer, which is handed to the
+ * underlying {@link Writer} only when it fills up or on {@link #flush()}, so writing a
+ * value allocates nothing and memory use does not grow with the document. Commas and
+ * nesting are tracked for up to 64 levels; calls are checked only as far as needed to keep
+ * the output well formed, e.g. a name is only accepted inside an object.</p>
+ *
+ * <p>Not thread-safe.</p>
+ */
+public class JsonWriter implements Closeable, Flushable {
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+    private static final int MAX_DEPTH = 64;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Writer out;
+    private final char[] buffer;
+    private int position;
+
+    // Bit n is set while the container at depth n is an object, cleared for an array
+    private long objectScopes;
+    // Bit n is set once the container at depth n has at least one element
+    private long nonEmptyScopes;
+    private int depth;
+    private boolean afterName;
+
+    public JsonWriter(Writer out) {
+        this(out, DEFAULT_BUFFER_SIZE);
+    }
+
+    public JsonWriter(Writer out, int bufferSize) {
+        this.out = out;
+        this.buffer = new char[Math.max(64, bufferSize)];
+    }
+
+    public JsonWriter beginObject() throws IOException {
+        beforeValue();
+        push(true);
+        write('{');
+        return this;
+    }
+
+    public JsonWriter endObject() throws IOException {
+        pop(true);
+        write('}');
+        return this;
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        beforeValue();
+        push(false);
+        write('[');
+        return this;
+    }
+
+    public JsonWriter endArray() throws IOException {
+        pop(false);
+        write(']');
+        return this;
+    }
+
+    public JsonWriter name(String name) throws IOException {
+        if (depth == 0 || !isBitSet(objectScopes, depth) || afterName) {
+            throw new IllegalStateException("Name outside of an object: " + name);
+        }
+        separate();
+        writeString(name);
+        write(':');
+        afterName = true;
+        return this;
+    }
+
+    public JsonWriter value(String value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        beforeValue();
+        writeString(value);
+        return this;
+    }
+
+    public JsonWriter value(long value) throws IOException {
+        beforeValue();
+        writeLong(value);
+        return this;
+    }
+
+    // As Number.toString() writes it, so a BigDecimal keeps its scale
+    public JsonWriter value(Number value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        if ((value instanceof Double d && !Double.isFinite(d)) || (value instanceof Float f && !Float.isFinite(f))) {
+            throw new IllegalArgumentException("JSON has no number " + value);
+        }
+        beforeValue();
+        write(value.toString());
+        return this;
+    }
+
+    public JsonWriter value(boolean value) throws IOException {
+        beforeValue();
+        write(value ? "true" : "false");
+        return this;
+    }
+
+    public JsonWriter nullValue() throws IOException {
+        beforeValue();
+        write("null");
+        return this;
+    }
+
+    // Ends a top-level value with a newline, as in JSON Lines output
+    public JsonWriter endLine() throws IOException {
+        if (depth != 0 || afterName) {
+            throw new IllegalStateException("Line ended inside a container");
+        }
+        write('\n');
+        return this;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void push(boolean object) {
+        if (depth == MAX_DEPTH - 1) {
+            throw new IllegalStateException("JSON nested deeper than " + (MAX_DEPTH - 1) + " levels");
+        }
+        depth++;
+        long bit = 1L << depth;
+        objectScopes = object ? objectScopes | bit : objectScopes & ~bit;
+        nonEmptyScopes &= ~bit;
+    }
+
+    private void pop(boolean object) {
+        if (depth == 0 || isBitSet(objectScopes, depth) != object || afterName) {
+            throw new IllegalStateException("Mismatched end of " + (object ? "object" : "array"));
+        }
+        depth--;
+    }
+
+    private void beforeValue() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (depth > 0 && isBitSet(objectScopes, depth)) {
+            throw new IllegalStateException("Value inside an object needs a name");
+        }
+        separate();
+    }
+
+    // Comma before every element of the current container but the first
+    private void separate() throws IOException {
+        if (depth == 0) {
+            return;
+        }
+        long bit = 1L << depth;
+        if ((nonEmptyScopes & bit) != 0) {
+            write(',');
+        } else {
+            nonEmptyScopes |= bit;
+        }
+    }
+
+    private static boolean isBitSet(long bits, int index) {
+        return (bits & (1L << index)) != 0;
+    }
+
+    private void writeString(String value) throws IOException {
+        write('"');
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> write('\\', '"');
+                case '\\' -> write('\\', '\\');
+                case '\n' -> write('\\', 'n');
+                case '\r' -> write('\\', 'r');
+                case '\t' -> write('\\', 't');
+                default -> {
+                    // Control characters, and the line separators JavaScript does not allow in strings
+                    if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                        write('\\', 'u');
+                        write(HEX[(c >> 12) & 0xF], HEX[(c >> 8) & 0xF]);
+                        write(HEX[(c >> 4) & 0xF], HEX[c & 0xF]);
+                    } else {
+                        write(c);
+                    }
+                }
+            }
+        }
+        write('"');
+    }
+
+    // Digits are produced right to left into the buffer, avoiding Long.toString
+    private void writeLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            write("-9223372036854775808");
+            return;
+        }
+        if (buffer.length - position < 20) {
+            drain();
+        }
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest != 0; rest /= 10) {
+            digits++;
+        }
+        int end = position + digits;
+        for (int i = end - 1; i >= position; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        position = end;
+    }
+
+    private void write(char c) throws IOException {
+        if (position == buffer.length) {
+            drain();
+        }
+        buffer[position++] = c;
+    }
+
+    private void write(char first, char second) throws IOException {
+        if (buffer.length - position < 2) {
+            drain();
+        }
+        buffer[position++] = first;
+        buffer[position++] = second;
+    }
+
+    private void write(String text) throws IOException {
+        int length = text.length();
+        if (buffer.length - position < length) {
+            drain();
+            if (length > buffer.length) {
+                out.write(text);
+                return;
+            }
+        }
+        text.getChars(0, length, buffer, position);
+        position += length;
+    }
+
+    private void drain() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package se.fulkopinglibrary.fulkopinglibrary.utils;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.logging.Formatter;
+import java.util.logging.LogRecord;
+
+/**
+ * Formats log records as one line of {@code key=value} pairs, e.g.
+ * {@code ts=2025-02-01T10:15:30.123Z level=INFO logger=BookService thread=12 msg="Book borrowed: user=1 item=3"}.
+ *
+ * <p>The formatter reuses one StringBuilder, so it must only be used from a single thread
+ * (the {@link AsyncLogHandler} writer thread).</p>
+ */
+public class KeyValueFormatter extends Formatter {
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ISO_INSTANT.withZone(ZoneOffset.UTC);
+
+    private final StringBuilder line = new StringBuilder(256);
+
+    @Override
+    public String format(LogRecord record) {
+        line.setLength(0);
+        line.append("ts=");
+        TIMESTAMP.formatTo(Instant.ofEpochMilli(record.getMillis()), line);
+        line.append(" level=").append(record.getLevel().getName());
+        line.append(" logger=").append(shortName(record.getLoggerName()));
+        line.append(" thread=").append(record.getLongThreadID());
+        line.append(" msg=");
+        appendQuoted(formatMessage(record));
+        if (record.getThrown() != null) {
+            line.append(" error=");
+            appendQuoted(record.getThrown().toString());
+            StringWriter stackTrace = new StringWriter();
+            record.getThrown().printStackTrace(new PrintWriter(stackTrace));
+            line.append(System.lineSeparator()).append(stackTrace);
+        }
+        line.append(System.lineSeparator());
+        return line.toString();
+    }
+
+    private static String shortName(String loggerName) {
+        if (loggerName == null) {
+            return "root";
+        }
+        int lastDot = loggerName.lastIndexOf('.');
+        return lastDot < 0 ? loggerName : loggerName.substring(lastDot + 1);
+    }
+
+    private void appendQuoted(String value) {
+        line.append('"');
+        if (value != null) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '"' -> line.append("\\\"");
+                    case '\\' -> line.append("\\\\");
+                    case '\n' -> line.append("\\n");
+                    case '\r' -> line.append("\\r");
+                    default -> line.append(c);
+                }
+            }
+        }
+        line.append('"');
+    }
+}
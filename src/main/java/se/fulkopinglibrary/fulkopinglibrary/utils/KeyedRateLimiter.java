@@ -0,0 +1,77 @@
+package se.fulkopinglibrary.fulkopinglibrary.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One {@link TokenBucket} per key, e.g. per username or per client address.
+ *
+ * <p>Buckets are created on first use and kept in least-recently-used order; when more than
+ * {@code maxKeys} exist, the one used longest ago is dropped, so memory stays bounded however
+ * many distinct keys show up. {@link #evictIdle()} also drops buckets that have refilled
+ * completely, since a new bucket would start in the same state. Buckets are looked up and
+ * drawn from under the map's lock, so a dropped bucket can no longer be drawn from while a
+ * new one is created for its key. Allowed and rejected calls are counted in the
+ * {@link MetricsRegistry} as {@code <name>.allowed} and {@code <name>.rejected}.</p>
+ */
+public class KeyedRateLimiter {
+    private final int capacity;
+    private final double refillPerSecond;
+    private final Map<String, TokenBucket> buckets;
+    private final MetricsRegistry.Counter allowed;
+    private final MetricsRegistry.Counter rejected;
+
+    public KeyedRateLimiter(String name, int capacity, double refillPerSecond, int maxKeys) {
+        if (maxKeys <= 0) {
+            throw new IllegalArgumentException("Maximum number of keys must be positive");
+        }
+        this.capacity = capacity;
+        this.refillPerSecond = refillPerSecond;
+        this.buckets = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TokenBucket> eldest) {
+                return size() > maxKeys;
+            }
+        };
+        this.allowed = MetricsRegistry.counter(name + ".allowed");
+        this.rejected = MetricsRegistry.counter(name + ".rejected");
+        MetricsRegistry.gauge(name + ".keys", this::size);
+    }
+
+    public boolean tryAcquire(String key) {
+        boolean acquired;
+        synchronized (buckets) {
+            acquired = buckets.computeIfAbsent(key, k -> new TokenBucket(capacity, refillPerSecond)).tryAcquire();
+        }
+        if (acquired) {
+            allowed.increment();
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    // Time until the key may try again, 0 if it may try now
+    public long nanosUntilAvailable(String key) {
+        synchronized (buckets) {
+            TokenBucket bucket = buckets.get(key);
+            return bucket == null ? 0 : bucket.nanosUntilAvailable();
+        }
+    }
+
+    public void evictIdle() {
+        synchronized (buckets) {
+            buckets.values().removeIf(TokenBucket::isFull);
+        }
+    }
+
+    public long getRejectedCount() {
+        return rejected.getCount();
+    }
+
+    private int size() {
+        synchronized (buckets) {
+            return buckets.size();
+        }
+    }
+}
@@ -1,34 +1,93 @@
 package se.fulkopinglibrary.fulkopinglibrary.utils;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.ConsoleHandler;
+import java.util.logging.FileHandler;
 import java.util.logging.Formatter;
+import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
 import java.util.logging.Logger;
 
+/**
+ * Configures application logging and hands out class loggers.
+ *
+ * <p>All loggers under the application package share one {@link AsyncLogHandler}, so logging
+ * calls only enqueue a record. The writer thread sends records to the console and to a rotating
+ * key-value log file. Settings are read from system properties:</p>
+ * <ul>
+ *   <li>{@code library.log.level} - application log level (default INFO)</li>
+ *   <li>{@code library.log.console.level} - console level (default INFO)</li>
+ *   <li>{@code library.log.dir} - directory for library.N.log files (default logs)</li>
+ *   <li>{@code library.log.buffer} - ring buffer capacity in records (default 8192)</li>
+ *   <li>{@code library.log.overflow} - BLOCK or DROP when the buffer is full (default BLOCK)</li>
+ * </ul>
+ *
+ * <p>Messages that are costly to build should be passed as a {@code Supplier<String>} so
+ * they are only built when the level is enabled.</p>
+ */
 public class LoggerUtil {
-    private static Logger logger;
-    
+    private static final String ROOT_LOGGER_NAME = "se.fulkopinglibrary.fulkopinglibrary";
+    private static final int LOG_FILE_LIMIT_BYTES = 10 * 1024 * 1024;
+    private static final int LOG_FILE_COUNT = 5;
+
+    private static final Logger rootLogger;
+    private static final AsyncLogHandler asyncHandler;
+
     static {
-        logger = Logger.getLogger(LoggerUtil.class.getName());
-        logger.setUseParentHandlers(false);
-        
-        ConsoleHandler handler = new ConsoleHandler();
-        handler.setFormatter(new Formatter() {
+        rootLogger = Logger.getLogger(ROOT_LOGGER_NAME);
+        rootLogger.setUseParentHandlers(false);
+        rootLogger.setLevel(Level.parse(System.getProperty("library.log.level", "INFO")));
+
+        List<Handler> sinks = new ArrayList<>();
+
+        ConsoleHandler console = new ConsoleHandler();
+        console.setLevel(Level.parse(System.getProperty("library.log.console.level", "INFO")));
+        console.setFormatter(new Formatter() {
             @Override
             public String format(LogRecord record) {
-                return String.format("[%s] %s: %s%n",
-                        record.getLevel(),
-                        record.getSourceClassName(),
-                        record.getMessage());
+                return "[" + record.getLevel() + "] " + record.getSourceClassName() + ": "
+                    + formatMessage(record) + System.lineSeparator();
             }
         });
-        
-        logger.addHandler(handler);
-        logger.setLevel(Level.ALL);
+        sinks.add(console);
+
+        try {
+            Path logDirectory = Path.of(System.getProperty("library.log.dir", "logs"));
+            Files.createDirectories(logDirectory);
+            FileHandler file = new FileHandler(
+                logDirectory.resolve("library.%g.log").toString(), LOG_FILE_LIMIT_BYTES, LOG_FILE_COUNT, true);
+            file.setLevel(Level.ALL);
+            file.setFormatter(new KeyValueFormatter());
+            file.setEncoding("UTF-8");
+            sinks.add(file);
+        } catch (IOException | SecurityException e) {
+            System.err.println("Could not open log file, logging to console only: " + e.getMessage());
+        }
+
+        asyncHandler = new AsyncLogHandler(
+            Integer.getInteger("library.log.buffer", 8192),
+            AsyncLogHandler.OverflowPolicy.valueOf(System.getProperty("library.log.overflow", "BLOCK")),
+            sinks);
+        rootLogger.addHandler(asyncHandler);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(asyncHandler::close, "async-log-shutdown"));
     }
-    
+
     public static Logger getLogger(Class<?> clazz) {
         return Logger.getLogger(clazz.getName());
     }
+
+    // Records dropped because the log buffer was full (only with the DROP policy)
+    public static long getDroppedLogRecords() {
+        return asyncHandler.getDroppedCount();
+    }
+
+    public static void flush() {
+        asyncHandler.flush();
+    }
 }
@@ -0,0 +1,220 @@
+package se.fulkopinglibrary.fulkopinglibrary.utils;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * In-process registry of application counters, gauges and latency timers.
+ *
+ * <p>Counters are striped {@link LongAdder}s and timers are {@link LatencyHistogram}s, so
+ * recording never takes a lock. Services look their metrics up once and keep them in static
+ * fields. Every metric is registered as an MXBean under the {@code se.fulkopinglibrary}
+ * JMX domain, and {@link #startReporter(long)} logs a text snapshot of all of them at a
+ * fixed interval.</p>
+ */
+public class MetricsRegistry {
+    private static final Logger logger = LoggerUtil.getLogger(MetricsRegistry.class);
+    private static final String JMX_DOMAIN = "se.fulkopinglibrary";
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private static final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, DoubleSupplier> gauges = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, LatencyHistogram> timers = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Outcome> outcomes = new ConcurrentHashMap<>();
+
+    private static ScheduledExecutorService reporter;
+
+    public interface CounterMXBean {
+        long getCount();
+    }
+
+    public interface GaugeMXBean {
+        double getValue();
+    }
+
+    public interface TimerMXBean {
+        long getCount();
+
+        double getMeanMillis();
+
+        double getP50Millis();
+
+        double getP95Millis();
+
+        double getP99Millis();
+
+        double getMaxMillis();
+    }
+
+    /**
+     * Monotonic event counter.
+     */
+    public static final class Counter implements CounterMXBean {
+        private final LongAdder count = new LongAdder();
+
+        public void increment() {
+            count.increment();
+        }
+
+        public void add(long amount) {
+            count.add(amount);
+        }
+
+        @Override
+        public long getCount() {
+            return count.sum();
+        }
+    }
+
+    /**
+     * Success and failure counters plus a latency timer for one operation, e.g. a borrow.
+     */
+    public static final class Outcome {
+        private final Counter successes;
+        private final Counter failures;
+        private final LatencyHistogram latency;
+
+        private Outcome(String name) {
+            this.successes = counter(name + ".success");
+            this.failures = counter(name + ".failure");
+            this.latency = timer(name);
+        }
+
+        public void record(boolean success, long startNanos) {
+            latency.record(System.nanoTime() - startNanos);
+            (success ? successes : failures).increment();
+        }
+    }
+
+    private record Gauge(DoubleSupplier supplier) implements GaugeMXBean {
+        @Override
+        public double getValue() {
+            return supplier.getAsDouble();
+        }
+    }
+
+    private record Timer(LatencyHistogram histogram) implements TimerMXBean {
+        @Override
+        public long getCount() {
+            return histogram.getCount();
+        }
+
+        @Override
+        public double getMeanMillis() {
+            return histogram.getMeanNanos() / NANOS_PER_MILLI;
+        }
+
+        @Override
+        public double getP50Millis() {
+            return histogram.getPercentileNanos(50) / NANOS_PER_MILLI;
+        }
+
+        @Override
+        public double getP95Millis() {
+            return histogram.getPercentileNanos(95) / NANOS_PER_MILLI;
+        }
+
+        @Override
+        public double getP99Millis() {
+            return histogram.getPercentileNanos(99) / NANOS_PER_MILLI;
+        }
+
+        @Override
+        public double getMaxMillis() {
+            return histogram.getMaxNanos() / NANOS_PER_MILLI;
+        }
+    }
+
+    public static Counter counter(String name) {
+        return counters.computeIfAbsent(name, key -> {
+            Counter counter = new Counter();
+            register("Counter", key, counter, CounterMXBean.class);
+            return counter;
+        });
+    }
+
+    // Gauges are read on demand; registering the same name again replaces the supplier
+    public static void gauge(String name, DoubleSupplier supplier) {
+        if (gauges.put(name, supplier) == null) {
+            register("Gauge", name, new Gauge(() -> gauges.get(name).getAsDouble()), GaugeMXBean.class);
+        }
+    }
+
+    public static LatencyHistogram timer(String name) {
+        return timers.computeIfAbsent(name, key -> {
+            LatencyHistogram histogram = new LatencyHistogram();
+            register("Timer", key, new Timer(histogram), TimerMXBean.class);
+            return histogram;
+        });
+    }
+
+    public static Outcome outcome(String name) {
+        return outcomes.computeIfAbsent(name, Outcome::new);
+    }
+
+    // Text snapshot of every metric, sorted by name within each kind
+    public static String snapshot() {
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, Counter> entry : new TreeMap<>(counters).entrySet()) {
+            out.append(String.format("counter  %-36s %d%n", entry.getKey(), entry.getValue().getCount()));
+        }
+        for (Map.Entry<String, DoubleSupplier> entry : new TreeMap<>(gauges).entrySet()) {
+            out.append(String.format("gauge    %-36s %.3f%n", entry.getKey(), entry.getValue().getAsDouble()));
+        }
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(timers).entrySet()) {
+            Timer timer = new Timer(entry.getValue());
+            out.append(String.format(
+                "timer    %-36s count=%d mean=%.2fms p50=%.2fms p95=%.2fms p99=%.2fms max=%.2fms%n",
+                entry.getKey(), timer.getCount(), timer.getMeanMillis(), timer.getP50Millis(),
+                timer.getP95Millis(), timer.getP99Millis(), timer.getMaxMillis()));
+        }
+        return out.toString();
+    }
+
+    // Log a snapshot every periodSeconds; a period of 0 or less disables the reporter
+    public static synchronized void startReporter(long periodSeconds) {
+        if (reporter != null || periodSeconds <= 0) {
+            return;
+        }
+        reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(
+            () -> logger.info(() -> "Metrics snapshot:\n" + snapshot()),
+            periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    public static synchronized void stopReporter() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+    }
+
+    private static <T> void register(String type, String name, T metric, Class<T> mxBeanInterface) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(new StandardMBean(metric, mxBeanInterface, true), objectName);
+            }
+        } catch (JMException e) {
+            logger.warning("Could not register metric " + name + " with JMX: " + e.getMessage());
+        }
+    }
+}
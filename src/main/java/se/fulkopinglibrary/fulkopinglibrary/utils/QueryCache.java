@@ -0,0 +1,167 @@
+package se.fulkopinglibrary.fulkopinglibrary.utils;
+
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, time-limited cache for query results with single-flight loading.
+ *
+ * <p>Entries expire after a fixed time to live and the least recently used entry is evicted
+ * once the cache is full. When several threads miss on the same key at the same time, only the
+ * first one runs the loader; the others wait for its result instead of issuing the same query.</p>
+ *
+ * <p>{@link #invalidateAll()} is meant to be called after writes that can change cached
+ * results. Loads that started before an invalidation still return their result to the callers
+ * already waiting for it, but the result is not stored, and callers that arrive after the
+ * invalidation start a new load instead of joining the old one.</p>
+ *
+ * @param <K> key type, must implement equals and hashCode
+ * @param <V> cached value type, should be immutable
+ */
+public class QueryCache<K, V> {
+
+    /**
+     * Loads the value for a key on a cache miss.
+     */
+    @FunctionalInterface
+    public interface Loader<V> {
+        V load() throws SQLException;
+    }
+
+    /**
+     * Point-in-time counters for a cache.
+     */
+    public record Stats(String name, long hits, long misses, long collapsed, long evictions, int size) {
+        // Fraction of lookups answered without running a query of their own
+        public double hitRatio() {
+            long lookups = hits + misses + collapsed;
+            return lookups == 0 ? 0.0 : (double) (hits + collapsed) / lookups;
+        }
+
+        // Queries avoided: cache hits plus callers that joined an in-flight load
+        public long loadsSaved() {
+            return hits + collapsed;
+        }
+    }
+
+    private record Entry<V>(V value, long expiresAtNanos) {
+    }
+
+    private final String name;
+    private final long ttlNanos;
+    private final Map<K, Entry<V>> entries;
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder collapsed = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public QueryCache(String name, int maxEntries, long ttlMillis) {
+        if (maxEntries <= 0 || ttlMillis <= 0) {
+            throw new IllegalArgumentException("Cache size and TTL must be positive");
+        }
+        this.name = name;
+        this.ttlNanos = ttlMillis * 1_000_000;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() > maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public V get(K key, Loader<V> loader) throws SQLException {
+        V cached = lookup(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+
+        CompletableFuture<V> ownLoad = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, ownLoad);
+        if (existing != null) {
+            collapsed.increment();
+            return await(existing);
+        }
+
+        misses.increment();
+        long startGeneration = generation.get();
+        try {
+            V value = loader.load();
+            if (value != null && generation.get() == startGeneration) {
+                synchronized (entries) {
+                    entries.put(key, new Entry<>(value, System.nanoTime() + ttlNanos));
+                }
+            }
+            ownLoad.complete(value);
+            return value;
+        } catch (Throwable e) {
+            // Waiters must never be left on a future that no one completes
+            ownLoad.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, ownLoad);
+        }
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        // Loads already running may have read the old rows; later callers must not join them
+        inFlight.clear();
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public Stats getStats() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return new Stats(name, hits.sum(), misses.sum(), collapsed.sum(), evictions.sum(), size);
+    }
+
+    private V lookup(K key) {
+        synchronized (entries) {
+            Entry<V> entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAtNanos() - System.nanoTime() <= 0) {
+                entries.remove(key);
+                return null;
+            }
+            return entry.value();
+        }
+    }
+
+    private static <V> V await(CompletableFuture<V> load) throws SQLException {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException sqlException) {
+                throw sqlException;
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+}
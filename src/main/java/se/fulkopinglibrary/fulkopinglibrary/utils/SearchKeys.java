@@ -0,0 +1,66 @@
+package se.fulkopinglibrary.fulkopinglibrary.utils;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Folded search keys: diacritics stripped, case folded and whitespace collapsed, so
+ * "Fulkoping", "FULKÖPING" and "Fulköping " all give {@code fulkoping}.
+ *
+ * <p>The {@code *_key} columns of {@code library_items} hold the same form of the title,
+ * author, publisher and director, generated by MySQL and indexed.
+ * The generated expression only folds case and whitespace; the columns use the
+ * accent-insensitive {@code utf8mb4_0900_ai_ci} collation, which compares ö equal to o the
+ * way the NFKD folding here does. A folded prefix pattern can then be answered by a range
+ * scan of the index.</p>
+ */
+public final class SearchKeys {
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SPACES = Pattern.compile("\\s+");
+    // Letters NFKD leaves whole but the ai_ci collation equates with plain ones
+    private static final String[][] LETTERS = {
+        {"\u00f8", "o"}, {"\u00e6", "ae"}, {"\u0153", "oe"}, {"\u00df", "ss"}, {"\u0111", "d"}, {"\u0142", "l"}
+    };
+
+    private SearchKeys() {
+    }
+
+    // NFKD, combining marks removed, lower case, single spaces; null becomes ""
+    public static String fold(String text) {
+        if (text == null) {
+            return "";
+        }
+        String stripped = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFKD)).replaceAll("");
+        String folded = SPACES.matcher(stripped.trim()).replaceAll(" ").toLowerCase(Locale.ROOT);
+        for (String[] letter : LETTERS) {
+            folded = folded.replace(letter[0], letter[1]);
+        }
+        return folded;
+    }
+
+    // LIKE pattern for keys starting with the folded term; uses the key index
+    public static String prefixPattern(String term) {
+        return escapeLike(fold(term)) + "%";
+    }
+
+    // LIKE pattern for keys containing the folded term anywhere; a scan, but finds words inside titles
+    public static String containsPattern(String term) {
+        return "%" + escapeLike(fold(term)) + "%";
+    }
+
+    // The in-memory equivalent of prefixPattern, for lists that are filtered rather than queried
+    public static boolean startsWith(String text, String term) {
+        return fold(text).startsWith(fold(term));
+    }
+
+    // The in-memory equivalent of containsPattern
+    public static boolean contains(String text, String term) {
+        return fold(text).contains(fold(term));
+    }
+
+    // A typed % or _ is matched literally rather than as a wildcard
+    private static String escapeLike(String text) {
+        return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
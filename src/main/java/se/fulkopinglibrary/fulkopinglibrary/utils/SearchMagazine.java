@@ -1,6 +1,7 @@
 package se.fulkopinglibrary.fulkopinglibrary.utils;
 
 import se.fulkopinglibrary.fulkopinglibrary.services.MagazineService;
+import se.fulkopinglibrary.fulkopinglibrary.models.LibraryItem;
 import se.fulkopinglibrary.fulkopinglibrary.models.Magazine;
 import se.fulkopinglibrary.fulkopinglibrary.DatabaseConnection;
 
@@ -46,24 +47,13 @@ public class SearchMagazine {
         }
     }
 
+    private static final TableRenderer<LibraryItem> TABLE = TableRenderer.forItems("Publisher", "ISSN", false);
+
     private static void displayResults(List<Magazine> magazines) {
         if (magazines.isEmpty()) {
             System.out.println("\nNo magazines found matching your search.");
             return;
         }
-
-        System.out.println("\n=== Search Results ===");
-        System.out.printf("%-5s %-40s %-25s %-15s %-10s\n",
-                "ID", "Title", "Publisher", "ISSN", "Available");
-        System.out.println("---------------------------------------------------------------");
-
-        for (Magazine magazine : magazines) {
-            System.out.printf("%-5d %-40s %-25s %-15s %-10s\n",
-                    magazine.getId(),
-                    magazine.getTitle(),
-                    magazine.getPublisher(),
-                    magazine.getIssn(),
-                    magazine.isAvailable() ? "Yes" : "No");
-        }
+        TABLE.print("=== Search Results ===", magazines);
     }
 }
@@ -46,18 +46,13 @@ public class SearchMedia {
         }
     }
 
+    private static final TableRenderer<LibraryItem> TABLE = TableRenderer.forItems("Director", "Catalog No.", false);
+
     private static void displayResults(List<LibraryItem> results) {
         if (results.isEmpty()) {
             System.out.println("No media found");
             return;
         }
-        
-        System.out.println("\nSearch Results:");
-        for (LibraryItem item : results) {
-            System.out.println("ID: " + item.getId());
-            System.out.println("Title: " + item.getTitle());
-            System.out.println("Available: " + (item.isAvailable() ? "Yes" : "No"));
-            System.out.println();
-        }
+        TABLE.print("Search Results:", results);
     }
 }
@@ -146,9 +146,9 @@ public class SearchUtils {
                     }
                     switch (searchType) {
                         case "title":
-                            return media.getTitle().toLowerCase().contains(searchTerm.toLowerCase());
+                            return SearchKeys.startsWith(media.getTitle(), searchTerm);
                         case "director":
-                            return media.getDirector().toLowerCase().contains(searchTerm.toLowerCase());
+                            return SearchKeys.startsWith(media.getDirector(), searchTerm);
                         case "catalog_number":
                             return media.getCatalogNumber().toLowerCase().contains(searchTerm.toLowerCase());
                         default:
@@ -198,9 +198,9 @@ public class SearchUtils {
                 .filter(magazine -> {
                     switch (searchType) {
                         case "title":
-                            return magazine.getTitle().toLowerCase().contains(searchTerm.toLowerCase());
+                            return SearchKeys.startsWith(magazine.getTitle(), searchTerm);
                         case "publisher":
-                            return magazine.getPublisher().toLowerCase().contains(searchTerm.toLowerCase());
+                            return SearchKeys.startsWith(magazine.getPublisher(), searchTerm);
                         case "issn":
                             return magazine.getIssn().toLowerCase().contains(searchTerm.toLowerCase());
                         default:
@@ -286,6 +286,10 @@ public class SearchUtils {
         }
     }
 
+    private static final TableRenderer<LibraryItem> BOOK_TABLE = TableRenderer.forItems("Author", "ISBN", false);
+    private static final TableRenderer<LibraryItem> MEDIA_TABLE = TableRenderer.forItems("Director", "Catalog No.", false);
+    private static final TableRenderer<LibraryItem> MAGAZINE_TABLE = TableRenderer.forItems("Publisher", "ISSN", false);
+
     // Display search results
     private static <T extends LibraryItem> void displayResults(List<T> items, String type) {
         if (items.isEmpty()) {
@@ -293,42 +297,11 @@ public class SearchUtils {
             return;
         }
 
-        System.out.println("\n=== Search Results ===");
-        if (type.equals("book")) {
-            System.out.printf("%-5s %-40s %-25s %-15s %-10s\n",
-                    "ID", "Title", "Author", "ISBN", "Available");
-        } else if (type.equals("media")) {
-            System.out.printf("%-5s %-40s %-25s %-15s %-10s\n",
-                    "ID", "Title", "Director", "Catalog No.", "Available");
-        } else if (type.equals("magazine")) {
-            System.out.printf("%-5s %-40s %-25s %-15s %-10s\n",
-                    "ID", "Title", "Publisher", "ISSN", "Available");
-        }
-        System.out.println("---------------------------------------------------------------");
-
-        for (T item : items) {
-            if (item instanceof Book book) {
-                System.out.printf("%-5d %-40s %-25s %-15s %-10s\n",
-                        book.getId(),
-                        book.getTitle(),
-                        book.getAuthor(),
-                        book.getIsbn(),
-                        book.isAvailable() ? "Yes" : "No");
-            } else if (item instanceof MediaItem media) {
-                System.out.printf("%-5d %-40s %-25s %-15s %-10s\n",
-                        media.getId(),
-                        media.getTitle(),
-                        media.getDirector(),
-                        media.getCatalogNumber(),
-                        media.isAvailable() ? "Yes" : "No");
-            } else if (item instanceof Magazine magazine) {
-                System.out.printf("%-5d %-40s %-25s %-15s %-10s\n",
-                        magazine.getId(),
-                        magazine.getTitle(),
-                        magazine.getPublisher(),
-                        magazine.getIssn(),
-                        magazine.isAvailable() ? "Yes" : "No");
-            }
-        }
+        TableRenderer<LibraryItem> table = switch (type) {
+            case "media" -> MEDIA_TABLE;
+            case "magazine" -> MAGAZINE_TABLE;
+            default -> BOOK_TABLE;
+        };
+        table.print("=== Search Results ===", items);
     }
 }
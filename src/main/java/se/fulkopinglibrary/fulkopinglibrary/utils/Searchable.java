@@ -2,9 +2,19 @@ package se.fulkopinglibrary.fulkopinglibrary.utils;
 
 import java.sql.Connection;
 import java.util.List;
+import java.util.concurrent.Flow;
 
 public interface Searchable<T> {
     List<T> search(Connection connection, String searchTerm, String searchType, int sortOption, int page, int pageSize) throws Exception;
+
+    /**
+     * The same search as {@link #search}, publishing each row as soon as it is read instead of
+     * returning the page when it is complete. Rows are read only as fast as the subscriber
+     * requests them, and cancelling the subscription releases its connection. The publisher
+     * takes its own connection, one per subscription.
+     */
+    Flow.Publisher<T> publish(String searchTerm, String searchType, int sortOption, int page, int pageSize);
+
     String getDisplayHeader();
     String getDisplayRow(T item);
 }
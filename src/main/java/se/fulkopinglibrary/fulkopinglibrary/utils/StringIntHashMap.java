@@ -0,0 +1,105 @@
+package se.fulkopinglibrary.fulkopinglibrary.utils;
+
+import java.util.Arrays;
+
+/**
+ * Compact map from strings to non-negative ints, using open addressing with linear probing.
+ *
+ * <p>Keys, their hash codes and values sit in three parallel arrays, so there is no entry
+ * object or boxed Integer per mapping, and a lookup usually touches one or two adjacent slots.
+ * The table is kept at most half full. Removal is not supported.</p>
+ *
+ * <p>Not thread-safe. Build an instance completely and then publish it (e.g. through a
+ * volatile field); after that it may be read by any number of threads.</p>
+ */
+public class StringIntHashMap {
+    public static final int NO_VALUE = -1;
+
+    private String[] keys;
+    private int[] hashes;
+    private int[] values;
+    private int size;
+
+    public StringIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        allocate(capacity);
+    }
+
+    // Returns the value for key, or NO_VALUE if there is none
+    public int get(String key) {
+        int hash = spread(key.hashCode());
+        int mask = keys.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            String candidate = keys[slot];
+            if (candidate == null) {
+                return NO_VALUE;
+            }
+            if (hashes[slot] == hash && candidate.equals(key)) {
+                return values[slot];
+            }
+        }
+    }
+
+    public void put(String key, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Values must be non-negative");
+        }
+        if ((size + 1) * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+        if (insert(key, spread(key.hashCode()), value)) {
+            size++;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Approximate heap footprint of the arrays, in bytes
+    public long footprintBytes() {
+        return (long) keys.length * (4 + 4 + 4);
+    }
+
+    private boolean insert(String key, int hash, int value) {
+        int mask = keys.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            String candidate = keys[slot];
+            if (candidate == null) {
+                keys[slot] = key;
+                hashes[slot] = hash;
+                values[slot] = value;
+                return true;
+            }
+            if (hashes[slot] == hash && candidate.equals(key)) {
+                values[slot] = value;
+                return false;
+            }
+        }
+    }
+
+    private void resize(int capacity) {
+        String[] oldKeys = keys;
+        int[] oldHashes = hashes;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                insert(oldKeys[i], oldHashes[i], oldValues[i]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new String[capacity];
+        hashes = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, NO_VALUE);
+    }
+
+    // Linear probing needs well-mixed low bits; String.hashCode clusters for similar codes
+    private static int spread(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,194 @@
+package se.fulkopinglibrary.fulkopinglibrary.utils;
+
+import se.fulkopinglibrary.fulkopinglibrary.models.Book;
+import se.fulkopinglibrary.fulkopinglibrary.models.LibraryItem;
+import se.fulkopinglibrary.fulkopinglibrary.models.Magazine;
+import se.fulkopinglibrary.fulkopinglibrary.models.MediaItem;
+
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Renders result listings as fixed-width text tables.
+ *
+ * <p>Every cell is converted to text once, column widths are taken from the widest cell (up
+ * to the column's maximum, beyond which text is cut off with an ellipsis), and the whole table
+ * is laid out in a reused {@link StringBuilder}. Widths count code points, so a character
+ * outside the BMP is never cut in half. The table is then encoded into a reused byte buffer
+ * and handed to the output stream in a single write, instead of one {@code printf} per field,
+ * so a page appears at once and the console lock is taken once. The bytes must be in the
+ * stream's own charset: {@link #print(String, List)} writes to {@link ConsoleOutput}, other
+ * streams are given with their charset.</p>
+ *
+ * <p>A renderer reuses its buffers and is meant to be kept in a field; {@link #print} is
+ * synchronized.</p>
+ */
+public class TableRenderer<T> {
+    private static final char ELLIPSIS = '\u2026';
+    private static final String GAP = "  ";
+
+    /**
+     * One column: its heading, the widest it may get, and how to get a row's value.
+     */
+    public record Column<T>(String header, int maxWidth, Function<? super T, ?> value) {
+    }
+
+    private final List<Column<T>> columns;
+    private final StringBuilder text = new StringBuilder(8 * 1024);
+    private CharsetEncoder encoder;
+    private ByteBuffer bytes = ByteBuffer.allocate(16 * 1024);
+    private String[] cells = new String[0];
+    private int[] cellWidths = new int[0];
+
+    public TableRenderer(List<Column<T>> columns) {
+        this.columns = List.copyOf(columns);
+    }
+
+    /**
+     * Item listing with ID, title, creator, identifier and availability columns. The creator is
+     * the author, publisher or director and the identifier the ISBN, ISSN or catalog number,
+     * depending on the item type.
+     */
+    public static TableRenderer<LibraryItem> forItems(String creatorHeader, String identifierHeader, boolean withType) {
+        List<Column<LibraryItem>> columns = new ArrayList<>();
+        columns.add(new Column<>("ID", 6, LibraryItem::getId));
+        if (withType) {
+            columns.add(new Column<>("Type", 8, item -> item.getType() == null ? "" : item.getType().name()));
+        }
+        columns.add(new Column<>("Title", 40, LibraryItem::getTitle));
+        columns.add(new Column<>(creatorHeader, 25, TableRenderer::creator));
+        columns.add(new Column<>(identifierHeader, 17, TableRenderer::identifier));
+        columns.add(new Column<>("Available", 9, item -> item.isAvailable() ? "Yes" : "No"));
+        return new TableRenderer<>(columns);
+    }
+
+    // Lays out the table and writes it to the console in one call; heading may be null
+    public void print(String heading, List<? extends T> rows) {
+        print(ConsoleOutput.out(), ConsoleOutput.CHARSET, heading, rows);
+    }
+
+    // Lays out the table and writes it to out, which encodes text in charset, in one call
+    public synchronized void print(PrintStream out, Charset charset, String heading, List<? extends T> rows) {
+        format(heading, rows);
+        encode(charset);
+        out.write(bytes.array(), 0, bytes.position());
+        out.flush();
+    }
+
+    /**
+     * Lays out the table and returns the text. The returned sequence is the renderer's own
+     * buffer and is only valid until the next call.
+     */
+    public synchronized CharSequence format(String heading, List<? extends T> rows) {
+        int columnCount = columns.size();
+        if (cells.length < rows.size() * columnCount) {
+            cells = new String[rows.size() * columnCount];
+            cellWidths = new int[rows.size() * columnCount];
+        }
+        int[] widths = new int[columnCount];
+        for (int c = 0; c < columnCount; c++) {
+            widths[c] = width(columns.get(c).header());
+        }
+        for (int r = 0; r < rows.size(); r++) {
+            T row = rows.get(r);
+            for (int c = 0; c < columnCount; c++) {
+                Object value = columns.get(c).value().apply(row);
+                String cell = value == null ? "" : value.toString();
+                cells[r * columnCount + c] = cell;
+                cellWidths[r * columnCount + c] = width(cell);
+                widths[c] = Math.max(widths[c], cellWidths[r * columnCount + c]);
+            }
+        }
+        int lineWidth = 0;
+        for (int c = 0; c < columnCount; c++) {
+            widths[c] = Math.min(widths[c], Math.max(columns.get(c).maxWidth(), width(columns.get(c).header())));
+            lineWidth += widths[c] + (c == 0 ? 0 : GAP.length());
+        }
+
+        text.setLength(0);
+        if (heading != null) {
+            text.append('\n').append(heading).append('\n');
+        }
+        for (int c = 0; c < columnCount; c++) {
+            String header = columns.get(c).header();
+            appendCell(c, header, width(header), widths[c], c == columnCount - 1);
+        }
+        text.append('\n');
+        text.append("-".repeat(lineWidth)).append('\n');
+        for (int r = 0; r < rows.size(); r++) {
+            for (int c = 0; c < columnCount; c++) {
+                appendCell(c, cells[r * columnCount + c], cellWidths[r * columnCount + c], widths[c], c == columnCount - 1);
+            }
+            text.append('\n');
+        }
+        // Let the rows be collected; only the array itself is reused
+        Arrays.fill(cells, 0, rows.size() * columnCount, null);
+        return text;
+    }
+
+    private void appendCell(int column, String cell, int cellWidth, int width, boolean last) {
+        if (column > 0) {
+            text.append(GAP);
+        }
+        if (cellWidth > width) {
+            text.append(cell, 0, cell.offsetByCodePoints(0, width - 1)).append(ELLIPSIS);
+            return;
+        }
+        text.append(cell);
+        if (!last) {
+            for (int i = cellWidth; i < width; i++) {
+                text.append(' ');
+            }
+        }
+    }
+
+    // Columns a cell takes, counting each code point as one
+    private static int width(String cell) {
+        return cell.codePointCount(0, cell.length());
+    }
+
+    private void encode(Charset charset) {
+        if (encoder == null || !encoder.charset().equals(charset)) {
+            encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+        // Sized for the worst case, so one pass always fits
+        int needed = (int) (text.length() * encoder.maxBytesPerChar());
+        if (bytes.capacity() < needed) {
+            bytes = ByteBuffer.allocate(Math.max(needed, bytes.capacity() * 2));
+        }
+        bytes.clear();
+        encoder.reset();
+        encoder.encode(CharBuffer.wrap(text), bytes, true);
+        encoder.flush(bytes);
+    }
+
+    private static String creator(LibraryItem item) {
+        if (item instanceof Book book) {
+            return book.getAuthor();
+        }
+        if (item instanceof Magazine magazine) {
+            return magazine.getPublisher();
+        }
+        return item instanceof MediaItem media ? media.getDirector() : null;
+    }
+
+    private static String identifier(LibraryItem item) {
+        if (item instanceof Book book) {
+            return book.getIsbn();
+        }
+        if (item instanceof Magazine magazine) {
+            return magazine.getIssn();
+        }
+        return item instanceof MediaItem media ? media.getCatalogNumber() : null;
+    }
+}
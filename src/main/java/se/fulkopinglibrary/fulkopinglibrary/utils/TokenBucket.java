@@ -0,0 +1,54 @@
+package se.fulkopinglibrary.fulkopinglibrary.utils;
+
+/**
+ * Token bucket rate limiter: allows bursts of up to {@code capacity} operations and refills at
+ * a steady rate. The bucket starts full.
+ *
+ * <p>Every call holds the bucket's monitor for a few arithmetic operations only; buckets are
+ * normally kept per user or per source, so different callers do not contend.</p>
+ */
+public class TokenBucket {
+    private final double capacity;
+    private final double tokensPerNano;
+    private double tokens;
+    private long lastRefillNanos;
+
+    public TokenBucket(int capacity, double refillPerSecond) {
+        if (capacity < 1 || refillPerSecond <= 0) {
+            throw new IllegalArgumentException("Capacity and refill rate must be positive");
+        }
+        this.capacity = capacity;
+        this.tokensPerNano = refillPerSecond / 1_000_000_000.0;
+        this.tokens = capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    public synchronized boolean tryAcquire() {
+        refill(System.nanoTime());
+        if (tokens >= 1.0) {
+            tokens -= 1.0;
+            return true;
+        }
+        return false;
+    }
+
+    // Time until the next token is available, 0 if one is available now
+    public synchronized long nanosUntilAvailable() {
+        refill(System.nanoTime());
+        return tokens >= 1.0 ? 0 : (long) Math.ceil((1.0 - tokens) / tokensPerNano);
+    }
+
+    // A full bucket carries no state worth keeping and can be dropped
+    synchronized boolean isFull() {
+        refill(System.nanoTime());
+        return tokens >= capacity;
+    }
+
+    private void refill(long now) {
+        long elapsed = now - lastRefillNanos;
+        if (elapsed > 0) {
+            tokens = Math.min(capacity, tokens + elapsed * tokensPerNano);
+            lastRefillNanos = now;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package se.fulkopinglibrary.fulkopinglibrary.utils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Creates thread-per-task executors backed by virtual threads.
+ *
+ * <p>The project is still compiled for Java 17, so the Java 21 API is looked up at runtime.
+ * On a Java 21+ runtime every task gets its own virtual thread; on older runtimes a cached
+ * pool of daemon platform threads is used instead. Callers are expected to bound their own
+ * concurrency (for example by connection pool size), not rely on the executor to do it.</p>
+ */
+public class VirtualThreads {
+    private static final Logger logger = LoggerUtil.getLogger(VirtualThreads.class);
+
+    private static final MethodHandle NEW_VIRTUAL_EXECUTOR = findVirtualExecutorFactory();
+
+    private static MethodHandle findVirtualExecutorFactory() {
+        try {
+            return MethodHandles.publicLookup().findStatic(Executors.class,
+                "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            logger.info("Virtual threads not available on this runtime, using platform threads");
+            return null;
+        }
+    }
+
+    public static boolean isAvailable() {
+        return NEW_VIRTUAL_EXECUTOR != null;
+    }
+
+    // Executor that starts a new (virtual if possible) thread for every submitted task
+    public static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+        if (NEW_VIRTUAL_EXECUTOR != null) {
+            try {
+                return (ExecutorService) NEW_VIRTUAL_EXECUTOR.invokeExact();
+            } catch (Throwable e) {
+                logger.warning("Could not create virtual thread executor: " + e.getMessage());
+            }
+        }
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return Executors.newCachedThreadPool(factory);
+    }
+}
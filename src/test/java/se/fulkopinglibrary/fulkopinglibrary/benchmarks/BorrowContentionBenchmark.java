@@ -0,0 +1,189 @@
+package se.fulkopinglibrary.fulkopinglibrary.benchmarks;
+
+import se.fulkopinglibrary.fulkopinglibrary.utils.LatencyHistogram;
+import se.fulkopinglibrary.fulkopinglibrary.utils.StripedLock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Compares checkouts of a few hot items with and without the in-process item locks.
+ *
+ * <p>Runs against a simulated database, so no MySQL is needed. Each item has an availability
+ * flag and a row lock, and every statement costs one round trip. A borrow follows
+ * {@code borrowBook}: read the flag, then update the row (taking its row lock), insert the
+ * loan and commit. A successful borrow is returned right away, so the hot items keep being
+ * fought over. Most attempts go to the hot items and the rest to a large cold set.</p>
+ *
+ * <p>For each mode it prints throughput, latency, how often and how long transactions waited
+ * on a row lock, and how many copies were lent twice because two transactions passed the
+ * availability check together. Without the item locks those double loans also count as
+ * successful borrows, so compare throughput with that in mind.</p>
+ *
+ * <p>Usage: {@code java -cp target/classes:target/test-classes se.fulkopinglibrary.fulkopinglibrary.benchmarks.BorrowContentionBenchmark
+ * [threads] [hotItems] [seconds] [roundTripMicros]}</p>
+ */
+public class BorrowContentionBenchmark {
+    private static final int COLD_ITEMS = 10_000;
+    private static final double HOT_SHARE = 0.9;
+
+    private static final class Row {
+        final ReentrantLock lock = new ReentrantLock(true);
+        final AtomicBoolean available = new AtomicBoolean(true);
+    }
+
+    private static final class Stats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder borrowed = new LongAdder();
+        final LongAdder refused = new LongAdder();
+        final LongAdder rowLockWaits = new LongAdder();
+        final LongAdder rowLockWaitNanos = new LongAdder();
+        final LongAdder doubleLoans = new LongAdder();
+    }
+
+    private final Row[] rows;
+    private final int hotItems;
+    private final long roundTripNanos;
+    private final StripedLock itemLocks;
+
+    private BorrowContentionBenchmark(int hotItems, long roundTripNanos, StripedLock itemLocks) {
+        this.hotItems = hotItems;
+        this.roundTripNanos = roundTripNanos;
+        this.itemLocks = itemLocks;
+        this.rows = new Row[hotItems + COLD_ITEMS];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = new Row();
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int hotItems = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        long roundTripNanos = TimeUnit.MICROSECONDS.toNanos(args.length > 3 ? Long.parseLong(args[3]) : 200);
+
+        System.out.printf("Threads: %d, hot items: %d (%.0f%% of attempts), round trip: %d us%n%n",
+            threads, hotItems, HOT_SHARE * 100, TimeUnit.NANOSECONDS.toMicros(roundTripNanos));
+        report("Database row locks only", new BorrowContentionBenchmark(hotItems, roundTripNanos, null)
+            .run(threads, seconds), seconds);
+        report("With in-process item locks", new BorrowContentionBenchmark(hotItems, roundTripNanos,
+            new StripedLock("benchmark.itemLocks", 1024)).run(threads, seconds), seconds);
+    }
+
+    private Stats run(int threads, int seconds) throws InterruptedException {
+        Stats stats = new Stats();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < deadline) {
+                    int itemId = random.nextDouble() < HOT_SHARE
+                        ? random.nextInt(hotItems)
+                        : hotItems + random.nextInt(COLD_ITEMS);
+                    long start = System.nanoTime();
+                    boolean borrowed = itemLocks == null ? borrow(itemId, stats) : borrowLocked(itemId, stats);
+                    stats.latency.record(System.nanoTime() - start);
+                    if (borrowed) {
+                        stats.borrowed.increment();
+                        giveBack(itemId, stats);
+                    } else {
+                        stats.refused.increment();
+                    }
+                }
+            }, "borrower-" + t);
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return stats;
+    }
+
+    // What CirculationLocks.withItemLock does around the transaction
+    private boolean borrowLocked(int itemId, Stats stats) {
+        try {
+            if (!itemLocks.tryLock(itemId, 10, TimeUnit.SECONDS)) {
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        try {
+            return borrow(itemId, stats);
+        } finally {
+            itemLocks.unlock(itemId);
+        }
+    }
+
+    // SELECT is_available; UPDATE library_items; INSERT INTO loans; COMMIT
+    private boolean borrow(int itemId, Stats stats) {
+        Row row = rows[itemId];
+        roundTrip();
+        if (!row.available.get()) {
+            return false;
+        }
+        lockRow(row, stats);
+        try {
+            roundTrip();
+            if (!row.available.getAndSet(false)) {
+                // The check passed before another transaction took the copy
+                stats.doubleLoans.increment();
+            }
+            roundTrip();
+            roundTrip();
+            return true;
+        } finally {
+            row.lock.unlock();
+        }
+    }
+
+    // UPDATE loans; UPDATE library_items; COMMIT
+    private void giveBack(int itemId, Stats stats) {
+        Row row = rows[itemId];
+        roundTrip();
+        lockRow(row, stats);
+        try {
+            roundTrip();
+            roundTrip();
+            row.available.set(true);
+        } finally {
+            row.lock.unlock();
+        }
+    }
+
+    private static void lockRow(Row row, Stats stats) {
+        if (row.lock.tryLock()) {
+            return;
+        }
+        long start = System.nanoTime();
+        row.lock.lock();
+        stats.rowLockWaits.increment();
+        stats.rowLockWaitNanos.add(System.nanoTime() - start);
+    }
+
+    private void roundTrip() {
+        LockSupport.parkNanos(roundTripNanos);
+    }
+
+    private static void report(String label, Stats stats, int seconds) {
+        long attempts = stats.latency.getCount();
+        System.out.println(label);
+        System.out.printf("  Attempts:        %10.0f /s  (%d borrowed, %d refused)%n",
+            (double) attempts / seconds, stats.borrowed.sum(), stats.refused.sum());
+        System.out.printf("  Latency:         mean %.2f ms, p99 %.2f ms%n",
+            stats.latency.getMeanNanos() / 1e6, stats.latency.getPercentileNanos(99) / 1e6);
+        System.out.printf("  Row lock waits:  %d (%.1f%% of attempts), %.0f ms in total%n",
+            stats.rowLockWaits.sum(), 100.0 * stats.rowLockWaits.sum() / Math.max(1, attempts),
+            stats.rowLockWaitNanos.sum() / 1e6);
+        System.out.printf("  Copies lent twice: %d%n%n", stats.doubleLoans.sum());
+    }
+}
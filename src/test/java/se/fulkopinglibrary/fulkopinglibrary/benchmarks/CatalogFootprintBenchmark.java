@@ -0,0 +1,145 @@
+package se.fulkopinglibrary.fulkopinglibrary.benchmarks;
+
+import se.fulkopinglibrary.fulkopinglibrary.models.Book;
+import se.fulkopinglibrary.fulkopinglibrary.models.ItemType;
+import se.fulkopinglibrary.fulkopinglibrary.models.LibraryItem;
+import se.fulkopinglibrary.fulkopinglibrary.models.Magazine;
+import se.fulkopinglibrary.fulkopinglibrary.models.MediaItem;
+import se.fulkopinglibrary.fulkopinglibrary.models.MediaTypeImpl;
+import se.fulkopinglibrary.fulkopinglibrary.services.CatalogColumns;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the heap taken by a catalog held as model objects with the same catalog in
+ * {@link CatalogColumns}, on the heap and off it.
+ *
+ * <p>Builds the same synthetic items each way, measuring the used heap after a full
+ * collection before and after each, and prints the bytes per item together with the
+ * estimates from {@link CatalogColumns#footprintBytes()} and
+ * {@link CatalogColumns#offHeapBytes()}. Then times a browse page and a general search
+ * against one of the stores; only one is timed per run, as a server only uses one and
+ * running both would mix their profiles in the JIT.</p>
+ *
+ * <p>Usage: {@code java -cp target/classes:target/test-classes se.fulkopinglibrary.fulkopinglibrary.benchmarks.CatalogFootprintBenchmark [items] [heap|offheap]}</p>
+ */
+public class CatalogFootprintBenchmark {
+    private static final String[] WORDS = {
+        "Ångest", "äventyr", "Öland", "resa", "Vinter", "Wallander", "över",
+        "Zebra", "mord", "étude", "Sommar", "häxa", "Umeå", "saga", "Wasa", "vatten"
+    };
+    private static final MediaTypeImpl[] MEDIA_TYPES = {
+        new MediaTypeImpl("DVD", 7), new MediaTypeImpl("CD", 14), new MediaTypeImpl("Blu-ray", 7)
+    };
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        boolean timeOffHeap = args.length > 1 && args[1].equals("offheap");
+
+        long before = usedHeap();
+        List<LibraryItem> objects = objects(count);
+        long objectBytes = usedHeap() - before;
+
+        before = usedHeap();
+        CatalogColumns columns = columns(count, false);
+        long columnBytes = usedHeap() - before;
+
+        before = usedHeap();
+        CatalogColumns offHeap = columns(count, true);
+        long offHeapHeapBytes = usedHeap() - before;
+
+        System.out.printf("Items:                    %d%n", count);
+        System.out.printf("Model objects:            %7.1f bytes/item%n", (double) objectBytes / objects.size());
+        System.out.printf("Columns, measured:        %7.1f bytes/item (%.1fx smaller)%n",
+            (double) columnBytes / columns.size(), (double) objectBytes / columnBytes);
+        System.out.printf("Columns, footprintBytes:  %7.1f bytes/item%n", (double) columns.footprintBytes() / columns.size());
+        System.out.printf("Off-heap, heap measured:  %7.1f bytes/item%n", (double) offHeapHeapBytes / offHeap.size());
+        System.out.printf("Off-heap, offHeapBytes:   %7.1f bytes/item%n", (double) offHeap.offHeapBytes() / offHeap.size());
+
+        if (timeOffHeap) {
+            time("Off-heap columns", offHeap);
+        } else {
+            time("Heap columns", columns);
+        }
+        // Keeps the model objects reachable until both measurements are done
+        System.out.println("Checked " + objects.get(objects.size() - 1).getId() + " items");
+    }
+
+    private static void time(String label, CatalogColumns columns) {
+        int rounds = 200;
+        for (int i = 0; i < rounds; i++) {
+            columns.browse(ItemType.BOOK, 1, 1 + i % 10, 20);
+            columns.search(ItemType.BOOK, "general", "wallander", 0, 1, 20);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            columns.browse(ItemType.BOOK, 1, 1 + i % 10, 20);
+        }
+        double browseMicros = (System.nanoTime() - start) / 1000.0 / rounds;
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            columns.search(ItemType.MEDIA, "general", "umea saga", 0, 1, 20);
+        }
+        double searchMicros = (System.nanoTime() - start) / 1000.0 / rounds;
+        System.out.printf("%-17s browse page by title %7.1f us, general search of media %7.1f us%n",
+            label + ":", browseMicros, searchMicros);
+    }
+
+    private static List<LibraryItem> objects(int count) {
+        Random random = new Random(42);
+        List<LibraryItem> items = new ArrayList<>(count);
+        for (int id = 1; id <= count; id++) {
+            String title = title(random, id);
+            String creator = creator(random);
+            items.add(switch (type(id)) {
+                case BOOK -> new Book(id, title, creator, isbn(id), true);
+                case MAGAZINE -> new Magazine(id, title, creator, "1234-" + (1000 + id % 9000), true);
+                case MEDIA -> new MediaItem(id, title, true, creator, "CAT-" + id, MEDIA_TYPES[id % MEDIA_TYPES.length]);
+            });
+        }
+        return items;
+    }
+
+    private static CatalogColumns columns(int count, boolean offHeap) {
+        Random random = new Random(42);
+        CatalogColumns.Builder builder = new CatalogColumns.Builder(offHeap);
+        for (int id = 1; id <= count; id++) {
+            String title = title(random, id);
+            String creator = creator(random);
+            ItemType type = type(id);
+            switch (type) {
+                case BOOK -> builder.add(id, type, title, creator, isbn(id), null, true);
+                case MAGAZINE -> builder.add(id, type, title, creator, "1234-" + (1000 + id % 9000), null, true);
+                case MEDIA -> builder.add(id, type, title, creator, "CAT-" + id, MEDIA_TYPES[id % MEDIA_TYPES.length], true);
+            }
+        }
+        return builder.build();
+    }
+
+    private static ItemType type(int id) {
+        return id % 10 < 7 ? ItemType.BOOK : id % 10 < 9 ? ItemType.MAGAZINE : ItemType.MEDIA;
+    }
+
+    private static String title(Random random, int id) {
+        return WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + id;
+    }
+
+    // A few thousand distinct creators, as in a real catalog
+    private static String creator(Random random) {
+        return "Author " + random.nextInt(5_000);
+    }
+
+    private static String isbn(int id) {
+        return String.format("978%010d", id);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,119 @@
+package se.fulkopinglibrary.fulkopinglibrary.benchmarks;
+
+import se.fulkopinglibrary.fulkopinglibrary.http.LibraryHttpServer;
+import se.fulkopinglibrary.fulkopinglibrary.utils.LatencyHistogram;
+import se.fulkopinglibrary.fulkopinglibrary.utils.VirtualThreads;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Closed-loop load test for the HTTP API.
+ *
+ * <p>Starts the given number of concurrent clients, each sending its next request as soon as
+ * the previous one is answered, and prints throughput and latency percentiles. Without a base
+ * URL an embedded server is started on a free port and {@code /api/health} is used, which
+ * measures the HTTP layer alone; point it at a running server and a search path to include
+ * the database.</p>
+ *
+ * <p>Usage: {@code java -cp target/classes:target/test-classes se.fulkopinglibrary.fulkopinglibrary.benchmarks.HttpApiLoadTest
+ * [clients] [seconds] [baseUrl] [path]}, e.g. {@code 2000 30 http://localhost:8080 /api/search?q=the}</p>
+ */
+public class HttpApiLoadTest {
+    private static final int WARMUP_SECONDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        String baseUrl = args.length > 2 ? args[2] : null;
+        String path = args.length > 3 ? args[3] : "/api/health";
+
+        LibraryHttpServer embedded = null;
+        if (baseUrl == null) {
+            embedded = new LibraryHttpServer(0, 4096);
+            embedded.start();
+            baseUrl = "http://localhost:" + embedded.getPort();
+        }
+
+        ExecutorService clientThreads = VirtualThreads.newThreadPerTaskExecutor("load-client");
+        HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .executor(clientThreads)
+            .build();
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+            .timeout(Duration.ofSeconds(30))
+            .GET()
+            .build();
+
+        System.out.printf("Target:      %s%s%n", baseUrl, path);
+        System.out.printf("Clients:     %d (%s threads)%n", clients, VirtualThreads.isAvailable() ? "virtual" : "platform");
+
+        run(client, request, clients, WARMUP_SECONDS, clientThreads, null);
+        Result result = run(client, request, clients, seconds, clientThreads, new LatencyHistogram());
+
+        LatencyHistogram latency = result.latency();
+        System.out.printf("Duration:    %d s%n", seconds);
+        System.out.printf("Requests:    %d ok, %d failed%n", result.ok(), result.failed());
+        System.out.printf("Throughput:  %.0f requests/s%n", result.ok() / (double) seconds);
+        System.out.printf("Latency:     mean %.2f ms, p50 %.2f ms, p95 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+            latency.getMeanNanos() / 1e6,
+            latency.getPercentileNanos(50) / 1e6,
+            latency.getPercentileNanos(95) / 1e6,
+            latency.getPercentileNanos(99) / 1e6,
+            latency.getMaxNanos() / 1e6);
+
+        clientThreads.shutdownNow();
+        if (embedded != null) {
+            embedded.stop(0);
+        }
+    }
+
+    private record Result(long ok, long failed, LatencyHistogram latency) {
+    }
+
+    private static Result run(HttpClient client, HttpRequest request, int clients, int seconds,
+                              ExecutorService threads, LatencyHistogram latency) throws Exception {
+        LongAdder ok = new LongAdder();
+        LongAdder failed = new LongAdder();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+
+        List<Future<?>> workers = new ArrayList<>(clients);
+        for (int i = 0; i < clients; i++) {
+            workers.add(threads.submit(() -> {
+                while (System.nanoTime() < deadline) {
+                    long start = System.nanoTime();
+                    try {
+                        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                        if (response.statusCode() == 200) {
+                            ok.increment();
+                            if (latency != null) {
+                                latency.record(System.nanoTime() - start);
+                            }
+                        } else {
+                            failed.increment();
+                        }
+                    } catch (IOException e) {
+                        failed.increment();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        return new Result(ok.sum(), failed.sum(), latency);
+    }
+}
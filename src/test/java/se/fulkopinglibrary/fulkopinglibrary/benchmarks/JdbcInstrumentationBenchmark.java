@@ -0,0 +1,105 @@
+package se.fulkopinglibrary.fulkopinglibrary.benchmarks;
+
+import se.fulkopinglibrary.fulkopinglibrary.utils.JdbcInstrumentation;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Measures the overhead JdbcInstrumentation adds to a statement round trip.
+ *
+ * <p>Runs the same prepare/execute/iterate/close loop against an in-memory stub connection,
+ * once raw and once wrapped, and prints the extra cost per statement and per row. No database
+ * is needed; the stub answers instantly, so the difference is pure instrumentation cost.</p>
+ *
+ * <p>Usage: {@code java -cp target/classes:target/test-classes se.fulkopinglibrary.fulkopinglibrary.benchmarks.JdbcInstrumentationBenchmark [rowsPerQuery]}</p>
+ */
+public class JdbcInstrumentationBenchmark {
+    private static final String SQL = "SELECT item_id, title, author, isbn, is_available FROM library_items WHERE type = ? AND title LIKE ?";
+    private static final int WARMUP_ITERATIONS = 200_000;
+    private static final int MEASURED_ITERATIONS = 1_000_000;
+
+    public static void main(String[] args) throws SQLException {
+        int rowsPerQuery = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        JdbcInstrumentation.configure(true, Long.MAX_VALUE / 1_000_000L);
+
+        Connection raw = stubConnection(rowsPerQuery);
+        Connection instrumented = JdbcInstrumentation.wrap(stubConnection(rowsPerQuery));
+
+        run(raw, WARMUP_ITERATIONS);
+        run(instrumented, WARMUP_ITERATIONS);
+
+        double rawNanos = run(raw, MEASURED_ITERATIONS);
+        double instrumentedNanos = run(instrumented, MEASURED_ITERATIONS);
+        double overhead = instrumentedNanos - rawNanos;
+
+        System.out.printf("Rows per query:            %d%n", rowsPerQuery);
+        System.out.printf("Raw statement:             %.0f ns%n", rawNanos);
+        System.out.printf("Instrumented statement:    %.0f ns%n", instrumentedNanos);
+        System.out.printf("Overhead per statement:    %.0f ns (%.2f ns per row)%n", overhead, overhead / Math.max(1, rowsPerQuery));
+        System.out.printf("Share of a 0.5 ms query:   %.3f%%%n", overhead / 500_000.0 * 100);
+        System.out.println();
+        System.out.print(JdbcInstrumentation.dump());
+    }
+
+    // Average nanoseconds per prepare/execute/iterate/close cycle
+    private static double run(Connection connection, int iterations) throws SQLException {
+        long checksum = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            try (PreparedStatement statement = connection.prepareStatement(SQL)) {
+                statement.setString(1, "BOOK");
+                statement.setString(2, "%war%");
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        checksum += rs.getInt("item_id");
+                        checksum += rs.getString("title").length();
+                    }
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (checksum == 42) {
+            System.out.println();
+        }
+        return (double) elapsed / iterations;
+    }
+
+    private static Connection stubConnection(int rowsPerQuery) {
+        return (Connection) Proxy.newProxyInstance(
+            Connection.class.getClassLoader(),
+            new Class<?>[] {Connection.class},
+            (proxy, method, args) -> switch (method.getName()) {
+                case "prepareStatement" -> stubStatement(rowsPerQuery);
+                case "isClosed" -> false;
+                default -> null;
+            });
+    }
+
+    private static PreparedStatement stubStatement(int rowsPerQuery) {
+        return (PreparedStatement) Proxy.newProxyInstance(
+            PreparedStatement.class.getClassLoader(),
+            new Class<?>[] {PreparedStatement.class},
+            (proxy, method, args) -> switch (method.getName()) {
+                case "executeQuery" -> stubResultSet(rowsPerQuery);
+                case "executeUpdate" -> 1;
+                default -> null;
+            });
+    }
+
+    private static ResultSet stubResultSet(int rows) {
+        int[] cursor = {0};
+        return (ResultSet) Proxy.newProxyInstance(
+            ResultSet.class.getClassLoader(),
+            new Class<?>[] {ResultSet.class},
+            (proxy, method, args) -> switch (method.getName()) {
+                case "next" -> cursor[0]++ < rows;
+                case "getInt" -> cursor[0];
+                case "getString" -> "The Great Gatsby";
+                default -> null;
+            });
+    }
+}
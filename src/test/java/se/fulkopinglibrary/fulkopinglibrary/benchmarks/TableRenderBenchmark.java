@@ -0,0 +1,109 @@
+package se.fulkopinglibrary.fulkopinglibrary.benchmarks;
+
+import se.fulkopinglibrary.fulkopinglibrary.models.Book;
+import se.fulkopinglibrary.fulkopinglibrary.models.LibraryItem;
+import se.fulkopinglibrary.fulkopinglibrary.utils.TableRenderer;
+
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the old per-field {@code printf} listing with {@link TableRenderer} for one page
+ * of results.
+ *
+ * <p>Both write to a stream set up like {@code System.out} (auto-flushing, buffered, UTF-8)
+ * over a sink that counts the writes reaching it, which on a terminal are system calls and
+ * redraws. Prints the time and number of such writes per page.</p>
+ *
+ * <p>Usage: {@code java -cp target/classes:target/test-classes se.fulkopinglibrary.fulkopinglibrary.benchmarks.TableRenderBenchmark [rowsPerPage] [pages]}</p>
+ */
+public class TableRenderBenchmark {
+
+    private static final class CountingSink extends OutputStream {
+        long writes;
+        long bytes;
+
+        @Override
+        public void write(int b) {
+            writes++;
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            writes++;
+            bytes += len;
+        }
+    }
+
+    public static void main(String[] args) {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int pages = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+
+        List<LibraryItem> page = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            page.add(new Book(i + 1,
+                "A Fairly Long Book Title Number " + i + " With Subtitle, Second Edition",
+                "Author Å. Ölander " + i,
+                "97800000" + String.format("%05d", i),
+                i % 3 != 0));
+        }
+        TableRenderer<LibraryItem> table = TableRenderer.forItems("Author", "ISBN", false);
+
+        CountingSink printfSink = new CountingSink();
+        PrintStream printfOut = consoleLike(printfSink);
+        CountingSink tableSink = new CountingSink();
+        PrintStream tableOut = consoleLike(tableSink);
+
+        for (int i = 0; i < pages / 4; i++) {
+            printfPage(printfOut, page);
+            table.print(tableOut, StandardCharsets.UTF_8, "=== Search Results ===", page);
+        }
+        printfSink.writes = printfSink.bytes = 0;
+        tableSink.writes = tableSink.bytes = 0;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < pages; i++) {
+            printfPage(printfOut, page);
+        }
+        double printfNanos = (double) (System.nanoTime() - start) / pages;
+
+        start = System.nanoTime();
+        for (int i = 0; i < pages; i++) {
+            table.print(tableOut, StandardCharsets.UTF_8, "=== Search Results ===", page);
+        }
+        double tableNanos = (double) (System.nanoTime() - start) / pages;
+
+        System.out.printf("Rows per page:        %d%n", rows);
+        System.out.printf("printf per field:     %8.1f us/page, %6.1f writes/page, %6d bytes/page%n",
+            printfNanos / 1000, (double) printfSink.writes / pages, printfSink.bytes / pages);
+        System.out.printf("TableRenderer:        %8.1f us/page, %6.1f writes/page, %6d bytes/page%n",
+            tableNanos / 1000, (double) tableSink.writes / pages, tableSink.bytes / pages);
+        System.out.printf("Speed-up:             %.1fx%n", printfNanos / tableNanos);
+    }
+
+    // The same wrapping System.out has: auto-flush on newline over a buffered stream
+    private static PrintStream consoleLike(OutputStream sink) {
+        return new PrintStream(new BufferedOutputStream(sink, 8192), true, StandardCharsets.UTF_8);
+    }
+
+    // The listing as SearchUtils printed it before TableRenderer
+    private static void printfPage(PrintStream out, List<LibraryItem> items) {
+        out.println("\n=== Search Results ===");
+        out.printf("%-5s %-40s %-25s %-15s %-10s\n", "ID", "Title", "Author", "ISBN", "Available");
+        out.println("---------------------------------------------------------------");
+        for (LibraryItem item : items) {
+            Book book = (Book) item;
+            out.printf("%-5d %-40s %-25s %-15s %-10s\n",
+                book.getId(),
+                book.getTitle(),
+                book.getAuthor(),
+                book.getIsbn(),
+                book.isAvailable() ? "Yes" : "No");
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package se.fulkopinglibrary.fulkopinglibrary.benchmarks;
+
+import se.fulkopinglibrary.fulkopinglibrary.models.Book;
+import se.fulkopinglibrary.fulkopinglibrary.models.LibraryItem;
+import se.fulkopinglibrary.fulkopinglibrary.services.ItemOrder;
+import se.fulkopinglibrary.fulkopinglibrary.utils.TitleCollation;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares ways of sorting a result list by title in memory.
+ *
+ * <p>Sorts the same shuffled books with {@code String.compareTo} (fast, but Å, Ä and Ö end
+ * up in the wrong place), with {@link TitleCollation#compare} on every comparison, and with
+ * {@link ItemOrder} on sort keys: once including the cost of computing the keys on fresh
+ * items, and once with keys already computed, as for cached search results. Prints the time
+ * per sort and the first titles of the Swedish order.</p>
+ *
+ * <p>Usage: {@code java -cp target/classes:target/test-classes se.fulkopinglibrary.fulkopinglibrary.benchmarks.TitleSortBenchmark [items] [rounds]}</p>
+ */
+public class TitleSortBenchmark {
+    private static final String[] WORDS = {
+        "Ångest", "äventyr", "Öland", "resa", "Vinter", "Wallander", "över",
+        "Zebra", "mord", "étude", "Sommar", "häxa", "Umeå", "saga", "Wasa", "vatten"
+    };
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        Random random = new Random(42);
+        List<String> titles = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            titles.add(WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + i);
+        }
+        List<LibraryItem> cached = books(titles);
+        Comparator<LibraryItem> keys = ItemOrder.forSortOption(1);
+        Comparator<LibraryItem> collator = (a, b) -> TitleCollation.compare(a.getTitle(), b.getTitle());
+        Comparator<LibraryItem> plain = Comparator.comparing(LibraryItem::getTitle);
+
+        for (int i = 0; i < rounds / 4; i++) {
+            sort(cached, plain);
+            sort(cached, collator);
+            sort(books(titles), keys);
+        }
+
+        double plainMicros = time(rounds, () -> sort(cached, plain));
+        double collatorMicros = time(rounds, () -> sort(cached, collator));
+        double freshMicros = time(rounds, () -> sort(books(titles), keys));
+        double keyedMicros = time(rounds, () -> sort(cached, keys));
+
+        System.out.printf("Items per sort:               %d%n", count);
+        System.out.printf("String.compareTo:             %9.1f us/sort (not Swedish order)%n", plainMicros);
+        System.out.printf("Collator on every compare:    %9.1f us/sort%n", collatorMicros);
+        System.out.printf("Sort keys, computed per sort: %9.1f us/sort%n", freshMicros);
+        System.out.printf("Sort keys, already computed:  %9.1f us/sort (%.1fx faster than the collator)%n",
+            keyedMicros, collatorMicros / keyedMicros);
+        List<LibraryItem> sorted = sort(cached, keys);
+        System.out.print("First titles:");
+        for (int i = 0; i < sorted.size(); i += Math.max(1, sorted.size() / 8)) {
+            System.out.print(" | " + sorted.get(i).getTitle());
+        }
+        System.out.println();
+    }
+
+    private static List<LibraryItem> books(List<String> titles) {
+        List<LibraryItem> books = new ArrayList<>(titles.size());
+        for (int i = 0; i < titles.size(); i++) {
+            books.add(new Book(i + 1, titles.get(i), "Author", "9780000000000", true));
+        }
+        return books;
+    }
+
+    private static List<LibraryItem> sort(List<LibraryItem> items, Comparator<LibraryItem> order) {
+        List<LibraryItem> sorted = new ArrayList<>(items);
+        sorted.sort(order);
+        return sorted;
+    }
+
+    private static double time(int rounds, Runnable sort) {
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            sort.run();
+        }
+        return (System.nanoTime() - start) / 1000.0 / rounds;
+    }
+}
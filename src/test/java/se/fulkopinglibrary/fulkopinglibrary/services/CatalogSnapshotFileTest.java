@@ -0,0 +1,115 @@
+package se.fulkopinglibrary.fulkopinglibrary.services;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.fulkopinglibrary.fulkopinglibrary.models.ItemType;
+import se.fulkopinglibrary.fulkopinglibrary.models.LibraryItem;
+import se.fulkopinglibrary.fulkopinglibrary.models.MediaTypeImpl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CatalogSnapshotFileTest {
+
+    @TempDir
+    Path directory;
+
+    private static CatalogColumns catalog(boolean offHeap) {
+        MediaTypeImpl dvd = new MediaTypeImpl("DVD", 7);
+        return new CatalogColumns.Builder(offHeap)
+            .add(1, ItemType.BOOK, "Öland i sommar", "Åsa Ek", "9780306406157", null, true)
+            .add(2, ItemType.MAGAZINE, "Allers", "Allers förlag", "0317-8471", null, false)
+            .add(5, ItemType.MEDIA, "Wallander – Mördare utan ansikte", "Pernilla August", "DVD-001", dvd, true)
+            .add(9, ItemType.BOOK, "Ærø rundt", "Åsa Ek", "9780804429573", null, false)
+            .add(70_000, ItemType.MEDIA, "Sommaren med Monika", null, "DVD-002", dvd, false)
+            .build();
+    }
+
+    private static List<LibraryItem> everything(CatalogColumns columns, ItemType type) {
+        return columns.browse(type, 1, 1, 100);
+    }
+
+    private static void assertSameItems(CatalogColumns actual, CatalogColumns expected) {
+        assertThat(actual.size()).isEqualTo(expected.size());
+        for (ItemType type : ItemType.values()) {
+            assertThat(everything(actual, type))
+                .usingRecursiveFieldByFieldElementComparator()
+                .containsExactlyElementsOf(everything(expected, type));
+        }
+    }
+
+    @Test
+    void heapStoreRoundTrips() throws IOException {
+        CatalogColumns columns = catalog(false);
+        Path file = directory.resolve("catalog.snapshot");
+
+        CatalogSnapshotFile.write(file, columns, new Timestamp(1_700_000_000_000L), 1_699_000_000_000L);
+        CatalogSnapshotFile.Loaded loaded = CatalogSnapshotFile.read(file);
+
+        assertThat(loaded).isNotNull();
+        assertThat(loaded.watermark().getTime()).isEqualTo(1_700_000_000_000L);
+        assertThat(loaded.readAllMillis()).isEqualTo(1_699_000_000_000L);
+        assertSameItems(loaded.columns(), columns);
+        assertThat(loaded.columns().search(ItemType.BOOK, "author", "asa ek", 0, 1, 10))
+            .extracting(LibraryItem::getId).containsExactly(1, 9);
+    }
+
+    @Test
+    void offHeapStoreRoundTripsAndCanBeWrittenAgain() throws IOException {
+        CatalogColumns columns = catalog(true);
+        Path first = directory.resolve("first.snapshot");
+        Path second = directory.resolve("second.snapshot");
+
+        CatalogSnapshotFile.write(first, columns, new Timestamp(1_000L), 0);
+        CatalogSnapshotFile.Loaded loaded = CatalogSnapshotFile.read(first);
+        CatalogSnapshotFile.write(second, loaded.columns(), loaded.watermark(), loaded.readAllMillis());
+
+        assertSameItems(loaded.columns(), columns);
+        assertThat(Files.readAllBytes(second)).isEqualTo(Files.readAllBytes(first));
+    }
+
+    @Test
+    void availabilityChangesStayInMemory() throws IOException {
+        Path file = directory.resolve("catalog.snapshot");
+        CatalogSnapshotFile.write(file, catalog(false), new Timestamp(1_000L), 0);
+
+        CatalogSnapshotFile.read(file).columns().setAvailable(2, true);
+
+        assertThat(everything(CatalogSnapshotFile.read(file).columns(), ItemType.MAGAZINE))
+            .extracting(LibraryItem::isAvailable).containsExactly(false);
+    }
+
+    @Test
+    void corruptedFileIsIgnored() throws IOException {
+        Path file = directory.resolve("catalog.snapshot");
+        CatalogSnapshotFile.write(file, catalog(false), new Timestamp(1_000L), 0);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer one = ByteBuffer.allocate(1);
+            long last = channel.size() - 9;
+            channel.read(one, last);
+            one.put(0, (byte) (one.get(0) ^ 1)).rewind();
+            channel.write(one, last);
+        }
+
+        assertThat(CatalogSnapshotFile.read(file)).isNull();
+    }
+
+    @Test
+    void truncatedOrMissingFileIsIgnored() throws IOException {
+        Path file = directory.resolve("catalog.snapshot");
+        CatalogSnapshotFile.write(file, catalog(false), new Timestamp(1_000L), 0);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, java.util.Arrays.copyOf(bytes, bytes.length - 8));
+
+        assertThat(CatalogSnapshotFile.read(file)).isNull();
+        assertThat(CatalogSnapshotFile.read(directory.resolve("missing.snapshot"))).isNull();
+    }
+}
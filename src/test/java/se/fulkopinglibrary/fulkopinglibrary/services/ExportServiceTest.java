@@ -0,0 +1,113 @@
+package se.fulkopinglibrary.fulkopinglibrary.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ExportServiceTest {
+    private Connection connection;
+    private PreparedStatement statement;
+    private ResultSet resultSet;
+
+    // Two rows of (item_id INTEGER, title VARCHAR, is_available BIT, price DECIMAL)
+    @BeforeEach
+    void twoRows() throws SQLException {
+        connection = mock(Connection.class);
+        statement = mock(PreparedStatement.class);
+        resultSet = mock(ResultSet.class);
+        ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+        when(connection.prepareStatement(anyString(), anyInt(), anyInt())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.getMetaData()).thenReturn(metaData);
+        when(resultSet.next()).thenReturn(true, true, false);
+
+        when(metaData.getColumnCount()).thenReturn(4);
+        when(metaData.getColumnLabel(1)).thenReturn("item_id");
+        when(metaData.getColumnLabel(2)).thenReturn("title");
+        when(metaData.getColumnLabel(3)).thenReturn("is_available");
+        when(metaData.getColumnLabel(4)).thenReturn("price");
+        when(metaData.getColumnType(1)).thenReturn(Types.INTEGER);
+        when(metaData.getColumnType(2)).thenReturn(Types.VARCHAR);
+        when(metaData.getColumnType(3)).thenReturn(Types.BIT);
+        when(metaData.getColumnType(4)).thenReturn(Types.DECIMAL);
+
+        // CSV reads every column as a string
+        when(resultSet.getString(1)).thenReturn("1", "2");
+        when(resultSet.getString(2)).thenReturn("Hello, \"World\"", "Line\nbreak");
+        when(resultSet.getString(3)).thenReturn("1", null);
+        when(resultSet.getString(4)).thenReturn("12.50", null);
+        // JSON Lines reads numbers and booleans typed
+        when(resultSet.getBigDecimal(1)).thenReturn(new BigDecimal(1), new BigDecimal(2));
+        when(resultSet.getBoolean(3)).thenReturn(true, false);
+        when(resultSet.wasNull()).thenReturn(false, true);
+        when(resultSet.getBigDecimal(4)).thenReturn(new BigDecimal("12.50"), null);
+    }
+
+    @Test
+    void csvQuotesOnlyFieldsThatNeedIt() throws SQLException, IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        ExportService.ExportResult result = ExportService.exportTable(
+            connection, "library_items", out, ExportService.Format.CSV, false);
+
+        assertThat(result.rows()).isEqualTo(2);
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo("""
+            item_id,title,is_available,price
+            1,"Hello, ""World""\",1,12.50
+            2,"Line
+            break",,
+            """);
+        verify(statement).setFetchSize(Integer.MIN_VALUE);
+    }
+
+    @Test
+    void jsonLinesWritesOneTypedObjectPerRow() throws SQLException, IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        ExportService.exportTable(connection, "library_items", out, ExportService.Format.JSONL, false);
+
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo("""
+            {"item_id":1,"title":"Hello, \\"World\\"","is_available":true,"price":12.50}
+            {"item_id":2,"title":"Line\\nbreak","is_available":null,"price":null}
+            """);
+    }
+
+    @Test
+    void gzipOutputIsFinished() throws SQLException, IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        ExportService.exportTable(connection, "library_items", out, ExportService.Format.CSV, true);
+
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8))
+                .startsWith("item_id,title,is_available,price\n1,");
+        }
+    }
+
+    @Test
+    void rejectsTablesThatAreNotExportable() {
+        assertThatThrownBy(() -> ExportService.exportTable(
+                connection, "users", new ByteArrayOutputStream(), ExportService.Format.CSV, false))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+}
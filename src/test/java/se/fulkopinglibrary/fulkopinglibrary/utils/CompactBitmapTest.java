@@ -0,0 +1,123 @@
+package se.fulkopinglibrary.fulkopinglibrary.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CompactBitmapTest {
+
+    // Dense enough in the first chunk to switch it to a bitmap, sparse in the others
+    private static TreeSet<Integer> randomValues(long seed) {
+        Random random = new Random(seed);
+        TreeSet<Integer> values = new TreeSet<>();
+        while (values.size() < 6000) {
+            values.add(random.nextInt(10_000));
+        }
+        for (int i = 0; i < 500; i++) {
+            values.add(65_536 + random.nextInt(1_000_000));
+        }
+        return values;
+    }
+
+    private static CompactBitmap bitmapOf(TreeSet<Integer> values) {
+        CompactBitmap bitmap = new CompactBitmap();
+        values.forEach(bitmap::add);
+        return bitmap;
+    }
+
+    private static int[] toInts(Iterable<Integer> values) {
+        List<Integer> list = new ArrayList<>();
+        values.forEach(list::add);
+        return list.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    @Test
+    void addReportsWhetherTheValueIsNew() {
+        CompactBitmap bitmap = new CompactBitmap();
+
+        assertThat(bitmap.add(7)).isTrue();
+        assertThat(bitmap.add(7)).isFalse();
+        assertThat(bitmap.contains(7)).isTrue();
+        assertThat(bitmap.contains(8)).isFalse();
+        assertThat(bitmap.cardinality()).isEqualTo(1);
+    }
+
+    @Test
+    void rejectsNegativeValues() {
+        assertThatThrownBy(() -> new CompactBitmap().add(-1))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void holdsTheSameValuesAsASortedSet() {
+        TreeSet<Integer> expected = randomValues(1);
+        CompactBitmap bitmap = bitmapOf(expected);
+
+        assertThat(bitmap.cardinality()).isEqualTo(expected.size());
+        assertThat(bitmap.toArray()).containsExactly(toInts(expected));
+        List<Integer> visited = new ArrayList<>();
+        bitmap.forEach(visited::add);
+        assertThat(visited).containsExactlyElementsOf(expected);
+    }
+
+    @Test
+    void removeKeepsTheRestAcrossContainerKinds() {
+        TreeSet<Integer> expected = randomValues(2);
+        CompactBitmap bitmap = bitmapOf(expected);
+
+        // Enough removals from the dense chunk to take it back below the bitmap threshold
+        List<Integer> removed = new ArrayList<>(expected.headSet(10_000)).subList(0, 3000);
+        for (int value : removed) {
+            assertThat(bitmap.remove(value)).isTrue();
+        }
+        removed.forEach(expected::remove);
+
+        assertThat(bitmap.remove(removed.get(0))).isFalse();
+        assertThat(bitmap.toArray()).containsExactly(toInts(expected));
+    }
+
+    @Test
+    void intersectsLikeRetainAll() {
+        TreeSet<Integer> left = randomValues(3);
+        TreeSet<Integer> right = randomValues(4);
+        TreeSet<Integer> both = new TreeSet<>(left);
+        both.retainAll(right);
+
+        CompactBitmap a = bitmapOf(left);
+        CompactBitmap b = bitmapOf(right);
+
+        assertThat(a.and(b).toArray()).containsExactly(toInts(both));
+        assertThat(a.andCardinality(b)).isEqualTo(both.size());
+        assertThat(b.andCardinality(a)).isEqualTo(both.size());
+    }
+
+    @Test
+    void pagesMatchSlicesOfTheFullArray() {
+        CompactBitmap bitmap = bitmapOf(randomValues(5));
+        int[] all = bitmap.toArray();
+
+        for (int from : new int[] {0, 1, 4095, 5999, 6000, all.length - 3, all.length, all.length + 10}) {
+            int[] page = bitmap.toArray(from, 20);
+            int end = Math.min(all.length, from + 20);
+            int[] expected = from >= all.length ? new int[0] : java.util.Arrays.copyOfRange(all, from, end);
+            assertThat(page).as("page from %d", from).containsExactly(expected);
+        }
+    }
+
+    @Test
+    void copyIsIndependent() {
+        CompactBitmap original = CompactBitmap.of(1, 2, 3);
+        CompactBitmap copy = original.copy();
+        copy.add(4);
+        original.remove(1);
+
+        assertThat(original.toArray()).containsExactly(2, 3);
+        assertThat(copy.toArray()).containsExactly(1, 2, 3, 4);
+    }
+}
@@ -0,0 +1,70 @@
+package se.fulkopinglibrary.fulkopinglibrary.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IdentifierUtilsTest {
+
+    @Test
+    void isbn13CheckDigit() {
+        assertThat(IdentifierUtils.isValidIsbn13("9780306406157")).isTrue();
+        assertThat(IdentifierUtils.isValidIsbn13("9780306406158")).isFalse();
+        assertThat(IdentifierUtils.isValidIsbn13("978030640615")).isFalse();
+        assertThat(IdentifierUtils.isValidIsbn13("978030640615X")).isFalse();
+    }
+
+    @Test
+    void isbn10CheckDigitAllowsATrailingX() {
+        assertThat(IdentifierUtils.isValidIsbn10("0306406152")).isTrue();
+        assertThat(IdentifierUtils.isValidIsbn10("080442957X")).isTrue();
+        assertThat(IdentifierUtils.isValidIsbn10("0306406153")).isFalse();
+        assertThat(IdentifierUtils.isValidIsbn10("X306406152")).isFalse();
+    }
+
+    @Test
+    void isbn10IsConvertedWithANewCheckDigit() {
+        assertThat(IdentifierUtils.isbn10To13("0306406152")).isEqualTo("9780306406157");
+        assertThat(IdentifierUtils.isbn10To13("080442957X")).isEqualTo("9780804429573");
+        assertThat(IdentifierUtils.isbn10To13("0306406153")).isNull();
+    }
+
+    @Test
+    void normalizeIsbnAcceptsBothLengthsWithSeparators() {
+        assertThat(IdentifierUtils.normalizeIsbn(" 0-306-40615-2 ")).isEqualTo("9780306406157");
+        assertThat(IdentifierUtils.normalizeIsbn("0-8044-2957-x")).isEqualTo("9780804429573");
+        assertThat(IdentifierUtils.normalizeIsbn("978 0 306 40615 7")).isEqualTo("9780306406157");
+        assertThat(IdentifierUtils.normalizeIsbn("978-0-306-40615-8")).isNull();
+        assertThat(IdentifierUtils.normalizeIsbn(null)).isNull();
+    }
+
+    @Test
+    void normalizeIsbn13RejectsIsbn10() {
+        assertThat(IdentifierUtils.normalizeIsbn13("978-0-306-40615-7")).isEqualTo("9780306406157");
+        assertThat(IdentifierUtils.normalizeIsbn13("0-306-40615-2")).isNull();
+    }
+
+    @Test
+    void issnCheckDigit() {
+        assertThat(IdentifierUtils.isValidIssn("0317-8471")).isTrue();
+        assertThat(IdentifierUtils.isValidIssn("2434-561X")).isTrue();
+        assertThat(IdentifierUtils.isValidIssn("0317-8472")).isFalse();
+        assertThat(IdentifierUtils.isValidIssn("03178471")).isFalse();
+    }
+
+    @Test
+    void normalizeIssnAddsTheHyphen() {
+        assertThat(IdentifierUtils.normalizeIssn("03178471")).isEqualTo("0317-8471");
+        assertThat(IdentifierUtils.normalizeIssn(" 2434-561x ")).isEqualTo("2434-561X");
+        assertThat(IdentifierUtils.normalizeIssn("0317-847")).isNull();
+    }
+
+    @Test
+    void catalogNumbersAreUpperCasedAndNeedADigit() {
+        assertThat(IdentifierUtils.normalizeCatalogNumber(" dvd-001 ")).isEqualTo("DVD-001");
+        assertThat(IdentifierUtils.normalizeCatalogNumber("CD/12.3")).isEqualTo("CD/12.3");
+        assertThat(IdentifierUtils.normalizeCatalogNumber("DVD")).isNull();
+        assertThat(IdentifierUtils.normalizeCatalogNumber("DVD--1")).isNull();
+        assertThat(IdentifierUtils.normalizeCatalogNumber("A1".repeat(26))).isNull();
+    }
+}
@@ -0,0 +1,92 @@
+package se.fulkopinglibrary.fulkopinglibrary.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JsonWriterTest {
+
+    private interface Body {
+        void write(JsonWriter json) throws IOException;
+    }
+
+    private static String write(Body body) throws IOException {
+        StringWriter out = new StringWriter();
+        JsonWriter json = new JsonWriter(out, 64);
+        body.write(json);
+        json.flush();
+        return out.toString();
+    }
+
+    @Test
+    void escapesQuotesBackslashesAndControlCharacters() throws IOException {
+        assertThat(write(json -> json.value("\"a\\b\"\n\r\t\u0001")))
+            .isEqualTo("\"\\\"a\\\\b\\\"\\n\\r\\t\\u0001\"");
+    }
+
+    @Test
+    void escapesLineSeparatorsButNotOtherUnicode() throws IOException {
+        assertThat(write(json -> json.value("Fulköping\u2028\u2029😀")))
+            .isEqualTo("\"Fulköping\\u2028\\u2029😀\"");
+    }
+
+    @Test
+    void separatesMembersAndElements() throws IOException {
+        String written = write(json -> json.beginObject()
+            .name("id").value(-42)
+            .name("ok").value(true)
+            .name("none").nullValue()
+            .name("price").value(new BigDecimal("12.50"))
+            .name("tags").beginArray().value("a").value("b").endArray()
+            .name("empty").beginObject().endObject()
+            .endObject());
+
+        assertThat(written).isEqualTo(
+            "{\"id\":-42,\"ok\":true,\"none\":null,\"price\":12.50,\"tags\":[\"a\",\"b\"],\"empty\":{}}");
+    }
+
+    @Test
+    void writesExtremeLongs() throws IOException {
+        assertThat(write(json -> json.beginArray().value(Long.MIN_VALUE).value(Long.MAX_VALUE).value(0).endArray()))
+            .isEqualTo("[-9223372036854775808,9223372036854775807,0]");
+    }
+
+    @Test
+    void endLineSeparatesTopLevelValues() throws IOException {
+        String written = write(json -> {
+            json.beginObject().name("line").value(1).endObject().endLine();
+            json.beginObject().name("line").value(2).endObject().endLine();
+        });
+
+        assertThat(written).isEqualTo("{\"line\":1}\n{\"line\":2}\n");
+    }
+
+    @Test
+    void stringsLongerThanTheBufferAreWrittenWhole() throws IOException {
+        String longText = "x".repeat(1000);
+
+        assertThat(write(json -> json.value(longText))).isEqualTo('"' + longText + '"');
+    }
+
+    @Test
+    void rejectsMalformedDocuments() {
+        JsonWriter json = new JsonWriter(new StringWriter());
+
+        assertThatThrownBy(() -> json.name("outside")).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> json.beginObject().value("no name")).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> json.endArray()).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> json.endLine()).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void rejectsNonFiniteNumbers() {
+        JsonWriter json = new JsonWriter(new StringWriter());
+
+        assertThatThrownBy(() -> json.value(Double.valueOf(Double.NaN))).isInstanceOf(IllegalArgumentException.class);
+    }
+}
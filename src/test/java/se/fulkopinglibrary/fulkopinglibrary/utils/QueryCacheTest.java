@@ -0,0 +1,182 @@
+package se.fulkopinglibrary.fulkopinglibrary.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class QueryCacheTest {
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // A loader that signals when it starts and returns its value once released
+    private static final class BlockingLoader implements QueryCache.Loader<String> {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+        private final String value;
+
+        BlockingLoader(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public String load() throws SQLException {
+            calls.incrementAndGet();
+            started.countDown();
+            try {
+                if (!release.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    throw new SQLException("Loader was never released");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException(e);
+            }
+            return value;
+        }
+    }
+
+    private static void awaitCollapsed(QueryCache<?, ?> cache, long expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (cache.getStats().collapsed() < expected) {
+            assertThat(System.nanoTime()).as("callers joining the load").isLessThan(deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    void cachesLoadedValues() throws SQLException {
+        QueryCache<String, String> cache = new QueryCache<>("test", 10, 60_000);
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThat(cache.get("k", () -> "v" + calls.incrementAndGet())).isEqualTo("v1");
+        assertThat(cache.get("k", () -> "v" + calls.incrementAndGet())).isEqualTo("v1");
+
+        QueryCache.Stats stats = cache.getStats();
+        assertThat(stats.hits()).isEqualTo(1);
+        assertThat(stats.misses()).isEqualTo(1);
+        assertThat(stats.size()).isEqualTo(1);
+    }
+
+    @Test
+    void concurrentMissesRunTheLoaderOnce() throws Exception {
+        QueryCache<String, String> cache = new QueryCache<>("test", 10, 60_000);
+        BlockingLoader loader = new BlockingLoader("v");
+
+        List<Future<String>> results = new ArrayList<>();
+        results.add(executor.submit(() -> cache.get("k", loader)));
+        assertThat(loader.started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+        for (int i = 0; i < 4; i++) {
+            results.add(executor.submit(() -> cache.get("k", loader)));
+        }
+        awaitCollapsed(cache, 4);
+        loader.release.countDown();
+
+        for (Future<String> result : results) {
+            assertThat(result.get(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isEqualTo("v");
+        }
+        assertThat(loader.calls).hasValue(1);
+        assertThat(cache.getStats().loadsSaved()).isEqualTo(4);
+    }
+
+    @Test
+    void waitersGetTheLoadersException() throws Exception {
+        QueryCache<String, String> cache = new QueryCache<>("test", 10, 60_000);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        QueryCache.Loader<String> failing = () -> {
+            started.countDown();
+            try {
+                release.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new SQLException("boom");
+        };
+
+        Future<String> first = executor.submit(() -> cache.get("k", failing));
+        assertThat(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+        Future<String> second = executor.submit(() -> cache.get("k", failing));
+        awaitCollapsed(cache, 1);
+        release.countDown();
+
+        for (Future<String> result : List.of(first, second)) {
+            assertThatThrownBy(() -> result.get(TIMEOUT_SECONDS, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(SQLException.class)
+                .hasRootCauseMessage("boom");
+        }
+        // A failed load is not cached
+        assertThat(cache.get("k", () -> "v")).isEqualTo("v");
+    }
+
+    @Test
+    void callersAfterAnInvalidationDoNotJoinAnOlderLoad() throws Exception {
+        QueryCache<String, String> cache = new QueryCache<>("test", 10, 60_000);
+        BlockingLoader before = new BlockingLoader("old");
+
+        Future<String> stale = executor.submit(() -> cache.get("k", before));
+        assertThat(before.started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+        cache.invalidateAll();
+
+        // Runs its own load while the old one is still blocked
+        assertThat(cache.get("k", () -> "new")).isEqualTo("new");
+
+        before.release.countDown();
+        assertThat(stale.get(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isEqualTo("old");
+        assertThat(cache.get("k", () -> "reloaded")).isEqualTo("new");
+    }
+
+    @Test
+    void loadsStartedBeforeAnInvalidationAreNotStored() throws Exception {
+        QueryCache<String, String> cache = new QueryCache<>("test", 10, 60_000);
+        BlockingLoader before = new BlockingLoader("old");
+
+        Future<String> stale = executor.submit(() -> cache.get("k", before));
+        assertThat(before.started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+        cache.invalidateAll();
+        before.release.countDown();
+
+        assertThat(stale.get(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isEqualTo("old");
+        assertThat(cache.getStats().size()).isZero();
+        assertThat(cache.get("k", () -> "new")).isEqualTo("new");
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedEntry() throws SQLException {
+        QueryCache<String, String> cache = new QueryCache<>("test", 2, 60_000);
+        cache.get("a", () -> "1");
+        cache.get("b", () -> "2");
+        cache.get("a", () -> "unused");
+        cache.get("c", () -> "3");
+
+        assertThat(cache.get("a", () -> "reloaded")).isEqualTo("1");
+        assertThat(cache.get("b", () -> "reloaded")).isEqualTo("reloaded");
+        assertThat(cache.getStats().evictions()).isEqualTo(2);
+    }
+
+    @Test
+    void entriesExpire() throws Exception {
+        QueryCache<String, String> cache = new QueryCache<>("test", 10, 20);
+        cache.get("k", () -> "old");
+        Thread.sleep(50);
+
+        assertThat(cache.get("k", () -> "new")).isEqualTo("new");
+    }
+}
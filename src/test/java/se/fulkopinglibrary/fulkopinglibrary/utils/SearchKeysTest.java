@@ -0,0 +1,41 @@
+package se.fulkopinglibrary.fulkopinglibrary.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SearchKeysTest {
+
+    @Test
+    void foldsCaseAccentsAndSpaces() {
+        assertThat(SearchKeys.fold("  FULKÖPING   Bibliotek ")).isEqualTo("fulkoping bibliotek");
+        assertThat(SearchKeys.fold("Fulköping")).isEqualTo(SearchKeys.fold("Fulkoping"));
+        assertThat(SearchKeys.fold(null)).isEmpty();
+    }
+
+    @Test
+    void foldsLettersWithoutADecomposition() {
+        assertThat(SearchKeys.fold("Ørsted")).isEqualTo("orsted");
+        assertThat(SearchKeys.fold("Æble")).isEqualTo("aeble");
+        assertThat(SearchKeys.fold("Straße")).isEqualTo("strasse");
+        assertThat(SearchKeys.fold("Łódź")).isEqualTo("lodz");
+    }
+
+    @Test
+    void foldsCompatibilityCharacters() {
+        assertThat(SearchKeys.fold("ﬁsk")).isEqualTo("fisk");
+    }
+
+    @Test
+    void likePatternsEscapeWildcards() {
+        assertThat(SearchKeys.prefixPattern("100% Ö_l")).isEqualTo("100\\% o\\_l%");
+        assertThat(SearchKeys.containsPattern("a\\b")).isEqualTo("%a\\\\b%");
+    }
+
+    @Test
+    void inMemoryMatchesFoldBothSides() {
+        assertThat(SearchKeys.startsWith("Ölandsresan", "OLAND")).isTrue();
+        assertThat(SearchKeys.contains("Resa till Öland", "oland")).isTrue();
+        assertThat(SearchKeys.startsWith("Resa till Öland", "oland")).isFalse();
+    }
+}
@@ -0,0 +1,75 @@
+package se.fulkopinglibrary.fulkopinglibrary.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TableRendererTest {
+
+    private static TableRenderer<String[]> twoColumns(int maxWidth) {
+        return new TableRenderer<>(List.of(
+            new TableRenderer.Column<String[]>("A", maxWidth, row -> row[0]),
+            new TableRenderer.Column<String[]>("B", maxWidth, row -> row[1])));
+    }
+
+    @Test
+    void padsEveryColumnButTheLast() {
+        CharSequence table = twoColumns(10).format("Heading", List.of(
+            new String[] {"x", "yy"},
+            new String[] {"zzz", null}));
+
+        assertThat(table.toString()).isEqualTo("""
+
+            Heading
+            A    B
+            -------
+            x    yy
+            zzz \s
+            """);
+    }
+
+    @Test
+    void cutsLongCellsAtCodePoints() {
+        CharSequence table = twoColumns(4).format(null, List.<String[]>of(
+            new String[] {"a😀😀😀😀b", "Åsa"}));
+
+        assertThat(table.toString()).isEqualTo("""
+            A     B
+            ---------
+            a😀😀…  Åsa
+            """);
+    }
+
+    @Test
+    void widthsCountCodePointsNotChars() {
+        CharSequence table = twoColumns(10).format(null, List.<String[]>of(
+            new String[] {"😀😀", "b"},
+            new String[] {"ab", "c"}));
+
+        assertThat(table.toString()).isEqualTo("""
+            A   B
+            -----
+            😀😀  b
+            ab  c
+            """);
+    }
+
+    @Test
+    void printsInTheStreamsCharset() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        twoColumns(10).print(new PrintStream(out), StandardCharsets.ISO_8859_1, null, List.<String[]>of(
+            new String[] {"Åsa", "😀"}));
+
+        assertThat(out.toString(StandardCharsets.ISO_8859_1)).isEqualTo("""
+            A    B
+            ------
+            Åsa  ?
+            """);
+    }
+}
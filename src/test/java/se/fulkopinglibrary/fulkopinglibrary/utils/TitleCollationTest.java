@@ -0,0 +1,62 @@
+package se.fulkopinglibrary.fulkopinglibrary.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TitleCollationTest {
+
+    private static List<String> sortedByKey(String... titles) {
+        List<String> sorted = new ArrayList<>(List.of(titles));
+        sorted.sort(TitleCollation.comparing(TitleCollation::sortKey));
+        return sorted;
+    }
+
+    @Test
+    void swedishLettersSortAfterZ() {
+        assertThat(sortedByKey("Öland", "Zebra", "Ängel", "Åsa", "Anna"))
+            .containsExactly("Anna", "Zebra", "Åsa", "Ängel", "Öland");
+    }
+
+    @Test
+    void wIsALetterAfterV() {
+        assertThat(sortedByKey("Wasa", "Vinter", "Vy"))
+            .containsExactly("Vinter", "Vy", "Wasa");
+    }
+
+    @Test
+    void danishAndNorwegianLettersSortAsTheirSwedishVariants() {
+        assertThat(TitleCollation.compare("Ærø", "Ärö")).isZero();
+        assertThat(TitleCollation.compare("Øst", "Öst")).isZero();
+        assertThat(TitleCollation.compare("Œuvre", "Ouvre")).isPositive();
+        assertThat(TitleCollation.compare("Œuvre", "Zeta")).isPositive();
+    }
+
+    @Test
+    void caseAndAccentsAreIgnored() {
+        assertThat(TitleCollation.sortKey("étude")).isEqualTo(TitleCollation.sortKey("ETUDE"));
+        assertThat(TitleCollation.compare("Café", "cafe")).isZero();
+    }
+
+    @Test
+    void spacesSortBeforeLetters() {
+        assertThat(sortedByKey("Theater", "The End"))
+            .containsExactly("The End", "Theater");
+    }
+
+    @Test
+    void keyOrderAgreesWithCompare() {
+        String[] titles = {"Öga", "ögon", "Åka", "Ærø", "Wallander", "Vatten", "The End", "Theater", "Umeå", "étude"};
+        for (String left : titles) {
+            for (String right : titles) {
+                int byKey = TitleCollation.KEY_ORDER.compare(TitleCollation.sortKey(left), TitleCollation.sortKey(right));
+                assertThat(Integer.signum(byKey))
+                    .as("%s vs %s", left, right)
+                    .isEqualTo(Integer.signum(TitleCollation.compare(left, right)));
+            }
+        }
+    }
+}